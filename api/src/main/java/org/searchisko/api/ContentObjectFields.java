@@ -34,4 +34,5 @@ public final class ContentObjectFields {
 	public static final String SYS_COMMENTS = "sys_comments";
 	public static final String SYS_RATING_AVG = "sys_rating_avg";
 	public static final String SYS_RATING_NUM = "sys_rating_num";
+	public static final String SYS_FINGERPRINT = "sys_fingerprint";
 }
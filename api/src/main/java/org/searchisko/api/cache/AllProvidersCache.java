@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.searchisko.api.service.ContentTypeDescriptor;
+import org.searchisko.api.service.ProviderService;
+
+/**
+ * Cache of immutable snapshot of all provider configurations used inside {@link ProviderService#getAll()}. Snapshot is
+ * reloaded single-flight - exactly one thread reloads it when TTL lapses, other threads keep serving the stale snapshot
+ * meanwhile. Threads wait for the reload only if there is no snapshot available at all (at start or after flush).
+ *
+ * @author agent (agent at local)
+ */
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AllProvidersCache {
+
+	/**
+	 * Time to Live for cache [ms].
+	 */
+	protected long ttl = 10 * 1000;
+
+	private volatile Snapshot snapshot;
+
+	private final ReentrantLock loadLock = new ReentrantLock();
+
+	private final AtomicLong flushCount = new AtomicLong();
+
+	private final AtomicLong loadCount = new AtomicLong();
+
+	/**
+	 * Get snapshot of all providers, reload it using loader if necessary.
+	 *
+	 * @param loader used to load providers
+	 * @return unmodifiable list with unmodifiable configurations of all providers
+	 */
+	public List<Map<String, Object>> get(ExpiringCacheBase.Loader<List<Map<String, Object>>> loader) {
+		Snapshot s = snapshot;
+		if (s != null) {
+			if (s.validTo > System.currentTimeMillis() || !loadLock.tryLock()) {
+				// valid snapshot, or stale one while other thread reloads it
+				return s.providers;
+			}
+		} else {
+			loadLock.lock();
+		}
+		try {
+			s = snapshot;
+			if (s != null && s.validTo > System.currentTimeMillis()) {
+				// reloaded by other thread meanwhile
+				return s.providers;
+			}
+			long flushGeneration = flushCount.get();
+			List<Map<String, Object>> providers = immutableCopy(loader.load(null));
+			loadCount.incrementAndGet();
+			if (flushGeneration == flushCount.get())
+				snapshot = new Snapshot(providers, System.currentTimeMillis() + ttl);
+			return providers;
+		} finally {
+			loadLock.unlock();
+		}
+	}
+
+	/**
+	 * Get registry of descriptors of all <code>sys_content_type</code>s defined in providers. Registry is built from
+	 * providers snapshot returned from {@link #get(ExpiringCacheBase.Loader)} only once, and is replaced together with
+	 * the snapshot, so it is always consistent with it.
+	 *
+	 * @param loader used to load providers
+	 * @return unmodifiable map where key is <code>sys_content_type</code> name and value is its descriptor
+	 * @throws SettingsException if structure of some provider configuration is incorrect
+	 */
+	public Map<String, ContentTypeDescriptor> getContentTypes(ExpiringCacheBase.Loader<List<Map<String, Object>>> loader) {
+		List<Map<String, Object>> providers = get(loader);
+		Snapshot s = snapshot;
+		if (s == null || s.providers != providers) {
+			// snapshot flushed or replaced meanwhile, build registry for providers we have
+			return ContentTypeDescriptor.buildRegistry(providers);
+		}
+		Map<String, ContentTypeDescriptor> ret = s.contentTypes;
+		if (ret == null) {
+			// concurrent threads may build registry in parallel, but the result is the same
+			ret = ContentTypeDescriptor.buildRegistry(providers);
+			s.contentTypes = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Flush cache, so next {@link #get(ExpiringCacheBase.Loader)} call waits for fresh data.
+	 */
+	public void flush() {
+		flushCount.incrementAndGet();
+		snapshot = null;
+	}
+
+	/**
+	 * @return true if no snapshot is cached now
+	 */
+	public boolean isEmpty() {
+		return snapshot == null;
+	}
+
+	/**
+	 * @param ttl Time to Live for cache [ms]
+	 */
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return number of snapshot loads since start
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static List<Map<String, Object>> immutableCopy(List<Map<String, Object>> providers) {
+		if (providers == null)
+			return null;
+		List<Map<String, Object>> ret = new ArrayList<>(providers.size());
+		for (Map<String, Object> p : providers) {
+			ret.add((Map<String, Object>) immutableCopyValue(p));
+		}
+		return Collections.unmodifiableList(ret);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object immutableCopyValue(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> m = new LinkedHashMap<>();
+			for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+				m.put(e.getKey(), immutableCopyValue(e.getValue()));
+			}
+			return Collections.unmodifiableMap(m);
+		} else if (value instanceof List) {
+			List<Object> l = new ArrayList<>();
+			for (Object o : (List<Object>) value) {
+				l.add(immutableCopyValue(o));
+			}
+			return Collections.unmodifiableList(l);
+		}
+		return value;
+	}
+
+	private static class Snapshot {
+		protected final List<Map<String, Object>> providers;
+		protected final long validTo;
+		protected volatile Map<String, ContentTypeDescriptor> contentTypes;
+
+		protected Snapshot(List<Map<String, Object>> providers, long validTo) {
+			this.providers = providers;
+			this.validTo = validTo;
+		}
+	}
+
+}
@@ -1,10 +1,28 @@
 package org.searchisko.api.cache;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ejb.Schedule;
 
 /**
- * Base for expiring cache with <code>String</code> keys.
+ * Base for expiring cache with <code>String</code> keys. Cache is lock-free, bounded to {@link #maxEntries} (least
+ * recently used entries are evicted when the limit is reached) and expired entries are swept out periodically.
+ * <p>
+ * Refresh-ahead is supported too: once an entry gets older than {@link #refreshAheadFactor} of its TTL, exactly one
+ * caller of {@link #get(String)} gets <code>null</code> so it reloads the value and puts it back, while all other
+ * callers are still served the cached value until it expires. So hot keys are not missed by all callers at once.
  *
  * @param <T> the type of value stored in the cache
  *
@@ -18,39 +36,225 @@ public abstract class ExpiringCacheBase<T> implements ICache<T> {
 	 */
 	protected long ttl = 30 * 1000;
 
-	private Map<String, CacheItem<T>> cache = new HashMap<>();
+	/**
+	 * Maximal number of entries in cache.
+	 */
+	protected int maxEntries = 1000;
+
+	/**
+	 * Part of TTL after which the value is reloaded by one caller ahead of expiration. Value <= 0 or >= 1 disables
+	 * refresh-ahead.
+	 */
+	protected float refreshAheadFactor = 0.8f;
+
+	private final ConcurrentMap<String, CacheItem<T>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Logical clock used to track order of access to entries for LRU eviction.
+	 */
+	private final AtomicLong accessClock = new AtomicLong();
+
+	private final AtomicBoolean evictionRunning = new AtomicBoolean();
+
+	/**
+	 * Loads running now, used to coalesce concurrent loads of the same key.
+	 */
+	private final ConcurrentMap<String, FutureTask<T>> inFlight = new ConcurrentHashMap<>();
+
+	private final AtomicLong flushCount = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong loadTimeTotal = new AtomicLong();
 
 	@Override
 	public T get(String key) {
-		CacheItem<T> ci;
-		synchronized (cache) {
-			ci = cache.get(key);
-		}
-		if (ci != null && ci.validTo > System.currentTimeMillis()) {
-			return ci.value;
+		CacheItem<T> ci = cache.get(key);
+		if (ci != null) {
+			long now = System.currentTimeMillis();
+			if (ci.validTo > now) {
+				if (ci.refreshAt <= now && ci.refreshClaimed.compareAndSet(false, true)) {
+					// this caller reloads value ahead of expiration
+					missCount.incrementAndGet();
+					return null;
+				}
+				ci.lastAccess = accessClock.incrementAndGet();
+				hitCount.incrementAndGet();
+				return ci.value;
+			}
+			cache.remove(key, ci);
 		}
+		missCount.incrementAndGet();
 		return null;
 	}
 
 	@Override
 	public void put(String key, T value) {
+		long now = System.currentTimeMillis();
 		CacheItem<T> ci = new CacheItem<>();
 		ci.value = value;
-		ci.validTo = System.currentTimeMillis() + ttl;
-		synchronized (cache) {
-			cache.put(key, ci);
+		ci.validTo = now + ttl;
+		ci.refreshAt = (refreshAheadFactor > 0 && refreshAheadFactor < 1) ? now + (long) (ttl * refreshAheadFactor)
+				: Long.MAX_VALUE;
+		ci.lastAccess = accessClock.incrementAndGet();
+		cache.put(key, ci);
+		if (cache.size() > maxEntries) {
+			evict();
+		}
+	}
+
+	/**
+	 * Get value from cache, load it using loader if not in cache and put it into cache. Loading is single-flight - if
+	 * more callers miss the same key concurrently, only one of them calls the loader and others wait for its result.
+	 * Load time is tracked in cache metrics.
+	 *
+	 * @param key to get value for
+	 * @param loader used to load value if not in cache
+	 * @return value for key, may be null if loader returns null (which is not cached)
+	 * @throws RuntimeException thrown from loader, for all callers waiting for the value
+	 */
+	public T get(final String key, final Loader<T> loader) {
+		T ret = get(key);
+		if (ret != null)
+			return ret;
+
+		final long flushGeneration = flushCount.get();
+		FutureTask<T> task = new FutureTask<>(new Callable<T>() {
+			@Override
+			public T call() {
+				long start = System.nanoTime();
+				T value = loader.load(key);
+				loadCount.incrementAndGet();
+				loadTimeTotal.addAndGet(System.nanoTime() - start);
+				// do not cache value loaded before cache flush, it may be obsolete already
+				if (value != null && flushGeneration == flushCount.get())
+					put(key, value);
+				return value;
+			}
+		});
+		FutureTask<T> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for cache value load", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
 		}
 	}
 
 	@Override
 	public void flush() {
-		synchronized (cache) {
-			cache.clear();
+		flushCount.incrementAndGet();
+		cache.clear();
+	}
+
+	/**
+	 * Remove expired entries from cache. Called periodically by container timer for cache beans.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+	public void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, CacheItem<T>> e : cache.entrySet()) {
+			if (e.getValue().validTo <= now) {
+				cache.remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Evict expired entries and then least recently used ones so cache size is lowered under the limit again. Only one
+	 * thread performs eviction at a time, others do not wait for it.
+	 */
+	protected void evict() {
+		if (!evictionRunning.compareAndSet(false, true))
+			return;
+		try {
+			evictExpired();
+			// evict 10% more than necessary so eviction is not performed on each next put
+			int toEvict = cache.size() - maxEntries + (maxEntries / 10);
+			if (toEvict <= 0)
+				return;
+			List<Map.Entry<String, CacheItem<T>>> entries = new ArrayList<>(cache.entrySet());
+			Collections.sort(entries, new Comparator<Map.Entry<String, CacheItem<T>>>() {
+				@Override
+				public int compare(Map.Entry<String, CacheItem<T>> o1, Map.Entry<String, CacheItem<T>> o2) {
+					long a1 = o1.getValue().lastAccess;
+					long a2 = o2.getValue().lastAccess;
+					return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < toEvict && i < entries.size(); i++) {
+				Map.Entry<String, CacheItem<T>> e = entries.get(i);
+				if (cache.remove(e.getKey(), e.getValue()))
+					evictionCount.incrementAndGet();
+			}
+		} finally {
+			evictionRunning.set(false);
 		}
 	}
 
+	/**
+	 * @return number of entries in cache now, expired entries not swept yet included
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Get cache metrics.
+	 *
+	 * @return map with cache metrics - <code>size</code>, <code>hits</code>, <code>misses</code>, <code>evictions</code>,
+	 *         <code>loads</code> and <code>load_time_avg_ms</code>.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("size", cache.size());
+		ret.put("hits", hitCount.get());
+		ret.put("misses", missCount.get());
+		ret.put("evictions", evictionCount.get());
+		long loads = loadCount.get();
+		ret.put("loads", loads);
+		ret.put("load_time_avg_ms", loads > 0 ? (loadTimeTotal.get() / loads) / 1000000d : 0d);
+		return ret;
+	}
+
+	/**
+	 * Loader of values missing in cache.
+	 *
+	 * @param <T> the type of value loaded
+	 */
+	public static interface Loader<T> {
+
+		/**
+		 * Load value for key.
+		 *
+		 * @param key to load value for
+		 * @return value or null if not available
+		 */
+		T load(String key);
+	}
+
 	private static class CacheItem<T> {
 		protected long validTo;
+		protected long refreshAt;
+		protected volatile long lastAccess;
+		protected final AtomicBoolean refreshClaimed = new AtomicBoolean();
 		protected T value;
 	}
 
@@ -0,0 +1,274 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.model.AppConfiguration;
+
+/**
+ * Cache of rendered Atom feed entries used by {@link org.searchisko.api.rest.FeedRestService}. Entry is cached under
+ * <code>sys_id</code> of content together with its <code>sys_updated</code> value, so cached entry is used only for
+ * the same version of content. Entry is removed also when content is pushed or deleted on this node. Cache is bounded
+ * by memory budget (least recently used entries are evicted when budget is exceeded). It is disabled if memory budget
+ * is not configured.
+ *
+ * @author agent (agent at local)
+ */
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FeedEntryCache {
+
+	/**
+	 * Approximate memory overhead of one cache entry [bytes].
+	 */
+	protected static final int ENTRY_OVERHEAD = 128;
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected AppConfiguration appConfiguration;
+
+	/**
+	 * Memory budget for cache [bytes]. 0 means cache is disabled.
+	 */
+	protected long maxMemory = 0;
+
+	private final ConcurrentMap<String, CacheItem> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Logical clock used for LRU eviction.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	private final AtomicLong usedMemory = new AtomicLong();
+
+	private final AtomicBoolean evictionRunning = new AtomicBoolean();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		if (appConfiguration != null) {
+			maxMemory = appConfiguration.getFeedEntryCacheMaxMemory() * 1024L * 1024L;
+		}
+		if (log != null)
+			log.log(Level.INFO, "Feed entry cache enabled: {0}", isEnabled());
+	}
+
+	/**
+	 * @return true if cache is enabled
+	 */
+	public boolean isEnabled() {
+		return maxMemory > 0;
+	}
+
+	/**
+	 * Get rendered entry from cache.
+	 *
+	 * @param sysId <code>sys_id</code> of content
+	 * @param sysUpdated <code>sys_updated</code> value of content
+	 * @return rendered entry or null if not in cache for given content version
+	 */
+	public byte[] get(String sysId, String sysUpdated) {
+		CacheItem ci = cache.get(sysId);
+		if (ci != null && ci.sysUpdated.equals(sysUpdated)) {
+			ci.lastAccess = clock.incrementAndGet();
+			hitCount.incrementAndGet();
+			return ci.data;
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Put rendered entry into cache. Nothing is put if cache is disabled or if entry is too large for memory budget.
+	 *
+	 * @param sysId <code>sys_id</code> of content
+	 * @param sysUpdated <code>sys_updated</code> value of content
+	 * @param data rendered entry
+	 */
+	public void put(String sysId, String sysUpdated, byte[] data) {
+		if (!isEnabled() || sysId == null || sysUpdated == null || data == null)
+			return;
+		long size = data.length + (sysId.length() + sysUpdated.length()) * 2 + ENTRY_OVERHEAD;
+		// do not fill whole cache by one large entry
+		if (size > maxMemory / 100)
+			return;
+		CacheItem ci = new CacheItem(data, sysUpdated, size);
+		ci.lastAccess = clock.incrementAndGet();
+		CacheItem old = cache.put(sysId, ci);
+		usedMemory.addAndGet(size);
+		if (old != null)
+			usedMemory.addAndGet(-old.size);
+		if (usedMemory.get() > maxMemory) {
+			evict();
+		}
+	}
+
+	/**
+	 * Remove entry for given content from cache.
+	 *
+	 * @param sysId <code>sys_id</code> of content
+	 */
+	public void remove(String sysId) {
+		if (sysId == null)
+			return;
+		CacheItem ci = cache.get(sysId);
+		if (ci != null)
+			remove(sysId, ci);
+	}
+
+	/**
+	 * Flush cache.
+	 */
+	public void flush() {
+		cache.clear();
+		usedMemory.set(0);
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentStoredEvent} used to remove entry of changed content.
+	 *
+	 * @param event to process
+	 */
+	public void contentStoredEventHandler(@Observes ContentStoredEvent event) {
+		if (isEnabled() && event != null)
+			remove(event.getContentId());
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentDeletedEvent} used to remove entry of deleted content.
+	 *
+	 * @param event to process
+	 */
+	public void contentDeletedEventHandler(@Observes ContentDeletedEvent event) {
+		if (isEnabled() && event != null)
+			remove(event.getContentId());
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentBulkDeletedEvent} used to remove entries of deleted content.
+	 *
+	 * @param event to process
+	 */
+	public void contentBulkDeletedEventHandler(@Observes ContentBulkDeletedEvent event) {
+		if (isEnabled() && event != null && event.getContentIds() != null) {
+			for (String contentId : event.getContentIds()) {
+				remove(contentId);
+			}
+		}
+	}
+
+	/**
+	 * Evict least recently used entries so memory used by cache is lowered under 90% of budget. Only one thread performs
+	 * eviction at a time, others do not wait for it.
+	 */
+	protected void evict() {
+		if (!evictionRunning.compareAndSet(false, true))
+			return;
+		try {
+			long limit = maxMemory - maxMemory / 10;
+			if (usedMemory.get() <= limit)
+				return;
+			List<Map.Entry<String, CacheItem>> entries = new ArrayList<>(cache.entrySet());
+			Collections.sort(entries, new Comparator<Map.Entry<String, CacheItem>>() {
+				@Override
+				public int compare(Map.Entry<String, CacheItem> o1, Map.Entry<String, CacheItem> o2) {
+					long a1 = o1.getValue().lastAccess;
+					long a2 = o2.getValue().lastAccess;
+					return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < entries.size() && usedMemory.get() > limit; i++) {
+				Map.Entry<String, CacheItem> e = entries.get(i);
+				if (remove(e.getKey(), e.getValue()))
+					evictionCount.incrementAndGet();
+			}
+		} finally {
+			evictionRunning.set(false);
+		}
+	}
+
+	private boolean remove(String key, CacheItem ci) {
+		if (cache.remove(key, ci)) {
+			usedMemory.addAndGet(-ci.size);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param maxMemory memory budget for cache [bytes]
+	 */
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * @return approximate memory used by cache now [bytes]
+	 */
+	public long getUsedMemory() {
+		return usedMemory.get();
+	}
+
+	/**
+	 * Get cache statistics.
+	 *
+	 * @return map with cache statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("enabled", isEnabled());
+		ret.put("size", cache.size());
+		ret.put("memory_used", usedMemory.get());
+		ret.put("memory_max", maxMemory);
+		ret.put("hits", hitCount.get());
+		ret.put("misses", missCount.get());
+		ret.put("evictions", evictionCount.get());
+		return ret;
+	}
+
+	private static class CacheItem {
+		protected final byte[] data;
+		protected final String sysUpdated;
+		protected final long size;
+		protected volatile long lastAccess;
+
+		protected CacheItem(byte[] data, String sysUpdated, long size) {
+			this.data = data;
+			this.sysUpdated = sysUpdated;
+			this.size = size;
+		}
+	}
+
+}
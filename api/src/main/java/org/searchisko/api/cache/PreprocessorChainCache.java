@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessor;
+import org.searchisko.api.service.ProviderService;
+
+/**
+ * Cache of compiled (instantiated and initialized) chains of <code>input_preprocessors</code> for distinct
+ * <code>sys_content_type</code>s used inside {@link ProviderService}. Cached chain is valid only for the configuration
+ * structure it was created from, so it is recreated when provider configuration changes. Cached chains are unmodifiable
+ * and shared by all threads.
+ * 
+ * @author agent (agent at local)
+ */
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PreprocessorChainCache {
+
+	private final ConcurrentMap<String, CacheItem> cache = new ConcurrentHashMap<>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Get preprocessors chain from cache.
+	 * 
+	 * @param typeName <code>sys_content_type</code> to get chain for
+	 * @param preprocessorsDef configuration of preprocessors the chain must be created from to be valid
+	 * @return preprocessors chain or null if not in cache or if cached one was created from another configuration.
+	 */
+	public List<StructuredContentPreprocessor> get(String typeName, List<Map<String, Object>> preprocessorsDef) {
+		CacheItem ci = cache.get(typeName);
+		if (ci != null) {
+			if (ci.preprocessorsDef == preprocessorsDef) {
+				hitCount.incrementAndGet();
+				return ci.preprocessors;
+			}
+			// configuration structure has been reloaded, we can reuse chain if configuration is same
+			if (Objects.equals(ci.preprocessorsDef, preprocessorsDef)) {
+				cache.replace(typeName, ci, new CacheItem(preprocessorsDef, ci.preprocessors));
+				hitCount.incrementAndGet();
+				return ci.preprocessors;
+			}
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Put preprocessors chain into cache.
+	 * 
+	 * @param typeName <code>sys_content_type</code> to put chain for
+	 * @param preprocessorsDef configuration of preprocessors the chain was created from
+	 * @param preprocessors chain to put into cache, must be unmodifiable
+	 */
+	public void put(String typeName, List<Map<String, Object>> preprocessorsDef,
+			List<StructuredContentPreprocessor> preprocessors) {
+		cache.put(typeName, new CacheItem(preprocessorsDef, preprocessors));
+	}
+
+	/**
+	 * Flush cache
+	 */
+	public void flush() {
+		cache.clear();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Get cache statistics.
+	 * 
+	 * @return map with cache statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("size", cache.size());
+		ret.put("hits", getHitCount());
+		ret.put("misses", getMissCount());
+		return ret;
+	}
+
+	private static class CacheItem {
+		protected final List<Map<String, Object>> preprocessorsDef;
+		protected final List<StructuredContentPreprocessor> preprocessors;
+
+		protected CacheItem(List<Map<String, Object>> preprocessorsDef, List<StructuredContentPreprocessor> preprocessors) {
+			this.preprocessorsDef = preprocessorsDef;
+			this.preprocessors = preprocessors;
+		}
+	}
+
+}
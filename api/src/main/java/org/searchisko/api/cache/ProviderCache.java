@@ -2,6 +2,8 @@ package org.searchisko.api.cache;
 
 import java.util.Map;
 
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.enterprise.context.ApplicationScoped;
 
@@ -14,6 +16,7 @@ import org.searchisko.api.service.ProviderService;
  */
 @ApplicationScoped
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class ProviderCache extends ExpiringCacheBase<Map<String, Object>> {
 
 	public ProviderCache() {
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+
+import org.searchisko.api.events.ConfigChangedEvent;
+import org.searchisko.api.service.ConfigService;
+import org.searchisko.api.service.SearchConfigSnapshot;
+
+/**
+ * Cache of parsed search configuration used by {@link org.searchisko.api.service.SearchService}. Snapshot is flushed
+ * when {@link ConfigChangedEvent} is fired by {@link ConfigService} and transaction commits. TTL is used as a safety
+ * net only, to bound staleness when configuration is changed by other node of cluster.
+ *
+ * @author agent (agent at local)
+ */
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SearchConfigCache {
+
+	/**
+	 * Time to Live for cache [ms].
+	 */
+	protected long ttl = 5 * 60 * 1000;
+
+	private volatile CacheItem cacheItem;
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Get search configuration snapshot, create new one if necessary.
+	 *
+	 * @param configService used to load configuration documents into new snapshot
+	 * @param log used to log configuration warnings from new snapshot
+	 * @return search configuration snapshot, never null
+	 */
+	public SearchConfigSnapshot get(ConfigService configService, Logger log) {
+		CacheItem ci = cacheItem;
+		if (ci != null && ci.validTo > System.currentTimeMillis()) {
+			hitCount.incrementAndGet();
+			return ci.snapshot;
+		}
+		missCount.incrementAndGet();
+		// concurrent threads may create more snapshots, but sections are loaded lazily so it is cheap
+		ci = new CacheItem(new SearchConfigSnapshot(configService, log), System.currentTimeMillis() + ttl);
+		cacheItem = ci;
+		return ci.snapshot;
+	}
+
+	/**
+	 * Flush cache, so next {@link #get(ConfigService, Logger)} call creates new snapshot.
+	 */
+	public void flush() {
+		cacheItem = null;
+	}
+
+	/**
+	 * CDI Event handler for {@link ConfigChangedEvent} used to flush cache after configuration change is committed.
+	 *
+	 * @param event to process
+	 */
+	public void configChangedEventHandler(@Observes(during = TransactionPhase.AFTER_SUCCESS) ConfigChangedEvent event) {
+		flush();
+	}
+
+	/**
+	 * @param ttl Time to Live for cache [ms]
+	 */
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Get cache statistics.
+	 *
+	 * @return map with cache statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("size", cacheItem != null ? 1 : 0);
+		ret.put("hits", hitCount.get());
+		ret.put("misses", missCount.get());
+		return ret;
+	}
+
+	private static class CacheItem {
+		protected final SearchConfigSnapshot snapshot;
+		protected final long validTo;
+
+		protected CacheItem(SearchConfigSnapshot snapshot, long validTo) {
+			this.snapshot = snapshot;
+			this.validTo = validTo;
+		}
+	}
+
+}
@@ -0,0 +1,426 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ConfigChangedEvent;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.model.AppConfiguration;
+import org.searchisko.api.service.ProviderService;
+
+/**
+ * Cache of serialized search responses used by {@link org.searchisko.api.service.SearchService} for anonymous search
+ * requests. Cache is bounded by TTL and by memory budget (least recently used entries are evicted when budget is
+ * exceeded). It is disabled if TTL or memory budget is not configured.
+ * <p>
+ * Entries are invalidated when content is pushed or deleted. Entry for search restricted to one
+ * <code>sys_content_type</code> is invalidated only by change of content of this type, other entries are invalidated
+ * by change of content of any type. Invalidation is O(1) - entries are checked against invalidation stamps when read.
+ * <p>
+ * Time of last content change is tracked the same way (even if cache is disabled), so it can be used as cheap validator
+ * of search responses for conditional GET, see {@link #getLastChangeTime(String)}.
+ *
+ * @author agent (agent at local)
+ */
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SearchResultCache {
+
+	/**
+	 * Approximate memory overhead of one cache entry [bytes].
+	 */
+	protected static final int ENTRY_OVERHEAD = 128;
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected AppConfiguration appConfiguration;
+
+	@Inject
+	protected ProviderService providerService;
+
+	/**
+	 * Time to Live for cache [ms]. 0 means cache is disabled.
+	 */
+	protected long ttl = 0;
+
+	/**
+	 * Memory budget for cache [bytes]. 0 means cache is disabled.
+	 */
+	protected long maxMemory = 0;
+
+	private final ConcurrentMap<String, CacheItem> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * Logical clock used for invalidation stamps and LRU eviction.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	private volatile long flushedAt = 0;
+
+	private volatile long anyTypeInvalidatedAt = 0;
+
+	private final ConcurrentMap<String, Long> typeInvalidatedAt = new ConcurrentHashMap<>();
+
+	/**
+	 * Wall clock time [ms] of last content change or flush. Initialized to time of cache creation as changes performed
+	 * before it are unknown. Strictly increasing, so each change gets distinct time.
+	 */
+	private final AtomicLong lastChangeTime = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * Wall clock time [ms] of last change which may affect content of all types (flush, change of unknown type).
+	 */
+	private volatile long allTypesChangedAt = lastChangeTime.get();
+
+	private final ConcurrentMap<String, Long> typeChangedAt = new ConcurrentHashMap<>();
+
+	private final AtomicLong usedMemory = new AtomicLong();
+
+	private final AtomicBoolean evictionRunning = new AtomicBoolean();
+
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		if (appConfiguration != null) {
+			ttl = appConfiguration.getSearchResultCacheTtl() * 1000L;
+			maxMemory = appConfiguration.getSearchResultCacheMaxMemory() * 1024L * 1024L;
+		}
+		if (log != null)
+			log.log(Level.INFO, "Search result cache enabled: {0}", isEnabled());
+	}
+
+	/**
+	 * @return true if cache is enabled
+	 */
+	public boolean isEnabled() {
+		return ttl > 0 && maxMemory > 0;
+	}
+
+	/**
+	 * Get stamp which has to be obtained before search is performed and then passed to
+	 * {@link #put(String, String, long, byte[])}, so response is not cached if content is changed while search runs.
+	 *
+	 * @return stamp
+	 */
+	public long stamp() {
+		return clock.get();
+	}
+
+	/**
+	 * Get wall clock time of last change of content of given type. It is never lower than time when this cache was
+	 * created.
+	 * 
+	 * @param contentType <code>sys_content_type</code> to get time for, null for content of any type
+	 * @return time of last change [ms]
+	 */
+	public long getLastChangeTime(String contentType) {
+		if (contentType == null)
+			return lastChangeTime.get();
+		Long t = typeChangedAt.get(contentType);
+		return t != null ? Math.max(t, allTypesChangedAt) : allTypesChangedAt;
+	}
+
+	/**
+	 * Get serialized search response from cache.
+	 *
+	 * @param key of search
+	 * @return serialized response or null if not in cache
+	 */
+	public byte[] get(String key) {
+		CacheItem ci = cache.get(key);
+		if (ci != null) {
+			if (ci.validTo > System.currentTimeMillis() && isValid(ci.contentType, ci.stamp)) {
+				ci.lastAccess = clock.incrementAndGet();
+				hitCount.incrementAndGet();
+				return ci.data;
+			}
+			remove(key, ci);
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Put serialized search response into cache. Nothing is put if cache is disabled, if response is too large for
+	 * memory budget, or if content was changed after stamp was obtained.
+	 *
+	 * @param key of search
+	 * @param contentType <code>sys_content_type</code> search is restricted to, null if search is performed over more
+	 *          types
+	 * @param stamp obtained by {@link #stamp()} before search was performed
+	 * @param data serialized search response
+	 */
+	public void put(String key, String contentType, long stamp, byte[] data) {
+		if (!isEnabled() || data == null)
+			return;
+		long size = data.length + key.length() * 2 + ENTRY_OVERHEAD;
+		// do not fill whole cache by one large response
+		if (size > maxMemory / 10)
+			return;
+		if (!isValid(contentType, stamp))
+			return;
+		CacheItem ci = new CacheItem(data, contentType, stamp, size, System.currentTimeMillis() + ttl);
+		ci.lastAccess = clock.incrementAndGet();
+		CacheItem old = cache.put(key, ci);
+		usedMemory.addAndGet(size);
+		if (old != null)
+			usedMemory.addAndGet(-old.size);
+		if (usedMemory.get() > maxMemory) {
+			evict();
+		}
+	}
+
+	/**
+	 * Invalidate cached responses which may contain content of given type.
+	 *
+	 * @param contentType <code>sys_content_type</code> of changed content
+	 */
+	public void invalidate(String contentType) {
+		long t = clock.incrementAndGet();
+		if (contentType != null)
+			typeInvalidatedAt.put(contentType, t);
+		anyTypeInvalidatedAt = t;
+		invalidationCount.incrementAndGet();
+		long ct = nextChangeTime();
+		if (contentType != null)
+			typeChangedAt.put(contentType, ct);
+		else
+			allTypesChangedAt = ct;
+	}
+
+	/**
+	 * Flush cache.
+	 */
+	public void flush() {
+		flushedAt = clock.incrementAndGet();
+		cache.clear();
+		usedMemory.set(0);
+		allTypesChangedAt = nextChangeTime();
+	}
+
+	private long nextChangeTime() {
+		for (;;) {
+			long prev = lastChangeTime.get();
+			long t = Math.max(System.currentTimeMillis(), prev + 1);
+			if (lastChangeTime.compareAndSet(prev, t))
+				return t;
+		}
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentStoredEvent} used to invalidate cached responses and track time of last
+	 * change.
+	 *
+	 * @param event to process
+	 */
+	public void contentStoredEventHandler(@Observes ContentStoredEvent event) {
+		if (event == null)
+			return;
+		String type = null;
+		if (event.getContentData() != null) {
+			Object o = event.getContentData().get(ContentObjectFields.SYS_CONTENT_TYPE);
+			if (o != null)
+				type = o.toString();
+		}
+		if (type == null)
+			type = parseType(event.getContentId());
+		invalidate(type);
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentDeletedEvent} used to invalidate cached responses and track time of last
+	 * change.
+	 *
+	 * @param event to process
+	 */
+	public void contentDeletedEventHandler(@Observes ContentDeletedEvent event) {
+		if (event == null)
+			return;
+		invalidate(parseType(event.getContentId()));
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentBulkDeletedEvent} used to invalidate cached responses and track time of last
+	 * change.
+	 *
+	 * @param event to process
+	 */
+	public void contentBulkDeletedEventHandler(@Observes ContentBulkDeletedEvent event) {
+		if (event == null)
+			return;
+		invalidate(event.getSysContentType());
+	}
+
+	/**
+	 * CDI Event handler for {@link ConfigChangedEvent} used to flush whole cache after configuration change is
+	 * committed, as configuration affects results of all searches.
+	 *
+	 * @param event to process
+	 */
+	public void configChangedEventHandler(@Observes(during = TransactionPhase.AFTER_SUCCESS) ConfigChangedEvent event) {
+		flush();
+	}
+
+	/**
+	 * Remove expired entries from cache. Called periodically by container timer.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+	public void evictExpired() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, CacheItem> e : cache.entrySet()) {
+			CacheItem ci = e.getValue();
+			if (ci.validTo <= now || !isValid(ci.contentType, ci.stamp)) {
+				remove(e.getKey(), ci);
+			}
+		}
+	}
+
+	/**
+	 * Evict expired entries and then least recently used ones so memory used by cache is lowered under 90% of budget.
+	 * Only one thread performs eviction at a time, others do not wait for it.
+	 */
+	protected void evict() {
+		if (!evictionRunning.compareAndSet(false, true))
+			return;
+		try {
+			evictExpired();
+			long limit = maxMemory - maxMemory / 10;
+			if (usedMemory.get() <= limit)
+				return;
+			List<Map.Entry<String, CacheItem>> entries = new ArrayList<>(cache.entrySet());
+			Collections.sort(entries, new Comparator<Map.Entry<String, CacheItem>>() {
+				@Override
+				public int compare(Map.Entry<String, CacheItem> o1, Map.Entry<String, CacheItem> o2) {
+					long a1 = o1.getValue().lastAccess;
+					long a2 = o2.getValue().lastAccess;
+					return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+				}
+			});
+			for (int i = 0; i < entries.size() && usedMemory.get() > limit; i++) {
+				Map.Entry<String, CacheItem> e = entries.get(i);
+				if (remove(e.getKey(), e.getValue()))
+					evictionCount.incrementAndGet();
+			}
+		} finally {
+			evictionRunning.set(false);
+		}
+	}
+
+	private boolean remove(String key, CacheItem ci) {
+		if (cache.remove(key, ci)) {
+			usedMemory.addAndGet(-ci.size);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isValid(String contentType, long stamp) {
+		if (stamp < flushedAt)
+			return false;
+		if (contentType == null)
+			return stamp >= anyTypeInvalidatedAt;
+		Long t = typeInvalidatedAt.get(contentType);
+		return t == null || stamp >= t;
+	}
+
+	private String parseType(String sysId) {
+		try {
+			return providerService.parseTypeNameFromSysId(sysId);
+		} catch (IllegalArgumentException e) {
+			// invalidate all entries in this case
+			return null;
+		}
+	}
+
+	/**
+	 * @param ttl Time to Live for cache [ms]
+	 */
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @param maxMemory memory budget for cache [bytes]
+	 */
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+	}
+
+	/**
+	 * @return approximate memory used by cache now [bytes]
+	 */
+	public long getUsedMemory() {
+		return usedMemory.get();
+	}
+
+	/**
+	 * Get cache statistics.
+	 *
+	 * @return map with cache statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("enabled", isEnabled());
+		ret.put("size", cache.size());
+		ret.put("memory_used", usedMemory.get());
+		ret.put("memory_max", maxMemory);
+		ret.put("hits", hitCount.get());
+		ret.put("misses", missCount.get());
+		ret.put("evictions", evictionCount.get());
+		ret.put("invalidations", invalidationCount.get());
+		return ret;
+	}
+
+	private static class CacheItem {
+		protected final byte[] data;
+		protected final String contentType;
+		protected final long stamp;
+		protected final long size;
+		protected final long validTo;
+		protected volatile long lastAccess;
+
+		protected CacheItem(byte[] data, String contentType, long stamp, long size, long validTo) {
+			this.data = data;
+			this.contentType = contentType;
+			this.stamp = stamp;
+			this.size = size;
+			this.validTo = validTo;
+		}
+	}
+
+}
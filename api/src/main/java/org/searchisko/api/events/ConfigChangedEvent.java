@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.events;
+
+/**
+ * CDI Event emitted when configuration document is created, updated or deleted in Searchisko. Handlers caching data
+ * derived from configuration should observe it with {@link javax.enterprise.event.TransactionPhase#AFTER_SUCCESS} so
+ * cache is not repopulated from old configuration before change is committed.
+ *
+ * @author agent (agent at local)
+ */
+public class ConfigChangedEvent {
+
+	private String configId;
+
+	/**
+	 * Create event.
+	 *
+	 * @param configId identifier of changed configuration document, can be null if not known
+	 */
+	public ConfigChangedEvent(String configId) {
+		super();
+		this.configId = configId;
+	}
+
+	public String getConfigId() {
+		return configId;
+	}
+
+	@Override
+	public String toString() {
+		return "ConfigChangedEvent [configId=" + configId + "]";
+	}
+
+}
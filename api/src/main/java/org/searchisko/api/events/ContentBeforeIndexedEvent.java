@@ -5,7 +5,11 @@
  */
 package org.searchisko.api.events;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.searchisko.api.ContentObjectFields;
 
@@ -22,6 +26,8 @@ public class ContentBeforeIndexedEvent {
 
 	private Map<String, Object> contentData;
 
+	private BulkContext bulkContext;
+
 	/**
 	 * Create event.
 	 * 
@@ -34,6 +40,18 @@ public class ContentBeforeIndexedEvent {
 		this.contentData = contentData;
 	}
 
+	/**
+	 * Create event for content indexed in bulk.
+	 * 
+	 * @param contentId Searchisko wide unique identifier of content - from field {@link ContentObjectFields#SYS_ID}
+	 * @param contentData content data object
+	 * @param bulkContext context shared by all events fired for content from same bulk
+	 */
+	public ContentBeforeIndexedEvent(String contentId, Map<String, Object> contentData, BulkContext bulkContext) {
+		this(contentId, contentData);
+		this.bulkContext = bulkContext;
+	}
+
 	public String getContentId() {
 		return contentId;
 	}
@@ -42,9 +60,63 @@ public class ContentBeforeIndexedEvent {
 		return contentData;
 	}
 
+	/**
+	 * @return context shared by events fired for content from same bulk, null if content is not indexed in bulk.
+	 */
+	public BulkContext getBulkContext() {
+		return bulkContext;
+	}
+
 	@Override
 	public String toString() {
 		return "ContentBeforeIndexedEvent [contentId=" + contentId + ", contentData=" + contentData + "]";
 	}
 
+	/**
+	 * Context shared by all {@link ContentBeforeIndexedEvent}s fired for content indexed in one bulk. Event handlers
+	 * can use it to load data for whole bulk at once instead of loading them for each content separately.
+	 */
+	public static class BulkContext {
+
+		private Set<String> contentIds;
+
+		private Map<String, Object> data = new HashMap<String, Object>();
+
+		/**
+		 * @param contentIds Searchisko wide unique identifiers of all content indexed in bulk
+		 */
+		public BulkContext(Collection<String> contentIds) {
+			this.contentIds = new LinkedHashSet<String>(contentIds);
+		}
+
+		public Set<String> getContentIds() {
+			return contentIds;
+		}
+
+		/**
+		 * Get data stored into context by some event handler.
+		 * 
+		 * @param key data are stored under
+		 * @return data or null if not stored yet
+		 */
+		public Object getData(String key) {
+			return data.get(key);
+		}
+
+		/**
+		 * Store data into context so they can be used for next content from bulk.
+		 * 
+		 * @param key to store data under
+		 * @param value data to store
+		 */
+		public void putData(String key, Object value) {
+			data.put(key, value);
+		}
+
+		@Override
+		public String toString() {
+			return "BulkContext [contentIds=" + contentIds + "]";
+		}
+	}
+
 }
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.events;
+
+import java.util.List;
+
+import org.searchisko.api.ContentObjectFields;
+
+/**
+ * CDI Event emitted when more Content objects of one <code>sys_content_type</code> are deleted from Searchisko at once.
+ * It is emitted instead of {@link ContentDeletedEvent} for each of them, so handlers can process them in batch.
+ *
+ * @author agent (agent at local)
+ */
+public class ContentBulkDeletedEvent {
+
+	private String sysContentType;
+
+	private List<String> contentIds;
+
+	/**
+	 * Create event.
+	 *
+	 * @param sysContentType <code>sys_content_type</code> of all deleted content objects
+	 * @param contentIds Searchisko wide unique identifiers of deleted content - from field
+	 *          {@link ContentObjectFields#SYS_ID}
+	 */
+	public ContentBulkDeletedEvent(String sysContentType, List<String> contentIds) {
+		super();
+		this.sysContentType = sysContentType;
+		this.contentIds = contentIds;
+	}
+
+	public String getSysContentType() {
+		return sysContentType;
+	}
+
+	public List<String> getContentIds() {
+		return contentIds;
+	}
+
+	@Override
+	public String toString() {
+		return "ContentBulkDeletedEvent [sysContentType=" + sysContentType + ", contentIds=" + contentIds + "]";
+	}
+
+}
@@ -43,6 +43,46 @@ public class AppConfiguration implements Serializable {
 	 */
 	private ContributorProfileProviderConfig contributorProfileProviderConfig;
 
+	/**
+	 * Time to Live for search result cache (in seconds), 0 disables cache
+	 */
+	private int searchResultCacheTtl;
+
+	/**
+	 * Memory budget for search result cache (in MB), 0 disables cache
+	 */
+	private int searchResultCacheMaxMemory;
+
+	/**
+	 * Conditional GET (ETag, Last-Modified, 304 Not Modified) enabled for anonymous search and feed requests
+	 */
+	private boolean searchHttpConditional;
+
+	/**
+	 * Value of Cache-Control header sent with anonymous search and feed responses, null means header is not sent
+	 */
+	private String searchHttpCacheControl;
+
+	/**
+	 * Memory budget for rendered feed entry cache (in MB), 0 disables cache
+	 */
+	private int feedEntryCacheMaxMemory;
+
+	/**
+	 * Asynchronous content push (write-behind over persistent journal) enabled
+	 */
+	private boolean contentPushAsync;
+
+	/**
+	 * How long status of asynchronously pushed content is kept after it is processed (in hours)
+	 */
+	private int contentPushAsyncRetention = 24;
+
+	/**
+	 * Number of documents read from content persistence store in one page when whole sys_content_type is listed
+	 */
+	private int contentPersistenceListPageSize = 1000;
+
 	public AppConfiguration(String appDataPath) {
 		this.appDataPath = appDataPath;
 	}
@@ -87,6 +127,70 @@ public class AppConfiguration implements Serializable {
 		this.contributorProfileProviderConfig = contributorProfileProviderConfig;
 	}
 
+	public int getSearchResultCacheTtl() {
+		return searchResultCacheTtl;
+	}
+
+	public void setSearchResultCacheTtl(int searchResultCacheTtl) {
+		this.searchResultCacheTtl = searchResultCacheTtl;
+	}
+
+	public int getSearchResultCacheMaxMemory() {
+		return searchResultCacheMaxMemory;
+	}
+
+	public void setSearchResultCacheMaxMemory(int searchResultCacheMaxMemory) {
+		this.searchResultCacheMaxMemory = searchResultCacheMaxMemory;
+	}
+
+	public boolean isSearchHttpConditional() {
+		return searchHttpConditional;
+	}
+
+	public void setSearchHttpConditional(boolean searchHttpConditional) {
+		this.searchHttpConditional = searchHttpConditional;
+	}
+
+	public String getSearchHttpCacheControl() {
+		return searchHttpCacheControl;
+	}
+
+	public void setSearchHttpCacheControl(String searchHttpCacheControl) {
+		this.searchHttpCacheControl = searchHttpCacheControl;
+	}
+
+	public int getFeedEntryCacheMaxMemory() {
+		return feedEntryCacheMaxMemory;
+	}
+
+	public void setFeedEntryCacheMaxMemory(int feedEntryCacheMaxMemory) {
+		this.feedEntryCacheMaxMemory = feedEntryCacheMaxMemory;
+	}
+
+	public boolean isContentPushAsync() {
+		return contentPushAsync;
+	}
+
+	public void setContentPushAsync(boolean contentPushAsync) {
+		this.contentPushAsync = contentPushAsync;
+	}
+
+	public int getContentPushAsyncRetention() {
+		return contentPushAsyncRetention;
+	}
+
+	public void setContentPushAsyncRetention(int contentPushAsyncRetention) {
+		this.contentPushAsyncRetention = contentPushAsyncRetention;
+	}
+
+	public int getContentPersistenceListPageSize() {
+		return contentPersistenceListPageSize;
+	}
+
+	public void setContentPersistenceListPageSize(int contentPersistenceListPageSize) {
+		this.contentPersistenceListPageSize = contentPersistenceListPageSize;
+	}
+
 	public static class ContributorProfileProviderConfig {
 		protected String urlbase;
 		protected String username;
@@ -144,6 +248,14 @@ public class AppConfiguration implements Serializable {
 				", providerCreateInitData=" + providerCreateInitData +
 				", contributorProfileUpdateThreshold=" + contributorProfileUpdateThreshold +
 				", contributorProfileProviderConfig=" + contributorProfileProviderConfig +
+				", searchResultCacheTtl=" + searchResultCacheTtl +
+				", searchResultCacheMaxMemory=" + searchResultCacheMaxMemory +
+				", searchHttpConditional=" + searchHttpConditional +
+				", searchHttpCacheControl='" + searchHttpCacheControl + '\'' +
+				", feedEntryCacheMaxMemory=" + feedEntryCacheMaxMemory +
+				", contentPushAsync=" + contentPushAsync +
+				", contentPushAsyncRetention=" + contentPushAsyncRetention +
+				", contentPersistenceListPageSize=" + contentPersistenceListPageSize +
 				'}';
 	}
 }
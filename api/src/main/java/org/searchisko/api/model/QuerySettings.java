@@ -88,12 +88,32 @@ public class QuerySettings {
 
 		public static final String SIZE_KEY = "size";
 
+		/**
+		 * Results Paging - cursor pointing after the last hit of previous page, used instead of {@link #from}
+		 */
+		private SearchCursor cursor = null;
+
+		/**
+		 * Results Paging - true if cursor pagination is requested, either by {@link #cursor} or by
+		 * {@link #CURSOR_FIRST_VALUE} for the first page. Only then hits are sorted deterministically and cursor for
+		 * next page is returned.
+		 */
+		private boolean cursorPaging = false;
+
+		public static final String CURSOR_KEY = "cursor";
+
+		/**
+		 * Value of {@link #CURSOR_KEY} request parameter used to request the first page of cursor pagination.
+		 */
+		public static final String CURSOR_FIRST_VALUE = "first";
+
 		@Override
 		public String toString() {
 			return "Filters [contentType=" + contentType + ", sysTypes=" + sysTypes + ", sysContentProvider="
 					+ sysContentProvider + ", projects=" + projects + ", tags=" + tags + ", contributors=" + contributors
 					+ ", activityDateInterval=" + activityDateInterval + ", activityDateFrom=" + activityDateFrom
-					+ ", activityDateTo=" + activityDateTo + ", from=" + from + ", size=" + size + "]";
+					+ ", activityDateTo=" + activityDateTo + ", from=" + from + ", size=" + size + ", cursor=" + cursor
+					+ ", cursorPaging=" + cursorPaging + "]";
 		}
 
 		public Long getActivityDateFrom() {
@@ -142,6 +162,25 @@ public class QuerySettings {
 			this.size = size;
 		}
 
+		public SearchCursor getCursor() {
+			return cursor;
+		}
+
+		public void setCursor(SearchCursor cursor) {
+			this.cursor = cursor;
+		}
+
+		/**
+		 * @return true if cursor pagination is requested, so also if {@link #getCursor()} is defined
+		 */
+		public boolean isCursorPaging() {
+			return cursorPaging || cursor != null;
+		}
+
+		public void setCursorPaging(boolean cursorPaging) {
+			this.cursorPaging = cursorPaging;
+		}
+
 		public List<String> getTags() {
 			return tags;
 		}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.model;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.elasticsearch.common.Base64;
+
+/**
+ * Cursor used for search result pagination instead of <code>from</code> offset. It contains sort values of the last hit
+ * from previous page, so next page can be obtained by filter, which is much cheaper for Elasticsearch than deep
+ * <code>from</code> offset. Cursor is passed to the client in opaque string form, see {@link #encode()} and
+ * {@link #decode(String)}.
+ *
+ * @author agent (agent at local)
+ * @see QuerySettings.Filters#getCursor()
+ */
+public class SearchCursor {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String VERSION = "1";
+
+	private static final char SEPARATOR = '|';
+
+	private final SortByValue sortBy;
+
+	private final Long sortValue;
+
+	private final String uid;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sortBy sorting the cursor is valid for, can't be null
+	 * @param sortValue value of sort field of the last hit, null if the last hit has no value in sort field
+	 * @param uid <code>_uid</code> of the last hit, can't be null
+	 */
+	public SearchCursor(SortByValue sortBy, Long sortValue, String uid) {
+		if (sortBy == null)
+			throw new IllegalArgumentException("sortBy must be defined");
+		if (uid == null)
+			throw new IllegalArgumentException("uid must be defined");
+		this.sortBy = sortBy;
+		this.sortValue = sortValue;
+		this.uid = uid;
+	}
+
+	/**
+	 * Encode cursor into opaque string which is URL safe.
+	 *
+	 * @return encoded cursor
+	 */
+	public String encode() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(VERSION).append(SEPARATOR).append(sortBy.toString()).append(SEPARATOR);
+		if (sortValue != null)
+			sb.append(sortValue);
+		sb.append(SEPARATOR).append(uid);
+		try {
+			return Base64.encodeBytes(sb.toString().getBytes(UTF8), Base64.URL_SAFE);
+		} catch (IOException e) {
+			// never happens without compression
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Decode cursor from string created by {@link #encode()}.
+	 *
+	 * @param value to decode
+	 * @return cursor
+	 * @throws IllegalArgumentException if value is not valid cursor. Message contains request parameter name.
+	 */
+	public static SearchCursor decode(String value) throws IllegalArgumentException {
+		try {
+			String s = new String(Base64.decode(value, Base64.URL_SAFE), UTF8);
+			String[] parts = s.split("\\|", 4);
+			if (parts.length != 4 || !VERSION.equals(parts[0]) || parts[3].isEmpty())
+				throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+			SortByValue sortBy = SortByValue.parseRequestParameterValue(parts[1]);
+			Long sortValue = parts[2].isEmpty() ? null : Long.valueOf(parts[2]);
+			return new SearchCursor(sortBy, sortValue, parts[3]);
+		} catch (IOException | RuntimeException e) {
+			throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+		}
+	}
+
+	/**
+	 * @return sorting the cursor is valid for
+	 */
+	public SortByValue getSortBy() {
+		return sortBy;
+	}
+
+	/**
+	 * @return value of sort field of the last hit, null if the last hit has no value in sort field
+	 */
+	public Long getSortValue() {
+		return sortValue;
+	}
+
+	/**
+	 * @return <code>_uid</code> of the last hit
+	 */
+	public String getUid() {
+		return uid;
+	}
+
+	@Override
+	public String toString() {
+		return "SearchCursor [sortBy=" + sortBy + ", sortValue=" + sortValue + ", uid=" + uid + "]";
+	}
+
+}
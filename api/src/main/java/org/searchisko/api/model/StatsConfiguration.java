@@ -33,6 +33,50 @@ public class StatsConfiguration {
 
 	protected boolean useSearchCluster;
 
+	/**
+	 * Policy applied when statistics records buffer is full.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * Record being written is dropped.
+		 */
+		DROP_NEWEST,
+		/**
+		 * Oldest buffered record is dropped to make room for record being written.
+		 */
+		DROP_OLDEST;
+
+		/**
+		 * Parse policy from configuration value, case insensitive.
+		 *
+		 * @param value to parse
+		 * @return policy, {@link #DROP_NEWEST} if value is empty
+		 * @throws IllegalArgumentException if value is not valid
+		 */
+		public static OverflowPolicy parse(String value) {
+			if (SearchUtils.trimToNull(value) == null)
+				return DROP_NEWEST;
+			return valueOf(value.trim().toUpperCase());
+		}
+	}
+
+	/**
+	 * Max number of statistics records waiting in buffer to be written.
+	 */
+	protected int bufferSize = 10000;
+
+	/**
+	 * Max number of statistics records written in one bulk request.
+	 */
+	protected int bulkSize = 100;
+
+	/**
+	 * Max time [ms] statistics record waits in buffer before it is written.
+	 */
+	protected long flushInterval = 1000;
+
+	protected OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
 	/**
 	 * Default constructor.
 	 */
@@ -69,11 +113,47 @@ public class StatsConfiguration {
 		return useSearchCluster;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	public int getBulkSize() {
+		return bulkSize;
+	}
+
+	public void setBulkSize(int bulkSize) {
+		this.bulkSize = bulkSize;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
 	@PostConstruct
 	public void init() throws IOException {
 		Properties prop = SearchUtils.loadProperties("/stats_client_configuration.properties");
 		enabled = Boolean.parseBoolean(prop.getProperty("stats.enabled", "true"));
 		useSearchCluster = Boolean.parseBoolean(prop.getProperty("stats.useSearchCluster", "true"));
+		bufferSize = Integer.parseInt(prop.getProperty("stats.buffer.size", "10000").trim());
+		bulkSize = Integer.parseInt(prop.getProperty("stats.bulk.size", "100").trim());
+		flushInterval = Long.parseLong(prop.getProperty("stats.bulk.flushInterval", "1000").trim());
+		overflowPolicy = OverflowPolicy.parse(prop.getProperty("stats.buffer.overflowPolicy"));
 	}
 
 }
@@ -5,7 +5,9 @@
  */
 package org.searchisko.api.reindexer;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import javax.enterprise.event.Event;
@@ -19,6 +21,7 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.jboss.elasticsearch.tools.content.InvalidDataException;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBeforeIndexedEvent.BulkContext;
 import org.searchisko.api.service.ProviderService;
 import org.searchisko.api.service.SearchClientService;
 import org.searchisko.api.tasker.Task;
@@ -77,6 +80,11 @@ public class ReindexFromPersistenceTask extends Task {
 				Client client = searchClientService.getClient();
 				while (lr.hasContent()) {
 					BulkRequestBuilder brb = client.prepareBulk();
+					List<String> ids = new ArrayList<String>(lr.content().size());
+					for (Map<String, Object> content : lr.content()) {
+						ids.add((String) content.get(ContentObjectFields.SYS_ID));
+					}
+					BulkContext bulkContext = new BulkContext(ids);
 					for (Map<String, Object> content : lr.content()) {
 						if (isCanceledOrInterrupted())
 							return;
@@ -91,7 +99,7 @@ public class ReindexFromPersistenceTask extends Task {
 							continue;
 						}
 
-						eventBeforeIndexed.fire(new ContentBeforeIndexedEvent(id, content));
+						eventBeforeIndexed.fire(new ContentBeforeIndexedEvent(id, content, bulkContext));
 
 						// Push to search subsystem
 						brb.add(client.prepareIndex(indexName, indexType, id).setSource(content));
@@ -24,6 +24,7 @@ import org.searchisko.api.service.ContributorProfileService;
 import org.searchisko.api.service.ContributorService;
 import org.searchisko.api.service.ProjectService;
 import org.searchisko.api.service.ProviderService;
+import org.searchisko.api.service.QuerySuggestionService;
 import org.searchisko.api.service.SearchClientService;
 import org.searchisko.api.tasker.Task;
 import org.searchisko.api.tasker.TaskConfigurationException;
@@ -65,6 +66,9 @@ public class ReindexingTaskFactory implements TaskFactory {
 	@Inject
 	protected ContributorProfileService contributorProfileService;
 
+	@Inject
+	protected QuerySuggestionService querySuggestionService;
+
 	@Override
 	public List<String> listSupportedTaskTypes() {
 		List<String> ret = new ArrayList<String>();
@@ -94,6 +98,8 @@ public class ReindexingTaskFactory implements TaskFactory {
 					ProjectService.SEARCH_INDEX_TYPE, CFG_PROJECT_ID_TYPE, CFG_PROJECT_ID_VALUE);
 		case UPDATE_CONTRIBUTOR_PROFILE:
 			return new UpdateContributorProfileTask(contributorProfileService, taskConfig);
+		case UPDATE_QUERY_SUGGESTIONS:
+			return new UpdateQuerySuggestionsTask(querySuggestionService, taskConfig);
 		}
 		throw new UnsupportedTaskException(taskType);
 	}
@@ -13,7 +13,7 @@ import org.searchisko.api.tasker.UnsupportedTaskException;
  * @author Vlastimil Elias (velias at redhat dot com)
  */
 public enum ReindexingTaskTypes {
-	REINDEX_FROM_PERSISTENCE, RENORMALIZE_BY_CONTENT_TYPE, RENORMALIZE_BY_PROJECT_CODE, RENORMALIZE_BY_CONTRIBUTOR_CODE, RENORMALIZE_BY_CONTRIBUTOR_LOOKUP_ID, RENORMALIZE_BY_PROJECT_LOOKUP_ID, UPDATE_CONTRIBUTOR_PROFILE;
+	REINDEX_FROM_PERSISTENCE, RENORMALIZE_BY_CONTENT_TYPE, RENORMALIZE_BY_PROJECT_CODE, RENORMALIZE_BY_CONTRIBUTOR_CODE, RENORMALIZE_BY_CONTRIBUTOR_LOOKUP_ID, RENORMALIZE_BY_PROJECT_LOOKUP_ID, UPDATE_CONTRIBUTOR_PROFILE, UPDATE_QUERY_SUGGESTIONS;
 
 	/**
 	 * @return task type identifier for this type
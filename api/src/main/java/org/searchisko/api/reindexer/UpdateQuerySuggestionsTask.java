@@ -0,0 +1,40 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.reindexer;
+
+import java.util.Map;
+
+import org.searchisko.api.service.QuerySuggestionService;
+import org.searchisko.api.tasker.Task;
+
+/**
+ * Task used to update query string completions from search statistics records.
+ * 
+ * @author agent (agent at local)
+ * @see QuerySuggestionService#update(boolean)
+ */
+public class UpdateQuerySuggestionsTask extends Task {
+
+	public static final String CFG_FULL_REBUILD = "full_rebuild";
+
+	protected QuerySuggestionService querySuggestionService;
+	protected boolean fullRebuild = false;
+
+	public UpdateQuerySuggestionsTask(QuerySuggestionService querySuggestionService, Map<String, Object> taskConfig) {
+		super();
+		this.querySuggestionService = querySuggestionService;
+		if (taskConfig != null && taskConfig.get(CFG_FULL_REBUILD) != null) {
+			this.fullRebuild = Boolean.parseBoolean(taskConfig.get(CFG_FULL_REBUILD).toString().trim());
+		}
+	}
+
+	@Override
+	public void performTask() throws Exception {
+		int i = querySuggestionService.update(fullRebuild);
+		writeTaskLog(i + " search statistics records processed, " + querySuggestionService.getStats().get("queries")
+				+ " queries available for completion.");
+	}
+}
@@ -5,8 +5,11 @@
  */
 package org.searchisko.api.rest;
 
-import java.util.Date;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -27,6 +30,11 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
 
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexResponse;
@@ -39,14 +47,21 @@ import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.annotations.security.GuestAllowed;
 import org.searchisko.api.annotations.security.ProviderAllowed;
 import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
 import org.searchisko.api.events.ContentDeletedEvent;
 import org.searchisko.api.events.ContentStoredEvent;
 import org.searchisko.api.rest.exception.BadFieldException;
 import org.searchisko.api.rest.exception.RequiredFieldException;
 import org.searchisko.api.rest.security.AuthenticationUtilService;
+import org.searchisko.api.service.ContentPushQueueService;
+import org.searchisko.api.service.ContentPushService;
+import org.searchisko.api.service.ContentTypeDescriptor;
 import org.searchisko.api.service.ProviderService;
 import org.searchisko.api.service.SearchClientService;
+import org.searchisko.api.service.WorkerPoolService;
+import org.searchisko.api.util.SearchUtils;
 import org.searchisko.persistence.service.ContentPersistenceService;
+import org.searchisko.persistence.service.ContentPushJournalService;
 
 /**
  * REST API for Content related operations.
@@ -85,6 +100,18 @@ public class ContentRestService extends RestServiceBase {
 	@Inject
 	protected Event<ContentBeforeIndexedEvent> eventBeforeIndexed;
 
+	@Inject
+	protected ContentPushService contentPushService;
+
+	@Inject
+	protected ContentPushQueueService contentPushQueueService;
+
+	protected static final String RESPONSE_RECEIPT_ID = "receipt_id";
+
+	protected static final String REQUEST_FILTER = "filter";
+
+	private static final ObjectMapper BULK_JSON_MAPPER = new ObjectMapper();
+
 	@GET
 	@Path("/")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -95,13 +122,13 @@ public class ContentRestService extends RestServiceBase {
 			// return createRequiredFieldResponse("type");
 		}
 		try {
-			Map<String, Object> typeDef = providerService.findContentType(type);
-			if (typeDef == null) {
+			ContentTypeDescriptor ctd = providerService.findContentTypeDescriptor(type);
+			if (ctd == null) {
 				throw new BadFieldException("type");
 			}
 
-			String indexName = ProviderService.extractIndexName(typeDef, type);
-			String indexType = ProviderService.extractIndexType(typeDef, type);
+			String indexName = ctd.getIndexName();
+			String indexType = ctd.getIndexType();
 
 			SearchRequestBuilder srb = new SearchRequestBuilder(searchClientService.getClient());
 			srb.setIndices(indexName);
@@ -145,15 +172,15 @@ public class ContentRestService extends RestServiceBase {
 			throw new RequiredFieldException("type");
 		}
 		try {
-			Map<String, Object> typeDef = providerService.findContentType(type);
-			if (typeDef == null) {
+			ContentTypeDescriptor ctd = providerService.findContentTypeDescriptor(type);
+			if (ctd == null) {
 				throw new BadFieldException("type");
 			}
 
 			String sysContentId = providerService.generateSysId(type, contentId);
 
-			String indexName = ProviderService.extractIndexName(typeDef, type);
-			String indexType = ProviderService.extractIndexType(typeDef, type);
+			String indexName = ctd.getIndexName();
+			String indexType = ctd.getIndexType();
 
 			GetResponse getResponse = searchClientService.getClient().prepareGet(indexName, indexType, sysContentId)
 					.execute().actionGet();
@@ -162,7 +189,7 @@ public class ContentRestService extends RestServiceBase {
 				return Response.status(Response.Status.NOT_FOUND).build();
 			}
 
-			return createResponse(getResponse);
+			return createRawSourceResponse(getResponse);
 		} catch (IndexMissingException e) {
 			return Response.status(Response.Status.NOT_FOUND).build();
 		}
@@ -172,13 +199,22 @@ public class ContentRestService extends RestServiceBase {
 	 * Store new content into Searchisko.
 	 * 
 	 * This method fires {@link ContentStoredEvent}.
+	 * 
+	 * If <code>async</code> parameter is <code>true</code> then content is only stored into persistent journal and
+	 * <code>202 Accepted</code> response with <code>receipt_id</code> is returned. Content is processed later by
+	 * {@link ContentPushQueueService}, and processing status can be read using
+	 * {@link #getPushReceipt(String, String)}.
+	 * 
+	 * If content is same as content already indexed (fingerprint computed by
+	 * {@link ContentPushService#computeFingerprint(Map, Map)} is same) then it is not processed again and
+	 * <code>unchanged</code> status is returned, unless <code>force</code> parameter is <code>true</code>.
 	 */
 	@POST
 	@Path("/{contentId}")
 	@Consumes(MediaType.APPLICATION_JSON)
 	@ProviderAllowed
 	public Object pushContent(@PathParam("type") String type, @PathParam("contentId") String contentId,
-			Map<String, Object> content) {
+			@QueryParam("async") String async, @QueryParam("force") String force, Map<String, Object> content) {
 
 		// validation
 		if (contentId == null || contentId.isEmpty()) {
@@ -204,35 +240,29 @@ public class ContentRestService extends RestServiceBase {
 		String indexName = ProviderService.extractIndexName(typeDef, type);
 		String indexType = ProviderService.extractIndexType(typeDef, type);
 
-		// fill some normalized fields - should be last step to avoid changing them via preprocessors
-		content.put(ContentObjectFields.SYS_CONTENT_PROVIDER,
-				authenticationUtilService.getAuthenticatedProvider(securityContext));
-		content.put(ContentObjectFields.SYS_CONTENT_ID, contentId);
-		content.put(ContentObjectFields.SYS_CONTENT_TYPE, type);
-		content.put(ContentObjectFields.SYS_ID, sysContentId);
-		content.put(ContentObjectFields.SYS_TYPE, ProviderService.extractSysType(typeDef, type));
-		content.put(ContentObjectFields.SYS_UPDATED, new Date());
-		// Copy distinct data from content to normalized fields
-		content.put(ContentObjectFields.SYS_TAGS, content.get(ContentObjectFields.TAGS));
-
-		// Fill type of content from configuration
-		if (content.containsKey(ContentObjectFields.SYS_CONTENT)) {
-			content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
-					ProviderService.extractSysContentContentType(typeDef, type));
-		} else {
-			content.remove(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE);
+		if (Boolean.parseBoolean(async)) {
+			if (!contentPushQueueService.isEnabled()) {
+				return Response.status(Status.BAD_REQUEST).entity("Asynchronous content push is not enabled").build();
+			}
+			String receiptId = contentPushQueueService.enqueue(
+					authenticationUtilService.getAuthenticatedProvider(securityContext), type, contentId, content,
+					Boolean.parseBoolean(force));
+			Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+			retJson.put(ContentPushService.RESPONSE_STATUS, ContentPushJournalService.STATUS_QUEUED);
+			retJson.put(ContentPushService.RESPONSE_MESSAGE, "Content was accepted for processing.");
+			retJson.put(RESPONSE_RECEIPT_ID, receiptId);
+			return Response.status(Status.ACCEPTED).entity(retJson).build();
 		}
 
-		// Run preprocessors to manipulate other fields
-		providerService.runPreprocessors(type, ProviderService.extractPreprocessors(typeDef, type), content);
-
-		// Refill type of content from configuration if content was added in preprocessors
-		if (content.containsKey(ContentObjectFields.SYS_CONTENT)
-				&& !content.containsKey(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE)) {
-			content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
-					ProviderService.extractSysContentContentType(typeDef, type));
+		String fingerprint = ContentPushService.computeFingerprint(typeDef, content);
+		if (!Boolean.parseBoolean(force)
+				&& contentPushService.isUnchanged(indexName, indexType, sysContentId, fingerprint)) {
+			return Response.ok(ContentPushService.createUnchangedStatus()).build();
 		}
 
+		contentPushService.normalizeContent(authenticationUtilService.getAuthenticatedProvider(securityContext), type,
+				typeDef, contentId, sysContentId, fingerprint, content);
+
 		if (ProviderService.extractPersist(typeDef)) {
 			contentPersistenceService.store(sysContentId, type, content);
 		}
@@ -249,14 +279,162 @@ public class ContentRestService extends RestServiceBase {
 		log.log(Level.FINE, "Going to fire event {0}", event);
 		eventContentStored.fire(event);
 
-		Map<String, String> retJson = new LinkedHashMap<String, String>();
-		if (ir.getVersion() > 1) {
-			retJson.put("status", "update");
-			retJson.put("message", "Content was updated successfully.");
-		} else {
-			retJson.put("status", "insert");
-			retJson.put("message", "Content was inserted successfully.");
+		return Response.ok(ContentPushService.createPushStatus(ir.getVersion())).build();
+	}
+
+	/**
+	 * Apply partial update to content stored in Searchisko already. Request body contains only changed fields which
+	 * are merged into stored content as JSON merge patch, <code>null</code> value removes field. Only preprocessors
+	 * which use changed fields are run, see {@link ContentPushService#patchContent(String, Map, String, Map)}.
+	 * 
+	 * This method fires {@link ContentStoredEvent}.
+	 */
+	@PATCH
+	@Path("/{contentId}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@ProviderAllowed
+	public Object patchContent(@PathParam("type") String type, @PathParam("contentId") String contentId,
+			Map<String, Object> content) {
+
+		// validation
+		if (contentId == null || contentId.isEmpty()) {
+			throw new RequiredFieldException("contentId");
+		}
+		if (type == null || type.isEmpty()) {
+			throw new RequiredFieldException("type");
+		}
+		if (content == null || content.isEmpty()) {
+			return Response.status(Status.BAD_REQUEST).entity("Some content for patching must be defined").build();
+		}
+
+		Map<String, Object> provider = providerService.findProvider(authenticationUtilService
+				.getAuthenticatedProvider(securityContext));
+		Map<String, Object> typeDef = ProviderService.extractContentType(provider, type);
+		if (typeDef == null) {
+			throw new BadFieldException("type");
+		}
+
+		Map<String, Object> ret = contentPushService.patchContent(type, typeDef,
+				providerService.generateSysId(type, contentId), content);
+		if (ret == null) {
+			return Response.status(Status.NOT_FOUND).entity("Content not found.").build();
+		}
+		return Response.ok(ret).build();
+	}
+
+	/**
+	 * Get processing status of content pushed asynchronously over
+	 * {@link #pushContent(String, String, String, String, Map)}.
+	 * Status is available only to the provider who pushed content.
+	 * 
+	 * @return status structure with <code>status</code> field, which is <code>queued</code> or <code>processing</code>
+	 *         until content is processed, then same status as for synchronous push is used (<code>insert</code>,
+	 *         <code>update</code> or <code>error</code>).
+	 */
+	@GET
+	@Path("/_receipt/{receiptId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ProviderAllowed
+	public Object getPushReceipt(@PathParam("type") String type, @PathParam("receiptId") String receiptId) {
+
+		// validation
+		if (receiptId == null || receiptId.isEmpty()) {
+			throw new RequiredFieldException("receiptId");
+		}
+		if (type == null || type.isEmpty()) {
+			throw new RequiredFieldException("type");
+		}
+
+		ContentPushJournalService.Entry entry = contentPushQueueService.getReceipt(receiptId);
+		if (entry == null || !type.equals(entry.getSysContentType())
+				|| !entry.getProviderName().equals(authenticationUtilService.getAuthenticatedProvider(securityContext))) {
+			return Response.status(Status.NOT_FOUND).entity("Receipt not found.").build();
+		}
+
+		Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+		retJson.put(RESPONSE_RECEIPT_ID, entry.getReceiptId());
+		retJson.put(ContentObjectFields.SYS_CONTENT_ID, entry.getContentId());
+		retJson.put(ContentPushService.RESPONSE_STATUS, entry.getStatus());
+		if (entry.getMessage() != null)
+			retJson.put(ContentPushService.RESPONSE_MESSAGE, entry.getMessage());
+		retJson.put("created", entry.getCreated());
+		retJson.put("updated", entry.getUpdated());
+		return retJson;
+	}
+
+	/**
+	 * Store more content objects of one type into Searchisko in one request. Request body must contain JSON array of
+	 * content objects, each of them must contain <code>sys_content_id</code> field with identifier of content. Array is
+	 * read in streaming mode and processed in chunks by {@link ContentPushService}, normalization and preprocessors are
+	 * run in {@link WorkerPoolService} and documents are sent to the search index using bulk requests.
+	 * 
+	 * This method fires {@link ContentStoredEvent} for each successfully stored content object. Unchanged content
+	 * objects are skipped unless <code>force</code> parameter is <code>true</code>, same as for
+	 * {@link #pushContent(String, String, String, String, Map)}.
+	 * 
+	 * @return response with <code>items</code> array containing status for each pushed content object in same order as
+	 *         in request. Status structure is same as for {@link #pushContent(String, String, String, String, Map)}
+	 *         with additional <code>sys_content_id</code> field, and <code>error</code> status is used for content
+	 *         objects which failed.
+	 */
+	@POST
+	@Path("/_bulk")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@ProviderAllowed
+	public Object pushContentBulk(@PathParam("type") String type, @QueryParam("force") String force,
+			InputStream contentStream) {
+
+		// validation
+		if (type == null || type.isEmpty()) {
+			throw new RequiredFieldException("type");
+		}
+		if (contentStream == null) {
+			return Response.status(Status.BAD_REQUEST).entity("Some content for pushing must be defined").build();
+		}
+
+		String providerName = authenticationUtilService.getAuthenticatedProvider(securityContext);
+		Map<String, Object> provider = providerService.findProvider(providerName);
+		Map<String, Object> typeDef = ProviderService.extractContentType(provider, type);
+		if (typeDef == null) {
+			throw new BadFieldException("type");
+		}
+
+		// check search subsystem configuration
+		ProviderService.extractIndexName(typeDef, type);
+		ProviderService.extractIndexType(typeDef, type);
+
+		boolean forcePush = Boolean.parseBoolean(force);
+		List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+		try {
+			JsonParser jp = BULK_JSON_MAPPER.getJsonFactory().createJsonParser(contentStream);
+			if (jp.nextToken() != JsonToken.START_ARRAY) {
+				return Response.status(Status.BAD_REQUEST).entity("JSON array with content objects expected").build();
+			}
+			List<Map<String, Object>> chunk = new ArrayList<Map<String, Object>>();
+			JsonToken token;
+			while ((token = jp.nextToken()) == JsonToken.START_OBJECT) {
+				Map<String, Object> content = BULK_JSON_MAPPER.readValue(jp, new TypeReference<Map<String, Object>>() {
+				});
+				chunk.add(content);
+				if (chunk.size() >= contentPushService.getBulkMaxActions()) {
+					contentPushService.pushContentBulkChunk(providerName, type, typeDef, chunk, forcePush, items);
+					chunk = new ArrayList<Map<String, Object>>();
+				}
+			}
+			if (token != JsonToken.END_ARRAY) {
+				return Response.status(Status.BAD_REQUEST).entity("JSON array may contain content objects only").build();
+			}
+			if (!chunk.isEmpty()) {
+				contentPushService.pushContentBulkChunk(providerName, type, typeDef, chunk, forcePush, items);
+			}
+		} catch (JsonProcessingException e) {
+			return Response.status(Status.BAD_REQUEST).entity("Invalid JSON content: " + e.getMessage()).build();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
+
+		Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+		retJson.put("items", items);
 		return Response.ok(retJson).build();
 	}
 
@@ -308,4 +486,93 @@ public class ContentRestService extends RestServiceBase {
 			return Response.ok("Content deleted successfully.").build();
 		}
 	}
+
+	/**
+	 * Delete more content objects of one type from Searchisko in one request. Request body contains JSON object with
+	 * either <code>sys_content_id</code> array of content identifiers, or <code>filter</code> object selecting content
+	 * to be deleted (see {@link ContentPushService#deleteContentByFilter(String, Map, Map)}). Content objects are
+	 * deleted in chunks using batch persistence deletes and search index bulk requests.
+	 * 
+	 * This method fires one {@link ContentBulkDeletedEvent} for each chunk of deleted content objects.
+	 */
+	@POST
+	@Path("/_bulk_delete")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@ProviderAllowed
+	public Object deleteContentBulk(@PathParam("type") String type, Map<String, Object> request) {
+
+		// validation
+		if (type == null || type.isEmpty()) {
+			throw new RequiredFieldException("type");
+		}
+		Object ids = request != null ? request.get(ContentObjectFields.SYS_CONTENT_ID) : null;
+		Object filter = request != null ? request.get(REQUEST_FILTER) : null;
+		if ((ids == null) == (filter == null)) {
+			return Response.status(Status.BAD_REQUEST)
+					.entity("Either '" + ContentObjectFields.SYS_CONTENT_ID + "' or '" + REQUEST_FILTER
+							+ "' must be defined").build();
+		}
+		if (ids != null && !(ids instanceof List)) {
+			return Response.status(Status.BAD_REQUEST)
+					.entity("'" + ContentObjectFields.SYS_CONTENT_ID + "' must be JSON array").build();
+		}
+		if (filter != null && !(filter instanceof Map)) {
+			return Response.status(Status.BAD_REQUEST).entity("'" + REQUEST_FILTER + "' must be JSON object").build();
+		}
+
+		Map<String, Object> provider = providerService.findProvider(authenticationUtilService
+				.getAuthenticatedProvider(securityContext));
+		Map<String, Object> typeDef = ProviderService.extractContentType(provider, type);
+		if (typeDef == null) {
+			throw new BadFieldException("type");
+		}
+
+		Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+		if (filter != null) {
+			try {
+				@SuppressWarnings("unchecked")
+				long deleted = contentPushService.deleteContentByFilter(type, typeDef, (Map<String, Object>) filter);
+				retJson.put("deleted", deleted);
+			} catch (IllegalArgumentException e) {
+				return Response.status(Status.BAD_REQUEST).entity(e.getMessage()).build();
+			}
+		} else {
+			List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+			List<String> contentIds = new ArrayList<String>();
+			List<String> sysContentIds = new ArrayList<String>();
+			for (Object id : (List<?>) ids) {
+				String contentId = id != null ? SearchUtils.trimToNull(id.toString()) : null;
+				if (contentId == null) {
+					return Response.status(Status.BAD_REQUEST)
+							.entity("'" + ContentObjectFields.SYS_CONTENT_ID + "' must contain non empty values only")
+							.build();
+				}
+				contentIds.add(contentId);
+				sysContentIds.add(providerService.generateSysId(type, contentId));
+				if (sysContentIds.size() >= contentPushService.getBulkMaxActions()) {
+					deleteContentBulkChunk(type, typeDef, contentIds, sysContentIds, items);
+					contentIds = new ArrayList<String>();
+					sysContentIds = new ArrayList<String>();
+				}
+			}
+			if (!sysContentIds.isEmpty()) {
+				deleteContentBulkChunk(type, typeDef, contentIds, sysContentIds, items);
+			}
+			retJson.put("items", items);
+		}
+		return Response.ok(retJson).build();
+	}
+
+	private void deleteContentBulkChunk(String type, Map<String, Object> typeDef, List<String> contentIds,
+			List<String> sysContentIds, List<Map<String, Object>> items) {
+		Map<String, Map<String, Object>> statuses = contentPushService.deleteContentBulkChunk(type, typeDef,
+				sysContentIds);
+		for (int i = 0; i < contentIds.size(); i++) {
+			Map<String, Object> status = new LinkedHashMap<String, Object>();
+			status.put(ContentObjectFields.SYS_CONTENT_ID, contentIds.get(i));
+			status.putAll(statuses.get(sysContentIds.get(i)));
+			items.add(status);
+		}
+	}
 }
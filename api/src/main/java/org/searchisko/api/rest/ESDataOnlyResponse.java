@@ -13,8 +13,11 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.search.SearchHit;
 
 /**
@@ -35,6 +38,10 @@ import org.elasticsearch.search.SearchHit;
  * }
  * </pre>
  *
+ * Document source is not deserialized into maps, but copied from Elasticsearch response bytes directly into output (or
+ * by streaming parser if some fields have to be removed), see {@link #writeSourceField(XContentBuilder, String,
+ * BytesReference, String[])}.
+ *
  * @author Libor Krzyzanek
  * @author Vlastimil Elias (velias at redhat dot com)
  *
@@ -114,13 +121,13 @@ public class ESDataOnlyResponse implements StreamingOutput {
 			SearchHit[] hits = response.getHits().getHits();
 			for (int i = 0; i < hits.length; i++) {
 				builder.startObject();
-				Map<String, Object> src = hits[i].sourceAsMap();
+				BytesReference src = hits[i].sourceRef();
 				if (idField == null) {
 					builder.field("id", hits[i].getId());
 				} else {
-					builder.field("id", src.get(idField));
+					builder.field("id", readSourceField(src, idField));
 				}
-				builder.field("data", ESDataOnlyResponse.removeFields(src, fieldsToRemove));
+				writeSourceField(builder, "data", src, fieldsToRemove);
 				builder.endObject();
 			}
 		} else {
@@ -132,6 +139,90 @@ public class ESDataOnlyResponse implements StreamingOutput {
 		builder.close();
 	}
 
+	/**
+	 * Write document source into builder as named field. Source bytes are copied directly if there is nothing to remove,
+	 * otherwise they are copied by streaming parser which skips removed top level fields, so no intermediate maps are
+	 * created in any case.
+	 *
+	 * @param builder to write field into
+	 * @param fieldName name of field to write source into
+	 * @param source bytes of document source (can be null, null field is written then)
+	 * @param fieldsToRemove names of top level source fields to remove (can be null)
+	 * @throws IOException
+	 */
+	public static void writeSourceField(XContentBuilder builder, String fieldName, BytesReference source,
+			String[] fieldsToRemove) throws IOException {
+		if (source == null) {
+			builder.nullField(fieldName);
+			return;
+		}
+
+		if (fieldsToRemove == null || fieldsToRemove.length == 0) {
+			builder.rawField(fieldName, source);
+			return;
+		}
+
+		XContentParser parser = XContentHelper.createParser(source);
+		try {
+			builder.field(fieldName);
+			builder.startObject();
+			if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+				while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+					if (isFieldToRemove(parser.currentName(), fieldsToRemove)) {
+						parser.nextToken();
+						parser.skipChildren();
+					} else {
+						builder.copyCurrentStructure(parser);
+					}
+				}
+			}
+			builder.endObject();
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Read value of top level field from document source by streaming parser, without deserialization of whole source.
+	 *
+	 * @param source bytes of document source (can be null)
+	 * @param fieldName name of top level field to read
+	 * @return value of field, null if source is null, field is not found or it's value is not simple value
+	 * @throws IOException
+	 */
+	public static Object readSourceField(BytesReference source, String fieldName) throws IOException {
+		if (source == null) {
+			return null;
+		}
+
+		XContentParser parser = XContentHelper.createParser(source);
+		try {
+			if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+				return null;
+			}
+			while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+				String name = parser.currentName();
+				XContentParser.Token token = parser.nextToken();
+				if (fieldName.equals(name)) {
+					return token.isValue() ? parser.objectText() : null;
+				}
+				parser.skipChildren();
+			}
+			return null;
+		} finally {
+			parser.close();
+		}
+	}
+
+	private static boolean isFieldToRemove(String fieldName, String[] fieldsToRemove) {
+		for (String f : fieldsToRemove) {
+			if (f.equals(fieldName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Remove named fields from data map.
 	 *
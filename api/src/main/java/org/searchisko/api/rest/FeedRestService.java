@@ -5,8 +5,12 @@
  */
 package org.searchisko.api.rest;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -16,24 +20,26 @@ import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.indices.IndexMissingException;
 import org.elasticsearch.search.SearchHit;
-import org.jboss.resteasy.plugins.providers.atom.Category;
-import org.jboss.resteasy.plugins.providers.atom.Content;
-import org.jboss.resteasy.plugins.providers.atom.Entry;
-import org.jboss.resteasy.plugins.providers.atom.Feed;
-import org.jboss.resteasy.plugins.providers.atom.Generator;
-import org.jboss.resteasy.plugins.providers.atom.Link;
-import org.jboss.resteasy.plugins.providers.atom.Person;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.annotations.security.GuestAllowed;
+import org.searchisko.api.cache.FeedEntryCache;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.model.QuerySettings.Filters;
 import org.searchisko.api.model.SortByValue;
@@ -42,6 +48,7 @@ import org.searchisko.api.service.ContributorService;
 import org.searchisko.api.service.SearchService;
 import org.searchisko.api.service.StatsRecordType;
 import org.searchisko.api.service.SystemInfoService;
+import org.searchisko.api.util.AtomWriter;
 import org.searchisko.api.util.QuerySettingsParser;
 import org.searchisko.api.util.SearchUtils;
 
@@ -62,14 +69,9 @@ public class FeedRestService extends RestServiceBase {
 
 	protected static final String REQPARAM_FEED_TITLE = "feed_title";
 
-	private static URI TAG_SCHEME_URI = null;
-	static {
-		try {
-			TAG_SCHEME_URI = new URI("searchisko:content:tags");
-		} catch (URISyntaxException e) {
-			// OK
-		}
-	}
+	private static final String TAG_SCHEME = "searchisko:content:tags";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	@Inject
 	protected SearchService searchService;
@@ -77,32 +79,87 @@ public class FeedRestService extends RestServiceBase {
 	@Inject
 	protected QuerySettingsParser querySettingsParser;
 
+	@Inject
+	protected FeedEntryCache feedEntryCache;
+
+	@Context
+	protected SecurityContext securityContext;
+
+	/**
+	 * Get feed. Request is processed asynchronously so no container thread is blocked while search is performed in
+	 * Elasticsearch.
+	 * <p>
+	 * Anonymous requests support conditional GET if enabled in configuration. Feed readers poll feeds often, so
+	 * <code>304 Not Modified</code> response is returned without performing the search if client's copy of the feed is
+	 * still valid. Validators are derived from time of last change of matching content.
+	 */
 	@GET
 	@Path("/")
 	@Produces(MediaType.APPLICATION_ATOM_XML)
 	@GuestAllowed
-	public Object feed(@Context UriInfo uriInfo) throws URISyntaxException {
+	public void feed(@Context final UriInfo uriInfo,
+			@Suspend(ASYNC_RESPONSE_TIMEOUT) final AsynchronousResponse asyncResponse) {
 
-		QuerySettings querySettings = null;
 		try {
-
 			if (uriInfo == null) {
 				throw new BadFieldException("uriInfo");
 			}
 			MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
-			querySettings = querySettingsParser.parseUriParams(params);
+			final QuerySettings querySettings = querySettingsParser.parseUriParams(params);
 
 			patchQuerySettings(querySettings);
 
 			String responseUuid = UUID.randomUUID().toString();
-
-			SearchResponse searchResponse = searchService.performSearch(querySettings, responseUuid, StatsRecordType.FEED);
-
-			return createAtomResponse(querySettings, searchResponse, uriInfo);
+			// request context is not available in Elasticsearch threads, so read everything we need from it here
+			final boolean resultCacheAllowed = isResultCacheAllowed();
+			EntityTag eTag = null;
+			Date lastModified = null;
+			if (resultCacheAllowed && isConditionalGetEnabled()) {
+				Long lastChangeTime = searchService.getLastContentChangeTime(querySettings);
+				if (lastChangeTime != null) {
+					eTag = createEntityTag(uriInfo.getRequestUri().toString(), lastChangeTime);
+					lastModified = createLastModified(lastChangeTime);
+					ResponseBuilder notModified = evaluatePreconditions(readConditionalRequest(), eTag, lastModified);
+					if (notModified != null) {
+						resume(asyncResponse, setCacheHeaders(notModified, eTag, lastModified).build());
+						return;
+					}
+				}
+			}
+			final EntityTag responseETag = eTag;
+			final Date responseLastModified = lastModified;
+
+			searchService.performSearchAsync(querySettings, responseUuid, StatsRecordType.FEED, resultCacheAllowed,
+					new ActionListener<SearchResponse>() {
+
+						@Override
+						public void onResponse(SearchResponse searchResponse) {
+							try {
+								ResponseBuilder rb = Response.ok(createAtomResponse(querySettings, searchResponse, uriInfo),
+										MediaType.APPLICATION_ATOM_XML_TYPE);
+								if (resultCacheAllowed)
+									setCacheHeaders(rb, responseETag, responseLastModified);
+								resume(asyncResponse, rb.build());
+							} catch (Exception e) {
+								onFailure(e);
+							}
+						}
+
+						@Override
+						public void onFailure(Throwable e) {
+							if (e instanceof IndexMissingException) {
+								resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+							} else {
+								resumeWithError(asyncResponse, e);
+							}
+						}
+					});
 		} catch (IllegalArgumentException e) {
-			throw new BadFieldException("unknown", e);
+			resumeWithError(asyncResponse, new BadFieldException("unknown", e));
 		} catch (IndexMissingException e) {
-			return Response.status(Response.Status.NOT_FOUND).build();
+			resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+		} catch (Exception e) {
+			resumeWithError(asyncResponse, e);
 		}
 	}
 
@@ -125,6 +182,7 @@ public class FeedRestService extends RestServiceBase {
 		querySettings.addField(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE);
 		querySettings.addField(ContentObjectFields.SYS_TAGS);
 		querySettings.addField(ContentObjectFields.SYS_CONTRIBUTORS);
+		querySettings.addField(ContentObjectFields.SYS_UPDATED);
 
 		if (querySettings.getSortBy() != SortByValue.NEW_CREATION) {
 			querySettings.setSortBy(SortByValue.NEW);
@@ -137,74 +195,131 @@ public class FeedRestService extends RestServiceBase {
 		filters.setActivityDateInterval(null);
 	}
 
-	protected Feed createAtomResponse(final QuerySettings querySettings, final SearchResponse searchResponse,
-			final UriInfo uriInfo) throws URISyntaxException {
-		Feed feed = new Feed();
-		feed.setId(uriInfo.getRequestUri());
+	/**
+	 * Create streaming Atom feed response. Feed is written directly into output when response is sent, without building
+	 * any object model. Rendered entries are reused from {@link FeedEntryCache} where possible.
+	 * 
+	 * @param querySettings used for search
+	 * @param searchResponse to create feed from
+	 * @param uriInfo of feed request
+	 * @return streaming output with feed
+	 */
+	protected StreamingOutput createAtomResponse(final QuerySettings querySettings, final SearchResponse searchResponse,
+			final UriInfo uriInfo) {
+		final String id = uriInfo.getRequestUri().toString();
 		String title = SearchUtils.trimToNull(uriInfo.getQueryParameters().getFirst(REQPARAM_FEED_TITLE));
 		if (title == null)
 			title = constructFeedTitle(querySettings);
-		feed.setTitle(title);
-		Generator generator = new Generator();
-		generator.setText("Searchisko");
-		generator.setVersion(systemInfoService.getVersion());
-		feed.setGenerator(generator);
-		feed.setUpdated(new Date());
-		if (searchResponse.getHits().getHits() != null) {
-			for (SearchHit hit : searchResponse.getHits().getHits()) {
-				Entry entry = new Entry();
-				entry.setId(new URI("searchisko:content:id:" + hit.getId()));
-				entry.setPublished(getHitDateFieldValue(hit, ContentObjectFields.SYS_CREATED));
-				entry.setUpdated(getHitDateFieldValue(hit, ContentObjectFields.SYS_LAST_ACTIVITY_DATE));
-				entry.setTitle(getHitStringFieldValue(hit, ContentObjectFields.SYS_TITLE));
-				String url = getHitStringFieldValue(hit, ContentObjectFields.SYS_URL_VIEW);
-				if (url != null)
-					entry.getLinks().add(new Link(null, url));
-				String contentValue = getHitStringFieldValue(hit, ContentObjectFields.SYS_CONTENT);
-				String descriptionValue = getHitStringFieldValue(hit, ContentObjectFields.SYS_DESCRIPTION);
-				if (contentValue != null) {
-					Content content = new Content();
-					try {
-						content.setType(MediaType.valueOf(getHitStringFieldValue(hit, ContentObjectFields.SYS_CONTENT_TYPE)));
-					} catch (IllegalArgumentException e) {
-						content.setType(MediaType.TEXT_PLAIN_TYPE);
+		final String feedTitle = title;
+		final String version = systemInfoService.getVersion();
+		final Date updated = new Date();
+		String nextCursor = SearchService.prepareNextCursor(querySettings, searchResponse);
+		final String nextLink = nextCursor != null ? uriInfo.getRequestUriBuilder()
+				.replaceQueryParam(Filters.CURSOR_KEY, nextCursor).replaceQueryParam(Filters.FROM_KEY).build().toString()
+				: null;
+		final SearchHit[] hits = searchResponse.getHits().getHits();
+
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				Writer writer = new OutputStreamWriter(output, UTF8);
+				AtomWriter aw = new AtomWriter(writer);
+				aw.startFeed().element("title", feedTitle).element("id", id).dateElement("updated", updated)
+						.generator("Searchisko", version);
+				if (nextLink != null)
+					aw.link("next", nextLink);
+				writer.flush();
+				if (hits != null) {
+					for (SearchHit hit : hits) {
+						output.write(getEntry(hit));
 					}
-					content.setText(contentValue);
-					entry.setContent(content);
-					if (descriptionValue != null)
-						entry.setSummary(descriptionValue);
-				} else if (descriptionValue != null) {
-					Content content = new Content();
-					content.setType(MediaType.TEXT_PLAIN_TYPE);
-					content.setText(descriptionValue);
-					entry.setContent(content);
 				}
+				aw.endFeed();
+				writer.flush();
+			}
+		};
+	}
 
-				List<Object> contributors = getHitListFieldValue(hit, ContentObjectFields.SYS_CONTRIBUTORS);
-				if (contributors != null) {
-					for (Object contributor : contributors) {
-						Person p = new Person(ContributorService.extractContributorName(contributor.toString()));
-						entry.getAuthors().add(p);
-					}
-				}
-				// ATOM spec requires at least one author
-				if (entry.getAuthors().isEmpty()) {
-					entry.getAuthors().add(new Person("unknown"));
-				}
+	/**
+	 * Get rendered Atom entry for search hit. Entry is taken from {@link FeedEntryCache} if it is there for the same
+	 * <code>sys_updated</code> value, or rendered and put into cache.
+	 * 
+	 * @param hit to get entry for
+	 * @return UTF-8 encoded <code>entry</code> element
+	 * @throws IOException
+	 */
+	protected byte[] getEntry(SearchHit hit) throws IOException {
+		String sysUpdated = null;
+		if (feedEntryCache != null && feedEntryCache.isEnabled()) {
+			sysUpdated = getHitStringFieldValue(hit, ContentObjectFields.SYS_UPDATED);
+			if (sysUpdated != null) {
+				byte[] entry = feedEntryCache.get(hit.getId(), sysUpdated);
+				if (entry != null)
+					return entry;
+			}
+		}
+		byte[] entry = renderEntry(hit);
+		if (sysUpdated != null)
+			feedEntryCache.put(hit.getId(), sysUpdated, entry);
+		return entry;
+	}
 
-				List<Object> tags = getHitListFieldValue(hit, ContentObjectFields.SYS_TAGS);
-				if (tags != null) {
-					for (Object tag : tags) {
-						Category c = new Category();
-						c.setTerm(tag.toString());
-						c.setScheme(TAG_SCHEME_URI);
-						entry.getCategories().add(c);
-					}
-				}
-				feed.getEntries().add(entry);
+	/**
+	 * Render Atom entry for search hit.
+	 * 
+	 * @param hit to render entry for
+	 * @return UTF-8 encoded <code>entry</code> element
+	 * @throws IOException
+	 */
+	protected byte[] renderEntry(SearchHit hit) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		Writer writer = new OutputStreamWriter(out, UTF8);
+		AtomWriter aw = new AtomWriter(writer);
+		aw.startEntry();
+		aw.element("id", "searchisko:content:id:" + hit.getId());
+		aw.element("title", getHitStringFieldValue(hit, ContentObjectFields.SYS_TITLE));
+		aw.dateElement("published", getHitDateFieldValue(hit, ContentObjectFields.SYS_CREATED));
+		aw.dateElement("updated", getHitDateFieldValue(hit, ContentObjectFields.SYS_LAST_ACTIVITY_DATE));
+		String url = getHitStringFieldValue(hit, ContentObjectFields.SYS_URL_VIEW);
+		if (url != null)
+			aw.link(null, url);
+		String contentValue = getHitStringFieldValue(hit, ContentObjectFields.SYS_CONTENT);
+		String descriptionValue = getHitStringFieldValue(hit, ContentObjectFields.SYS_DESCRIPTION);
+		if (contentValue != null) {
+			MediaType contentType;
+			try {
+				contentType = MediaType.valueOf(getHitStringFieldValue(hit, ContentObjectFields.SYS_CONTENT_TYPE));
+			} catch (IllegalArgumentException e) {
+				contentType = MediaType.TEXT_PLAIN_TYPE;
 			}
+			aw.element("summary", descriptionValue);
+			aw.content(contentType, contentValue);
+		} else if (descriptionValue != null) {
+			aw.content(MediaType.TEXT_PLAIN_TYPE, descriptionValue);
 		}
-		return feed;
+
+		boolean authorWritten = false;
+		List<Object> contributors = getHitListFieldValue(hit, ContentObjectFields.SYS_CONTRIBUTORS);
+		if (contributors != null) {
+			for (Object contributor : contributors) {
+				aw.person("author", ContributorService.extractContributorName(contributor.toString()));
+				authorWritten = true;
+			}
+		}
+		// ATOM spec requires at least one author
+		if (!authorWritten) {
+			aw.person("author", "unknown");
+		}
+
+		List<Object> tags = getHitListFieldValue(hit, ContentObjectFields.SYS_TAGS);
+		if (tags != null) {
+			for (Object tag : tags) {
+				aw.category(tag.toString(), TAG_SCHEME);
+			}
+		}
+		aw.endEntry();
+		writer.flush();
+		return out.toByteArray();
 	}
 
 	protected String constructFeedTitle(QuerySettings querySettings) {
@@ -277,4 +392,14 @@ public class FeedRestService extends RestServiceBase {
 		return null;
 	}
 
+	/**
+	 * Search response may be served from cache only for anonymous requests, as response for authenticated user may
+	 * depend on the user.
+	 * 
+	 * @return true if search result cache can be used for this request
+	 */
+	protected boolean isResultCacheAllowed() {
+		return securityContext == null || securityContext.getUserPrincipal() == null;
+	}
+
 }
@@ -32,6 +32,7 @@ import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.annotations.security.ContributorAllowed;
 import org.searchisko.api.rest.exception.RequiredFieldException;
 import org.searchisko.api.rest.security.AuthenticationUtilService;
+import org.searchisko.api.service.ContentTypeDescriptor;
 import org.searchisko.api.service.ProviderService;
 import org.searchisko.api.service.SearchClientService;
 import org.searchisko.api.service.SearchIndexMissingException;
@@ -188,14 +189,14 @@ public class RatingRestService extends RestServiceBase {
 			return Response.status(Response.Status.BAD_REQUEST).entity(QUERY_PARAM_ID + " format is invalid").build();
 		}
 
-		Map<String, Object> typeDef = providerService.findContentType(type);
-		if (typeDef == null) {
+		ContentTypeDescriptor ctd = providerService.findContentTypeDescriptor(type);
+		if (ctd == null) {
 			log.fine("unknown type for content with sys_id=" + contentSysId);
 			return Response.status(Response.Status.NOT_FOUND).entity("content type is unknown").build();
 		}
 
-		String indexName = ProviderService.extractIndexName(typeDef, type);
-		String indexType = ProviderService.extractIndexType(typeDef, type);
+		String indexName = ctd.getIndexName();
+		String indexType = ctd.getIndexType();
 
 		try {
 			GetResponse getResponse = searchClientService.performGet(indexName, indexType, contentSysId);
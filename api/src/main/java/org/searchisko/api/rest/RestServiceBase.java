@@ -7,20 +7,37 @@ package org.searchisko.api.rest;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.inject.Inject;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ExceptionMapper;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.searchisko.api.model.AppConfiguration;
 
 /**
  * Base for REST endpoint services.
@@ -32,9 +49,217 @@ import org.elasticsearch.common.xcontent.XContentFactory;
  */
 public class RestServiceBase {
 
+	/**
+	 * Timeout [ms] for suspended asynchronous responses.
+	 */
+	protected static final long ASYNC_RESPONSE_TIMEOUT = 60000;
+
 	@Inject
 	protected Logger log;
 
+	@Inject
+	protected AppConfiguration appConfiguration;
+
+	@Context
+	protected HttpHeaders httpHeaders;
+
+	/**
+	 * Resume suspended asynchronous request with response. Response should have content type set, as it is not
+	 * negotiated for asynchronous responses.
+	 * 
+	 * @param asyncResponse to resume
+	 * @param response to send
+	 */
+	protected void resume(AsynchronousResponse asyncResponse, Response response) {
+		asyncResponse.setResponse(response);
+	}
+
+	/**
+	 * Resume suspended asynchronous request with error response. Exception is converted to response using registered
+	 * {@link ExceptionMapper} the same way as if it is thrown from synchronous resource method.
+	 * 
+	 * @param asyncResponse to resume
+	 * @param e exception to send response for
+	 */
+	protected void resumeWithError(AsynchronousResponse asyncResponse, Throwable e) {
+		asyncResponse.setResponse(createErrorResponse(e));
+	}
+
+	/**
+	 * Create error response for exception using registered {@link ExceptionMapper}.
+	 * 
+	 * @param e exception to create response for
+	 * @return response, with 500 status if no exception mapper is found
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected Response createErrorResponse(Throwable e) {
+		if (e instanceof WebApplicationException && ((WebApplicationException) e).getResponse() != null) {
+			return ((WebApplicationException) e).getResponse();
+		}
+		ResteasyProviderFactory pf = ResteasyProviderFactory.getInstance();
+		for (Class<?> c = e.getClass(); c != null && pf != null; c = c.getSuperclass()) {
+			ExceptionMapper mapper = pf.getExceptionMapper((Class<Throwable>) c);
+			if (mapper != null) {
+				return mapper.toResponse(e);
+			}
+		}
+		log.log(Level.SEVERE, "Error processing request: " + e.getMessage(), e);
+		return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
+	}
+
+	/**
+	 * Check if conditional GET (<code>ETag</code> and <code>Last-Modified</code> validators, <code>304 Not Modified</code>
+	 * response) is enabled for search responses.
+	 * 
+	 * @return true if enabled
+	 * @see AppConfiguration#isSearchHttpConditional()
+	 */
+	protected boolean isConditionalGetEnabled() {
+		return appConfiguration != null && appConfiguration.isSearchHttpConditional() && httpHeaders != null;
+	}
+
+	/**
+	 * Create entity tag for search response. Tag is derived from time of last change of content which may be contained
+	 * in response, so it is known before search is performed. Tag is weak as response body differs in generated parts
+	 * (eg. uuid) even if search result is the same.
+	 * 
+	 * @param requestKey identifying requested search response, eg. request URI
+	 * @param lastChangeTime time of last change of content which may be contained in response [ms]
+	 * @return entity tag
+	 * @see org.searchisko.api.service.SearchService#getLastContentChangeTime(org.searchisko.api.model.QuerySettings)
+	 */
+	protected static EntityTag createEntityTag(String requestKey, long lastChangeTime) {
+		return new EntityTag(DigestUtils.md5Hex(requestKey + "|" + lastChangeTime), true);
+	}
+
+	/**
+	 * Create last modification date for search response.
+	 * 
+	 * @param lastChangeTime time of last change of content which may be contained in response [ms]
+	 * @return last modification date truncated to seconds (as it is precision of HTTP date)
+	 */
+	protected static Date createLastModified(long lastChangeTime) {
+		return new Date(lastChangeTime / 1000 * 1000);
+	}
+
+	/**
+	 * Read validators of client's cached copy of response from conditional GET request headers. It must be called from
+	 * container thread, as request context is not available in Elasticsearch threads where search responses are
+	 * processed.
+	 * 
+	 * @return validators from request, null if request is not conditional
+	 */
+	protected ConditionalRequest readConditionalRequest() {
+		if (httpHeaders == null)
+			return null;
+		List<String> ifNoneMatch = httpHeaders.getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null && ifNoneMatch.isEmpty())
+			ifNoneMatch = null;
+		Date ifModifiedSince = null;
+		List<String> ims = httpHeaders.getRequestHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		if (ims != null && !ims.isEmpty())
+			ifModifiedSince = parseHttpDate(ims.get(0));
+		if (ifNoneMatch == null && ifModifiedSince == null)
+			return null;
+		return new ConditionalRequest(ifNoneMatch, ifModifiedSince);
+	}
+
+	private static Date parseHttpDate(String value) {
+		if (value == null)
+			return null;
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			return format.parse(value.trim());
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+	/**
+	 * Evaluate conditional GET request headers against validators of current response. If
+	 * <code>If-None-Match</code> header is present then only entity tag is evaluated (as required by RFC 2616). Weak
+	 * comparison is used for entity tags.
+	 * 
+	 * @param conditionalRequest validators from request, see {@link #readConditionalRequest()}. Can be null.
+	 * @param eTag entity tag of current response
+	 * @param lastModified last modification date of current response, can be null
+	 * @return builder of <code>304 Not Modified</code> response if client copy is still valid, null if full response
+	 *         has to be sent
+	 */
+	protected static ResponseBuilder evaluatePreconditions(ConditionalRequest conditionalRequest, EntityTag eTag,
+			Date lastModified) {
+		if (conditionalRequest == null)
+			return null;
+		if (conditionalRequest.getIfNoneMatch() != null) {
+			for (String header : conditionalRequest.getIfNoneMatch()) {
+				for (String tag : header.split(",")) {
+					tag = tag.trim();
+					if (tag.startsWith("W/"))
+						tag = tag.substring(2);
+					if (tag.length() > 1 && tag.startsWith("\"") && tag.endsWith("\""))
+						tag = tag.substring(1, tag.length() - 1);
+					if ("*".equals(tag) || tag.equals(eTag.getValue()))
+						return Response.notModified(eTag);
+				}
+			}
+			return null;
+		}
+		if (conditionalRequest.getIfModifiedSince() != null && lastModified != null
+				&& !lastModified.after(conditionalRequest.getIfModifiedSince())) {
+			return Response.notModified();
+		}
+		return null;
+	}
+
+	/**
+	 * Validators of client's cached copy of response, read from conditional GET request headers.
+	 */
+	protected static class ConditionalRequest {
+
+		private final List<String> ifNoneMatch;
+
+		private final Date ifModifiedSince;
+
+		/**
+		 * @param ifNoneMatch values of <code>If-None-Match</code> header, null if not present
+		 * @param ifModifiedSince value of <code>If-Modified-Since</code> header, null if not present
+		 */
+		protected ConditionalRequest(List<String> ifNoneMatch, Date ifModifiedSince) {
+			this.ifNoneMatch = ifNoneMatch;
+			this.ifModifiedSince = ifModifiedSince;
+		}
+
+		public List<String> getIfNoneMatch() {
+			return ifNoneMatch;
+		}
+
+		public Date getIfModifiedSince() {
+			return ifModifiedSince;
+		}
+	}
+
+	/**
+	 * Set caching related headers of search response. <code>Cache-Control</code> header is set only if configured.
+	 * 
+	 * @param rb response builder to set headers into
+	 * @param eTag entity tag of response, can be null
+	 * @param lastModified last modification date of response, can be null
+	 * @return response builder
+	 * @see AppConfiguration#getSearchHttpCacheControl()
+	 */
+	protected ResponseBuilder setCacheHeaders(ResponseBuilder rb, EntityTag eTag, Date lastModified) {
+		if (eTag != null)
+			rb.tag(eTag);
+		if (lastModified != null)
+			rb.lastModified(lastModified);
+		if (appConfiguration != null && appConfiguration.getSearchHttpCacheControl() != null)
+			rb.header(HttpHeaders.CACHE_CONTROL, appConfiguration.getSearchHttpCacheControl());
+		return rb;
+	}
+
 	/**
 	 * Create JAX-RS response based on elastic get response.
 	 * 
@@ -46,6 +271,22 @@ public class RestServiceBase {
 		return response.getSource();
 	}
 
+	/**
+	 * Create JAX-RS response with document source from elastic search get response. Source bytes are copied into output
+	 * directly, without deserialization.
+	 * 
+	 * @param response elastic search get response
+	 * @return JAX-RS response
+	 */
+	public StreamingOutput createRawSourceResponse(final GetResponse response) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				response.getSourceAsBytesRef().writeTo(output);
+			}
+		};
+	}
+
 	/**
 	 * Create response structure with id field only.
 	 * 
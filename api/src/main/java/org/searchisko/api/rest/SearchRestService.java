@@ -5,11 +5,18 @@
  */
 package org.searchisko.api.rest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
@@ -17,15 +24,30 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.jboss.resteasy.annotations.Suspend;
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.searchisko.api.annotations.security.GuestAllowed;
+import org.searchisko.api.annotations.security.ProviderAllowed;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.rest.exception.BadFieldException;
 import org.searchisko.api.rest.exception.RequiredFieldException;
@@ -53,26 +75,265 @@ public class SearchRestService extends RestServiceBase {
 	@Inject
 	protected QuerySettingsParser querySettingsParser;
 
+	@Context
+	protected SecurityContext securityContext;
+
+	/**
+	 * Perform search. Request is processed asynchronously so no container thread is blocked while search is performed
+	 * in Elasticsearch.
+	 * <p>
+	 * Anonymous requests support conditional GET if enabled in configuration. Validators are derived from time of last
+	 * change of matching content, so <code>304 Not Modified</code> response is returned without performing the search
+	 * if client's copy is still valid.
+	 */
 	@GET
 	@Path("/")
 	@Produces(MediaType.APPLICATION_JSON)
 	@GuestAllowed
-	public Object search(@Context UriInfo uriInfo) {
+	public void search(@Context UriInfo uriInfo,
+			@Suspend(ASYNC_RESPONSE_TIMEOUT) final AsynchronousResponse asyncResponse) {
 
-		QuerySettings querySettings = null;
 		try {
-
 			if (uriInfo == null) {
 				throw new BadFieldException("uriInfo");
 			}
 			MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
-			querySettings = querySettingsParser.parseUriParams(params);
-			String responseUuid = UUID.randomUUID().toString();
+			final QuerySettings querySettings = querySettingsParser.parseUriParams(params);
+			final String responseUuid = UUID.randomUUID().toString();
+			// request context is not available in Elasticsearch threads, so read everything we need from it here
+			final boolean resultCacheAllowed = isResultCacheAllowed();
+			EntityTag eTag = null;
+			Date lastModified = null;
+			if (resultCacheAllowed && isConditionalGetEnabled()) {
+				Long lastChangeTime = searchService.getLastContentChangeTime(querySettings);
+				if (lastChangeTime != null) {
+					eTag = createEntityTag(uriInfo.getRequestUri().toString(), lastChangeTime);
+					lastModified = createLastModified(lastChangeTime);
+					ResponseBuilder notModified = evaluatePreconditions(readConditionalRequest(), eTag, lastModified);
+					if (notModified != null) {
+						resume(asyncResponse, setCacheHeaders(notModified, eTag, lastModified).build());
+						return;
+					}
+				}
+			}
+			final EntityTag responseETag = eTag;
+			final Date responseLastModified = lastModified;
+
+			searchService.performSearchAsync(querySettings, responseUuid, StatsRecordType.SEARCH, resultCacheAllowed,
+					new ActionListener<SearchResponse>() {
+
+						@Override
+						public void onResponse(SearchResponse searchResponse) {
+							try {
+								Map<String, String> af = searchService.getSearchResponseAdditionalFields(querySettings);
+								af.put("uuid", responseUuid);
+								String nextCursor = SearchService.prepareNextCursor(querySettings, searchResponse);
+								if (nextCursor != null)
+									af.put(QuerySettings.Filters.CURSOR_KEY, nextCursor);
+								ResponseBuilder rb = Response.ok(createResponse(searchResponse, af),
+										MediaType.APPLICATION_JSON_TYPE);
+								if (resultCacheAllowed)
+									setCacheHeaders(rb, responseETag, responseLastModified);
+								resume(asyncResponse, rb.build());
+							} catch (Exception e) {
+								onFailure(e);
+							}
+						}
+
+						@Override
+						public void onFailure(Throwable e) {
+							if (e instanceof IndexMissingException) {
+								resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+							} else {
+								resumeWithError(asyncResponse, e);
+							}
+						}
+					});
+		} catch (IllegalArgumentException e) {
+			resumeWithError(asyncResponse, new BadFieldException("unknown", e));
+		} catch (IndexMissingException e) {
+			resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+		} catch (Exception e) {
+			resumeWithError(asyncResponse, e);
+		}
+	}
+
+	/**
+	 * Perform more searches by one request, eg. for all widgets of one page. Request body is JSON array with one object
+	 * for each search. Object contains same parameters as URL of {@link #search(UriInfo, AsynchronousResponse)}, array
+	 * is used as value for multivalued parameters. All searches are performed by one Elasticsearch multi search request,
+	 * and response contains array with one search response for each search, in the same order.
+	 */
+	@POST
+	@Path("/_msearch")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	@GuestAllowed
+	public void multiSearch(List<Map<String, Object>> queries,
+			@Suspend(ASYNC_RESPONSE_TIMEOUT) final AsynchronousResponse asyncResponse) {
 
-			SearchResponse searchResponse = searchService.performSearch(querySettings, responseUuid, StatsRecordType.SEARCH);
-			Map<String, String> af = searchService.getSearchResponseAdditionalFields(querySettings);
-			af.put("uuid", responseUuid);
-			return createResponse(searchResponse, af);
+		try {
+			if (queries == null || queries.isEmpty()) {
+				throw new RequiredFieldException(PARAM_QUERIES);
+			}
+			if (queries.size() > SearchService.MULTI_SEARCH_MAX_QUERIES) {
+				throw new BadFieldException(PARAM_QUERIES, "Max " + SearchService.MULTI_SEARCH_MAX_QUERIES
+						+ " queries allowed");
+			}
+			final List<QuerySettings> querySettingsList = new ArrayList<>(queries.size());
+			final List<String> responseUuids = new ArrayList<>(queries.size());
+			for (int i = 0; i < queries.size(); i++) {
+				try {
+					querySettingsList.add(querySettingsParser.parseUriParams(convertToParams(queries.get(i))));
+				} catch (IllegalArgumentException e) {
+					throw new BadFieldException(PARAM_QUERIES + "[" + i + "]." + e.getMessage(), e);
+				}
+				responseUuids.add(UUID.randomUUID().toString());
+			}
+
+			searchService.performMultiSearchAsync(querySettingsList, responseUuids, StatsRecordType.SEARCH,
+					new ActionListener<MultiSearchResponse>() {
+
+						@Override
+						public void onResponse(MultiSearchResponse multiSearchResponse) {
+							resume(asyncResponse, Response.ok(
+									createMultiSearchResponse(multiSearchResponse, querySettingsList, responseUuids),
+									MediaType.APPLICATION_JSON_TYPE).build());
+						}
+
+						@Override
+						public void onFailure(Throwable e) {
+							if (e instanceof IndexMissingException) {
+								resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+							} else {
+								resumeWithError(asyncResponse, e);
+							}
+						}
+					});
+		} catch (BadFieldException | RequiredFieldException e) {
+			resumeWithError(asyncResponse, e);
+		} catch (IllegalArgumentException e) {
+			resumeWithError(asyncResponse, new BadFieldException("unknown", e));
+		} catch (IndexMissingException e) {
+			resume(asyncResponse, Response.status(Response.Status.NOT_FOUND).build());
+		} catch (Exception e) {
+			resumeWithError(asyncResponse, e);
+		}
+	}
+
+	/**
+	 * Name of "parameter" used for request body of multi search in error messages.
+	 */
+	protected static final String PARAM_QUERIES = "queries";
+
+	/**
+	 * Convert one query object from multi search request body into request parameters.
+	 * 
+	 * @param query object to convert, may be null
+	 * @return request parameters
+	 */
+	@SuppressWarnings("unchecked")
+	protected static MultivaluedMap<String, String> convertToParams(Map<String, Object> query) {
+		MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+		if (query != null) {
+			for (Map.Entry<String, Object> entry : query.entrySet()) {
+				Object value = entry.getValue();
+				if (value instanceof Collection) {
+					for (Object v : (Collection<Object>) value) {
+						if (v != null)
+							params.add(entry.getKey(), v.toString());
+					}
+				} else if (value != null) {
+					params.add(entry.getKey(), value.toString());
+				}
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Create JAX-RS response for multi search. It contains <code>responses</code> array with one object for each search,
+	 * containing either search response or <code>error</code> field.
+	 * 
+	 * @param response elastic search multi search response
+	 * @param querySettingsList query settings used for searches
+	 * @param responseUuids uuids of search responses
+	 * @return JAX-RS response
+	 */
+	protected StreamingOutput createMultiSearchResponse(final MultiSearchResponse response,
+			final List<QuerySettings> querySettingsList, final List<String> responseUuids) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				XContentBuilder builder = XContentFactory.jsonBuilder(output);
+				builder.startObject();
+				builder.startArray("responses");
+				MultiSearchResponse.Item[] items = response.getResponses();
+				for (int i = 0; i < items.length; i++) {
+					builder.startObject();
+					builder.field("uuid", responseUuids.get(i));
+					if (items[i].isFailure()) {
+						builder.field("error", items[i].getFailureMessage());
+					} else {
+						QuerySettings querySettings = querySettingsList.get(i);
+						Map<String, String> af = searchService.getSearchResponseAdditionalFields(querySettings);
+						String nextCursor = SearchService.prepareNextCursor(querySettings, items[i].getResponse());
+						if (nextCursor != null)
+							af.put(QuerySettings.Filters.CURSOR_KEY, nextCursor);
+						for (Map.Entry<String, String> entry : af.entrySet()) {
+							builder.field(entry.getKey(), entry.getValue());
+						}
+						items[i].getResponse().toXContent(builder, ToXContent.EMPTY_PARAMS);
+					}
+					builder.endObject();
+				}
+				builder.endArray();
+				builder.endObject();
+				builder.close();
+			}
+		};
+	}
+
+	/**
+	 * Media type of newline delimited JSON used for export.
+	 */
+	public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+	/**
+	 * Export all search hits matching query and filters as newline delimited JSON - one hit per line. Hits are streamed
+	 * page by page using Elasticsearch scan/scroll, so there is no limit for number of exported hits and no deep paging
+	 * penalty. Sorting, facets, highlighting and paging request parameters are ignored.
+	 */
+	@GET
+	@Path("/_export")
+	@Produces(MEDIA_TYPE_NDJSON)
+	@ProviderAllowed
+	public Object export(@Context UriInfo uriInfo) {
+		try {
+			if (uriInfo == null) {
+				throw new BadFieldException("uriInfo");
+			}
+			QuerySettings querySettings = querySettingsParser.parseUriParams(uriInfo.getQueryParameters());
+			final SearchResponse startResponse = searchService.performExportStart(querySettings);
+
+			return Response.ok(new StreamingOutput() {
+				@Override
+				public void write(final OutputStream output) throws IOException, WebApplicationException {
+					searchService.performExport(startResponse.getScrollId(), new SearchService.ExportPageHandler() {
+						@Override
+						public void handlePage(SearchHit[] hits) throws IOException {
+							for (SearchHit hit : hits) {
+								XContentBuilder builder = XContentFactory.jsonBuilder();
+								hit.toXContent(builder, ToXContent.EMPTY_PARAMS);
+								builder.bytes().writeTo(output);
+								output.write('\n');
+							}
+							// send every page to the client immediately
+							output.flush();
+						}
+					});
+				}
+			}, MEDIA_TYPE_NDJSON).header("X-Total-Count", startResponse.getHits().getTotalHits()).build();
 		} catch (IllegalArgumentException e) {
 			throw new BadFieldException("unknown", e);
 		} catch (IndexMissingException e) {
@@ -110,4 +371,14 @@ public class SearchRestService extends RestServiceBase {
 		return Response.ok(result ? "statistics record accepted" : "statistics record ignored").build();
 	}
 
+	/**
+	 * Search response may be served from cache only for anonymous requests, as response for authenticated user may
+	 * depend on the user.
+	 * 
+	 * @return true if search result cache can be used for this request
+	 */
+	protected boolean isResultCacheAllowed() {
+		return securityContext == null || securityContext.getUserPrincipal() == null;
+	}
+
 }
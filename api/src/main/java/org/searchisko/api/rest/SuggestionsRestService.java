@@ -5,6 +5,14 @@
  */
 package org.searchisko.api.rest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Logger;
 
@@ -14,23 +22,23 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
-import org.elasticsearch.action.search.MultiSearchRequestBuilder;
-import org.elasticsearch.action.search.MultiSearchResponse;
-import org.elasticsearch.action.search.SearchRequestBuilder;
-import org.elasticsearch.action.search.SearchType;
-import org.elasticsearch.client.Client;
-import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.annotations.security.GuestAllowed;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.rest.exception.BadFieldException;
 import org.searchisko.api.rest.exception.RequiredFieldException;
-import org.searchisko.api.service.SearchClientService;
+import org.searchisko.api.service.ProjectSuggestionService;
+import org.searchisko.api.service.ProjectSuggestionService.Project;
+import org.searchisko.api.service.QuerySuggestionService;
 import org.searchisko.api.util.SearchUtils;
 
 /**
@@ -43,26 +51,31 @@ import org.searchisko.api.util.SearchUtils;
 @Produces(MediaType.APPLICATION_JSON)
 public class SuggestionsRestService extends RestServiceBase {
 
-	public static final String SEARCH_INDEX_NAME = "data_project_info";
+	public static final String SEARCH_INDEX_NAME = ProjectSuggestionService.SEARCH_INDEX_NAME;
 
-	// TODO: in order to make this generic this value needs to be either injected to provided by a service
-	public static final String SEARCH_INDEX_TYPE = "jbossorg_project_info";
+	public static final String SEARCH_INDEX_TYPE = ProjectSuggestionService.SEARCH_INDEX_TYPE;
 
 	public static final Integer DEFAULT_SIZE = 5;
 
-	// we assume there is a multi field with .ngram and .edgengram analysis setup
-	// see 'data_project_info.json' and 'jbossorg_project_info.json' files
 	private static final String FIELD_PROJECT = ContentObjectFields.SYS_PROJECT;
 	private static final String FIELD_PROJECT_NAME = ContentObjectFields.SYS_PROJECT_NAME;
-	private static final String FIELD_PROJECT_NAME_NGRAM = FIELD_PROJECT_NAME + ".ngram";
-	private static final String FIELD_PROJECT_NAME_EDGENGRAM = FIELD_PROJECT_NAME + ".edgengram";
+
+	private static final String HIGHLIGHT_PRE = "<em>";
+	private static final String HIGHLIGHT_POST = "</em>";
 
 	@Inject
 	protected Logger log;
 
 	@Inject
-	protected SearchClientService searchClientService;
+	protected ProjectSuggestionService projectSuggestionService;
+
+	@Inject
+	protected QuerySuggestionService querySuggestionService;
 
+	/**
+	 * Suggest query string completions. Completions are served from in-memory index of historic search queries by
+	 * {@link QuerySuggestionService}.
+	 */
 	@GET
 	@Path("/query_string")
 	@Produces(MediaType.APPLICATION_JSON)
@@ -72,94 +85,217 @@ public class SuggestionsRestService extends RestServiceBase {
 		MultivaluedMap<String, String> params = uriInfo.getQueryParameters();
 		String query = SearchUtils.trimToNull(params.getFirst(QuerySettings.QUERY_KEY));
 		if (query == null) {
-			throw new IllegalArgumentException(QuerySettings.QUERY_KEY);
+			throw new RequiredFieldException(QuerySettings.QUERY_KEY);
 		}
 
-		throw new RuntimeException("Method not implemented yet!");
+		int size = DEFAULT_SIZE;
+		String sizeParam = SearchUtils.trimToNull(params.getFirst(QuerySettings.Filters.SIZE_KEY));
+		if (sizeParam != null) {
+			try {
+				size = Integer.parseInt(sizeParam);
+			} catch (NumberFormatException e) {
+				throw new BadFieldException(QuerySettings.Filters.SIZE_KEY, e);
+			}
+			if (size < 1) {
+				size = DEFAULT_SIZE;
+			} else if (size > QuerySuggestionService.MAX_SIZE) {
+				size = QuerySuggestionService.MAX_SIZE;
+			}
+		}
+
+		return createQueryStringResponse(query, querySuggestionService.suggest(query, size));
 	}
 
-	@GET
-	@Path("/project")
-	@Produces(MediaType.APPLICATION_JSON)
-	@GuestAllowed
-	public Object project(@QueryParam(QuerySettings.QUERY_KEY) String query,
-			@QueryParam(QuerySettings.Filters.SIZE_KEY) Integer size) {
+	/**
+	 * Create response for query string suggestions with <code>view</code> and <code>model</code> parts.
+	 * 
+	 * @param query typed by user
+	 * @param completions of query
+	 * @return response content
+	 */
+	protected static Map<String, Object> createQueryStringResponse(String query, List<String> completions) {
+		Map<String, Object> view = new LinkedHashMap<>();
+		Map<String, Object> model = new LinkedHashMap<>();
 
-		try {
+		view.put("search", createViewSection("Search", Collections.singletonList(escapeHtml(query))));
+		Map<String, Object> searchAction = new LinkedHashMap<>();
+		searchAction.put("search", createSearchCommand(query));
+		model.put("search", searchAction);
 
-			if (query == null) {
-				throw new RequiredFieldException(QuerySettings.QUERY_KEY);
-			}
+		String normalizedQuery = QuerySuggestionService.normalize(query);
+		List<String> options = new ArrayList<>();
+		List<Object> actions = new ArrayList<>();
+		for (String completion : completions) {
+			options.add(highlightPrefix(completion, normalizedQuery));
+			Map<String, Object> action = new LinkedHashMap<>();
+			Map<String, Object> suggestion = new LinkedHashMap<>();
+			suggestion.put("value", completion);
+			action.put("suggestion", suggestion);
+			action.put("search", createSearchCommand(completion));
+			actions.add(action);
+		}
+		view.put("suggestions", createViewSection("Query Completions", options));
+		model.put("suggestions", actions);
 
-			if (size == null || size < 1) {
-				size = DEFAULT_SIZE;
-			} else if (size > 200) {
-				size = 200; // Max
-			}
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("view", view);
+		ret.put("model", model);
+		return ret;
+	}
 
-			final Client client = searchClientService.getClient();
-			final MultiSearchRequestBuilder msrb = getProjectMultiSearchRequestBuilder(
-					client.prepareMultiSearch(),
-					getProjectSearchNGramRequestBuilder(
-							client.prepareSearch().setIndices(SEARCH_INDEX_NAME).setTypes(SEARCH_INDEX_TYPE), query, size),
-					getProjectSearchFuzzyRequestBuilder(
-							client.prepareSearch().setIndices(SEARCH_INDEX_NAME).setTypes(SEARCH_INDEX_TYPE), query, size));
+	private static Map<String, Object> createViewSection(String caption, List<String> options) {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("caption", caption);
+		ret.put("options", options);
+		return ret;
+	}
 
-			String responseUuid = UUID.randomUUID().toString();
+	private static Map<String, Object> createSearchCommand(String query) {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("query", query);
+		return ret;
+	}
 
-			final MultiSearchResponse searchResponse = msrb.execute().actionGet();
+	/**
+	 * Highlight completed query prefix in completion. Both are HTML escaped as view is HTML.
+	 * 
+	 * @param completion to highlight prefix in
+	 * @param normalizedQuery completed query prefix
+	 * @return highlighted completion
+	 */
+	protected static String highlightPrefix(String completion, String normalizedQuery) {
+		int len = normalizedQuery.length();
+		if (len == 0 || completion.length() < len
+				|| !completion.substring(0, len).toLowerCase(Locale.ENGLISH).equals(normalizedQuery))
+			return escapeHtml(completion);
+		return "<strong>" + escapeHtml(completion.substring(0, len)) + "</strong>" + escapeHtml(completion.substring(len));
+	}
 
-			return createResponse(searchResponse, responseUuid);
-		} catch (IllegalArgumentException e) {
-			throw new BadFieldException("unknown", e);
+	protected static String escapeHtml(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				sb.append(c);
+			}
 		}
+		return sb.toString();
 	}
 
 	/**
-	 * 
-	 * @param srb
-	 * @param query
-	 * @return
+	 * Suggest projects. Suggestions are served from in-memory index by {@link ProjectSuggestionService}, so no
+	 * Elasticsearch request is performed. Response contains two parts - projects with name containing query, and projects
+	 * with name containing word similar to query.
 	 */
-	protected SearchRequestBuilder getProjectSearchNGramRequestBuilder(SearchRequestBuilder srb, String query, int size) {
-		return srb
-				.addFields(FIELD_PROJECT, FIELD_PROJECT_NAME)
-				.setSize(size)
-				.setSearchType(SearchType.QUERY_THEN_FETCH)
-				.setQuery(
-						QueryBuilders.queryString(query).analyzer("whitespace_lowercase").field(FIELD_PROJECT_NAME)
-								.field(FIELD_PROJECT_NAME_EDGENGRAM).field(FIELD_PROJECT_NAME_NGRAM))
-				.addHighlightedField(FIELD_PROJECT_NAME, 1, 0).addHighlightedField(FIELD_PROJECT_NAME_NGRAM, 1, 0)
-				.addHighlightedField(FIELD_PROJECT_NAME_EDGENGRAM, 1, 0);
+	@GET
+	@Path("/project")
+	@Produces(MediaType.APPLICATION_JSON)
+	@GuestAllowed
+	public Object project(@QueryParam(QuerySettings.QUERY_KEY) String query,
+			@QueryParam(QuerySettings.Filters.SIZE_KEY) Integer size) {
+
+		if (query == null) {
+			throw new RequiredFieldException(QuerySettings.QUERY_KEY);
+		}
+
+		if (size == null || size < 1) {
+			size = DEFAULT_SIZE;
+		} else if (size > ProjectSuggestionService.MAX_SIZE) {
+			size = ProjectSuggestionService.MAX_SIZE;
+		}
+
+		List<Project> matches = projectSuggestionService.suggest(query, size);
+		List<Project> fuzzyMatches = projectSuggestionService.suggestFuzzy(query, size);
+
+		return createProjectResponse(ProjectSuggestionService.normalize(query), matches, fuzzyMatches, UUID.randomUUID()
+				.toString());
 	}
 
 	/**
+	 * Create response for project suggestions. Structure of response is same as for Elasticsearch multi search response
+	 * with two search responses.
 	 * 
-	 * @param srb
-	 * @param query
-	 * @return
+	 * @param normalizedQuery used to highlight matches
+	 * @param matches projects with name containing query
+	 * @param fuzzyMatches projects with name containing word similar to query
+	 * @param responseUuid uuid of response
+	 * @return JAX-RS response
 	 */
-	protected SearchRequestBuilder getProjectSearchFuzzyRequestBuilder(SearchRequestBuilder srb, String query, int size) {
-		return srb
-				.addFields(FIELD_PROJECT, FIELD_PROJECT_NAME)
-				.setSize(size)
-				.setSearchType(SearchType.QUERY_THEN_FETCH)
-				.setQuery(
-						QueryBuilders.fuzzyLikeThisQuery(FIELD_PROJECT_NAME, FIELD_PROJECT_NAME_NGRAM)
-								.analyzer("whitespace_lowercase").maxQueryTerms(10).likeText(query))
-				.addHighlightedField(FIELD_PROJECT_NAME, 1, 0).addHighlightedField(FIELD_PROJECT_NAME_NGRAM, 1, 0)
-				.addHighlightedField(FIELD_PROJECT_NAME_EDGENGRAM, 1, 0);
+	protected StreamingOutput createProjectResponse(final String normalizedQuery, final List<Project> matches,
+			final List<Project> fuzzyMatches, final String responseUuid) {
+		return new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException, WebApplicationException {
+				XContentBuilder builder = XContentFactory.jsonBuilder(output);
+				builder.startObject();
+				builder.field("uuid", responseUuid);
+				builder.startArray("responses");
+				writeProjectHits(builder, matches, normalizedQuery);
+				writeProjectHits(builder, fuzzyMatches, null);
+				builder.endArray();
+				builder.endObject();
+				builder.close();
+			}
+		};
+	}
+
+	private void writeProjectHits(XContentBuilder builder, List<Project> projects, String highlightQuery)
+			throws IOException {
+		builder.startObject();
+		builder.startObject("hits");
+		builder.field("total", projects.size());
+		builder.startArray("hits");
+		for (Project p : projects) {
+			builder.startObject();
+			builder.field("_index", SEARCH_INDEX_NAME);
+			builder.field("_type", SEARCH_INDEX_TYPE);
+			builder.field("_id", p.getId());
+			builder.startObject("fields");
+			builder.field(FIELD_PROJECT, p.getCode());
+			builder.field(FIELD_PROJECT_NAME, p.getName());
+			builder.endObject();
+			String highlighted = highlightQuery != null ? highlight(p.getName(), highlightQuery) : null;
+			if (highlighted != null) {
+				builder.startObject("highlight");
+				builder.array(FIELD_PROJECT_NAME, highlighted);
+				builder.endObject();
+			}
+			builder.endObject();
+		}
+		builder.endArray();
+		builder.endObject();
+		builder.endObject();
 	}
 
 	/**
-	 * @param msrb
-	 * @param srbNGram
-	 * @param srbFuzzy
-	 * @return
+	 * Highlight first occurrence of query in project name.
+	 * 
+	 * @param name to highlight query in
+	 * @param normalizedQuery to highlight
+	 * @return highlighted name or null if query is not found in name
 	 */
-	protected MultiSearchRequestBuilder getProjectMultiSearchRequestBuilder(MultiSearchRequestBuilder msrb,
-			SearchRequestBuilder srbNGram, SearchRequestBuilder srbFuzzy) {
-		return msrb.add(srbNGram).add(srbFuzzy);
+	protected static String highlight(String name, String normalizedQuery) {
+		if (normalizedQuery == null || normalizedQuery.isEmpty())
+			return null;
+		String lowerName = name.toLowerCase(Locale.ENGLISH);
+		int idx = lowerName.length() == name.length() ? lowerName.indexOf(normalizedQuery) : -1;
+		if (idx < 0)
+			return null;
+		int end = idx + normalizedQuery.length();
+		return name.substring(0, idx) + HIGHLIGHT_PRE + name.substring(idx, end) + HIGHLIGHT_POST + name.substring(end);
 	}
 
 }
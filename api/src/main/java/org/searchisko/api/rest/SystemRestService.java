@@ -0,0 +1,94 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.searchisko.api.annotations.security.ProviderAllowed;
+import org.searchisko.api.cache.FeedEntryCache;
+import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.PreprocessorChainCache;
+import org.searchisko.api.cache.ProviderCache;
+import org.searchisko.api.cache.SearchConfigCache;
+import org.searchisko.api.cache.SearchResultCache;
+import org.searchisko.api.service.ContentPushQueueService;
+import org.searchisko.api.service.ProjectSuggestionService;
+import org.searchisko.api.service.QuerySuggestionService;
+import org.searchisko.api.service.SearchService;
+import org.searchisko.api.service.StatsClientService;
+
+/**
+ * System management REST API - runtime metrics of Searchisko internals.
+ * 
+ * @author agent (agent at local)
+ */
+@RequestScoped
+@Path("/sys")
+@ProviderAllowed(superProviderOnly = true)
+public class SystemRestService extends RestServiceBase {
+
+	@Inject
+	protected PreprocessorChainCache preprocessorChainCache;
+
+	@Inject
+	protected ProviderCache providerCache;
+
+	@Inject
+	protected IndexNamesCache indexNamesCache;
+
+	@Inject
+	protected SearchConfigCache searchConfigCache;
+
+	@Inject
+	protected SearchResultCache searchResultCache;
+
+	@Inject
+	protected FeedEntryCache feedEntryCache;
+
+	@Inject
+	protected StatsClientService statsClientService;
+
+	@Inject
+	protected SearchService searchService;
+
+	@Inject
+	protected ProjectSuggestionService projectSuggestionService;
+
+	@Inject
+	protected QuerySuggestionService querySuggestionService;
+
+	@Inject
+	protected ContentPushQueueService contentPushQueueService;
+
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Object getMetrics() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("preprocessor_chain_cache", preprocessorChainCache.getStats());
+		ret.put("provider_cache", providerCache.getStats());
+		ret.put("index_names_cache", indexNamesCache.getStats());
+		ret.put("search_config_cache", searchConfigCache.getStats());
+		ret.put("search_result_cache", searchResultCache.getStats());
+		ret.put("feed_entry_cache", feedEntryCache.getStats());
+		ret.put("stats_writer", statsClientService.getWriterStats());
+		ret.put("async_search", searchService.getAsyncStats());
+		ret.put("search_export", searchService.getExportStats());
+		ret.put("project_suggestions", projectSuggestionService.getStats());
+		ret.put("query_suggestions", querySuggestionService.getStats());
+		ret.put("content_push_queue", contentPushQueueService.getStats());
+		return ret;
+	}
+
+}
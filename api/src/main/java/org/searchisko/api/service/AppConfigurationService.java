@@ -21,6 +21,7 @@ import javax.inject.Named;
 
 import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.model.AppConfiguration.ClientType;
+import org.searchisko.api.util.SearchUtils;
 
 /**
  * Application configuration service
@@ -96,6 +97,22 @@ public class AppConfigurationService {
 				prop.getProperty("contributorprofile.provider.password"));
 		appConfiguration.setContributorProfileProviderConfig(cppc);
 
+		appConfiguration.setSearchResultCacheTtl(Integer.parseInt(prop.getProperty("search.resultcache.ttl", "0")));
+		appConfiguration.setSearchResultCacheMaxMemory(Integer.parseInt(prop.getProperty("search.resultcache.maxmemory",
+				"0")));
+		appConfiguration.setSearchHttpConditional(Boolean.parseBoolean(prop.getProperty("search.http.conditional",
+				"false")));
+		appConfiguration.setSearchHttpCacheControl(SearchUtils.trimToNull(prop.getProperty("search.http.cachecontrol")));
+
+		appConfiguration.setFeedEntryCacheMaxMemory(Integer.parseInt(prop.getProperty("feed.entrycache.maxmemory", "0")));
+
+		appConfiguration.setContentPushAsync(Boolean.parseBoolean(prop.getProperty("content.push.async", "false")));
+		appConfiguration.setContentPushAsyncRetention(Integer.parseInt(prop.getProperty("content.push.async.retention",
+				"24")));
+
+		appConfiguration.setContentPersistenceListPageSize(Integer.parseInt(prop.getProperty(
+				"contentpersistence.listpagesize", "1000")));
+
 		log.log(Level.INFO, "App Configuration: {0}", appConfiguration);
 	}
 }
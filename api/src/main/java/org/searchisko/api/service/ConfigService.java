@@ -11,10 +11,12 @@ import java.util.logging.Logger;
 
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.ws.rs.core.StreamingOutput;
 
+import org.searchisko.api.events.ConfigChangedEvent;
 import org.searchisko.persistence.service.EntityService;
 
 /**
@@ -41,6 +43,9 @@ public class ConfigService implements EntityService {
 	@Named("configServiceBackend")
 	protected EntityService entityService;
 
+	@Inject
+	protected Event<ConfigChangedEvent> eventConfigChanged;
+
 	@Override
 	public StreamingOutput getAll(Integer from, Integer size, String[] fieldsToRemove) {
 		return entityService.getAll(from, size, fieldsToRemove);
@@ -59,21 +64,37 @@ public class ConfigService implements EntityService {
 	@Override
 	public String create(Map<String, Object> entity) {
 		String id = entityService.create(entity);
+		fireConfigChanged(id);
 		return id;
 	}
 
 	@Override
 	public void create(String id, Map<String, Object> entity) {
 		entityService.create(id, entity);
+		fireConfigChanged(id);
 	}
 
 	@Override
 	public void update(String id, Map<String, Object> entity) {
 		entityService.update(id, entity);
+		fireConfigChanged(id);
 	}
 
 	@Override
 	public void delete(String id) {
 		entityService.delete(id);
+		fireConfigChanged(id);
+	}
+
+	/**
+	 * Fire {@link ConfigChangedEvent} so caches of parsed configuration documents and of results depending on them are
+	 * flushed. Caches observe it after transaction commit, flush before commit allows concurrent request to cache old
+	 * configuration again.
+	 *
+	 * @param id of changed configuration document
+	 */
+	protected void fireConfigChanged(String id) {
+		if (eventConfigChanged != null)
+			eventConfigChanged.fire(new ConfigChangedEvent(id));
 	}
 }
@@ -0,0 +1,312 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.model.AppConfiguration;
+import org.searchisko.persistence.service.ContentPushJournalService;
+import org.searchisko.persistence.service.ContentPushJournalService.Entry;
+
+/**
+ * Service for asynchronous (write-behind) content push. Pushed content is durably stored into
+ * {@link ContentPushJournalService} and receipt id is returned to the provider immediately. Journal is processed
+ * periodically by container timer in batches using {@link ContentPushService}, so normalization and preprocessors run
+ * in {@link WorkerPoolService} and documents are indexed using bulk requests. Final status of each pushed content is
+ * stored back into journal, where provider can read it using receipt id.
+ * <p>
+ * Entries claimed by node which stopped or crashed during their processing are returned back to the queue when their
+ * claim is older than {@link #CLAIM_LEASE_TIMEOUT}, and processed by any node then. Content may be pushed more times
+ * in rare cases. It is not a problem because push is idempotent.
+ *
+ * @author agent (agent at local)
+ */
+@Named
+@ApplicationScoped
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ContentPushQueueService {
+
+	/**
+	 * Timeout [ms] after which entries claimed for processing are considered abandoned and returned back to the queue.
+	 * It must be much longer than processing of one batch takes.
+	 */
+	protected static final long CLAIM_LEASE_TIMEOUT = 15 * 60 * 1000L;
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected AppConfiguration appConfiguration;
+
+	@Inject
+	protected ContentPushJournalService contentPushJournalService;
+
+	@Inject
+	protected ContentPushService contentPushService;
+
+	@Inject
+	protected ProviderService providerService;
+
+	private final AtomicBoolean processing = new AtomicBoolean();
+
+	private final AtomicLong acceptedCount = new AtomicLong();
+	private final AtomicLong processedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong batchCount = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		if (!isEnabled())
+			return;
+		log.log(Level.FINE, "Content push journal node id {0}", contentPushJournalService.getNodeId());
+		requeueAbandoned();
+	}
+
+	/**
+	 * @return true if asynchronous content push is enabled
+	 */
+	public boolean isEnabled() {
+		return appConfiguration != null && appConfiguration.isContentPushAsync();
+	}
+
+	/**
+	 * Store content into journal to be processed asynchronously.
+	 *
+	 * @param providerName name of provider who pushes content
+	 * @param type <code>sys_content_type</code> of content
+	 * @param contentId <code>sys_content_id</code> of content
+	 * @param content to push
+	 * @param force if true then content is processed even if it is not changed
+	 * @return receipt id used to get processing status later
+	 */
+	public String enqueue(String providerName, String type, String contentId, Map<String, Object> content,
+			boolean force) {
+		String receiptId = UUID.randomUUID().toString();
+		content.put(ContentObjectFields.SYS_CONTENT_ID, contentId);
+		contentPushJournalService.add(receiptId, providerName, type, contentId, content, force);
+		acceptedCount.incrementAndGet();
+		return receiptId;
+	}
+
+	/**
+	 * Get processing status of asynchronously pushed content.
+	 *
+	 * @param receiptId returned from {@link #enqueue(String, String, String, Map, boolean)}
+	 * @return journal entry (without content) or null if not found
+	 */
+	public Entry getReceipt(String receiptId) {
+		return contentPushJournalService.get(receiptId);
+	}
+
+	/**
+	 * Process journal. Called periodically by container timer. Runs out of transaction, so each journal update and
+	 * content store is committed separately same way as for synchronous push.
+	 */
+	@Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void scheduledProcess() {
+		if (!isEnabled())
+			return;
+		try {
+			processJournal();
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Content push journal processing failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Remove statuses of processed content older than configured retention. Called periodically by container timer.
+	 */
+	@Schedule(hour = "*", minute = "*/30", persistent = false)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void scheduledCleanup() {
+		if (!isEnabled())
+			return;
+		try {
+			long retention = appConfiguration.getContentPushAsyncRetention() * 60L * 60L * 1000L;
+			int count = contentPushJournalService.deleteFinished(new Date(System.currentTimeMillis() - retention));
+			log.log(Level.FINE, "{0} processed content push journal entries removed", count);
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Content push journal cleanup failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Return abandoned journal entries back to the queue. Called periodically by container timer, so entries claimed by
+	 * crashed node are processed even if it is not started again.
+	 */
+	@Schedule(hour = "*", minute = "*/5", persistent = false)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public void scheduledRequeue() {
+		if (!isEnabled())
+			return;
+		requeueAbandoned();
+	}
+
+	/**
+	 * Return entries claimed for processing longer than {@link #CLAIM_LEASE_TIMEOUT} back to the queue.
+	 */
+	protected void requeueAbandoned() {
+		try {
+			int count = contentPushJournalService.requeueProcessing(new Date(System.currentTimeMillis()
+					- CLAIM_LEASE_TIMEOUT));
+			if (count > 0)
+				log.log(Level.INFO, "{0} abandoned content push journal entries requeued", count);
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Abandoned content push journal entries not requeued: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Process all queued journal entries in batches. Only one thread processes journal at a time, others return
+	 * immediately.
+	 *
+	 * @return number of processed entries
+	 */
+	public int processJournal() {
+		if (!processing.compareAndSet(false, true))
+			return 0;
+		try {
+			int count = 0;
+			List<Entry> entries;
+			while (!(entries = contentPushJournalService.claim(contentPushService.getBulkMaxActions())).isEmpty()) {
+				processBatch(entries);
+				count += entries.size();
+			}
+			return count;
+		} finally {
+			processing.set(false);
+		}
+	}
+
+	/**
+	 * Process one batch of claimed journal entries. Entries are grouped by provider, <code>sys_content_type</code> and
+	 * force flag (order of entries in group is kept) and each group is pushed as one chunk.
+	 *
+	 * @param entries to process
+	 */
+	protected void processBatch(List<Entry> entries) {
+		batchCount.incrementAndGet();
+		Map<String, List<Entry>> groups = new LinkedHashMap<>();
+		for (Entry entry : entries) {
+			String key = entry.getProviderName() + "/" + entry.getSysContentType() + "/" + entry.isForce();
+			List<Entry> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<>();
+				groups.put(key, group);
+			}
+			group.add(entry);
+		}
+		for (List<Entry> group : groups.values()) {
+			processGroup(group);
+		}
+	}
+
+	/**
+	 * Push entries of one provider, <code>sys_content_type</code> and force flag and store results into journal.
+	 *
+	 * @param group of entries to process
+	 */
+	protected void processGroup(List<Entry> group) {
+		String providerName = group.get(0).getProviderName();
+		String type = group.get(0).getSysContentType();
+		boolean force = group.get(0).isForce();
+
+		List<Entry> toPush = new ArrayList<>(group.size());
+		List<Map<String, Object>> chunk = new ArrayList<>(group.size());
+		for (Entry entry : group) {
+			if (entry.getContent() == null) {
+				finish(entry, "error", "Journaled content is not readable");
+			} else {
+				toPush.add(entry);
+				chunk.add(entry.getContent());
+			}
+		}
+		if (toPush.isEmpty())
+			return;
+
+		List<Map<String, Object>> items = new ArrayList<>(toPush.size());
+		String error = null;
+		try {
+			Map<String, Object> provider = providerService.findProvider(providerName);
+			Map<String, Object> typeDef = provider != null ? ProviderService.extractContentType(provider, type) : null;
+			if (typeDef == null) {
+				error = "Content type " + type + " is not defined for provider " + providerName;
+			} else {
+				contentPushService.pushContentBulkChunk(providerName, type, typeDef, chunk, force, items);
+			}
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Push of journaled content failed: " + e.getMessage(), e);
+			error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+		}
+
+		for (int i = 0; i < toPush.size(); i++) {
+			if (error != null || i >= items.size()) {
+				finish(toPush.get(i), "error", error);
+			} else {
+				Map<String, Object> status = items.get(i);
+				finish(toPush.get(i), (String) status.get(ContentPushService.RESPONSE_STATUS),
+						(String) status.get(ContentPushService.RESPONSE_MESSAGE));
+			}
+		}
+	}
+
+	private void finish(Entry entry, String status, String message) {
+		if ("error".equals(status))
+			failedCount.incrementAndGet();
+		else
+			processedCount.incrementAndGet();
+		contentPushJournalService.finish(entry.getReceiptId(), status, message);
+	}
+
+	/**
+	 * Get asynchronous content push statistics.
+	 *
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		boolean enabled = isEnabled();
+		ret.put("enabled", enabled);
+		if (enabled) {
+			try {
+				ret.put("queued", contentPushJournalService.countQueued());
+			} catch (RuntimeException e) {
+				ret.put("queued", null);
+			}
+		}
+		ret.put("accepted", acceptedCount.get());
+		ret.put("processed", processedCount.get());
+		ret.put("failed", failedCount.get());
+		ret.put("batches", batchCount.get());
+		return ret;
+	}
+
+}
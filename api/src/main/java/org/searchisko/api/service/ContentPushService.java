@@ -0,0 +1,892 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.update.UpdateResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.engine.DocumentMissingException;
+import org.elasticsearch.index.query.AndFilterBuilder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBeforeIndexedEvent.BulkContext;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.util.SearchUtils;
+import org.searchisko.persistence.service.ContentPersistenceService;
+
+/**
+ * Service implementing content push processing (normalization, preprocessors, persistence and indexing into search
+ * index) shared by {@link org.searchisko.api.rest.ContentRestService} and {@link ContentPushQueueService}. It doesn't
+ * use any request bound resources so it can be used from background threads also.
+ *
+ * @author agent (agent at local)
+ */
+@Named
+@ApplicationScoped
+public class ContentPushService {
+
+	public static final String RESPONSE_STATUS = "status";
+	public static final String RESPONSE_MESSAGE = "message";
+	public static final String STATUS_UNCHANGED = "unchanged";
+	public static final String STATUS_DELETE = "delete";
+	public static final String STATUS_NOT_FOUND = "not_found";
+	public static final String STATUS_ERROR = "error";
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected ProviderService providerService;
+
+	@Inject
+	protected SearchClientService searchClientService;
+
+	@Inject
+	protected ContentPersistenceService contentPersistenceService;
+
+	@Inject
+	protected Event<ContentStoredEvent> eventContentStored;
+
+	@Inject
+	protected Event<ContentBeforeIndexedEvent> eventBeforeIndexed;
+
+	@Inject
+	protected Event<ContentBulkDeletedEvent> eventContentBulkDeleted;
+
+	@Inject
+	protected WorkerPoolService workerPoolService;
+
+	/**
+	 * Maximal number of documents sent to search index in one bulk request.
+	 */
+	protected int bulkMaxActions = 100;
+
+	/**
+	 * Maximal estimated size of one bulk request sent to search index [bytes].
+	 */
+	protected long bulkMaxBytes = 5L * 1024L * 1024L;
+
+	/**
+	 * @return maximal number of documents sent to search index in one bulk request, so reasonable size of chunk passed
+	 *         to {@link #pushContentBulkChunk(String, String, Map, List, boolean, List)}
+	 */
+	public int getBulkMaxActions() {
+		return bulkMaxActions;
+	}
+
+	/**
+	 * Fill normalized system fields into content and run preprocessors defined for given <code>sys_content_type</code>.
+	 *
+	 * @param providerName name of provider who pushes content
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param contentId <code>sys_content_id</code> of content
+	 * @param sysContentId <code>sys_id</code> of content
+	 * @param fingerprint of content as provided, see {@link #computeFingerprint(Map, Map)}
+	 * @param content to normalize
+	 */
+	public void normalizeContent(String providerName, String type, Map<String, Object> typeDef, String contentId,
+			String sysContentId, String fingerprint, Map<String, Object> content) {
+		// fill some normalized fields - should be last step to avoid changing them via preprocessors
+		content.put(ContentObjectFields.SYS_CONTENT_PROVIDER, providerName);
+		content.put(ContentObjectFields.SYS_CONTENT_ID, contentId);
+		content.put(ContentObjectFields.SYS_CONTENT_TYPE, type);
+		content.put(ContentObjectFields.SYS_ID, sysContentId);
+		content.put(ContentObjectFields.SYS_TYPE, ProviderService.extractSysType(typeDef, type));
+		content.put(ContentObjectFields.SYS_UPDATED, new Date());
+		// Copy distinct data from content to normalized fields
+		content.put(ContentObjectFields.SYS_TAGS, content.get(ContentObjectFields.TAGS));
+
+		// Fill type of content from configuration
+		if (content.containsKey(ContentObjectFields.SYS_CONTENT)) {
+			content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
+					ProviderService.extractSysContentContentType(typeDef, type));
+		} else {
+			content.remove(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE);
+		}
+
+		// Run preprocessors to manipulate other fields
+		providerService.runPreprocessors(type, ProviderService.extractPreprocessors(typeDef, type), content);
+
+		// Refill type of content from configuration if content was added in preprocessors
+		if (content.containsKey(ContentObjectFields.SYS_CONTENT)
+				&& !content.containsKey(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE)) {
+			content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
+					ProviderService.extractSysContentContentType(typeDef, type));
+		}
+
+		content.put(ContentObjectFields.SYS_FINGERPRINT, fingerprint);
+	}
+
+	/**
+	 * Fields of <code>sys_content_type</code> configuration which affect how content is processed, so they are included
+	 * in fingerprint of content.
+	 */
+	private static final String[] FINGERPRINT_TYPE_DEF_FIELDS = { ProviderService.INPUT_PREPROCESSORS,
+			ProviderService.SYS_TYPE, ProviderService.SYS_CONTENT_CONTENT_TYPE, ProviderService.PERSIST };
+
+	/**
+	 * Compute fingerprint of content as provided by provider, before normalization. Fingerprint covers configuration of
+	 * <code>sys_content_type</code> used to process content too, so same content is processed again if configuration
+	 * (eg. preprocessors) is changed.
+	 *
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param content to compute fingerprint for
+	 * @return SHA-1 hex string
+	 * @see #computeFingerprint(String, Map)
+	 */
+	public static String computeFingerprint(Map<String, Object> typeDef, Map<String, Object> content) {
+		return computeFingerprint(computeTypeDefFingerprint(typeDef), content);
+	}
+
+	/**
+	 * Compute fingerprint of <code>sys_content_type</code> configuration fields which affect how content is processed.
+	 *
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @return SHA-1 hex string
+	 */
+	public static String computeTypeDefFingerprint(Map<String, Object> typeDef) {
+		Map<String, Object> canonical = new TreeMap<String, Object>();
+		for (String field : FINGERPRINT_TYPE_DEF_FIELDS) {
+			canonical.put(field, canonicalValue(typeDef.get(field)));
+		}
+		return computeCanonicalFingerprint("", canonical);
+	}
+
+	/**
+	 * Compute fingerprint of content as provided by provider, before normalization. Map keys are sorted so order of
+	 * fields doesn't matter. <code>sys_content_id</code> and <code>sys_fingerprint</code> fields are not included, as
+	 * they are not part of content data.
+	 *
+	 * @param typeDefFingerprint fingerprint of <code>sys_content_type</code> configuration, see
+	 *          {@link #computeTypeDefFingerprint(Map)}. Computed once for all content objects of one bulk push.
+	 * @param content to compute fingerprint for
+	 * @return SHA-1 hex string
+	 */
+	public static String computeFingerprint(String typeDefFingerprint, Map<String, Object> content) {
+		Map<String, Object> canonical = new TreeMap<String, Object>();
+		for (Map.Entry<String, Object> e : content.entrySet()) {
+			if (!ContentObjectFields.SYS_CONTENT_ID.equals(e.getKey())
+					&& !ContentObjectFields.SYS_FINGERPRINT.equals(e.getKey()))
+				canonical.put(e.getKey(), canonicalValue(e.getValue()));
+		}
+		return computeCanonicalFingerprint(typeDefFingerprint, canonical);
+	}
+
+	private static String computeCanonicalFingerprint(String prefix, Map<String, Object> canonical) {
+		try {
+			return DigestUtils.shaHex(prefix + SearchUtils.convertJsonMapToString(canonical));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object canonicalValue(Object value) {
+		if (value instanceof Map) {
+			Map<String, Object> ret = new TreeMap<String, Object>();
+			for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+				ret.put(e.getKey(), canonicalValue(e.getValue()));
+			}
+			return ret;
+		} else if (value instanceof Collection) {
+			List<Object> ret = new ArrayList<Object>(((Collection<Object>) value).size());
+			for (Object o : (Collection<Object>) value) {
+				ret.add(canonicalValue(o));
+			}
+			return ret;
+		}
+		return value;
+	}
+
+	/**
+	 * Get fingerprints of content currently indexed in search index. Realtime multi get is used, so content indexed
+	 * recently is found also.
+	 *
+	 * @param indexName name of search index
+	 * @param indexType type in search index
+	 * @param sysContentIds <code>sys_id</code> of content to get fingerprints for
+	 * @return map with <code>sys_id</code> as key and fingerprint as value. Content which is not indexed or has no
+	 *         fingerprint is not in map.
+	 */
+	public Map<String, String> getIndexedFingerprints(String indexName, String indexType,
+			Collection<String> sysContentIds) {
+		Map<String, String> ret = new HashMap<String, String>();
+		if (sysContentIds.isEmpty())
+			return ret;
+		MultiGetRequestBuilder mgrb = searchClientService.getClient().prepareMultiGet();
+		for (String sysContentId : sysContentIds) {
+			mgrb.add(new MultiGetRequest.Item(indexName, indexType, sysContentId)
+					.fields(ContentObjectFields.SYS_FINGERPRINT));
+		}
+		MultiGetResponse mgr;
+		try {
+			mgr = mgrb.execute().actionGet();
+		} catch (IndexMissingException e) {
+			return ret;
+		}
+		for (MultiGetItemResponse mgir : mgr.getResponses()) {
+			// failure means eg. search index doesn't exist yet, so content is not indexed
+			if (mgir.isFailed())
+				continue;
+			GetResponse gr = mgir.getResponse();
+			if (gr.isExists() && gr.getField(ContentObjectFields.SYS_FINGERPRINT) != null) {
+				Object fingerprint = gr.getField(ContentObjectFields.SYS_FINGERPRINT).getValue();
+				if (fingerprint != null)
+					ret.put(gr.getId(), fingerprint.toString());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Check if content with given fingerprint is indexed already, so push of it can be skipped.
+	 *
+	 * @param indexName name of search index
+	 * @param indexType type in search index
+	 * @param sysContentId <code>sys_id</code> of content
+	 * @param fingerprint of pushed content
+	 * @return true if content with same fingerprint is indexed already
+	 */
+	public boolean isUnchanged(String indexName, String indexType, String sysContentId, String fingerprint) {
+		List<String> ids = new ArrayList<String>(1);
+		ids.add(sysContentId);
+		return fingerprint.equals(getIndexedFingerprints(indexName, indexType, ids).get(sysContentId));
+	}
+
+	/**
+	 * Create push operation status structure returned from REST API.
+	 *
+	 * @param version of document in search index after push
+	 * @return status structure
+	 */
+	public static Map<String, Object> createPushStatus(long version) {
+		Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+		if (version > 1) {
+			retJson.put(RESPONSE_STATUS, "update");
+			retJson.put(RESPONSE_MESSAGE, "Content was updated successfully.");
+		} else {
+			retJson.put(RESPONSE_STATUS, "insert");
+			retJson.put(RESPONSE_MESSAGE, "Content was inserted successfully.");
+		}
+		return retJson;
+	}
+
+	/**
+	 * Create push operation status structure returned from REST API when pushed content is same as content indexed
+	 * already, so it was not processed.
+	 *
+	 * @return status structure
+	 */
+	public static Map<String, Object> createUnchangedStatus() {
+		Map<String, Object> retJson = new LinkedHashMap<String, Object>();
+		retJson.put(RESPONSE_STATUS, STATUS_UNCHANGED);
+		retJson.put(RESPONSE_MESSAGE, "Content was not changed.");
+		return retJson;
+	}
+
+	/**
+	 * Fields filled by {@link #normalizeContent(String, String, Map, String, String, String, Map)} which can't be
+	 * changed by {@link #patchContent(String, Map, String, Map)}.
+	 */
+	protected static final String[] NORMALIZED_FIELDS = { ContentObjectFields.SYS_CONTENT_PROVIDER,
+			ContentObjectFields.SYS_CONTENT_ID, ContentObjectFields.SYS_CONTENT_TYPE, ContentObjectFields.SYS_ID,
+			ContentObjectFields.SYS_TYPE, ContentObjectFields.SYS_UPDATED, ContentObjectFields.SYS_TAGS,
+			ContentObjectFields.SYS_CONTENT_CONTENT_TYPE, ContentObjectFields.SYS_FINGERPRINT };
+
+	/**
+	 * Apply partial update to content object stored already. <code>changes</code> are merged into content as JSON merge
+	 * patch - object values are merged recursively, other values replace existing ones, and <code>null</code> value
+	 * removes field. Normalized system fields can't be changed.
+	 * <p>
+	 * Only preprocessors using changed fields are run, see
+	 * {@link ProviderService#selectPreprocessorsForFields(List, Collection)}. If no preprocessor has to be run, content
+	 * is not persisted and no field is removed by <code>changes</code> then whole content is not read at all, only
+	 * changed fields are sent to the search index as partial document. Otherwise content is read from persistence or
+	 * search index, merged and written back, as partial document can't remove fields. Fingerprint of content is
+	 * removed, so next push of full content is always processed.
+	 * <p>
+	 * This method fires {@link ContentBeforeIndexedEvent} and {@link ContentStoredEvent}.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param sysContentId <code>sys_id</code> of content
+	 * @param changes to apply
+	 * @return status structure same as from {@link #createPushStatus(long)}, or null if content doesn't exist
+	 */
+	public Map<String, Object> patchContent(String type, Map<String, Object> typeDef, String sysContentId,
+			Map<String, Object> changes) {
+		String indexName = ProviderService.extractIndexName(typeDef, type);
+		String indexType = ProviderService.extractIndexType(typeDef, type);
+		boolean persist = ProviderService.extractPersist(typeDef);
+
+		Map<String, Object> patch = new LinkedHashMap<String, Object>(changes);
+		for (String field : NORMALIZED_FIELDS) {
+			patch.remove(field);
+		}
+
+		List<Map<String, Object>> preprocessorsDef = ProviderService.extractPreprocessors(typeDef, type);
+		boolean[] selected = ProviderService.selectPreprocessorsForFields(preprocessorsDef, patch.keySet());
+		boolean runPreprocessors = false;
+		for (boolean s : selected) {
+			runPreprocessors = runPreprocessors || s;
+		}
+
+		Client client = searchClientService.getClient();
+		Map<String, Object> content;
+		long version;
+		try {
+			if (!persist && !runPreprocessors && !containsNullValue(patch)) {
+				// only changed fields are sent to the search index which merges them into indexed document
+				content = patch;
+				fillPatchedSystemFields(type, typeDef, content);
+				// null fingerprint is handled as missing one, see getIndexedFingerprints()
+				content.put(ContentObjectFields.SYS_FINGERPRINT, null);
+
+				ContentBeforeIndexedEvent event1 = new ContentBeforeIndexedEvent(sysContentId, content);
+				log.log(Level.FINE, "Going to fire event {0}", event1);
+				eventBeforeIndexed.fire(event1);
+
+				UpdateResponse ur = client.prepareUpdate(indexName, indexType, sysContentId).setDoc(content)
+						.setFields("_source").execute().actionGet();
+				version = ur.getVersion();
+				// whole content is passed to event listeners if returned by search index
+				if (ur.getGetResult() != null && ur.getGetResult().sourceAsMap() != null)
+					content = ur.getGetResult().sourceAsMap();
+			} else {
+				if (persist) {
+					content = contentPersistenceService.get(sysContentId, type);
+				} else {
+					GetResponse gr = client.prepareGet(indexName, indexType, sysContentId).setRealtime(true).execute()
+							.actionGet();
+					content = gr.isExists() ? new LinkedHashMap<String, Object>(gr.getSourceAsMap()) : null;
+				}
+				if (content == null)
+					return null;
+
+				mergePatch(content, patch);
+				fillPatchedSystemFields(type, typeDef, content);
+				content.remove(ContentObjectFields.SYS_FINGERPRINT);
+
+				if (runPreprocessors) {
+					providerService.runPreprocessors(type, preprocessorsDef, content, selected);
+					if (content.containsKey(ContentObjectFields.SYS_CONTENT)
+							&& !content.containsKey(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE)) {
+						content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
+								ProviderService.extractSysContentContentType(typeDef, type));
+					}
+				}
+
+				if (persist) {
+					contentPersistenceService.store(sysContentId, type, content);
+				}
+
+				ContentBeforeIndexedEvent event1 = new ContentBeforeIndexedEvent(sysContentId, content);
+				log.log(Level.FINE, "Going to fire event {0}", event1);
+				eventBeforeIndexed.fire(event1);
+
+				IndexResponse ir = client.prepareIndex(indexName, indexType, sysContentId).setSource(content).execute()
+						.actionGet();
+				version = ir.getVersion();
+			}
+		} catch (DocumentMissingException e) {
+			return null;
+		} catch (IndexMissingException e) {
+			return null;
+		}
+
+		ContentStoredEvent event = new ContentStoredEvent(sysContentId, content);
+		log.log(Level.FINE, "Going to fire event {0}", event);
+		eventContentStored.fire(event);
+
+		return createPushStatus(version);
+	}
+
+	/**
+	 * Check if JSON merge patch removes some field, so it can't be applied as partial document by the search index.
+	 *
+	 * @param patch to check
+	 * @return true if patch or some object in it contains <code>null</code> value
+	 */
+	@SuppressWarnings("unchecked")
+	protected static boolean containsNullValue(Map<String, Object> patch) {
+		for (Object value : patch.values()) {
+			if (value == null)
+				return true;
+			if (value instanceof Map && containsNullValue((Map<String, Object>) value))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Fill normalized system fields derived from patched fields, see
+	 * {@link #normalizeContent(String, String, Map, String, String, String, Map)}.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param content patched content or partial document with changed fields only
+	 */
+	protected void fillPatchedSystemFields(String type, Map<String, Object> typeDef, Map<String, Object> content) {
+		content.put(ContentObjectFields.SYS_UPDATED, new Date());
+		if (content.containsKey(ContentObjectFields.TAGS)) {
+			content.put(ContentObjectFields.SYS_TAGS, content.get(ContentObjectFields.TAGS));
+		}
+		if (content.containsKey(ContentObjectFields.SYS_CONTENT)) {
+			content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE,
+					content.get(ContentObjectFields.SYS_CONTENT) != null ? ProviderService.extractSysContentContentType(
+							typeDef, type) : null);
+		}
+	}
+
+	/**
+	 * Merge patch into content as defined by JSON merge patch - object values are merged recursively, other values
+	 * replace existing ones, and <code>null</code> value removes field.
+	 *
+	 * @param content to merge patch into
+	 * @param patch to merge
+	 */
+	@SuppressWarnings("unchecked")
+	protected static void mergePatch(Map<String, Object> content, Map<String, Object> patch) {
+		for (Map.Entry<String, Object> e : patch.entrySet()) {
+			Object value = e.getValue();
+			if (value == null) {
+				content.remove(e.getKey());
+			} else if (value instanceof Map && content.get(e.getKey()) instanceof Map) {
+				Map<String, Object> merged = new LinkedHashMap<String, Object>((Map<String, Object>) content.get(e
+						.getKey()));
+				mergePatch(merged, (Map<String, Object>) value);
+				content.put(e.getKey(), merged);
+			} else if (value instanceof Map) {
+				Map<String, Object> merged = new LinkedHashMap<String, Object>();
+				mergePatch(merged, (Map<String, Object>) value);
+				content.put(e.getKey(), merged);
+			} else {
+				content.put(e.getKey(), value);
+			}
+		}
+	}
+
+	/**
+	 * Process one chunk of content objects of one type. Each content object must contain <code>sys_content_id</code>
+	 * field with identifier of content. Normalization and preprocessors are run in {@link WorkerPoolService} and
+	 * documents are sent to the search index using bulk requests bounded by {@link #bulkMaxActions} and
+	 * {@link #bulkMaxBytes}. Content objects with same fingerprint as content already indexed are not processed at all
+	 * unless <code>force</code> is true.
+	 * <p>
+	 * This method fires {@link ContentStoredEvent} for each successfully stored content object.
+	 *
+	 * @param providerName name of provider who pushes content
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param chunk of content objects to process
+	 * @param force if true then content objects are processed even if they are not changed
+	 * @param items list to add status structures for processed content objects into, in same order as in chunk. Status
+	 *          structure is same as from {@link #createPushStatus(long)} or {@link #createUnchangedStatus()} with
+	 *          additional <code>sys_content_id</code> field, and <code>error</code> status is used for content objects
+	 *          which failed.
+	 */
+	public void pushContentBulkChunk(final String providerName, final String type, final Map<String, Object> typeDef,
+			List<Map<String, Object>> chunk, boolean force, List<Map<String, Object>> items) {
+
+		String indexName = ProviderService.extractIndexName(typeDef, type);
+		String indexType = ProviderService.extractIndexType(typeDef, type);
+		boolean persist = ProviderService.extractPersist(typeDef);
+
+		List<BulkItem> bulkItems = new ArrayList<BulkItem>(chunk.size());
+		List<String> sysContentIds = new ArrayList<String>(chunk.size());
+		for (Map<String, Object> content : chunk) {
+			BulkItem item = new BulkItem(content);
+			bulkItems.add(item);
+			try {
+				Object id = item.content.get(ContentObjectFields.SYS_CONTENT_ID);
+				item.contentId = id != null ? SearchUtils.trimToNull(id.toString()) : null;
+				if (item.contentId == null) {
+					item.error = "Field " + ContentObjectFields.SYS_CONTENT_ID + " is required";
+				} else {
+					item.sysContentId = providerService.generateSysId(type, item.contentId);
+					sysContentIds.add(item.sysContentId);
+				}
+			} catch (Exception e) {
+				item.error = e.getMessage();
+			}
+		}
+
+		// fingerprints of all content objects in chunk are obtained from search index in one request
+		final Map<String, String> indexedFingerprints = force ? new HashMap<String, String>() : getIndexedFingerprints(
+				indexName, indexType, sysContentIds);
+
+		final String typeDefFingerprint = computeTypeDefFingerprint(typeDef);
+		List<Callable<BulkItem>> tasks = new ArrayList<Callable<BulkItem>>(chunk.size());
+		for (final BulkItem item : bulkItems) {
+			if (item.error != null)
+				continue;
+			tasks.add(new Callable<BulkItem>() {
+				@Override
+				public BulkItem call() {
+					try {
+						String fingerprint = computeFingerprint(typeDefFingerprint, item.content);
+						if (fingerprint.equals(indexedFingerprints.get(item.sysContentId))) {
+							item.unchanged = true;
+						} else {
+							normalizeContent(providerName, type, typeDef, item.contentId, item.sysContentId,
+									fingerprint, item.content);
+						}
+					} catch (Exception e) {
+						item.error = e.getMessage();
+					}
+					return item;
+				}
+			});
+		}
+
+		try {
+			workerPoolService.executeAll(tasks);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		if (persist) {
+			persistContentBulkChunk(type, bulkItems);
+		}
+
+		List<String> toIndexIds = new ArrayList<String>(bulkItems.size());
+		for (BulkItem item : bulkItems) {
+			if (item.isToStore())
+				toIndexIds.add(item.sysContentId);
+		}
+		BulkContext bulkContext = new BulkContext(toIndexIds);
+
+		Client client = searchClientService.getClient();
+		BulkRequestBuilder brb = client.prepareBulk();
+		List<BulkItem> inBulk = new ArrayList<BulkItem>();
+		for (BulkItem item : bulkItems) {
+			if (!item.isToStore())
+				continue;
+			try {
+				ContentBeforeIndexedEvent event1 = new ContentBeforeIndexedEvent(item.sysContentId, item.content,
+						bulkContext);
+				log.log(Level.FINE, "Going to fire event {0}", event1);
+				eventBeforeIndexed.fire(event1);
+			} catch (Exception e) {
+				item.error = e.getMessage();
+				continue;
+			}
+
+			brb.add(client.prepareIndex(indexName, indexType, item.sysContentId).setSource(item.content));
+			inBulk.add(item);
+			if (brb.numberOfActions() >= bulkMaxActions || brb.request().estimatedSizeInBytes() >= bulkMaxBytes) {
+				executeBulk(brb, inBulk);
+				brb = client.prepareBulk();
+				inBulk = new ArrayList<BulkItem>();
+			}
+		}
+		if (!inBulk.isEmpty()) {
+			executeBulk(brb, inBulk);
+		}
+
+		for (BulkItem item : bulkItems) {
+			items.add(item.createStatus());
+		}
+	}
+
+	/**
+	 * Store valid content objects from chunk into persistence in one batch. If batch fails then objects are stored one by
+	 * one so error is reported only for objects which really can't be stored.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param bulkItems to store, only items without error and changed are stored
+	 */
+	protected void persistContentBulkChunk(String type, List<BulkItem> bulkItems) {
+		List<BulkItem> toStore = new ArrayList<BulkItem>(bulkItems.size());
+		List<Map<String, Object>> contents = new ArrayList<Map<String, Object>>(bulkItems.size());
+		for (BulkItem item : bulkItems) {
+			if (item.isToStore()) {
+				toStore.add(item);
+				contents.add(item.content);
+			}
+		}
+		if (contents.isEmpty())
+			return;
+		try {
+			contentPersistenceService.storeBatch(type, contents);
+		} catch (Exception e) {
+			log.log(Level.WARNING, "Batch store of content failed, so content is stored one by one: {0}", e.getMessage());
+			for (BulkItem item : toStore) {
+				try {
+					contentPersistenceService.store(item.sysContentId, type, item.content);
+				} catch (Exception e2) {
+					item.error = e2.getMessage();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute bulk index request and fire {@link ContentStoredEvent} for successfully indexed content objects.
+	 *
+	 * @param brb bulk request to execute
+	 * @param inBulk items added into bulk request in same order as index requests
+	 */
+	protected void executeBulk(BulkRequestBuilder brb, List<BulkItem> inBulk) {
+		BulkResponse br = brb.execute().actionGet();
+		for (BulkItemResponse bir : br.getItems()) {
+			BulkItem item = inBulk.get(bir.getItemId());
+			if (bir.isFailed()) {
+				item.error = bir.getFailureMessage();
+			} else {
+				item.version = bir.getVersion();
+				ContentStoredEvent event = new ContentStoredEvent(item.sysContentId, item.content);
+				log.log(Level.FINE, "Going to fire event {0}", event);
+				eventContentStored.fire(event);
+			}
+		}
+	}
+
+	/**
+	 * Delete chunk of content objects of one type. Content objects are deleted from persistence in one batch and from
+	 * search index in one bulk request, then one {@link ContentBulkDeletedEvent} is fired for all content objects which
+	 * were found in search index.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param sysContentIds <code>sys_id</code>s of content objects to delete
+	 * @return map with <code>sys_id</code> as key and status structure as value. Status structure contains
+	 *         <code>status</code> field with <code>delete</code>, <code>not_found</code> or <code>error</code> value,
+	 *         and <code>message</code> field.
+	 */
+	public Map<String, Map<String, Object>> deleteContentBulkChunk(String type, Map<String, Object> typeDef,
+			List<String> sysContentIds) {
+		Map<String, Map<String, Object>> ret = new LinkedHashMap<String, Map<String, Object>>();
+		if (sysContentIds.isEmpty())
+			return ret;
+
+		if (ProviderService.extractPersist(typeDef)) {
+			contentPersistenceService.deleteBatch(type, sysContentIds);
+		}
+
+		Client client = searchClientService.getClient();
+		String indexName = ProviderService.extractIndexName(typeDef, type);
+		String indexType = ProviderService.extractIndexType(typeDef, type);
+		BulkRequestBuilder brb = client.prepareBulk();
+		for (String sysContentId : sysContentIds) {
+			brb.add(client.prepareDelete(indexName, indexType, sysContentId));
+		}
+		List<String> deleted = new ArrayList<String>(sysContentIds.size());
+		try {
+			BulkResponse br = brb.execute().actionGet();
+			for (BulkItemResponse bir : br.getItems()) {
+				String sysContentId = sysContentIds.get(bir.getItemId());
+				// status of first occurrence is used if same id is passed more times
+				if (ret.containsKey(sysContentId))
+					continue;
+				if (bir.isFailed()) {
+					ret.put(sysContentId, createDeleteStatus(STATUS_ERROR, bir.getFailureMessage()));
+				} else if (((DeleteResponse) bir.getResponse()).isNotFound()) {
+					ret.put(sysContentId, createDeleteStatus(STATUS_NOT_FOUND, "Content not found to be deleted."));
+				} else {
+					ret.put(sysContentId, createDeleteStatus(STATUS_DELETE, "Content deleted successfully."));
+					deleted.add(sysContentId);
+				}
+			}
+		} catch (IndexMissingException e) {
+			for (String sysContentId : sysContentIds) {
+				ret.put(sysContentId, createDeleteStatus(STATUS_NOT_FOUND, "Content not found to be deleted."));
+			}
+		}
+
+		if (!deleted.isEmpty()) {
+			ContentBulkDeletedEvent event = new ContentBulkDeletedEvent(type, deleted);
+			log.log(Level.FINE, "Going to fire event {0}", event);
+			eventContentBulkDeleted.fire(event);
+		}
+		return ret;
+	}
+
+	private static Map<String, Object> createDeleteStatus(String status, String message) {
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		ret.put(RESPONSE_STATUS, status);
+		ret.put(RESPONSE_MESSAGE, message);
+		return ret;
+	}
+
+	/**
+	 * Delete all content objects of one type matching filter. Content objects are searched in search index (so content
+	 * stored only in persistence is not deleted) and deleted in chunks by
+	 * {@link #deleteContentBulkChunk(String, Map, List)}.
+	 * <p>
+	 * Filter is map where key is name of field, and value is one of:
+	 * <ul>
+	 * <li>String, number or boolean value - field must have this value
+	 * <li>List of values - field must have one of values
+	 * <li>Map with <code>from</code> and/or <code>to</code> keys - field value must be in this range (inclusive), used
+	 * for date ranges typically
+	 * </ul>
+	 * All conditions must match.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param typeDef <code>sys_content_type</code> configuration structure
+	 * @param filter to select content objects to delete, can't be empty
+	 * @return number of deleted content objects
+	 * @throws IllegalArgumentException if filter is not valid
+	 */
+	public long deleteContentByFilter(String type, Map<String, Object> typeDef, Map<String, Object> filter) {
+		FilterBuilder fb = buildDeleteFilter(type, filter);
+
+		Client client = searchClientService.getClient();
+		String indexName = ProviderService.extractIndexName(typeDef, type);
+		String indexType = ProviderService.extractIndexType(typeDef, type);
+		long count = 0;
+		try {
+			SearchResponse scrollResp = client.prepareSearch(indexName).setTypes(indexType)
+					.setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), fb)).setNoFields()
+					.setSearchType(SearchType.SCAN).setScroll(new TimeValue(DELETE_SCROLL_KEEPALIVE))
+					.setSize(bulkMaxActions).execute().actionGet();
+			while (true) {
+				scrollResp = client.prepareSearchScroll(scrollResp.getScrollId())
+						.setScroll(new TimeValue(DELETE_SCROLL_KEEPALIVE)).execute().actionGet();
+				if (scrollResp.getHits().getHits().length == 0)
+					break;
+				List<String> sysContentIds = new ArrayList<String>(scrollResp.getHits().getHits().length);
+				for (SearchHit hit : scrollResp.getHits()) {
+					sysContentIds.add(hit.getId());
+				}
+				for (Map<String, Object> status : deleteContentBulkChunk(type, typeDef, sysContentIds).values()) {
+					if (STATUS_DELETE.equals(status.get(RESPONSE_STATUS)))
+						count++;
+				}
+			}
+		} catch (IndexMissingException e) {
+			// nothing to delete
+		}
+		return count;
+	}
+
+	private static final long DELETE_SCROLL_KEEPALIVE = 60 * 1000;
+
+	/**
+	 * Build search index filter for {@link #deleteContentByFilter(String, Map, Map)}. Filter for
+	 * <code>sys_content_type</code> is always added, because more types may share one search index.
+	 *
+	 * @param type <code>sys_content_type</code> of content
+	 * @param filter definition
+	 * @return filter builder
+	 * @throws IllegalArgumentException if filter is not valid
+	 */
+	@SuppressWarnings("unchecked")
+	protected static FilterBuilder buildDeleteFilter(String type, Map<String, Object> filter) {
+		if (filter == null || filter.isEmpty())
+			throw new IllegalArgumentException("Filter must contain at least one field");
+		AndFilterBuilder ret = FilterBuilders.andFilter(FilterBuilders.termFilter(ContentObjectFields.SYS_CONTENT_TYPE,
+				type));
+		for (Map.Entry<String, Object> e : filter.entrySet()) {
+			String field = e.getKey();
+			Object value = e.getValue();
+			if (value instanceof Map) {
+				Map<String, Object> range = (Map<String, Object>) value;
+				Object from = range.get("from");
+				Object to = range.get("to");
+				if ((from == null && to == null) || range.size() > ((from != null ? 1 : 0) + (to != null ? 1 : 0)))
+					throw new IllegalArgumentException("Range filter for field " + field
+							+ " must contain 'from' and/or 'to' value only");
+				ret.add(FilterBuilders.rangeFilter(field).from(from).to(to));
+			} else if (value instanceof Collection) {
+				Collection<Object> values = (Collection<Object>) value;
+				if (values.isEmpty())
+					throw new IllegalArgumentException("Filter for field " + field + " must contain some value");
+				ret.add(FilterBuilders.termsFilter(field, values.toArray()));
+			} else if (value != null) {
+				ret.add(FilterBuilders.termFilter(field, value));
+			} else {
+				throw new IllegalArgumentException("Filter for field " + field + " must contain some value");
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Processing status of one content object processed by
+	 * {@link ContentPushService#pushContentBulkChunk(String, String, Map, List, boolean, List)}
+	 */
+	protected static class BulkItem {
+		protected Map<String, Object> content;
+		protected String contentId;
+		protected String sysContentId;
+		protected String error;
+		protected long version;
+		protected boolean unchanged;
+
+		protected BulkItem(Map<String, Object> content) {
+			this.content = content;
+		}
+
+		/**
+		 * @return true if content object has to be stored and indexed
+		 */
+		protected boolean isToStore() {
+			return error == null && !unchanged;
+		}
+
+		protected Map<String, Object> createStatus() {
+			Map<String, Object> ret;
+			if (error != null) {
+				ret = new LinkedHashMap<String, Object>();
+				ret.put(RESPONSE_STATUS, STATUS_ERROR);
+				ret.put(RESPONSE_MESSAGE, error);
+			} else if (unchanged) {
+				ret = createUnchangedStatus();
+			} else {
+				ret = createPushStatus(version);
+			}
+			Map<String, Object> status = new LinkedHashMap<String, Object>();
+			status.put(ContentObjectFields.SYS_CONTENT_ID, contentId);
+			status.putAll(ret);
+			return status;
+		}
+	}
+
+}
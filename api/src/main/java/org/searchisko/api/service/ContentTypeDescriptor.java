@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.SettingsException;
+
+/**
+ * Precompiled immutable descriptor of one <code>sys_content_type</code>. All values are resolved from configuration
+ * structure only once when descriptor is created using <code>ProviderService.extract*</code> methods. If some value is
+ * configured incorrectly then {@link SettingsException} thrown from resolution is remembered and thrown from
+ * appropriate getter, so behavior is same as when value is extracted from configuration structure directly.
+ *
+ * @author agent (agent at local)
+ * @see ProviderService#findContentTypeDescriptor(String)
+ */
+public class ContentTypeDescriptor {
+
+	private final String providerName;
+	private final String typeName;
+	private final Map<String, Object> typeDef;
+
+	private final boolean persist;
+	private final boolean searchAllExcluded;
+
+	private final String indexName;
+	private final SettingsException indexNameError;
+	private final String indexType;
+	private final SettingsException indexTypeError;
+	private final String[] searchIndices;
+	private final SettingsException searchIndicesError;
+	private final String sysType;
+	private final SettingsException sysTypeError;
+	private final String sysContentContentType;
+	private final SettingsException sysContentContentTypeError;
+	private final List<Map<String, Object>> preprocessorsDef;
+	private final SettingsException preprocessorsDefError;
+
+	/**
+	 * Create descriptor.
+	 *
+	 * @param providerName name of provider who owns this <code>sys_content_type</code>
+	 * @param typeName <code>sys_content_type</code> name
+	 * @param typeDef <code>sys_content_type</code> configuration structure, should not be changed after descriptor is
+	 *          created
+	 */
+	public ContentTypeDescriptor(String providerName, String typeName, Map<String, Object> typeDef) {
+		this.providerName = providerName;
+		this.typeName = typeName;
+		this.typeDef = typeDef;
+
+		persist = ProviderService.extractPersist(typeDef);
+		searchAllExcluded = ProviderService.extractSearchAllExcluded(typeDef);
+
+		String s = null;
+		SettingsException e = null;
+		try {
+			s = ProviderService.extractIndexName(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		indexName = s;
+		indexNameError = e;
+
+		s = null;
+		e = null;
+		try {
+			s = ProviderService.extractIndexType(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		indexType = s;
+		indexTypeError = e;
+
+		String[] sa = null;
+		e = null;
+		try {
+			sa = ProviderService.extractSearchIndices(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		searchIndices = sa;
+		searchIndicesError = e;
+
+		s = null;
+		e = null;
+		try {
+			s = ProviderService.extractSysType(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		sysType = s;
+		sysTypeError = e;
+
+		s = null;
+		e = null;
+		try {
+			s = ProviderService.extractSysContentContentType(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		sysContentContentType = s;
+		sysContentContentTypeError = e;
+
+		List<Map<String, Object>> pd = null;
+		e = null;
+		try {
+			pd = ProviderService.extractPreprocessors(typeDef, typeName);
+		} catch (SettingsException ex) {
+			e = ex;
+		}
+		preprocessorsDef = pd;
+		preprocessorsDefError = e;
+	}
+
+	/**
+	 * Build registry of descriptors for all <code>sys_content_type</code>s defined in providers.
+	 *
+	 * @param providers configuration structures of all providers
+	 * @return unmodifiable map where key is <code>sys_content_type</code> name and value is its descriptor
+	 * @throws SettingsException if structure of some provider configuration is incorrect
+	 */
+	public static Map<String, ContentTypeDescriptor> buildRegistry(List<Map<String, Object>> providers) {
+		Map<String, ContentTypeDescriptor> ret = new HashMap<>();
+		if (providers != null) {
+			for (Map<String, Object> providerDef : providers) {
+				Map<String, Map<String, Object>> types = ProviderService.extractAllContentTypes(providerDef);
+				if (types == null)
+					continue;
+				Object providerName = providerDef.get(ProviderService.NAME);
+				try {
+					for (Map.Entry<String, Map<String, Object>> type : types.entrySet()) {
+						// first definition wins if type is defined more times, same as linear search did
+						if (!ret.containsKey(type.getKey()) && type.getValue() != null) {
+							ret.put(type.getKey(), new ContentTypeDescriptor(providerName != null ? providerName.toString()
+									: null, type.getKey(), type.getValue()));
+						}
+					}
+				} catch (ClassCastException e) {
+					throw new SettingsException("Incorrect configuration for provider '" + providerName
+							+ "' when trying to retrieve all sys_provider_type configurations. Contact administrators please.");
+				}
+			}
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * @return name of provider who owns this <code>sys_content_type</code>
+	 */
+	public String getProviderName() {
+		return providerName;
+	}
+
+	/**
+	 * @return <code>sys_content_type</code> name
+	 */
+	public String getTypeName() {
+		return typeName;
+	}
+
+	/**
+	 * @return <code>sys_content_type</code> configuration structure this descriptor is created from
+	 */
+	public Map<String, Object> getTypeDef() {
+		return typeDef;
+	}
+
+	/**
+	 * @return search index name
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractIndexName(Map, String)
+	 */
+	public String getIndexName() {
+		if (indexNameError != null)
+			throw indexNameError;
+		return indexName;
+	}
+
+	/**
+	 * @return search index type
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractIndexType(Map, String)
+	 */
+	public String getIndexType() {
+		if (indexTypeError != null)
+			throw indexTypeError;
+		return indexType;
+	}
+
+	/**
+	 * @return names of search indices used for search in this type, new array is returned for each call
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractSearchIndices(Map, String)
+	 */
+	public String[] getSearchIndices() {
+		if (searchIndicesError != null)
+			throw searchIndicesError;
+		return searchIndices.clone();
+	}
+
+	/**
+	 * @return <code>sys_type</code> value
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractSysType(Map, String)
+	 */
+	public String getSysType() {
+		if (sysTypeError != null)
+			throw sysTypeError;
+		return sysType;
+	}
+
+	/**
+	 * @return <code>sys_content_content-type</code> value
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractSysContentContentType(Map, String)
+	 */
+	public String getSysContentContentType() {
+		if (sysContentContentTypeError != null)
+			throw sysContentContentTypeError;
+		return sysContentContentType;
+	}
+
+	/**
+	 * @return configuration of preprocessors
+	 * @throws SettingsException if not configured correctly
+	 * @see ProviderService#extractPreprocessors(Map, String)
+	 */
+	public List<Map<String, Object>> getPreprocessorsDef() {
+		if (preprocessorsDefError != null)
+			throw preprocessorsDefError;
+		return preprocessorsDef;
+	}
+
+	/**
+	 * @return true if content of this type is persisted
+	 * @see ProviderService#extractPersist(Map)
+	 */
+	public boolean isPersist() {
+		return persist;
+	}
+
+	/**
+	 * @return true if this type is excluded from search across all types
+	 * @see ProviderService#extractSearchAllExcluded(Map)
+	 */
+	public boolean isSearchAllExcluded() {
+		return searchAllExcluded;
+	}
+
+	@Override
+	public String toString() {
+		return "ContentTypeDescriptor [providerName=" + providerName + ", typeName=" + typeName + "]";
+	}
+
+}
@@ -0,0 +1,479 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.util.SuggestTrie;
+
+/**
+ * Service providing project name suggestions for type-ahead from in-memory index, so no Elasticsearch request is
+ * necessary for suggestions. Index is built from project info content stored in {@link #SEARCH_INDEX_NAME} search
+ * index when first suggestion is requested, updated when project info content is pushed or deleted, and reloaded
+ * periodically to get changes made on other cluster nodes.
+ * <p>
+ * Two {@link SuggestTrie}s are used - one with all suffixes of lowercased project names for exact substring matching,
+ * and one with suffixes starting at word boundaries for fuzzy matching.
+ *
+ * @author agent (agent at local)
+ */
+@Named
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ProjectSuggestionService {
+
+	public static final String SEARCH_INDEX_NAME = "data_project_info";
+
+	public static final String SEARCH_INDEX_TYPE = "jbossorg_project_info";
+
+	/**
+	 * Max number of suggestions returned for one query.
+	 */
+	public static final int MAX_SIZE = 200;
+
+	protected static final int LOAD_PAGE_SIZE = 100;
+
+	protected static final TimeValue LOAD_SCROLL_KEEPALIVE = TimeValue.timeValueMinutes(1);
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected SearchClientService searchClientService;
+
+	/**
+	 * One project available for suggestions.
+	 */
+	public static final class Project {
+
+		private final String id;
+		private final String code;
+		private final String name;
+
+		public Project(String id, String code, String name) {
+			this.id = id;
+			this.code = code;
+			this.name = name;
+		}
+
+		/**
+		 * @return Searchisko wide unique identifier of project info content ({@link ContentObjectFields#SYS_ID})
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * @return project code ({@link ContentObjectFields#SYS_PROJECT})
+		 */
+		public String getCode() {
+			return code;
+		}
+
+		/**
+		 * @return project name ({@link ContentObjectFields#SYS_PROJECT_NAME})
+		 */
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return "Project [id=" + id + ", code=" + code + ", name=" + name + "]";
+		}
+	}
+
+	/**
+	 * Immutable in-memory index used to serve suggestions.
+	 */
+	protected static final class Index {
+
+		protected final Project[] projects;
+		protected final SuggestTrie substrings;
+		protected final SuggestTrie words;
+
+		protected Index(Project[] projects, SuggestTrie substrings, SuggestTrie words) {
+			this.projects = projects;
+			this.substrings = substrings;
+			this.words = words;
+		}
+	}
+
+	/**
+	 * Projects by id, source of data for index.
+	 */
+	private final ConcurrentMap<String, Project> projects = new ConcurrentHashMap<>();
+
+	/**
+	 * Changes of projects made by event handlers, by project id. Used by {@link #reload()} so changes made while
+	 * projects are loaded are not lost. Guarded by {@link #projects} lock.
+	 */
+	private final Map<String, ProjectChange> changes = new HashMap<>();
+
+	/**
+	 * Change of project made by event handler.
+	 */
+	private static final class ProjectChange {
+
+		/**
+		 * Changed project, null if deleted.
+		 */
+		private final Project project;
+		private final long time;
+
+		private ProjectChange(Project project, long time) {
+			this.project = project;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Time [ms] for which changes made by event handlers are applied over projects loaded by {@link #reload()} started
+	 * after them, as pushed content is not visible for search immediately.
+	 */
+	protected static final long CHANGE_VISIBILITY_DELAY = 10000;
+
+	private volatile Index index;
+
+	/**
+	 * True if projects are changed and index has to be rebuilt.
+	 */
+	private volatile boolean dirty = false;
+
+	private volatile long lastLoad = 0;
+
+	private final AtomicLong loadCount = new AtomicLong();
+	private final AtomicLong rebuildCount = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong requestNanos = new AtomicLong();
+
+	/**
+	 * Suggest projects with name containing query.
+	 *
+	 * @param query to suggest projects for
+	 * @param size max number of suggestions
+	 * @return suggested projects, the most relevant first
+	 */
+	public List<Project> suggest(String query, int size) {
+		long start = System.nanoTime();
+		Index idx = getIndex();
+		String q = normalize(query);
+		List<Project> ret = new ArrayList<>();
+		if (!q.isEmpty()) {
+			for (int v : idx.substrings.prefix(q, Math.min(size, MAX_SIZE))) {
+				ret.add(idx.projects[v]);
+			}
+		}
+		countRequest(start);
+		return ret;
+	}
+
+	/**
+	 * Suggest projects with name containing word similar to query.
+	 *
+	 * @param query to suggest projects for
+	 * @param size max number of suggestions
+	 * @return suggested projects, the most similar first
+	 */
+	public List<Project> suggestFuzzy(String query, int size) {
+		long start = System.nanoTime();
+		Index idx = getIndex();
+		String q = normalize(query);
+		List<Project> ret = new ArrayList<>();
+		if (!q.isEmpty()) {
+			for (SuggestTrie.Match m : idx.words.fuzzyPrefix(q, getMaxEdits(q), Math.min(size, MAX_SIZE))) {
+				ret.add(idx.projects[m.getValue()]);
+			}
+		}
+		countRequest(start);
+		return ret;
+	}
+
+	private void countRequest(long start) {
+		requestCount.incrementAndGet();
+		requestNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * Get max edit distance for fuzzy matching of query - longer query allows more edits.
+	 *
+	 * @param query normalized query
+	 * @return max edit distance
+	 */
+	protected static int getMaxEdits(String query) {
+		if (query.length() < 3)
+			return 0;
+		if (query.length() < 6)
+			return 1;
+		return 2;
+	}
+
+	/**
+	 * Normalize text for matching - lowercase and collapse whitespaces.
+	 *
+	 * @param text to normalize
+	 * @return normalized text, never null
+	 */
+	public static String normalize(String text) {
+		if (text == null)
+			return "";
+		return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Get current index. Load it if not loaded yet, rebuild it if projects changed.
+	 *
+	 * @return index
+	 */
+	protected Index getIndex() {
+		Index idx = index;
+		if (idx == null) {
+			synchronized (this) {
+				if (index == null) {
+					reload();
+				}
+				idx = index;
+			}
+		} else if (dirty) {
+			synchronized (this) {
+				if (dirty) {
+					rebuild();
+				}
+				idx = index;
+			}
+		}
+		return idx;
+	}
+
+	/**
+	 * Reload all projects from search index and rebuild in-memory index. Called periodically by container timer.
+	 */
+	@Schedule(hour = "*", minute = "*/15", persistent = false)
+	public synchronized void reload() {
+		long loadStart = System.currentTimeMillis();
+		Map<String, Project> loaded = new LinkedHashMap<>();
+		try {
+			Client client = searchClientService.getClient();
+			SearchResponse response = client.prepareSearch(SEARCH_INDEX_NAME).setTypes(SEARCH_INDEX_TYPE)
+					.setQuery(QueryBuilders.matchAllQuery())
+					.addFields(ContentObjectFields.SYS_PROJECT, ContentObjectFields.SYS_PROJECT_NAME)
+					.setSearchType(SearchType.SCAN).setScroll(LOAD_SCROLL_KEEPALIVE).setSize(LOAD_PAGE_SIZE).execute()
+					.actionGet();
+			String scrollId = response.getScrollId();
+			while (scrollId != null) {
+				response = client.prepareSearchScroll(scrollId).setScroll(LOAD_SCROLL_KEEPALIVE).execute().actionGet();
+				scrollId = response.getScrollId();
+				SearchHit[] hits = response.getHits().getHits();
+				if (hits == null || hits.length == 0)
+					break;
+				for (SearchHit hit : hits) {
+					Project p = createProject(hit.getId(), getFieldValue(hit, ContentObjectFields.SYS_PROJECT),
+							getFieldValue(hit, ContentObjectFields.SYS_PROJECT_NAME));
+					if (p != null)
+						loaded.put(p.getId(), p);
+				}
+			}
+		} catch (IndexMissingException e) {
+			// no projects yet
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Project suggestions load failed: " + e.getMessage(), e);
+			if (index != null)
+				return;
+		}
+		synchronized (projects) {
+			// apply changes made during load, and changes which may be not visible for search yet
+			for (Iterator<Map.Entry<String, ProjectChange>> it = changes.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<String, ProjectChange> change = it.next();
+				if (change.getValue().time < loadStart - CHANGE_VISIBILITY_DELAY) {
+					it.remove();
+				} else if (change.getValue().project != null) {
+					loaded.put(change.getKey(), change.getValue().project);
+				} else {
+					loaded.remove(change.getKey());
+				}
+			}
+			projects.clear();
+			projects.putAll(loaded);
+		}
+		lastLoad = System.currentTimeMillis();
+		loadCount.incrementAndGet();
+		rebuild();
+		log.log(Level.FINE, "Project suggestions loaded for {0} projects", loaded.size());
+	}
+
+	private static String getFieldValue(SearchHit hit, String fieldName) {
+		if (hit.getFields() == null)
+			return null;
+		SearchHitField f = hit.getFields().get(fieldName);
+		if (f == null || f.getValue() == null)
+			return null;
+		return f.getValue().toString();
+	}
+
+	/**
+	 * Create project for suggestions.
+	 *
+	 * @param id of project info content
+	 * @param code of project
+	 * @param name of project
+	 * @return project or null if data are not complete
+	 */
+	protected static Project createProject(String id, String code, String name) {
+		if (id == null || code == null || name == null || name.trim().isEmpty())
+			return null;
+		return new Project(id, code, name);
+	}
+
+	/**
+	 * Rebuild in-memory index from current projects. Projects are ranked by name length and then alphabetically, so
+	 * shorter names are suggested first.
+	 */
+	protected synchronized void rebuild() {
+		dirty = false;
+		List<Project> list = new ArrayList<>(projects.values());
+		Collections.sort(list, new Comparator<Project>() {
+			@Override
+			public int compare(Project o1, Project o2) {
+				if (o1.getName().length() != o2.getName().length())
+					return o1.getName().length() < o2.getName().length() ? -1 : 1;
+				int ret = o1.getName().compareToIgnoreCase(o2.getName());
+				return ret != 0 ? ret : o1.getId().compareTo(o2.getId());
+			}
+		});
+
+		SuggestTrie.Builder substrings = new SuggestTrie.Builder();
+		SuggestTrie.Builder words = new SuggestTrie.Builder();
+		for (int v = 0; v < list.size(); v++) {
+			String name = normalize(list.get(v).getName());
+			for (int i = 0; i < name.length(); i++) {
+				if (Character.isWhitespace(name.charAt(i)))
+					continue;
+				String suffix = name.substring(i);
+				substrings.add(suffix, v);
+				if (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)))
+					words.add(suffix, v);
+			}
+		}
+		index = new Index(list.toArray(new Project[list.size()]), substrings.build(MAX_SIZE), words.build(MAX_SIZE));
+		rebuildCount.incrementAndGet();
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentStoredEvent} used to update suggestions when project info is pushed. Index is
+	 * rebuilt lazily when next suggestion is requested, so bulk push doesn't rebuild it for every project.
+	 *
+	 * @param event to process
+	 */
+	public void contentStoredEventHandler(@Observes ContentStoredEvent event) {
+		if (event == null || event.getContentData() == null
+				|| !SEARCH_INDEX_TYPE.equals(event.getContentData().get(ContentObjectFields.SYS_CONTENT_TYPE)))
+			return;
+		Map<String, Object> data = event.getContentData();
+		Project p = createProject(event.getContentId(), toString(data.get(ContentObjectFields.SYS_PROJECT)),
+				toString(data.get(ContentObjectFields.SYS_PROJECT_NAME)));
+		changeProject(event.getContentId(), p);
+		dirty = true;
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentDeletedEvent} used to update suggestions when project info is deleted.
+	 *
+	 * @param event to process
+	 */
+	public void contentDeletedEventHandler(@Observes ContentDeletedEvent event) {
+		if (event == null || event.getContentId() == null)
+			return;
+		if (changeProject(event.getContentId(), null) != null)
+			dirty = true;
+	}
+
+	/**
+	 * CDI Event handler for {@link ContentBulkDeletedEvent} used to update suggestions when project infos are deleted.
+	 *
+	 * @param event to process
+	 */
+	public void contentBulkDeletedEventHandler(@Observes ContentBulkDeletedEvent event) {
+		if (event == null || event.getContentIds() == null || !SEARCH_INDEX_TYPE.equals(event.getSysContentType()))
+			return;
+		for (String contentId : event.getContentIds()) {
+			if (changeProject(contentId, null) != null)
+				dirty = true;
+		}
+	}
+
+	/**
+	 * Put or remove project and record this change for {@link #reload()}.
+	 *
+	 * @param id of project
+	 * @param project to put, null to remove project
+	 * @return previous project with given id, null if there was none
+	 */
+	private Project changeProject(String id, Project project) {
+		synchronized (projects) {
+			changes.put(id, new ProjectChange(project, System.currentTimeMillis()));
+			return project != null ? projects.put(id, project) : projects.remove(id);
+		}
+	}
+
+	private static String toString(Object o) {
+		return o != null ? o.toString() : null;
+	}
+
+	/**
+	 * Get suggestion statistics.
+	 *
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		Index idx = index;
+		ret.put("projects", idx != null ? idx.projects.length : 0);
+		ret.put("keys", idx != null ? idx.substrings.getKeyCount() + idx.words.getKeyCount() : 0);
+		ret.put("loads", loadCount.get());
+		ret.put("last_load", lastLoad);
+		ret.put("rebuilds", rebuildCount.get());
+		long requests = requestCount.get();
+		ret.put("requests", requests);
+		ret.put("avg_request_micros", requests > 0 ? requestNanos.get() / requests / 1000 : 0);
+		return ret;
+	}
+
+}
@@ -5,10 +5,16 @@
  */
 package org.searchisko.api.service;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
@@ -19,8 +25,12 @@ import javax.ws.rs.core.StreamingOutput;
 import org.elasticsearch.common.settings.SettingsException;
 import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessor;
 import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessorFactory;
+import org.searchisko.api.cache.AllProvidersCache;
+import org.searchisko.api.cache.ExpiringCacheBase;
 import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.PreprocessorChainCache;
 import org.searchisko.api.cache.ProviderCache;
+import org.searchisko.api.cache.SearchResultCache;
 import org.searchisko.persistence.service.EntityService;
 
 /**
@@ -82,6 +92,15 @@ public class ProviderService implements EntityService {
 	@Inject
 	protected ProviderCache providerCache;
 
+	@Inject
+	protected AllProvidersCache allProvidersCache;
+
+	@Inject
+	protected PreprocessorChainCache preprocessorChainCache;
+
+	@Inject
+	protected SearchResultCache searchResultCache;
+
 	/**
 	 * Check if password matches for given provider.
 	 * 
@@ -132,19 +151,25 @@ public class ProviderService implements EntityService {
 	 * @return content type configuration structure or <code>null</code> if not found
 	 * 
 	 * @see #parseTypeNameFromSysId(String)
+	 * @see #findContentTypeDescriptor(String)
 	 */
 	public Map<String, Object> findContentType(String typeName) {
-		// we do not cache here because listAllProviders() caches.
-		List<Map<String, Object>> allProviders = getAll();
-		if (allProviders != null) {
-			for (Map<String, Object> providerDef : allProviders) {
-				Map<String, Object> ct = extractContentType(providerDef, typeName);
-				if (ct != null) {
-					return ct;
-				}
-			}
-		}
-		return null;
+		ContentTypeDescriptor ctd = findContentTypeDescriptor(typeName);
+		return ctd != null ? ctd.getTypeDef() : null;
+	}
+
+	/**
+	 * Find precompiled descriptor of 'provider content type' based on its identifier (called <code>sys_content_type</code>
+	 * ). Lookup is O(1) in registry rebuilt whenever provider configurations are reloaded.
+	 * 
+	 * @param typeName <code>sys_content_type</code> to look for
+	 * @return content type descriptor or <code>null</code> if not found
+	 */
+	public ContentTypeDescriptor findContentTypeDescriptor(String typeName) {
+		if (typeName == null)
+			return null;
+		// we do not cache here because allProvidersCache caches.
+		return allProvidersCache.getContentTypes(allProvidersLoader).get(typeName);
 	}
 
 	/**
@@ -157,35 +182,28 @@ public class ProviderService implements EntityService {
 	public Map<String, Object> findProvider(String providerName) {
 		if (providerName == null)
 			return null;
-		Map<String, Object> ret = providerCache.get(providerName);
-		if (ret == null) {
-			ret = get(providerName);
-			if (ret != null)
-				providerCache.put(providerName, ret);
-		}
-		return ret;
+		return providerCache.get(providerName, providerLoader);
 	}
 
 	/**
-	 * Cache of all providers list.
-	 * 
-	 * @see #getAll()
+	 * Loader of provider configuration into {@link #providerCache}.
 	 */
-	protected List<Map<String, Object>> cacheAllProviders;
+	private final ExpiringCacheBase.Loader<Map<String, Object>> providerLoader = new ExpiringCacheBase.Loader<Map<String, Object>>() {
+		@Override
+		public Map<String, Object> load(String key) {
+			return get(key);
+		}
+	};
 
 	/**
-	 * validity timestamp for cache of all providers list.
-	 * 
-	 * @see #getAll()
+	 * Loader of all providers list into {@link #allProvidersCache}.
 	 */
-	protected long cacheAllProvidersValidTo = 0;
-
-	/**
-	 * Time to live to compute validity timestamp for cache of all providers list.
-	 * 
-	 * @see #getAll()
-	 */
-	protected long cacheAllProvidersTTL = 10000;
+	private final ExpiringCacheBase.Loader<List<Map<String, Object>>> allProvidersLoader = new ExpiringCacheBase.Loader<List<Map<String, Object>>>() {
+		@Override
+		public List<Map<String, Object>> load(String key) {
+			return entityService.getAll();
+		}
+	};
 
 	@Override
 	public String create(Map<String, Object> entity) {
@@ -202,19 +220,16 @@ public class ProviderService implements EntityService {
 
 	/**
 	 * List configuration for all providers. Value is cached here with timeout so may provide rather obsolete data
-	 * sometimes!
+	 * sometimes! Only one thread reloads the value when cache timeout lapses, others are served with obsolete data
+	 * meanwhile.
 	 * 
-	 * @return list with configurations for all providers
-	 * @see ProviderService#cacheAllProvidersTTL
+	 * @return unmodifiable list with unmodifiable configurations for all providers
+	 * @see AllProvidersCache
 	 * 
 	 */
 	@Override
 	public List<Map<String, Object>> getAll() {
-		if (cacheAllProviders == null || cacheAllProvidersValidTo < System.currentTimeMillis()) {
-			cacheAllProviders = entityService.getAll();
-			cacheAllProvidersValidTo = System.currentTimeMillis() + cacheAllProvidersTTL;
-		}
-		return cacheAllProviders;
+		return allProvidersCache.get(allProvidersLoader);
 	}
 
 	@Override
@@ -243,26 +258,49 @@ public class ProviderService implements EntityService {
 	 * Flush all caches containing data extracted from Provider definitions.
 	 */
 	public void flushCaches() {
-		cacheAllProvidersValidTo = 0;
+		if (allProvidersCache != null)
+			allProvidersCache.flush();
 		if (indexNamesCache != null)
 			indexNamesCache.flush();
 		if (providerCache != null)
 			providerCache.flush();
+		if (preprocessorChainCache != null)
+			preprocessorChainCache.flush();
+		if (searchResultCache != null)
+			searchResultCache.flush();
 	}
 
 	/**
-	 * Run defined content preprocessors on passed in content.
+	 * Run defined content preprocessors on passed in content. Chain of preprocessors is compiled only once for each
+	 * <code>sys_content_type</code> and cached in {@link PreprocessorChainCache} until provider configuration changes.
 	 * 
-	 * @param typeName <code>sys_content_type</code> name we run preprocessors for to be used for error messages
+	 * @param typeName <code>sys_content_type</code> name we run preprocessors for, used as cache key and for error
+	 *          messages
 	 * @param preprocessorsDef definition of preprocessors - see {@link #extractPreprocessors(Map, String)}
 	 * @param content to run preprocessors on
 	 */
 	public void runPreprocessors(String typeName, List<Map<String, Object>> preprocessorsDef, Map<String, Object> content) {
+		runPreprocessors(typeName, preprocessorsDef, content, null);
+	}
+
+	/**
+	 * Run only selected content preprocessors on passed in content. Cached chain of all defined preprocessors is used,
+	 * see {@link #runPreprocessors(String, List, Map)}.
+	 * 
+	 * @param typeName <code>sys_content_type</code> name we run preprocessors for, used as cache key and for error
+	 *          messages
+	 * @param preprocessorsDef definition of preprocessors - see {@link #extractPreprocessors(Map, String)}
+	 * @param content to run preprocessors on
+	 * @param selected flags with same length as <code>preprocessorsDef</code> determining which preprocessors are run,
+	 *          see {@link #selectPreprocessorsForFields(List, Collection)}. All preprocessors are run if null.
+	 */
+	public void runPreprocessors(String typeName, List<Map<String, Object>> preprocessorsDef,
+			Map<String, Object> content, boolean[] selected) {
 		try {
-			List<StructuredContentPreprocessor> preprocessors = StructuredContentPreprocessorFactory.createPreprocessors(
-					preprocessorsDef, searchClientService.getClient());
-			for (StructuredContentPreprocessor preprocessor : preprocessors) {
-				content = preprocessor.preprocessData(content);
+			List<StructuredContentPreprocessor> preprocessors = getPreprocessors(typeName, preprocessorsDef);
+			for (int i = 0; i < preprocessors.size(); i++) {
+				if (selected == null || (i < selected.length && selected[i]))
+					content = preprocessors.get(i).preprocessData(content);
 			}
 		} catch (IllegalArgumentException e) {
 			throw new SettingsException("Bad configuration of some 'input_preprocessors' for sys_content_type=" + typeName
@@ -273,6 +311,27 @@ public class ProviderService implements EntityService {
 		}
 	}
 
+	/**
+	 * Get compiled chain of preprocessors, from cache if available.
+	 * 
+	 * @param typeName <code>sys_content_type</code> name preprocessors are for
+	 * @param preprocessorsDef definition of preprocessors
+	 * @return chain of preprocessors, never null
+	 */
+	protected List<StructuredContentPreprocessor> getPreprocessors(String typeName,
+			List<Map<String, Object>> preprocessorsDef) {
+		List<StructuredContentPreprocessor> preprocessors = null;
+		if (preprocessorChainCache != null)
+			preprocessors = preprocessorChainCache.get(typeName, preprocessorsDef);
+		if (preprocessors == null) {
+			preprocessors = Collections.unmodifiableList(StructuredContentPreprocessorFactory.createPreprocessors(
+					preprocessorsDef, searchClientService.getClient()));
+			if (preprocessorChainCache != null)
+				preprocessorChainCache.put(typeName, preprocessorsDef, preprocessors);
+		}
+		return preprocessors;
+	}
+
 	/**
 	 * Generate system wide unique <code>sys_id</code> value from <code>sys_content_type</code> and
 	 * <code>sys_content_id</code>.
@@ -363,6 +422,73 @@ public class ProviderService implements EntityService {
 		}
 	}
 
+	/**
+	 * Select preprocessors which have to be run when given content fields are changed. Preprocessor is selected if some
+	 * field name used in its <code>settings</code> is same as changed field, or is its parent or child field (dot
+	 * notation). All string values, <code>{field}</code> patterns in them and keys of nested objects are handled as
+	 * field names. All fields used by selected preprocessor are handled as changed for subsequent preprocessors then,
+	 * because they may be its target fields. Selection is based on configuration only, so it expects that
+	 * preprocessors refer to all fields they read from in their settings.
+	 * 
+	 * @param preprocessorsDef definition of preprocessors - see {@link #extractPreprocessors(Map, String)}
+	 * @param changedFields names of changed content fields
+	 * @return flags with same length as <code>preprocessorsDef</code>, true means preprocessor has to be run
+	 */
+	public static boolean[] selectPreprocessorsForFields(List<Map<String, Object>> preprocessorsDef,
+			Collection<String> changedFields) {
+		if (preprocessorsDef == null)
+			return new boolean[0];
+		boolean[] ret = new boolean[preprocessorsDef.size()];
+		Set<String> changed = new HashSet<String>(changedFields);
+		for (int i = 0; i < preprocessorsDef.size(); i++) {
+			Set<String> used = new HashSet<String>();
+			Map<String, Object> def = preprocessorsDef.get(i);
+			if (def != null) {
+				collectFieldNames(def.get("settings"), used, false);
+			}
+			for (String field : used) {
+				if (isFieldAffected(field, changed)) {
+					ret[i] = true;
+					changed.addAll(used);
+					break;
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static final Pattern FIELD_PATTERN = Pattern.compile("\\{([^{}]+)\\}");
+
+	@SuppressWarnings("unchecked")
+	private static void collectFieldNames(Object value, Set<String> fields, boolean withKeys) {
+		if (value instanceof String) {
+			String s = (String) value;
+			fields.add(s);
+			Matcher m = FIELD_PATTERN.matcher(s);
+			while (m.find()) {
+				fields.add(m.group(1));
+			}
+		} else if (value instanceof Map) {
+			for (Map.Entry<String, Object> e : ((Map<String, Object>) value).entrySet()) {
+				if (withKeys)
+					fields.add(e.getKey());
+				collectFieldNames(e.getValue(), fields, true);
+			}
+		} else if (value instanceof Collection) {
+			for (Object o : (Collection<Object>) value) {
+				collectFieldNames(o, fields, true);
+			}
+		}
+	}
+
+	private static boolean isFieldAffected(String field, Set<String> changed) {
+		for (String c : changed) {
+			if (field.equals(c) || field.startsWith(c + ".") || c.startsWith(field + "."))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Get search subsystem index name from one <code>sys_content_type</code> configuration structure.
 	 * 
@@ -0,0 +1,403 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.searchisko.api.util.SuggestTrie;
+
+/**
+ * Service providing query string completions for type-ahead from in-memory index built from history of search queries
+ * logged into {@link StatsRecordType#SEARCH} statistics records. Every distinct query gets weight counted from its
+ * usages, where older usage weights less (weight of one usage halves every {@link #HALF_LIFE_MILLIS}). Only queries
+ * which returned some hits are used.
+ * <p>
+ * Index is updated incrementally - only statistics records written since last update are read and added to the weights
+ * aggregated so far. Update is performed periodically by container timer, full rebuild can be requested over
+ * <code>update_query_suggestions</code> task.
+ *
+ * @author agent (agent at local)
+ * @see org.searchisko.api.reindexer.UpdateQuerySuggestionsTask
+ */
+@Named
+@ApplicationScoped
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuerySuggestionService {
+
+	/**
+	 * Max number of completions returned for one query.
+	 */
+	public static final int MAX_SIZE = 50;
+
+	/**
+	 * Max number of distinct queries kept in index, queries with the lowest weight are removed.
+	 */
+	protected static final int MAX_QUERIES = 50000;
+
+	/**
+	 * Longer queries are not used for completions.
+	 */
+	protected static final int MAX_QUERY_LENGTH = 100;
+
+	/**
+	 * Weight of query usage halves after this time.
+	 */
+	protected static final long HALF_LIFE_MILLIS = 14L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * Queries with lower weight are removed from index. One usage falls under this weight after approx. 7 half lives.
+	 */
+	protected static final double MIN_WEIGHT = 0.01;
+
+	/**
+	 * How old statistics records are read during full rebuild.
+	 */
+	protected static final long HISTORY_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * Statistics records are written asynchronously, so the newest ones are read later by next update.
+	 */
+	protected static final long UPDATE_LAG_MILLIS = 60L * 1000;
+
+	protected static final String FIELD_QUERY_STRING = "query_string";
+	protected static final String FIELD_TOTAL_HITS = "total_hits";
+
+	protected static final int LOAD_PAGE_SIZE = 500;
+
+	protected static final TimeValue LOAD_SCROLL_KEEPALIVE = TimeValue.timeValueMinutes(1);
+
+	private static final DateTimeFormatter DATE_TIME_FORMATTER_UTC = ISODateTimeFormat.dateTime().withZoneUTC();
+
+	private static final DateTimeFormatter DATE_TIME_PARSER_UTC = ISODateTimeFormat.dateTimeParser().withZoneUTC();
+
+	@Inject
+	protected Logger log;
+
+	@Inject
+	protected StatsClientService statsClientService;
+
+	/**
+	 * Aggregated usage of one distinct query.
+	 */
+	protected static final class QueryStats {
+
+		/**
+		 * Query as used last time, with whitespaces collapsed.
+		 */
+		protected String query;
+
+		/**
+		 * Weight at {@link #weightTime}.
+		 */
+		protected double weight;
+
+		protected long weightTime;
+
+		protected QueryStats(String query, long time) {
+			this.query = query;
+			this.weight = 1;
+			this.weightTime = time;
+		}
+
+		protected void add(String query, long time) {
+			if (time >= weightTime) {
+				weight = weight * decay(time - weightTime) + 1;
+				weightTime = time;
+				this.query = query;
+			} else {
+				weight += decay(weightTime - time);
+			}
+		}
+
+		protected double getWeight(long now) {
+			return now > weightTime ? weight * decay(now - weightTime) : weight;
+		}
+	}
+
+	/**
+	 * Immutable in-memory index used to serve completions.
+	 */
+	protected static final class Index {
+
+		protected final String[] queries;
+		protected final SuggestTrie trie;
+
+		protected Index(String[] queries, SuggestTrie trie) {
+			this.queries = queries;
+			this.trie = trie;
+		}
+	}
+
+	/**
+	 * Aggregated queries by normalized query. Guarded by this.
+	 */
+	private final Map<String, QueryStats> queries = new HashMap<>();
+
+	/**
+	 * Timestamp of the newest statistics records processed into {@link #queries}, 0 if not loaded yet. Guarded by this.
+	 */
+	private long loadedTo = 0;
+
+	private volatile Index index;
+
+	private volatile long lastUpdate = 0;
+
+	private final AtomicLong updateCount = new AtomicLong();
+	private final AtomicLong recordCount = new AtomicLong();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong requestNanos = new AtomicLong();
+
+	/**
+	 * Get completions for query.
+	 *
+	 * @param query to get completions for
+	 * @param size max number of completions
+	 * @return completions, the most relevant first. Query itself is not included. Never null.
+	 */
+	public List<String> suggest(String query, int size) {
+		long start = System.nanoTime();
+		Index idx = index;
+		String q = normalize(query);
+		List<String> ret = new ArrayList<>();
+		if (idx != null && !q.isEmpty()) {
+			size = Math.min(size, MAX_SIZE);
+			for (int v : idx.trie.prefix(q, size + 1)) {
+				String completion = idx.queries[v];
+				if (ret.size() < size && !q.equals(normalize(completion)))
+					ret.add(completion);
+			}
+		}
+		requestCount.incrementAndGet();
+		requestNanos.addAndGet(System.nanoTime() - start);
+		return ret;
+	}
+
+	/**
+	 * Normalize query for matching - lowercase and collapse whitespaces.
+	 *
+	 * @param query to normalize
+	 * @return normalized query, never null
+	 */
+	public static String normalize(String query) {
+		return collapseWhitespaces(query).toLowerCase(Locale.ENGLISH);
+	}
+
+	private static String collapseWhitespaces(String query) {
+		if (query == null)
+			return "";
+		return query.trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * Incrementally update index from statistics records written since last update. Called periodically by container
+	 * timer.
+	 */
+	@Schedule(hour = "*", minute = "*/5", persistent = false)
+	public void scheduledUpdate() {
+		try {
+			update(false);
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Query suggestions update failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Update index from statistics records.
+	 *
+	 * @param fullRebuild if true then aggregated queries are dropped and whole history is read, otherwise only records
+	 *          written since last update are read
+	 * @return number of processed statistics records
+	 */
+	public synchronized int update(boolean fullRebuild) {
+		Client client = statsClientService.getClient();
+		if (client == null) {
+			// statistics are disabled
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		long to = now - UPDATE_LAG_MILLIS;
+		long from = loadedTo;
+		if (fullRebuild || from == 0) {
+			from = now - HISTORY_MILLIS;
+			queries.clear();
+		}
+		int count = 0;
+		if (to > from) {
+			count = loadRecords(client, from, to);
+			loadedTo = to;
+		}
+		rebuild(now);
+		lastUpdate = now;
+		updateCount.incrementAndGet();
+		recordCount.addAndGet(count);
+		log.log(Level.FINE, "Query suggestions updated from {0} stats records", count);
+		return count;
+	}
+
+	/**
+	 * Read statistics records from given time interval and add them into aggregated queries.
+	 *
+	 * @param client to read records over
+	 * @param from timestamp, exclusive
+	 * @param to timestamp, inclusive
+	 * @return number of processed records
+	 */
+	protected int loadRecords(Client client, long from, long to) {
+		FilterBuilder filter = FilterBuilders.andFilter(
+				FilterBuilders.rangeFilter(StatsClientService.FIELD_DATE).gt(DATE_TIME_FORMATTER_UTC.print(from))
+						.lte(DATE_TIME_FORMATTER_UTC.print(to)), FilterBuilders.existsFilter(FIELD_QUERY_STRING),
+				FilterBuilders.rangeFilter(FIELD_TOTAL_HITS).gt(0));
+		int count = 0;
+		try {
+			SearchResponse response = client.prepareSearch(StatsRecordType.SEARCH.getSearchIndexName())
+					.setTypes(StatsRecordType.SEARCH.getSearchIndexType())
+					.setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter))
+					.addFields(FIELD_QUERY_STRING, StatsClientService.FIELD_DATE).setSearchType(SearchType.SCAN)
+					.setScroll(LOAD_SCROLL_KEEPALIVE).setSize(LOAD_PAGE_SIZE).execute().actionGet();
+			String scrollId = response.getScrollId();
+			while (scrollId != null) {
+				response = client.prepareSearchScroll(scrollId).setScroll(LOAD_SCROLL_KEEPALIVE).execute().actionGet();
+				scrollId = response.getScrollId();
+				SearchHit[] hits = response.getHits().getHits();
+				if (hits == null || hits.length == 0)
+					break;
+				for (SearchHit hit : hits) {
+					Long date = parseDate(getFieldValue(hit, StatsClientService.FIELD_DATE));
+					if (date != null)
+						addQuery(getFieldValue(hit, FIELD_QUERY_STRING), date);
+					count++;
+				}
+			}
+		} catch (IndexMissingException e) {
+			// no statistics yet
+		}
+		return count;
+	}
+
+	private static Object getFieldValue(SearchHit hit, String fieldName) {
+		if (hit.getFields() == null)
+			return null;
+		SearchHitField f = hit.getFields().get(fieldName);
+		return f != null ? f.getValue() : null;
+	}
+
+	protected static Long parseDate(Object value) {
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		if (value == null)
+			return null;
+		try {
+			return DATE_TIME_PARSER_UTC.parseMillis(value.toString());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Add one usage of query into aggregated queries. Index has to be rebuilt to use it for completions.
+	 *
+	 * @param query used
+	 * @param time when query was used
+	 */
+	protected synchronized void addQuery(Object query, long time) {
+		if (query == null)
+			return;
+		String q = collapseWhitespaces(query.toString());
+		if (q.isEmpty() || q.length() > MAX_QUERY_LENGTH)
+			return;
+		String key = q.toLowerCase(Locale.ENGLISH);
+		QueryStats s = queries.get(key);
+		if (s == null) {
+			queries.put(key, new QueryStats(q, time));
+		} else {
+			s.add(q, time);
+		}
+	}
+
+	/**
+	 * Rebuild index from aggregated queries. Queries with too low weight are removed.
+	 *
+	 * @param now timestamp weights are counted for
+	 */
+	protected synchronized void rebuild(final long now) {
+		List<Map.Entry<String, QueryStats>> list = new ArrayList<>(queries.entrySet());
+		Collections.sort(list, new Comparator<Map.Entry<String, QueryStats>>() {
+			@Override
+			public int compare(Map.Entry<String, QueryStats> o1, Map.Entry<String, QueryStats> o2) {
+				int ret = Double.compare(o2.getValue().getWeight(now), o1.getValue().getWeight(now));
+				return ret != 0 ? ret : o1.getKey().compareTo(o2.getKey());
+			}
+		});
+		SuggestTrie.Builder trie = new SuggestTrie.Builder();
+		List<String> indexed = new ArrayList<>();
+		for (Map.Entry<String, QueryStats> e : list) {
+			if (indexed.size() >= MAX_QUERIES || e.getValue().getWeight(now) < MIN_WEIGHT) {
+				queries.remove(e.getKey());
+			} else {
+				trie.add(e.getKey(), indexed.size());
+				indexed.add(e.getValue().query);
+			}
+		}
+		index = new Index(indexed.toArray(new String[indexed.size()]), trie.build(MAX_SIZE + 1));
+	}
+
+	/**
+	 * Get completion statistics.
+	 *
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		Index idx = index;
+		ret.put("queries", idx != null ? idx.queries.length : 0);
+		ret.put("updates", updateCount.get());
+		ret.put("last_update", lastUpdate);
+		ret.put("records", recordCount.get());
+		long requests = requestCount.get();
+		ret.put("requests", requests);
+		ret.put("avg_request_micros", requests > 0 ? requestNanos.get() / requests / 1000 : 0);
+		return ret;
+	}
+
+	/**
+	 * Weight decay factor for given age.
+	 */
+	protected static double decay(long ageMillis) {
+		return Math.pow(0.5, (double) ageMillis / HALF_LIFE_MILLIS);
+	}
+
+}
@@ -9,7 +9,9 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.ejb.Singleton;
+import javax.ejb.Startup;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
@@ -17,6 +19,8 @@ import javax.inject.Named;
 
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBeforeIndexedEvent.BulkContext;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
 import org.searchisko.api.events.ContentDeletedEvent;
 import org.searchisko.api.events.ContributorCodeChangedEvent;
 import org.searchisko.api.events.ContributorDeletedEvent;
@@ -33,14 +37,33 @@ import org.searchisko.persistence.service.RatingPersistenceService.RatingStats;
 @Named
 @ApplicationScoped
 @Singleton
+@Startup
 public class RatingService {
 
+	/**
+	 * Key for {@link BulkContext} data where rating statistics for whole bulk are stored.
+	 */
+	protected static final String BULK_DATA_RATING_STATS = "rating_stats";
+
 	@Inject
 	protected Logger log;
 
 	@Inject
 	protected RatingPersistenceService ratingPersistenceService;
 
+	/**
+	 * Initialize materialized rating statistics from ratings if necessary, eg. after upgrade.
+	 */
+	@PostConstruct
+	public void init() {
+		try {
+			if (ratingPersistenceService.initRatingStats())
+				log.info("Rating statistics initialized from stored ratings");
+		} catch (RuntimeException e) {
+			log.log(Level.WARNING, "Rating statistics not initialized: " + e.getMessage(), e);
+		}
+	}
+
 	/**
 	 * CDI Event handler for {@link ContributorDeletedEvent} used to remove ratings when contributor is deleted.
 	 * 
@@ -69,17 +92,45 @@ public class RatingService {
 		}
 	}
 
+	/**
+	 * CDI Event handler for {@link ContentBulkDeletedEvent} used to remove ratings of all deleted content in one batch.
+	 * 
+	 * @param event to process
+	 */
+	public void contentBulkDeletedEventHandler(@Observes ContentBulkDeletedEvent event) {
+		log.log(Level.FINE, "contentBulkDeletedEventHandler called for event {0}", event);
+		if (event != null && event.getContentIds() != null) {
+			if (!event.getContentIds().isEmpty())
+				ratingPersistenceService.deleteRatingsForContent(event.getContentIds().toArray(
+						new String[event.getContentIds().size()]));
+		} else {
+			log.warning("Invalid event " + event);
+		}
+	}
+
 	/**
 	 * CDI event handler for {@link ContentBeforeIndexedEvent}. Used to add content rating fields into content data before
-	 * indexed.
+	 * indexed. If content is indexed in bulk then rating statistics are loaded for whole bulk at once.
 	 */
+	@SuppressWarnings("unchecked")
 	public void handleContentRatingFields(@Observes ContentBeforeIndexedEvent event) {
 		log.log(Level.FINE, "handleContentRatingFields called for event {0}", event);
 		if (event == null || event.getContentId() == null || event.getContentData() == null) {
 			log.warning("Invalid event " + event);
 			return;
 		}
-		RatingStats rs = ratingPersistenceService.countRatingStats(event.getContentId());
+		RatingStats rs = null;
+		BulkContext bulkContext = event.getBulkContext();
+		if (bulkContext != null && bulkContext.getContentIds().contains(event.getContentId())) {
+			Map<String, RatingStats> stats = (Map<String, RatingStats>) bulkContext.getData(BULK_DATA_RATING_STATS);
+			if (stats == null) {
+				stats = ratingPersistenceService.countRatingStats(bulkContext.getContentIds());
+				bulkContext.putData(BULK_DATA_RATING_STATS, stats);
+			}
+			rs = stats.get(event.getContentId());
+		} else {
+			rs = ratingPersistenceService.countRatingStats(event.getContentId());
+		}
 		Map<String, Object> content = event.getContentData();
 		if (rs != null) {
 			content.put(ContentObjectFields.SYS_RATING_AVG, rs.getAverage());
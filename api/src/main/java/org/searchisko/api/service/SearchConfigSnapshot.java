@@ -0,0 +1,374 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.searchisko.api.ContentObjectFields;
+
+/**
+ * Parsed and validated search related configuration documents from {@link ConfigService} used by {@link SearchService}
+ * . Each configuration document is loaded and parsed lazily on first use and then kept in snapshot, so search requests
+ * served from the same snapshot perform no configuration I/O. Parsing errors are not kept, so document is loaded and
+ * parsed again on next use, and {@link SettingsException} is thrown again. Snapshot is thread safe.
+ *
+ * @author agent (agent at local)
+ * @see org.searchisko.api.cache.SearchConfigCache
+ */
+public class SearchConfigSnapshot {
+
+	private final ConfigService configService;
+
+	private final Logger log;
+
+	private volatile Section<Map<String, Float>> queryFields;
+	private volatile Section<Map<String, int[]>> highlightFields;
+	private volatile Section<Map<String, Object>> facets;
+	private volatile Section<String[]> responseFields;
+
+	/**
+	 * Create snapshot.
+	 *
+	 * @param configService to load configuration documents from
+	 * @param log to log configuration warnings into
+	 */
+	public SearchConfigSnapshot(ConfigService configService, Logger log) {
+		this.configService = configService;
+		this.log = log;
+	}
+
+	/**
+	 * Get fields to run fulltext query on, from {@value ConfigService#CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS}
+	 * configuration document.
+	 *
+	 * @return unmodifiable map where key is field name and value is boost (may be null if not defined or invalid), null
+	 *         if not configured
+	 */
+	public Map<String, Float> getQueryFields() {
+		Section<Map<String, Float>> s = queryFields;
+		if (s == null) {
+			s = new Section<>(parseQueryFields(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS)));
+			queryFields = s;
+		}
+		return s.value;
+	}
+
+	/**
+	 * Get fields to highlight in fulltext search results, from
+	 * {@value ConfigService#CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS} configuration document.
+	 *
+	 * @return unmodifiable map where key is field name and value is array with <code>fragment_size</code>,
+	 *         <code>number_of_fragments</code>, <code>fragment_offset</code> params. Null if not configured.
+	 * @throws SettingsException if configuration is invalid
+	 */
+	public Map<String, int[]> getHighlightFields() {
+		Section<Map<String, int[]>> s = highlightFields;
+		if (s == null) {
+			s = new Section<>(parseHighlightFields(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS)));
+			highlightFields = s;
+		}
+		return s.value;
+	}
+
+	/**
+	 * Get parsed configuration of facet, from {@value ConfigService#CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS}
+	 * configuration document.
+	 *
+	 * @param facetName name of facet to get configuration for
+	 * @return facet configuration or null if facet is not configured
+	 * @throws SettingsException if facet configuration is invalid
+	 */
+	public SemiParsedFacetConfig getFacetConfig(String facetName) {
+		return toFacetConfig(getFacets().get(facetName));
+	}
+
+	/**
+	 * Get (the first) name of facet that is built on top of "sys_type" field.
+	 *
+	 * @return facet name, empty string if there is no such facet
+	 * @throws SettingsException if configuration of some facet configured before the searched one is invalid
+	 */
+	public String getFacetNameUsingSysTypeField() {
+		for (Map.Entry<String, Object> e : getFacets().entrySet()) {
+			if (ContentObjectFields.SYS_TYPE.equals(toFacetConfig(e.getValue()).getFieldName())) {
+				return e.getKey();
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Get names of all facets using "date_histogram" facet type.
+	 *
+	 * @return set of facet names
+	 * @throws SettingsException if configuration of some facet is invalid
+	 */
+	public Set<String> getFacetNamesUsingDateHistogramFacetType() {
+		Set<String> ret = new LinkedHashSet<>();
+		for (Map.Entry<String, Object> e : getFacets().entrySet()) {
+			if ("date_histogram".equals(toFacetConfig(e.getValue()).getFacetType())) {
+				ret.add(e.getKey());
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Get fields returned in search response by default, from {@value ConfigService#CFGNAME_SEARCH_RESPONSE_FIELDS}
+	 * configuration document.
+	 *
+	 * @return array of field names, null if not configured. Array must not be changed!
+	 * @throws SettingsException if configuration is invalid
+	 */
+	public String[] getResponseFields() {
+		Section<String[]> s = responseFields;
+		if (s == null) {
+			s = new Section<>(parseResponseFields(configService.get(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS)));
+			responseFields = s;
+		}
+		return s.value;
+	}
+
+	/**
+	 * @return map with parsed facets. Value is {@link SemiParsedFacetConfig} or {@link SettingsException} if facet
+	 *         configuration is invalid.
+	 */
+	protected Map<String, Object> getFacets() {
+		Section<Map<String, Object>> s = facets;
+		if (s == null) {
+			s = new Section<>(parseFacets(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS)));
+			facets = s;
+		}
+		return s.value;
+	}
+
+	private static SemiParsedFacetConfig toFacetConfig(Object o) {
+		if (o instanceof SettingsException)
+			throw (SettingsException) o;
+		return (SemiParsedFacetConfig) o;
+	}
+
+	protected Map<String, Float> parseQueryFields(Map<String, Object> fields) {
+		if (fields == null)
+			return null;
+		Map<String, Float> ret = new LinkedHashMap<>();
+		for (String fieldName : fields.keySet()) {
+			Float boost = null;
+			String value = (String) fields.get(fieldName);
+			if (value != null && !value.trim().isEmpty()) {
+				try {
+					boost = Float.parseFloat(value);
+				} catch (NumberFormatException e) {
+					log.warning("Boost value has not valid float format for fulltext field " + fieldName
+							+ " in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+				}
+			}
+			ret.put(fieldName, boost);
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	protected static Map<String, int[]> parseHighlightFields(Map<String, Object> hf) {
+		if (hf == null)
+			return null;
+		Map<String, int[]> ret = new LinkedHashMap<>();
+		for (String fieldName : hf.keySet()) {
+			ret.put(
+					fieldName,
+					new int[] { parseHighlightSettingIntParam(hf, fieldName, "fragment_size"),
+							parseHighlightSettingIntParam(hf, fieldName, "number_of_fragments"),
+							parseHighlightSettingIntParam(hf, fieldName, "fragment_offset") });
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static int parseHighlightSettingIntParam(Map<String, Object> highlightConfigStructure, String fieldName,
+			String paramName) {
+		try {
+			Map<String, Object> fieldConfig = (Map<String, Object>) highlightConfigStructure.get(fieldName);
+			try {
+				Object o = fieldConfig.get(paramName);
+				if (o instanceof Integer) {
+					return ((Integer) o).intValue();
+				} else {
+					return Integer.parseInt(o.toString());
+				}
+			} catch (Exception e) {
+				throw new SettingsException("Missing or incorrect configuration of fulltext search highlight field '"
+						+ fieldName + "' parameter '" + paramName + "' in configuration document "
+						+ ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS + ". Contact administrators please.");
+			}
+		} catch (ClassCastException e) {
+			throw new SettingsException("Incorrect configuration of fulltext search highlight field '" + fieldName
+					+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS
+					+ ". Contact administrators please.");
+		}
+	}
+
+	protected static Map<String, Object> parseFacets(Map<String, Object> configuredFacets) {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		if (configuredFacets != null) {
+			for (String facetName : configuredFacets.keySet()) {
+				Object facetConfig = configuredFacets.get(facetName);
+				if (facetConfig != null) {
+					try {
+						ret.put(facetName, parseFacetType(facetConfig, facetName));
+					} catch (SettingsException e) {
+						ret.put(facetName, e);
+					}
+				}
+			}
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Parse facet type.
+	 *
+	 * @param facetConfig
+	 * @param facetName
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected static SemiParsedFacetConfig parseFacetType(final Object facetConfig, final String facetName) {
+		try {
+			Map<String, Object> map = (Map<String, Object>) facetConfig;
+			if (map.isEmpty() || (map.size() > 1 && !map.containsKey("_filtered"))
+					|| (map.size() > 2 && map.containsKey("_filtered"))) {
+				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
+						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
+						+ ": Multiple facet type is not allowed.");
+			}
+			SemiParsedFacetConfig config = new SemiParsedFacetConfig();
+			config.setFacetName(facetName);
+			for (String key : map.keySet()) {
+				if ("_filtered".equals(key)) {
+					Map<String, Object> filtered = (Map<String, Object>) map.get(key);
+					config.setFilteredSize((Integer) filtered.get("size"));
+					config.setFiltered(config.getFilteredSize() > 0 ? true : false);
+				} else {
+					config.setFacetType(key);
+				}
+			}
+			// get map one level deeper
+			map = (Map<String, Object>) map.get(config.getFacetType());
+			if (!map.containsKey("field") || map.isEmpty()) {
+				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
+						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
+						+ ": Missing required [field] field.");
+			}
+			String fieldName = (String) map.get("field");
+			if (fieldName == null || fieldName.isEmpty()) {
+				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
+						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
+						+ ": Invalid [field] field value.");
+			}
+			config.setFieldName(fieldName);
+			config.setOptionalSettings(map);
+			return config;
+		} catch (ClassCastException e) {
+			throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
+					+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS + ".");
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected static String[] parseResponseFields(Map<String, Object> cf) {
+		if (cf != null && cf.containsKey(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS)) {
+			Object o = cf.get(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS);
+			if (o instanceof Collection) {
+				return ((Collection<String>) o).toArray(new String[((Collection) o).size()]);
+			} else if (o instanceof String) {
+				return new String[] { (String) o };
+			} else {
+				throw new SettingsException(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS
+						+ " configuration document is invalid. Contact administrators please.");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Holder of parsed configuration section, used to distinguish not loaded section from section with null value.
+	 */
+	private static class Section<T> {
+		protected final T value;
+
+		protected Section(T value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Facet configuration parsed from {@value ConfigService#CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS} configuration
+	 * document.
+	 */
+	public static class SemiParsedFacetConfig {
+		private String facetName;
+		private String facetType;
+		private String fieldName;
+		private Map<String, Object> optionalSettings;
+		private boolean filtered = false;
+		private int filteredSize = 0;
+
+		public void setFacetName(String value) {
+			this.facetName = value;
+		}
+
+		public String getFacetName() {
+			return this.facetName;
+		}
+
+		public void setFacetType(String value) {
+			this.facetType = value;
+		}
+
+		public String getFacetType() {
+			return this.facetType;
+		}
+
+		public void setFieldName(String value) {
+			this.fieldName = value;
+		}
+
+		public String getFieldName() {
+			return this.fieldName;
+		}
+
+		public void setOptionalSettings(Map<String, Object> object) {
+			this.optionalSettings = object;
+		}
+
+		public Map<String, Object> getOptionalSettings() {
+			return this.optionalSettings;
+		}
+
+		public void setFiltered(boolean value) {
+			this.filtered = value;
+		}
+
+		public boolean isFiltered() {
+			return this.filtered;
+		}
+
+		public void setFilteredSize(int value) {
+			this.filteredSize = value;
+		}
+
+		public int getFilteredSize() {
+			return this.filteredSize;
+		}
+	}
+
+}
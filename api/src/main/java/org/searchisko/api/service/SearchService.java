@@ -5,6 +5,7 @@
  */
 package org.searchisko.api.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -15,39 +16,61 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
 import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.AndFilterBuilder;
 import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.FilteredQueryBuilder;
+import org.elasticsearch.index.query.OrFilterBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryFilterBuilder;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.index.query.RangeFilterBuilder;
 import org.elasticsearch.index.query.TermsFilterBuilder;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.facet.datehistogram.DateHistogramFacetBuilder;
 import org.elasticsearch.search.facet.terms.TermsFacetBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.SearchConfigCache;
+import org.searchisko.api.cache.SearchResultCache;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.model.QuerySettings.Filters;
+import org.searchisko.api.model.SearchCursor;
 import org.searchisko.api.model.SortByValue;
 import org.searchisko.api.model.TimeoutConfiguration;
+import org.searchisko.api.service.SearchConfigSnapshot.SemiParsedFacetConfig;
 
 /**
  * Search business logic service.
@@ -59,6 +82,7 @@ import org.searchisko.api.model.TimeoutConfiguration;
 @Named
 @ApplicationScoped
 @Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class SearchService {
 
 	@Inject
@@ -76,6 +100,12 @@ public class SearchService {
 	@Inject
 	protected IndexNamesCache indexNamesCache;
 
+	@Inject
+	protected SearchConfigCache searchConfigCache;
+
+	@Inject
+	protected SearchResultCache searchResultCache;
+
 	@Inject
 	protected TimeoutConfiguration timeout;
 
@@ -90,35 +120,635 @@ public class SearchService {
 	 * @return search response
 	 */
 	public SearchResponse performSearch(QuerySettings querySettings, String responseUuid, StatsRecordType statsRecordType) {
+		return performSearch(querySettings, responseUuid, statsRecordType, false);
+	}
+
+	/**
+	 * Perform search operation.
+	 * 
+	 * @param querySettings to use for search
+	 * @param responseUuid used for search response, we need it only to write it into statistics (so can be null)
+	 * @param useResultCache if true then response may be served from {@link SearchResultCache} or shared with concurrent
+	 *          identical search requests. Use it only if response doesn't depend on authenticated user.
+	 * @return search response
+	 */
+	public SearchResponse performSearch(QuerySettings querySettings, String responseUuid,
+			StatsRecordType statsRecordType, boolean useResultCache) {
+		PlainActionFuture<SearchResponse> future = PlainActionFuture.newFuture();
+		performSearchAsync(querySettings, responseUuid, statsRecordType, useResultCache, future);
+		return future.actionGet();
+	}
+
+	/**
+	 * Perform search operation asynchronously. Calling thread is not blocked while search is performed in
+	 * Elasticsearch, listener is called from Elasticsearch thread when search finishes (or directly from calling thread
+	 * if response is served from {@link SearchResultCache}). Statistics record is written before listener is called.
+	 * <p>
+	 * If <code>useResultCache</code> is true then concurrent requests with the same canonical query settings (see
+	 * {@link #prepareSearchResultCacheKey(QuerySettings)}) are coalesced - only first of them is sent to Elasticsearch,
+	 * others wait for its response. Every caller still gets own statistics record with own <code>responseUuid</code>.
+	 * 
+	 * @param querySettings to use for search
+	 * @param responseUuid used for search response, we need it only to write it into statistics (so can be null)
+	 * @param useResultCache if true then response may be served from {@link SearchResultCache} or shared with concurrent
+	 *          identical search requests. Use it only if response doesn't depend on authenticated user.
+	 * @param listener to be notified about search response or failure
+	 * @throws IllegalArgumentException if search request can't be prepared for given query settings
+	 */
+	public void performSearchAsync(final QuerySettings querySettings, final String responseUuid,
+			final StatsRecordType statsRecordType, boolean useResultCache, final ActionListener<SearchResponse> listener) {
+		String searchKey = null;
+		boolean useCache = false;
+		long cacheStamp = 0;
+		if (useResultCache) {
+			searchKey = prepareSearchResultCacheKey(querySettings);
+			if (searchResultCache != null && searchResultCache.isEnabled()) {
+				SearchResponse cachedResponse = readCachedSearchResponse(searchKey, querySettings, responseUuid,
+						statsRecordType);
+				if (cachedResponse != null) {
+					listener.onResponse(cachedResponse);
+					return;
+				}
+				useCache = true;
+				cacheStamp = searchResultCache.stamp();
+			}
+		}
+
+		final ActionListener<SearchResponse> statsListener = new ActionListener<SearchResponse>() {
+
+			@Override
+			public void onResponse(SearchResponse searchResponse) {
+				try {
+					statsClientService.writeStatisticsRecord(statsRecordType, responseUuid, searchResponse,
+							System.currentTimeMillis(), querySettings);
+				} catch (Exception e) {
+					log.log(Level.WARNING, "Search statistics record write failed: " + e.getMessage(), e);
+				}
+				listener.onResponse(searchResponse);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				if (e instanceof ElasticSearchException) {
+					statsClientService.writeStatisticsRecord(statsRecordType, (ElasticSearchException) e,
+							System.currentTimeMillis(), querySettings);
+				}
+				listener.onFailure(e);
+			}
+		};
+
+		SearchRequestBuilder srb = prepareSearchRequest(querySettings);
+
+		if (searchKey == null) {
+			executeAsync(srb, statsListener);
+			return;
+		}
+
+		// attach to identical search in flight, or register new one
+		PendingSearch pendingSearch = new PendingSearch(searchKey);
+		pendingSearch.attach(statsListener);
+		for (;;) {
+			PendingSearch existing = pendingSearches.putIfAbsent(searchKey, pendingSearch);
+			if (existing == null) {
+				break;
+			}
+			if (existing.attach(statsListener)) {
+				coalescedCount.incrementAndGet();
+				return;
+			}
+			// existing search is just finishing, so we can't attach to it any more
+			pendingSearches.remove(searchKey, existing);
+		}
+
+		final PendingSearch fPendingSearch = pendingSearch;
+		final String fCacheKey = useCache ? searchKey : null;
+		final long fCacheStamp = cacheStamp;
+		// pending search is released by listener even if execution fails synchronously, otherwise identical searches
+		// attach to it and hang
+		executeAsync(srb, new ActionListener<SearchResponse>() {
+
+			@Override
+			public void onResponse(SearchResponse searchResponse) {
+				pendingSearches.remove(fPendingSearch.key, fPendingSearch);
+				try {
+					putSearchResponseIntoCache(searchResponse, querySettings, fCacheKey, fCacheStamp);
+				} catch (Exception e) {
+					log.log(Level.WARNING, "Search response caching failed: " + e.getMessage(), e);
+				}
+				fPendingSearch.onResponse(searchResponse);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				pendingSearches.remove(fPendingSearch.key, fPendingSearch);
+				fPendingSearch.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Max number of searches performed by one multi search operation, see
+	 * {@link #performMultiSearchAsync(List, List, StatsRecordType, ActionListener)}.
+	 */
+	public static final int MULTI_SEARCH_MAX_QUERIES = 20;
+
+	/**
+	 * Perform more search operations by one Elasticsearch multi search request asynchronously. Each search is prepared
+	 * same way as for {@link #performSearchAsync(QuerySettings, String, StatsRecordType, boolean, ActionListener)}, and
+	 * one statistics record is written for each of them before listener is called. Search result cache is not used.
+	 * 
+	 * @param querySettingsList query settings for each search to perform
+	 * @param responseUuids uuid for each search response, used to write statistics records (same size as
+	 *          <code>querySettingsList</code>)
+	 * @param statsRecordType type of statistics records to write
+	 * @param listener to be notified about multi search response (which contains items in same order as
+	 *          <code>querySettingsList</code>) or failure
+	 * @throws IllegalArgumentException if some search request can't be prepared for given query settings
+	 */
+	public void performMultiSearchAsync(final List<QuerySettings> querySettingsList, final List<String> responseUuids,
+			final StatsRecordType statsRecordType, final ActionListener<MultiSearchResponse> listener) {
+		MultiSearchRequestBuilder msrb = searchClientService.getClient().prepareMultiSearch();
+		for (QuerySettings querySettings : querySettingsList) {
+			msrb.add(prepareSearchRequest(querySettings));
+		}
+
+		executeAsync(msrb, new ActionListener<MultiSearchResponse>() {
+
+			@Override
+			public void onResponse(MultiSearchResponse multiSearchResponse) {
+				long now = System.currentTimeMillis();
+				MultiSearchResponse.Item[] items = multiSearchResponse.getResponses();
+				for (int i = 0; i < items.length && i < querySettingsList.size(); i++) {
+					try {
+						if (items[i].isFailure()) {
+							statsClientService.writeStatisticsRecord(statsRecordType,
+									new ElasticSearchException(items[i].getFailureMessage()), now, querySettingsList.get(i));
+						} else {
+							statsClientService.writeStatisticsRecord(statsRecordType, responseUuids.get(i), items[i].getResponse(),
+									now, querySettingsList.get(i));
+						}
+					} catch (Exception e) {
+						log.log(Level.WARNING, "Search statistics record write failed: " + e.getMessage(), e);
+					}
+				}
+				listener.onResponse(multiSearchResponse);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				if (e instanceof ElasticSearchException) {
+					long now = System.currentTimeMillis();
+					for (QuerySettings querySettings : querySettingsList) {
+						statsClientService.writeStatisticsRecord(statsRecordType, (ElasticSearchException) e, now, querySettings);
+					}
+				}
+				listener.onFailure(e);
+			}
+		});
+	}
+
+	/**
+	 * Max number of hits exported in one scroll page from one shard.
+	 */
+	public static final int EXPORT_PAGE_SIZE = 100;
+
+	/**
+	 * How long scroll context is kept in Elasticsearch between two export pages.
+	 */
+	protected static final TimeValue EXPORT_SCROLL_KEEPALIVE = TimeValue.timeValueMinutes(2);
+
+	/**
+	 * Handler of pages of exported search hits.
+	 * 
+	 * @see SearchService#performExport(String, ExportPageHandler)
+	 */
+	public static interface ExportPageHandler {
+
+		/**
+		 * Handle one page of exported search hits.
+		 * 
+		 * @param hits to handle, never empty
+		 * @throws IOException if hits can't be written, export is stopped in this case
+		 */
+		void handlePage(SearchHit[] hits) throws IOException;
+	}
+
+	/**
+	 * Start export of all search hits matching query and filters from given query settings. Elasticsearch scan/scroll
+	 * is used, so there is no deep paging penalty and memory used by export is constant. Sorting, facets, highlighting
+	 * and paging settings are ignored. Continue with {@link #performExport(String, ExportPageHandler)}.
+	 * 
+	 * @param querySettings to use for export
+	 * @return response of initial scan request with scroll id and total number of hits, without hits
+	 * @throws IllegalArgumentException if search request can't be prepared for given query settings
+	 */
+	public SearchResponse performExportStart(QuerySettings querySettings) {
+		SearchRequestBuilder srb = new SearchRequestBuilder(searchClientService.getClient());
+
+		handleSearchIndicesAndTypes(querySettings, srb);
+		QueryBuilder qb_fulltext = handleFulltextSearchSettings(querySettings);
+		srb.setQuery(applyCommonFilters(handleCommonFiltersSettings(querySettings), qb_fulltext));
+		handleResponseContentSettings(querySettings, srb);
+
+		srb.setSearchType(SearchType.SCAN).setScroll(EXPORT_SCROLL_KEEPALIVE).setFrom(0).setSize(EXPORT_PAGE_SIZE);
+		srb.setTimeout(TimeValue.timeValueSeconds(timeout.search()));
+
+		log.log(Level.FINE, "ElasticSearch Export request: {0}", srb);
+
+		SearchResponse response = srb.execute().actionGet();
+		exportStartedCount.incrementAndGet();
+		return response;
+	}
+
+	/**
+	 * Perform export started by {@link #performExportStart(QuerySettings)}. Hits are read page by page, and each page is
+	 * passed to the handler before next one is read. Scroll is cleared at the end of export, also if it fails.
+	 * 
+	 * @param scrollId from {@link #performExportStart(QuerySettings)} response
+	 * @param handler to pass pages of hits to
+	 * @return number of exported hits
+	 * @throws IOException from handler
+	 */
+	public long performExport(String scrollId, ExportPageHandler handler) throws IOException {
+		long start = System.currentTimeMillis();
+		long hitCount = 0;
+		int pageCount = 0;
+		boolean success = false;
+		exportActiveCount.incrementAndGet();
+		try {
+			while (scrollId != null) {
+				SearchResponse response = searchClientService.getClient().prepareSearchScroll(scrollId)
+						.setScroll(EXPORT_SCROLL_KEEPALIVE).execute().actionGet();
+				scrollId = response.getScrollId();
+				SearchHit[] hits = response.getHits().getHits();
+				if (hits == null || hits.length == 0) {
+					break;
+				}
+				handler.handlePage(hits);
+				hitCount += hits.length;
+				pageCount++;
+				exportHitCount.addAndGet(hits.length);
+			}
+			success = true;
+		} finally {
+			exportActiveCount.decrementAndGet();
+			if (success) {
+				exportCompletedCount.incrementAndGet();
+			} else {
+				exportFailedCount.incrementAndGet();
+			}
+			if (scrollId != null) {
+				try {
+					searchClientService.getClient().prepareClearScroll().addScrollId(scrollId).execute();
+				} catch (Exception e) {
+					log.log(Level.FINE, "Export scroll clear failed: " + e.getMessage(), e);
+				}
+			}
+			long duration = System.currentTimeMillis() - start;
+			long hitsPerSecond = duration > 0 ? hitCount * 1000 / duration : hitCount;
+			lastExport = new long[] { hitCount, pageCount, duration, hitsPerSecond };
+			log.log(Level.INFO, "Search export {0}: {1} hits in {2} pages exported in {3} ms ({4} hits/s)", new Object[] {
+					success ? "finished" : "failed", hitCount, pageCount, duration, hitsPerSecond });
+		}
+		return hitCount;
+	}
+
+	private final AtomicLong exportStartedCount = new AtomicLong();
+	private final AtomicInteger exportActiveCount = new AtomicInteger();
+	private final AtomicLong exportCompletedCount = new AtomicLong();
+	private final AtomicLong exportFailedCount = new AtomicLong();
+	private final AtomicLong exportHitCount = new AtomicLong();
+
+	/**
+	 * Hits, pages, duration [ms] and hits per second of last finished export.
+	 */
+	private volatile long[] lastExport;
+
+	/**
+	 * Get statistics of search exports.
+	 * 
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getExportStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("started", exportStartedCount.get());
+		ret.put("active", exportActiveCount.get());
+		ret.put("completed", exportCompletedCount.get());
+		ret.put("failed", exportFailedCount.get());
+		ret.put("hits", exportHitCount.get());
+		long[] le = lastExport;
+		if (le != null) {
+			Map<String, Object> last = new LinkedHashMap<>();
+			last.put("hits", le[0]);
+			last.put("pages", le[1]);
+			last.put("duration", le[2]);
+			last.put("hits_per_second", le[3]);
+			ret.put("last_export", last);
+		}
+		return ret;
+	}
+
+	/**
+	 * Searches sent to Elasticsearch which may be shared with concurrent identical requests. Key is search key from
+	 * {@link #prepareSearchResultCacheKey(QuerySettings)}.
+	 */
+	private final ConcurrentMap<String, PendingSearch> pendingSearches = new ConcurrentHashMap<>();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicInteger asyncInFlightCount = new AtomicInteger();
+	private final AtomicLong asyncCompletedCount = new AtomicLong();
+	private final AtomicLong asyncFailedCount = new AtomicLong();
+
+	/**
+	 * Wrap listener of asynchronous Elasticsearch request so number of requests in flight, completed and failed is
+	 * counted.
+	 * 
+	 * @param listener to wrap
+	 * @return wrapped listener
+	 */
+	protected <T> ActionListener<T> monitorAsync(final ActionListener<T> listener) {
+		asyncInFlightCount.incrementAndGet();
+		return new ActionListener<T>() {
+
+			@Override
+			public void onResponse(T response) {
+				asyncInFlightCount.decrementAndGet();
+				asyncCompletedCount.incrementAndGet();
+				listener.onResponse(response);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				asyncInFlightCount.decrementAndGet();
+				asyncFailedCount.incrementAndGet();
+				listener.onFailure(e);
+			}
+		};
+	}
+
+	/**
+	 * Execute Elasticsearch request asynchronously with listener wrapped by {@link #monitorAsync(ActionListener)}. If
+	 * execution fails synchronously (eg. no node available) then listener is never called by Elasticsearch, so it is
+	 * notified about failure here.
+	 * 
+	 * @param requestBuilder request to execute
+	 * @param listener to be notified about response or failure
+	 */
+	protected <T extends ActionResponse> void executeAsync(ActionRequestBuilder<?, T, ?> requestBuilder,
+			ActionListener<T> listener) {
+		ActionListener<T> monitoredListener = monitorAsync(listener);
 		try {
-			SearchRequestBuilder srb = new SearchRequestBuilder(searchClientService.getClient());
+			requestBuilder.execute(monitoredListener);
+		} catch (RuntimeException e) {
+			monitoredListener.onFailure(e);
+		}
+	}
 
-			handleSearchIndicesAndTypes(querySettings, srb);
+	/**
+	 * Get statistics of asynchronous search requests.
+	 * 
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getAsyncStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("in_flight", asyncInFlightCount.get());
+		ret.put("completed", asyncCompletedCount.get());
+		ret.put("failed", asyncFailedCount.get());
+		ret.put("coalesced", coalescedCount.get());
+		return ret;
+	}
 
-			QueryBuilder qb_fulltext = handleFulltextSearchSettings(querySettings);
-			Map<String, FilterBuilder> searchFilters = handleCommonFiltersSettings(querySettings);
-			srb.setQuery(applyCommonFilters(searchFilters, qb_fulltext));
+	/**
+	 * Search sent to Elasticsearch, with listeners of all requests waiting for its response.
+	 */
+	protected class PendingSearch implements ActionListener<SearchResponse> {
 
-			searchFilters.put("fulltext_query", new QueryFilterBuilder(qb_fulltext));
-			handleFacetSettings(querySettings, searchFilters, srb);
+		protected final String key;
 
-			handleSortingSettings(querySettings, srb);
+		private List<ActionListener<SearchResponse>> listeners = new ArrayList<>();
 
-			handleHighlightSettings(querySettings, srb);
+		protected PendingSearch(String key) {
+			this.key = key;
+		}
 
-			handleResponseContentSettings(querySettings, srb);
-			srb.setTimeout(TimeValue.timeValueSeconds(timeout.search()));
+		/**
+		 * Attach listener to this search.
+		 * 
+		 * @param listener to attach
+		 * @return true if attached, false if search is already finished so listener can't be attached
+		 */
+		protected synchronized boolean attach(ActionListener<SearchResponse> listener) {
+			if (listeners == null)
+				return false;
+			listeners.add(listener);
+			return true;
+		}
 
-			log.log(Level.FINE, "ElasticSearch Search request: {0}", srb);
+		private synchronized List<ActionListener<SearchResponse>> finish() {
+			List<ActionListener<SearchResponse>> ret = listeners;
+			listeners = null;
+			return ret != null ? ret : new ArrayList<ActionListener<SearchResponse>>();
+		}
+
+		@Override
+		public void onResponse(SearchResponse response) {
+			for (ActionListener<SearchResponse> listener : finish()) {
+				try {
+					listener.onResponse(response);
+				} catch (Exception e) {
+					log.log(Level.WARNING, "Search response listener failed: " + e.getMessage(), e);
+				}
+			}
+		}
 
-			final SearchResponse searchResponse = srb.execute().actionGet();
+		@Override
+		public void onFailure(Throwable e) {
+			for (ActionListener<SearchResponse> listener : finish()) {
+				try {
+					listener.onFailure(e);
+				} catch (Exception e2) {
+					log.log(Level.WARNING, "Search failure listener failed: " + e2.getMessage(), e2);
+				}
+			}
+		}
+	}
 
-			statsClientService.writeStatisticsRecord(statsRecordType, responseUuid, searchResponse,
+	/**
+	 * Read search response from {@link SearchResultCache} and write statistics record for it if found.
+	 * 
+	 * @return cached response or null if not found
+	 */
+	private SearchResponse readCachedSearchResponse(String cacheKey, QuerySettings querySettings, String responseUuid,
+			StatsRecordType statsRecordType) {
+		SearchResponse cachedResponse = readSearchResponse(searchResultCache.get(cacheKey));
+		if (cachedResponse != null) {
+			statsClientService.writeStatisticsRecord(statsRecordType, responseUuid, cachedResponse,
 					System.currentTimeMillis(), querySettings);
-			return searchResponse;
-		} catch (ElasticSearchException e) {
-			statsClientService.writeStatisticsRecord(statsRecordType, e, System.currentTimeMillis(), querySettings);
-			throw e;
+		}
+		return cachedResponse;
+	}
+
+	/**
+	 * Prepare Elasticsearch search request for given query settings.
+	 * 
+	 * @param querySettings to prepare request for
+	 * @return search request builder
+	 */
+	protected SearchRequestBuilder prepareSearchRequest(QuerySettings querySettings) {
+		SearchRequestBuilder srb = new SearchRequestBuilder(searchClientService.getClient());
+
+		handleSearchIndicesAndTypes(querySettings, srb);
+
+		QueryBuilder qb_fulltext = handleFulltextSearchSettings(querySettings);
+		Map<String, FilterBuilder> searchFilters = handleCommonFiltersSettings(querySettings);
+		srb.setQuery(applyCommonFilters(searchFilters, qb_fulltext));
+
+		searchFilters.put("fulltext_query", new QueryFilterBuilder(qb_fulltext));
+		handleFacetSettings(querySettings, searchFilters, srb);
+
+		handleSortingSettings(querySettings, srb);
+		handleCursorSettings(querySettings, srb);
+
+		handleHighlightSettings(querySettings, srb);
+
+		handleResponseContentSettings(querySettings, srb);
+		srb.setTimeout(TimeValue.timeValueSeconds(timeout.search()));
+
+		log.log(Level.FINE, "ElasticSearch Search request: {0}", srb);
+		return srb;
+	}
+
+	/**
+	 * Put search response into {@link SearchResultCache}. Incomplete responses are not cached.
+	 * 
+	 * @param cacheKey key to put response under, nothing is cached if null
+	 * @param cacheStamp obtained from cache before search was performed
+	 */
+	private void putSearchResponseIntoCache(SearchResponse searchResponse, QuerySettings querySettings,
+			String cacheKey, long cacheStamp) {
+		if (cacheKey != null && !searchResponse.isTimedOut() && searchResponse.getFailedShards() == 0) {
+			searchResultCache.put(cacheKey, querySettings.getFilters() != null ? querySettings.getFilters()
+					.getContentType() : null, cacheStamp, writeSearchResponse(searchResponse));
+		}
+	}
+
+	/**
+	 * Time [ms] after content change for which the change may not be visible to search yet, as Elasticsearch refreshes
+	 * index periodically.
+	 */
+	protected static final long CONTENT_CHANGE_VISIBILITY_DELAY = 2000;
+
+	/**
+	 * Get time of last change of content which may be returned by search for given query settings. No search is
+	 * performed, time is tracked by {@link SearchResultCache} from content change events, so it is cheap validator of
+	 * search response for conditional GET.
+	 * 
+	 * @param querySettings to get time for
+	 * @return time of last change [ms], null if it can't be used to validate search response - if search result depends
+	 *         on current time (activity date interval filter), or if last change may not be visible to search yet
+	 */
+	public Long getLastContentChangeTime(QuerySettings querySettings) {
+		Filters filters = querySettings.getFilters();
+		if (searchResultCache == null || (filters != null && filters.getActivityDateInterval() != null))
+			return null;
+		long lastChangeTime = searchResultCache.getLastChangeTime(filters != null ? filters.getContentType() : null);
+		if (System.currentTimeMillis() - lastChangeTime < CONTENT_CHANGE_VISIBILITY_DELAY)
+			return null;
+		return lastChangeTime;
+	}
+
+	/**
+	 * Prepare key for search result cache. Key is built from canonical form of query settings, so settings which lead to
+	 * the same search response have the same key (eg. order of filter values doesn't matter).
+	 * 
+	 * @param querySettings to prepare key for
+	 * @return key value (never null)
+	 */
+	protected static String prepareSearchResultCacheKey(QuerySettings querySettings) {
+		StringBuilder sb = new StringBuilder();
+		appendKeyPart(sb, "q", querySettings.getQuery());
+		// highlighting is used only for fulltext query
+		if (querySettings.getQuery() != null && querySettings.isQueryHighlight())
+			appendKeyPart(sb, "qh", "true");
+		appendKeyPart(sb, "sort", querySettings.getSortBy() != null ? querySettings.getSortBy().name() : null);
+		appendKeyPart(sb, "field", querySettings.getFields());
+		appendKeyPart(sb, "facet", querySettings.getFacets());
+		Filters filters = querySettings.getFilters();
+		if (filters != null) {
+			appendKeyPart(sb, "type", filters.getContentType());
+			appendKeyPart(sb, "sys_type", filters.getSysTypes());
+			appendKeyPart(sb, "provider", filters.getSysContentProvider());
+			appendKeyPart(sb, "project", filters.getProjects());
+			appendKeyPart(sb, "tag", filters.getTags());
+			appendKeyPart(sb, "contributor", filters.getContributors());
+			if (filters.getActivityDateInterval() != null) {
+				appendKeyPart(sb, "adi", filters.getActivityDateInterval().name());
+			} else {
+				appendKeyPart(sb, "adf", filters.getActivityDateFrom() != null ? filters.getActivityDateFrom().toString()
+						: null);
+				appendKeyPart(sb, "adt", filters.getActivityDateTo() != null ? filters.getActivityDateTo().toString() : null);
+			}
+			if (filters.getFrom() != null && filters.getFrom() >= 0)
+				appendKeyPart(sb, "from", filters.getFrom().toString());
+			if (filters.getSize() != null && filters.getSize() >= 0)
+				appendKeyPart(sb, "size", Integer.toString(Math.min(filters.getSize(), RESPONSE_MAX_SIZE)));
+			if (filters.getCursor() != null)
+				appendKeyPart(sb, "cursor", filters.getCursor().encode());
+			else if (filters.isCursorPaging())
+				appendKeyPart(sb, "cursor", QuerySettings.Filters.CURSOR_FIRST_VALUE);
+		}
+		return sb.toString();
+	}
+
+	private static void appendKeyPart(StringBuilder sb, String name, String value) {
+		if (value != null) {
+			// length prefix is used so values can't be mixed together
+			sb.append(name).append(':').append(value.length()).append(':').append(value).append('|');
+		}
+	}
+
+	private static void appendKeyPart(StringBuilder sb, String name, Collection<String> values) {
+		if (values != null) {
+			// null means default value, empty collection not, so we have to distinguish them
+			sb.append(name).append("[|");
+			for (String value : new TreeSet<>(values)) {
+				appendKeyPart(sb, name, value);
+			}
+			sb.append("]|");
+		}
+	}
+
+	/**
+	 * Serialize search response to be stored in cache.
+	 * 
+	 * @param searchResponse to serialize
+	 * @return serialized response or null if serialization failed
+	 */
+	protected byte[] writeSearchResponse(SearchResponse searchResponse) {
+		try {
+			BytesStreamOutput out = new BytesStreamOutput();
+			searchResponse.writeTo(out);
+			return out.bytes().toBytes();
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Search response serialization failed: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Deserialize search response stored in cache.
+	 * 
+	 * @param data serialized search response, can be null
+	 * @return search response or null if data are null or deserialization failed
+	 */
+	protected SearchResponse readSearchResponse(byte[] data) {
+		if (data == null)
+			return null;
+		try {
+			return SearchResponse.readSearchResponse(new BytesStreamInput(data, false));
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Search response deserialization failed: " + e.getMessage(), e);
+			return null;
 		}
 	}
 
@@ -129,12 +759,12 @@ public class SearchService {
 	protected void handleSearchIndicesAndTypes(QuerySettings querySettings, SearchRequestBuilder srb) {
 		if (querySettings.getFilters() != null && querySettings.getFilters().getContentType() != null) {
 			String type = querySettings.getFilters().getContentType();
-			Map<String, Object> typeDef = providerService.findContentType(type);
-			if (typeDef == null) {
+			ContentTypeDescriptor ctd = providerService.findContentTypeDescriptor(type);
+			if (ctd == null) {
 				throw new IllegalArgumentException("type");
 			}
-			String[] queryIndices = ProviderService.extractSearchIndices(typeDef, type);
-			String queryType = ProviderService.extractIndexType(typeDef, type);
+			String[] queryIndices = ctd.getSearchIndices();
+			String queryType = ctd.getIndexType();
 			srb.setIndices(queryIndices);
 			srb.setTypes(queryType);
 			if (log.isLoggable(Level.FINE)) {
@@ -147,7 +777,7 @@ public class SearchService {
 				sysTypesRequested = querySettings.getFilters().getSysTypes();
 			}
 			boolean isSysTypeFacet = (querySettings.getFacets() != null && querySettings.getFacets().contains(
-					getFacetNameUsingSysTypeField()));
+					getSearchConfig().getFacetNameUsingSysTypeField()));
 
 			Set<String> indexNames = indexNamesCache.get(prepareIndexNamesCacheKey(sysTypesRequested, isSysTypeFacet));
 			if (indexNames == null) {
@@ -214,20 +844,13 @@ public class SearchService {
 	protected QueryBuilder handleFulltextSearchSettings(QuerySettings querySettings) {
 		if (querySettings.getQuery() != null) {
 			QueryStringQueryBuilder qb = QueryBuilders.queryString(querySettings.getQuery());
-			Map<String, Object> fields = configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+			Map<String, Float> fields = getSearchConfig().getQueryFields();
 			if (fields != null) {
-				for (String fieldName : fields.keySet()) {
-					String value = (String) fields.get(fieldName);
-					if (value != null && !value.trim().isEmpty()) {
-						try {
-							qb.field(fieldName, Float.parseFloat(value));
-						} catch (NumberFormatException e) {
-							log.warning("Boost value has not valid float format for fulltext field " + fieldName
-									+ " in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
-							qb.field(fieldName);
-						}
+				for (Map.Entry<String, Float> field : fields.entrySet()) {
+					if (field.getValue() != null) {
+						qb.field(field.getKey(), field.getValue());
 					} else {
-						qb.field(fieldName);
+						qb.field(field.getKey());
 					}
 				}
 			}
@@ -239,15 +862,14 @@ public class SearchService {
 
 	protected void handleHighlightSettings(QuerySettings querySettings, SearchRequestBuilder srb) {
 		if (querySettings.getQuery() != null && querySettings.isQueryHighlight()) {
-			Map<String, Object> hf = configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS);
+			Map<String, int[]> hf = getSearchConfig().getHighlightFields();
 			if (hf != null && !hf.isEmpty()) {
 				srb.setHighlighterPreTags("<span class='hlt'>");
 				srb.setHighlighterPostTags("</span>");
 				srb.setHighlighterEncoder("html");
-				for (String fieldName : hf.keySet()) {
-					srb.addHighlightedField(fieldName, parseHighlightSettingIntParam(hf, fieldName, "fragment_size"),
-							parseHighlightSettingIntParam(hf, fieldName, "number_of_fragments"),
-							parseHighlightSettingIntParam(hf, fieldName, "fragment_offset"));
+				for (Map.Entry<String, int[]> field : hf.entrySet()) {
+					int[] params = field.getValue();
+					srb.addHighlightedField(field.getKey(), params[0], params[1], params[2]);
 				}
 			} else {
 				throw new SettingsException("Fulltext search highlight requested but not configured by configuration document "
@@ -256,31 +878,13 @@ public class SearchService {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	protected int parseHighlightSettingIntParam(Map<String, Object> highlightConfigStructure, String fieldName,
-			String paramName) {
-		try {
-			Map<String, Object> fieldConfig = (Map<String, Object>) highlightConfigStructure.get(fieldName);
-			try {
-				Object o = fieldConfig.get(paramName);
-				if (o instanceof Integer) {
-					return ((Integer) o).intValue();
-				} else {
-					return Integer.parseInt(o.toString());
-				}
-			} catch (Exception e) {
-				throw new SettingsException("Missing or incorrect configuration of fulltext search highlight field '"
-						+ fieldName + "' parameter '" + paramName + "' in configuration document "
-						+ ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS + ". Contact administrators please.");
-			}
-		} catch (ClassCastException e) {
-			throw new SettingsException("Incorrect configuration of fulltext search highlight field '" + fieldName
-					+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS
-					+ ". Contact administrators please.");
-		}
-	}
-
 	private static final DateTimeFormatter DATE_TIME_FORMATTER_UTC = ISODateTimeFormat.dateTime().withZoneUTC();
+
+	/**
+	 * Default number of hits returned by Elasticsearch if size is not requested.
+	 */
+	protected static final int RESPONSE_DEFAULT_SIZE = 10;
+
 	/**
 	 * Maximal size of response.
 	 */
@@ -346,15 +950,12 @@ public class SearchService {
 	 */
 	protected void handleFacetSettings(QuerySettings querySettings, Map<String, FilterBuilder> searchFilters,
 			SearchRequestBuilder srb) {
-		// TODO: Optimize! We get and parse facet configuration multiple times in this code.
-		// We can cache parsed results for some time.
-		Map<String, Object> configuredFacets = configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS);
 		Set<String> facets = querySettings.getFacets();
-		if (configuredFacets != null && !configuredFacets.isEmpty() && facets != null && !facets.isEmpty()) {
+		if (facets != null && !facets.isEmpty()) {
+			SearchConfigSnapshot searchConfig = getSearchConfig();
 			for (String queryFacetName : facets) {
-				Object facetConfig = configuredFacets.get(queryFacetName);
-				if (facetConfig != null) {
-					SemiParsedFacetConfig config = parseFacetType(facetConfig, queryFacetName);
+				SemiParsedFacetConfig config = searchConfig.getFacetConfig(queryFacetName);
+				if (config != null) {
 					if ("terms".equals(config.getFacetType())) {
 						int size;
 						try {
@@ -385,159 +986,17 @@ public class SearchService {
 		}
 	}
 
-	protected class SemiParsedFacetConfig {
-		private String facetName;
-		private String facetType;
-		private String fieldName;
-		private Map<String, Object> optionalSettings;
-		private boolean filtered = false;
-		private int filteredSize = 0;
-
-		public void setFacetName(String value) {
-			this.facetName = value;
-		}
-
-		public String getFacetName() {
-			return this.facetName;
-		}
-
-		public void setFacetType(String value) {
-			this.facetType = value;
-		}
-
-		public String getFacetType() {
-			return this.facetType;
-		}
-
-		public void setFieldName(String value) {
-			this.fieldName = value;
-		}
-
-		public String getFieldName() {
-			return this.fieldName;
-		}
-
-		public void setOptionalSettings(Map<String, Object> object) {
-			this.optionalSettings = object;
-		}
-
-		public Map<String, Object> getOptionalSettings() {
-			return this.optionalSettings;
-		}
-
-		public void setFiltered(boolean value) {
-			this.filtered = value;
-		}
-
-		public boolean isFiltered() {
-			return this.filtered;
-		}
-
-		public void setFilteredSize(int value) {
-			this.filteredSize = value;
-		}
-
-		public int getFilteredSize() {
-			return this.filteredSize;
-		}
-	}
-
 	/**
-	 * Parse facet type.
-	 * 
-	 * @param facetConfig
-	 * @param facetName
-	 * @return
-	 */
-	@SuppressWarnings("unchecked")
-	protected SemiParsedFacetConfig parseFacetType(final Object facetConfig, final String facetName) {
-		try {
-			Map<String, Object> map = (Map<String, Object>) facetConfig;
-			if (map.isEmpty() || (map.size() > 1 && !map.containsKey("_filtered"))
-					|| (map.size() > 2 && map.containsKey("_filtered"))) {
-				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
-						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
-						+ ": Multiple facet type is not allowed.");
-			}
-			SemiParsedFacetConfig config = new SemiParsedFacetConfig();
-			config.setFacetName(facetName);
-			for (String key : map.keySet()) {
-				if ("_filtered".equals(key)) {
-					Map<String, Object> filtered = (Map<String, Object>) map.get(key);
-					config.setFilteredSize((Integer) filtered.get("size"));
-					config.setFiltered(config.getFilteredSize() > 0 ? true : false);
-				} else {
-					config.setFacetType(key);
-				}
-			}
-			// get map one level deeper
-			map = (Map<String, Object>) map.get(config.getFacetType());
-			if (!map.containsKey("field") || map.isEmpty()) {
-				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
-						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
-						+ ": Missing required [field] field.");
-			}
-			String fieldName = (String) map.get("field");
-			if (fieldName == null || fieldName.isEmpty()) {
-				throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
-						+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS
-						+ ": Invalid [field] field value.");
-			}
-			config.setFieldName(fieldName);
-			config.setOptionalSettings(map);
-			return config;
-		} catch (ClassCastException e) {
-			throw new SettingsException("Incorrect configuration of fulltext search facet field '" + facetName
-					+ "' in configuration document " + ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS + ".");
-		}
-	}
-
-	/**
-	 * Return (the first) name of fact that is built on top of "sys_type" field. TODO: Optimize! We get and parse facet
-	 * configuration multiple times in this code. We can cache parsed results for some time.
-	 * 
-	 * @return (the first) name of fact that is built on top of "sys_type" field.
-	 */
-	private String getFacetNameUsingSysTypeField() {
-		Map<String, Object> configuredFacets = configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS);
-		if (configuredFacets != null && !configuredFacets.isEmpty()) {
-			for (String facetName : configuredFacets.keySet()) {
-				Object facetConfig = configuredFacets.get(facetName);
-				if (facetConfig != null) {
-					SemiParsedFacetConfig config = parseFacetType(facetConfig, facetName);
-					if (ContentObjectFields.SYS_TYPE.equals(config.getFieldName())) {
-						return facetName;
-					}
-				}
-			}
-		}
-		return "";
-	}
-
-	/**
-	 * For given set of facet names it returns only those using "date_histogram" facet type. TODO: Optimize! We get and
-	 * parse facet configuration multiple times in this code. We can cache parsed results for some time.
+	 * For given set of facet names it returns only those using "date_histogram" facet type.
 	 * 
 	 * @param facetNames set of facet names to filter
 	 * @return only those facets names using "date_histogram" facet type
 	 */
 	private Set<String> filterFacetNamesUsingDateHistogramFacetType(Set<String> facetNames) {
-		Set<String> result = new LinkedHashSet<>();
 		if (facetNames.size() > 0) {
-			Map<String, Object> configuredFacets = configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS);
-			if (configuredFacets != null && !configuredFacets.isEmpty()) {
-				for (String facetName : configuredFacets.keySet()) {
-					Object facetConfig = configuredFacets.get(facetName);
-					if (facetConfig != null) {
-						SemiParsedFacetConfig config = parseFacetType(facetConfig, facetName);
-						if ("date_histogram".equals(config.getFacetType())) {
-							result.add(facetName);
-						}
-					}
-				}
-			}
+			return getSearchConfig().getFacetNamesUsingDateHistogramFacetType();
 		}
-		return result;
+		return new LinkedHashSet<>();
 	}
 
 	/**
@@ -629,42 +1088,138 @@ public class SearchService {
 	}
 
 	/**
+	 * Unique secondary sort by <code>_uid</code> is added only if cursor pagination is requested, as it loads
+	 * <code>_uid</code> field data for all searched indices.
+	 * 
 	 * @param querySettings
 	 * @param srb request builder to set sorting for
 	 */
 	protected void handleSortingSettings(QuerySettings querySettings, SearchRequestBuilder srb) {
-		if (querySettings.getSortBy() != null) {
-			if (querySettings.getSortBy().equals(SortByValue.NEW)) {
-				srb.addSort(ContentObjectFields.SYS_LAST_ACTIVITY_DATE, SortOrder.DESC);
-			} else if (querySettings.getSortBy().equals(SortByValue.OLD)) {
-				srb.addSort(ContentObjectFields.SYS_LAST_ACTIVITY_DATE, SortOrder.ASC);
-			} else if (querySettings.getSortBy().equals(SortByValue.NEW_CREATION)) {
-				srb.addSort(ContentObjectFields.SYS_CREATED, SortOrder.DESC);
+		String sortField = getCursorSortField(querySettings.getSortBy());
+		if (sortField != null) {
+			srb.addSort(sortField, getCursorSortOrder(querySettings.getSortBy()));
+			if (isCursorPaging(querySettings)) {
+				// unique secondary sort so cursor pagination is deterministic
+				srb.addSort(FIELD_UID, SortOrder.ASC);
 			}
 		}
 	}
 
+	private static boolean isCursorPaging(QuerySettings querySettings) {
+		return querySettings.getFilters() != null && querySettings.getFilters().isCursorPaging();
+	}
+
+	/**
+	 * Elasticsearch field with unique identifier of document (type#id).
+	 */
+	protected static final String FIELD_UID = "_uid";
+
+	/**
+	 * Get field search hits are sorted by for given sorting, if it supports cursor pagination.
+	 * 
+	 * @param sortBy sorting
+	 * @return field name, or null if sorting doesn't support cursor pagination (sorting by score)
+	 */
+	protected static String getCursorSortField(SortByValue sortBy) {
+		if (sortBy == SortByValue.NEW || sortBy == SortByValue.OLD) {
+			return ContentObjectFields.SYS_LAST_ACTIVITY_DATE;
+		} else if (sortBy == SortByValue.NEW_CREATION) {
+			return ContentObjectFields.SYS_CREATED;
+		}
+		return null;
+	}
+
+	private static SortOrder getCursorSortOrder(SortByValue sortBy) {
+		return sortBy == SortByValue.OLD ? SortOrder.ASC : SortOrder.DESC;
+	}
+
+	/**
+	 * Handle cursor pagination - only hits sorted after the hit cursor points to are returned. Filter is applied as
+	 * top-level filter so facets are not affected by it.
+	 * 
+	 * @param querySettings
+	 * @param srb request builder to set cursor filter to
+	 * @throws IllegalArgumentException if cursor pagination is requested for sorting which doesn't support it, or
+	 *           cursor is not valid for requested sorting
+	 */
+	protected void handleCursorSettings(QuerySettings querySettings, SearchRequestBuilder srb) {
+		if (!isCursorPaging(querySettings))
+			return;
+		String sortField = getCursorSortField(querySettings.getSortBy());
+		if (sortField == null)
+			throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+		SearchCursor cursor = querySettings.getFilters().getCursor();
+		if (cursor == null)
+			return;
+		if (cursor.getSortBy() != querySettings.getSortBy())
+			throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+
+		FilterBuilder uidAfter = new RangeFilterBuilder(FIELD_UID).gt(cursor.getUid()).cache(false);
+		// hits without value in sort field are sorted last
+		FilterBuilder sortValueMissing = FilterBuilders.missingFilter(sortField);
+		if (cursor.getSortValue() == null) {
+			srb.setFilter(new AndFilterBuilder(sortValueMissing, uidAfter));
+		} else {
+			long v = cursor.getSortValue();
+			RangeFilterBuilder sortValueAfter = new RangeFilterBuilder(sortField).cache(false);
+			if (getCursorSortOrder(querySettings.getSortBy()) == SortOrder.DESC) {
+				sortValueAfter.lt(v);
+			} else {
+				sortValueAfter.gt(v);
+			}
+			FilterBuilder sortValueSame = new RangeFilterBuilder(sortField).gte(v).lte(v).cache(false);
+			srb.setFilter(new OrFilterBuilder(sortValueAfter, new AndFilterBuilder(sortValueSame, uidAfter),
+					sortValueMissing));
+		}
+	}
+
+	/**
+	 * Prepare cursor pointing after the last hit of search response, which can be used to get next page of hits.
+	 * 
+	 * @param querySettings used for search
+	 * @param searchResponse to prepare cursor for
+	 * @return encoded cursor, or null if page of hits is not full (so there is no next page), cursor pagination is not
+	 *         requested or sorting doesn't support it
+	 */
+	public static String prepareNextCursor(QuerySettings querySettings, SearchResponse searchResponse) {
+		SortByValue sortBy = querySettings.getSortBy();
+		if (!isCursorPaging(querySettings) || getCursorSortField(sortBy) == null || searchResponse == null
+				|| searchResponse.getHits() == null)
+			return null;
+		SearchHit[] hits = searchResponse.getHits().getHits();
+		int size = RESPONSE_DEFAULT_SIZE;
+		if (querySettings.getFilters() != null && querySettings.getFilters().getSize() != null)
+			size = Math.min(querySettings.getFilters().getSize(), RESPONSE_MAX_SIZE);
+		if (hits == null || hits.length == 0 || hits.length < size)
+			return null;
+		SearchHit last = hits[hits.length - 1];
+		Long sortValue = null;
+		Object[] sortValues = last.getSortValues();
+		if (sortValues != null && sortValues.length > 0 && sortValues[0] instanceof Number) {
+			long v = ((Number) sortValues[0]).longValue();
+			// missing values are replaced by min/max value by Elasticsearch
+			if (v != Long.MIN_VALUE && v != Long.MAX_VALUE)
+				sortValue = v;
+		}
+		return new SearchCursor(sortBy, sortValue, last.getType() + "#" + last.getId()).encode();
+	}
+
 	/**
 	 * @param querySettings
 	 * @param srb request builder to set response content for
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	protected void handleResponseContentSettings(QuerySettings querySettings, SearchRequestBuilder srb) {
 
 		// handle 'field' params to return configured fields only. Use default set of fields loaded from configuration.
 		if (querySettings.getFields() != null) {
 			srb.addFields((querySettings.getFields()).toArray(new String[querySettings.getFields().size()]));
 		} else {
-			Map<String, Object> cf = configService.get(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS);
-			if (cf != null && cf.containsKey(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS)) {
-				Object o = cf.get(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS);
-				if (o instanceof Collection) {
-					srb.addFields(((Collection<String>) o).toArray(new String[((Collection) o).size()]));
-				} else if (o instanceof String) {
-					srb.addField((String) o);
+			String[] fields = getSearchConfig().getResponseFields();
+			if (fields != null) {
+				if (fields.length == 1) {
+					srb.addField(fields[0]);
 				} else {
-					throw new SettingsException(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS
-							+ " configuration document is invalid. Contact administrators please.");
+					srb.addFields(fields);
 				}
 			}
 		}
@@ -684,6 +1239,18 @@ public class SearchService {
 		}
 	}
 
+	/**
+	 * Get parsed search configuration, from cache if available.
+	 * 
+	 * @return parsed search configuration, never null
+	 */
+	protected SearchConfigSnapshot getSearchConfig() {
+		if (searchConfigCache != null) {
+			return searchConfigCache.get(configService, log);
+		}
+		return new SearchConfigSnapshot(configService, log);
+	}
+
 	/**
 	 * Write info about used search hit into statistics. Validation is performed inside of this method to ensure given
 	 * content was returned as hit of given search response.
@@ -0,0 +1,234 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.searchisko.api.model.StatsConfiguration.OverflowPolicy;
+import org.searchisko.api.util.BoundedRingBuffer;
+
+/**
+ * Asynchronous writer of statistics records used by {@link StatsClientService}. Records are put into bounded lock-free
+ * buffer, and background thread writes them using bulk requests, either when bulk size is reached or when flush
+ * interval elapses. Only one bulk request is in flight at a time, so when stats cluster is slow the buffer fills up and
+ * records are dropped according to {@link OverflowPolicy} - threads writing records are never blocked and memory used
+ * is bounded.
+ *
+ * @author agent (agent at local)
+ */
+public class StatsBulkWriter implements Runnable {
+
+	private final Logger log;
+
+	private final Client client;
+
+	private final BoundedRingBuffer<IndexRequest> buffer;
+
+	private final int bulkSize;
+
+	private final long flushIntervalNanos;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final TimeValue timeout;
+
+	private volatile boolean running;
+
+	private volatile Thread thread;
+
+	private final AtomicLong enqueuedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong flushedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong bulkCount = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param client to write records with
+	 * @param bufferSize max number of records waiting in buffer
+	 * @param bulkSize max number of records written by one bulk request
+	 * @param flushInterval max time [ms] record waits in buffer
+	 * @param overflowPolicy policy used when buffer is full
+	 * @param timeout of one bulk request
+	 * @param log to log into
+	 */
+	public StatsBulkWriter(Client client, int bufferSize, int bulkSize, long flushInterval,
+			OverflowPolicy overflowPolicy, TimeValue timeout, Logger log) {
+		if (bulkSize < 1)
+			throw new IllegalArgumentException("bulkSize must be positive");
+		if (flushInterval < 1)
+			throw new IllegalArgumentException("flushInterval must be positive");
+		this.client = client;
+		this.buffer = new BoundedRingBuffer<>(bufferSize);
+		this.bulkSize = bulkSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+		this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.DROP_NEWEST;
+		this.timeout = timeout;
+		this.log = log;
+	}
+
+	/**
+	 * Start background thread writing records.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		Thread t = new Thread(this, "Searchisko stats writer");
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+
+	/**
+	 * Stop background thread and write records remaining in buffer.
+	 *
+	 * @param waitMillis max time to wait for background thread to finish, 0 means do not wait
+	 */
+	public synchronized void stop(long waitMillis) {
+		running = false;
+		Thread t = thread;
+		if (t != null) {
+			LockSupport.unpark(t);
+			try {
+				if (waitMillis > 0)
+					t.join(waitMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			thread = null;
+		}
+	}
+
+	/**
+	 * Put record into buffer to be written later. Never blocks.
+	 *
+	 * @param ir record to write
+	 * @return true if record was accepted, false if it was dropped
+	 */
+	public boolean enqueue(IndexRequest ir) {
+		boolean accepted = buffer.offer(ir);
+		if (!accepted && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+			if (buffer.poll() != null)
+				droppedCount.incrementAndGet();
+			accepted = buffer.offer(ir);
+		}
+		if (!accepted) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		enqueuedCount.incrementAndGet();
+		if (buffer.size() >= bulkSize) {
+			Thread t = thread;
+			if (t != null)
+				LockSupport.unpark(t);
+		}
+		return true;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				if (flush() < bulkSize && running) {
+					LockSupport.parkNanos(this, flushIntervalNanos);
+				}
+			} catch (Throwable e) {
+				log.log(Level.WARNING, "Error writing statistics records: " + e.getMessage(), e);
+				LockSupport.parkNanos(this, flushIntervalNanos);
+			}
+		}
+		// write what remains in buffer
+		try {
+			while (flush() > 0) {
+			}
+		} catch (Throwable e) {
+			log.log(Level.WARNING, "Error writing statistics records: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Write one bulk of records from buffer. Called from background thread, but may be called directly too.
+	 *
+	 * @return number of records taken from buffer
+	 */
+	protected int flush() {
+		BulkRequest br = null;
+		int count = 0;
+		IndexRequest ir;
+		while (count < bulkSize && (ir = buffer.poll()) != null) {
+			if (br == null)
+				br = new BulkRequest();
+			br.add(ir);
+			count++;
+		}
+		if (br == null)
+			return 0;
+		if (timeout != null)
+			br.timeout(timeout);
+		try {
+			BulkResponse resp = timeout != null ? client.bulk(br).actionGet(timeout) : client.bulk(br).actionGet();
+			bulkCount.incrementAndGet();
+			int failed = 0;
+			if (resp.hasFailures()) {
+				for (BulkItemResponse bir : resp.getItems()) {
+					if (bir.isFailed()) {
+						failed++;
+						if (log.isLoggable(Level.FINEST))
+							log.log(Level.FINEST, "stats write failed: {0}", bir.getFailureMessage());
+					}
+				}
+			}
+			flushedCount.addAndGet(count - failed);
+			failedCount.addAndGet(failed);
+		} catch (RuntimeException e) {
+			failedCount.addAndGet(count);
+			if (log.isLoggable(Level.WARNING))
+				log.log(Level.WARNING, "stats bulk write failed: " + e.getMessage());
+		}
+		return count;
+	}
+
+	/**
+	 * @return true if background thread is running
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Get writer statistics.
+	 *
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("enabled", true);
+		ret.put("overflow_policy", overflowPolicy.name());
+		ret.put("buffer_capacity", buffer.capacity());
+		ret.put("buffer_size", buffer.size());
+		ret.put("enqueued", enqueuedCount.get());
+		ret.put("dropped", droppedCount.get());
+		ret.put("flushed", flushedCount.get());
+		ret.put("failed", failedCount.get());
+		ret.put("bulks", bulkCount.get());
+		return ret;
+	}
+
+}
@@ -7,6 +7,7 @@ package org.searchisko.api.service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -15,6 +16,8 @@ import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.enterprise.context.ApplicationScoped;
@@ -44,7 +47,8 @@ import org.searchisko.api.model.TimeoutConfiguration;
 import org.searchisko.api.util.SearchUtils;
 
 /**
- * Service for Elasticsearch StatsClient
+ * Service for Elasticsearch StatsClient. Statistics records are written asynchronously over {@link StatsBulkWriter},
+ * so search requests are not slowed down by statistics cluster.
  *
  * @author Libor Krzyzanek
  *
@@ -53,6 +57,7 @@ import org.searchisko.api.util.SearchUtils;
 @ApplicationScoped
 @Singleton
 @Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 public class StatsClientService extends ElasticsearchClientService {
 
 	public static final String FIELD_STATUS = "status";
@@ -72,6 +77,11 @@ public class StatsClientService extends ElasticsearchClientService {
 
 	protected ActionListener<IndexResponse> statsLogListener;
 
+	/**
+	 * Asynchronous writer of statistics records. If null then records are written directly one by one.
+	 */
+	protected StatsBulkWriter bulkWriter;
+
 	@PostConstruct
 	public void init() throws Exception {
 		log = Logger.getLogger(getClass().getName());
@@ -108,6 +118,9 @@ public class StatsClientService extends ElasticsearchClientService {
 				}
 				checkHealthOfCluster(client);
 			}
+			bulkWriter = new StatsBulkWriter(client, statsConfiguration.getBufferSize(), statsConfiguration.getBulkSize(),
+					statsConfiguration.getFlushInterval(), statsConfiguration.getOverflowPolicy(), getStatsTimeout(), log);
+			bulkWriter.start();
 		} else {
 			log.info("Statistics are disabled");
 		}
@@ -116,6 +129,12 @@ public class StatsClientService extends ElasticsearchClientService {
 
 	@PreDestroy
 	public void destroy() {
+		if (bulkWriter != null) {
+			// write buffered records before client is closed
+			TimeValue t = getStatsTimeout();
+			bulkWriter.stop(t != null ? t.millis() : 0);
+			bulkWriter = null;
+		}
 		if (node != null) {
 			super.destroy();
 		} else {
@@ -222,13 +241,37 @@ public class StatsClientService extends ElasticsearchClientService {
 		try {
 			IndexRequest ir = Requests.indexRequest().index(type.getSearchIndexName()).type(type.getSearchIndexType())
 					.timeout(TimeValue.timeValueSeconds(timeout.stats())).source(source);
-			// async call, if it fails -> just log
-			client.index(ir, statsLogListener);
+			StatsBulkWriter bw = bulkWriter;
+			if (bw != null) {
+				if (!bw.enqueue(ir) && log.isLoggable(Level.FINEST))
+					log.log(Level.FINEST, "Stats record dropped as buffer is full");
+			} else {
+				// async call, if it fails -> just log
+				client.index(ir, statsLogListener);
+			}
 		} catch (Throwable e) {
 			log.log(Level.FINEST, "Error writing into stats server: " + e.getMessage(), e);
 		}
 	}
 
+	private TimeValue getStatsTimeout() {
+		return timeout != null ? TimeValue.timeValueSeconds(timeout.stats()) : null;
+	}
+
+	/**
+	 * Get statistics of asynchronous statistics records writer.
+	 *
+	 * @return map with statistics
+	 */
+	public Map<String, Object> getWriterStats() {
+		StatsBulkWriter bw = bulkWriter;
+		if (bw != null)
+			return bw.getStats();
+		Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("enabled", false);
+		return ret;
+	}
+
 	/**
 	 * Check if some statistics record exists for specified conditions.
 	 *
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Pool of worker threads used to parallelize CPU and IO bound processing (eg. content normalization and preprocessors
+ * execution during bulk content push) out of the request thread.
+ *
+ * @author agent (agent at local)
+ */
+@Named
+@ApplicationScoped
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class WorkerPoolService {
+
+	@Inject
+	protected Logger log;
+
+	/**
+	 * Number of worker threads in pool.
+	 */
+	protected int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	protected ThreadPoolExecutor executor;
+
+	@PostConstruct
+	public void init() {
+		final AtomicInteger threadCounter = new AtomicInteger();
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Searchisko worker " + threadCounter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		if (log != null)
+			log.info("Worker pool started with " + poolSize + " threads");
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Submit task for execution in worker pool.
+	 *
+	 * @param task to execute
+	 * @return future for task result
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+
+	/**
+	 * Execute all tasks in worker pool and wait for results. Order of results is same as order of tasks.
+	 *
+	 * @param tasks to execute
+	 * @return list of results in same order as tasks
+	 * @throws ExecutionException if some task failed with exception, cause is the task exception
+	 * @throws InterruptedException if current thread is interrupted while waiting
+	 */
+	public <T> List<T> executeAll(List<? extends Callable<T>> tasks) throws ExecutionException, InterruptedException {
+		List<Future<T>> futures = executor.invokeAll(tasks);
+		List<T> ret = new ArrayList<>(futures.size());
+		for (Future<T> f : futures) {
+			ret.add(f.get());
+		}
+		return ret;
+	}
+
+	/**
+	 * @return number of worker threads actively executing tasks now
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return number of tasks waiting in queue for execution now
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return total number of tasks completed by pool
+	 */
+	public long getCompletedTaskCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+}
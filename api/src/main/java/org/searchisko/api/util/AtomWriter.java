@@ -0,0 +1,272 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import javax.ws.rs.core.MediaType;
+
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Streaming writer of <a href="http://tools.ietf.org/html/rfc4287">Atom Syndication Format</a> documents. Elements are
+ * written directly into underlying {@link Writer} without building any object model, so whole feed is never held in
+ * memory. Writer doesn't check structure of written document, caller is responsible for correct nesting of elements.
+ * <p>
+ * Entries can be written separately (eg. into cache) and then inserted into feed as UTF-8 encoded fragments, because
+ * Atom namespace is declared as default namespace on <code>feed</code> element only.
+ *
+ * @author agent (agent at local)
+ */
+public class AtomWriter {
+
+	/**
+	 * Atom namespace URI.
+	 */
+	public static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+
+	private static final DateTimeFormatter DATE_FORMATTER = ISODateTimeFormat.dateTime().withZoneUTC();
+
+	private final Writer writer;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param writer to write document into
+	 */
+	public AtomWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Write XML declaration and start of <code>feed</code> element.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter startFeed() throws IOException {
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed xmlns=\"" + ATOM_NAMESPACE + "\">");
+		return this;
+	}
+
+	/**
+	 * Write end of <code>feed</code> element.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter endFeed() throws IOException {
+		writer.write("</feed>");
+		return this;
+	}
+
+	/**
+	 * Write start of <code>entry</code> element.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter startEntry() throws IOException {
+		writer.write("<entry>");
+		return this;
+	}
+
+	/**
+	 * Write end of <code>entry</code> element.
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter endEntry() throws IOException {
+		writer.write("</entry>");
+		return this;
+	}
+
+	/**
+	 * Write simple text element.
+	 *
+	 * @param name of element
+	 * @param text of element, nothing is written if null
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter element(String name, String text) throws IOException {
+		if (text != null) {
+			writer.write('<');
+			writer.write(name);
+			writer.write('>');
+			escape(text, false);
+			writer.write("</");
+			writer.write(name);
+			writer.write('>');
+		}
+		return this;
+	}
+
+	/**
+	 * Write date element in RFC 3339 format.
+	 *
+	 * @param name of element
+	 * @param date value of element, nothing is written if null
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter dateElement(String name, Date date) throws IOException {
+		if (date != null) {
+			element(name, DATE_FORMATTER.print(date.getTime()));
+		}
+		return this;
+	}
+
+	/**
+	 * Write <code>generator</code> element.
+	 *
+	 * @param name of generator
+	 * @param version of generator, can be null
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter generator(String name, String version) throws IOException {
+		writer.write("<generator");
+		attribute("version", version);
+		writer.write('>');
+		escape(name, false);
+		writer.write("</generator>");
+		return this;
+	}
+
+	/**
+	 * Write <code>link</code> element.
+	 *
+	 * @param rel relation of link, can be null
+	 * @param href of link
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter link(String rel, String href) throws IOException {
+		writer.write("<link");
+		attribute("rel", rel);
+		attribute("href", href);
+		writer.write("/>");
+		return this;
+	}
+
+	/**
+	 * Write person construct with name only.
+	 *
+	 * @param element name of element, eg. <code>author</code>
+	 * @param name of person
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter person(String element, String name) throws IOException {
+		writer.write('<');
+		writer.write(element);
+		writer.write('>');
+		element("name", name);
+		writer.write("</");
+		writer.write(element);
+		writer.write('>');
+		return this;
+	}
+
+	/**
+	 * Write <code>category</code> element.
+	 *
+	 * @param term of category
+	 * @param scheme of category, can be null
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter category(String term, String scheme) throws IOException {
+		writer.write("<category");
+		attribute("term", term);
+		attribute("scheme", scheme);
+		writer.write("/>");
+		return this;
+	}
+
+	/**
+	 * Write <code>content</code> element with escaped text.
+	 *
+	 * @param type media type of content, <code>text</code>, <code>html</code> and <code>xhtml</code> Atom types are
+	 *          used for corresponding media types
+	 * @param text of content
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public AtomWriter content(MediaType type, String text) throws IOException {
+		writer.write("<content");
+		attribute("type", getAtomType(type));
+		writer.write('>');
+		escape(text, false);
+		writer.write("</content>");
+		return this;
+	}
+
+	/**
+	 * Get value of Atom <code>type</code> attribute for media type.
+	 *
+	 * @param type media type
+	 * @return Atom type
+	 */
+	protected static String getAtomType(MediaType type) {
+		if (type == null)
+			return null;
+		if (type.isCompatible(MediaType.TEXT_PLAIN_TYPE))
+			return "text";
+		if (type.isCompatible(MediaType.TEXT_HTML_TYPE))
+			return "html";
+		if (type.isCompatible(MediaType.APPLICATION_XHTML_XML_TYPE))
+			return "xhtml";
+		return type.toString();
+	}
+
+	private void attribute(String name, String value) throws IOException {
+		if (value != null) {
+			writer.write(' ');
+			writer.write(name);
+			writer.write("=\"");
+			escape(value, true);
+			writer.write('"');
+		}
+	}
+
+	/**
+	 * Write escaped text. Characters not allowed in XML are skipped.
+	 */
+	private void escape(String text, boolean attribute) throws IOException {
+		int len = text.length();
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			char c = text.charAt(i);
+			String replacement;
+			if (c == '<') {
+				replacement = "&lt;";
+			} else if (c == '>') {
+				replacement = "&gt;";
+			} else if (c == '&') {
+				replacement = "&amp;";
+			} else if (c == '"' && attribute) {
+				replacement = "&quot;";
+			} else if (c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xFFFE || c == 0xFFFF) {
+				replacement = "";
+			} else {
+				continue;
+			}
+			if (i > start)
+				writer.write(text, start, i - start);
+			writer.write(replacement);
+			start = i + 1;
+		}
+		if (len > start)
+			writer.write(text, start, len - start);
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue backed by ring buffer. Every slot carries a sequence number
+ * which tells producers and consumers whether slot is free for them, so no locks are necessary. Capacity is rounded up
+ * to the power of two.
+ * <p>
+ * {@link #offer(Object)} never blocks and never allocates, it simply returns false if buffer is full.
+ *
+ * @author agent (agent at local)
+ * @param <E> type of buffered elements
+ */
+public class BoundedRingBuffer<E> {
+
+	private final int mask;
+
+	private final AtomicReferenceArray<E> slots;
+
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong enqueuePos = new AtomicLong();
+
+	private final AtomicLong dequeuePos = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity requested capacity of buffer, rounded up to the power of two
+	 * @throws IllegalArgumentException if capacity is not positive or is too large
+	 */
+	public BoundedRingBuffer(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size = size << 1;
+		mask = size - 1;
+		slots = new AtomicReferenceArray<>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Insert element into buffer if there is a free slot.
+	 *
+	 * @param e element to insert, must not be null
+	 * @return true if element was inserted, false if buffer is full
+	 */
+	public boolean offer(E e) {
+		if (e == null)
+			throw new NullPointerException();
+		long pos = enqueuePos.get();
+		for (;;) {
+			int idx = (int) pos & mask;
+			long diff = sequences.get(idx) - pos;
+			if (diff == 0) {
+				if (enqueuePos.compareAndSet(pos, pos + 1)) {
+					slots.lazySet(idx, e);
+					sequences.set(idx, pos + 1);
+					return true;
+				}
+				pos = enqueuePos.get();
+			} else if (diff < 0) {
+				// slot not consumed yet - buffer is full
+				return false;
+			} else {
+				pos = enqueuePos.get();
+			}
+		}
+	}
+
+	/**
+	 * Remove oldest element from buffer.
+	 *
+	 * @return removed element or null if buffer is empty
+	 */
+	public E poll() {
+		long pos = dequeuePos.get();
+		for (;;) {
+			int idx = (int) pos & mask;
+			long diff = sequences.get(idx) - (pos + 1);
+			if (diff == 0) {
+				if (dequeuePos.compareAndSet(pos, pos + 1)) {
+					E e = slots.get(idx);
+					slots.lazySet(idx, null);
+					sequences.set(idx, pos + mask + 1);
+					return e;
+				}
+				pos = dequeuePos.get();
+			} else if (diff < 0) {
+				// slot not filled yet - buffer is empty
+				return null;
+			} else {
+				pos = dequeuePos.get();
+			}
+		}
+	}
+
+	/**
+	 * @return approximate number of elements in buffer
+	 */
+	public int size() {
+		long s = enqueuePos.get() - dequeuePos.get();
+		if (s < 0)
+			return 0;
+		return (int) Math.min(s, capacity());
+	}
+
+	/**
+	 * @return true if buffer is (approximately) empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return capacity of buffer
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+}
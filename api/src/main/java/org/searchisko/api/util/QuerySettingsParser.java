@@ -18,6 +18,7 @@ import javax.ws.rs.core.MultivaluedMap;
 import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
 import org.searchisko.api.model.PastIntervalValue;
 import org.searchisko.api.model.QuerySettings;
+import org.searchisko.api.model.SearchCursor;
 import org.searchisko.api.model.SortByValue;
 import org.searchisko.api.service.SearchService;
 
@@ -74,6 +75,21 @@ public class QuerySettingsParser {
 
 		settings.setSortBy(SortByValue.parseRequestParameterValue(params.getFirst(QuerySettings.SORT_BY_KEY)));
 
+		String cursor = SearchUtils.trimToNull(params.getFirst(QuerySettings.Filters.CURSOR_KEY));
+		if (QuerySettings.Filters.CURSOR_FIRST_VALUE.equals(cursor)) {
+			filters.setCursorPaging(true);
+		} else if (cursor != null) {
+			filters.setCursor(SearchCursor.decode(cursor));
+			// cursor replaces from, and is valid only for sorting it was created for
+			if (filters.getFrom() != null && filters.getFrom() > 0)
+				throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+			if (settings.getSortBy() == null) {
+				settings.setSortBy(filters.getCursor().getSortBy());
+			} else if (settings.getSortBy() != filters.getCursor().getSortBy()) {
+				throw new IllegalArgumentException(QuerySettings.Filters.CURSOR_KEY);
+			}
+		}
+
 		if (params.get(QuerySettings.FACETS_KEY) != null) {
 			for (String fpv : params.get(QuerySettings.FACETS_KEY)) {
 				if (fpv != null && !fpv.trim().isEmpty()) {
@@ -12,6 +12,7 @@ import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -169,6 +170,23 @@ public class SearchUtils {
 		});
 	}
 
+	private static final ObjectMapper JSON_MAP_READER = new ObjectMapper();
+
+	/**
+	 * Convert JSON read from {@link Reader} into Map of Maps structure. JSON is parsed incrementally as it is read, so
+	 * whole JSON string is never held in memory.
+	 *
+	 * @param jsonData reader to read JSON from
+	 * @return Map of Maps structure, null if jsonData is null or contains JSON <code>null</code>
+	 * @throws IOException
+	 */
+	public static Map<String, Object> readJsonMap(Reader jsonData) throws IOException {
+		if (jsonData == null)
+			return null;
+		return JSON_MAP_READER.readValue(jsonData, new TypeReference<Map<String, Object>>() {
+		});
+	}
+
 	/**
 	 * Get Integer value from value in Json Map. Can convert from {@link String} and {@link Number} values.
 	 *
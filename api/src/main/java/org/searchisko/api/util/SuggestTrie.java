@@ -0,0 +1,352 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable compact (path compressed) trie used for type-ahead suggestions. Every key is associated with
+ * <code>int</code> value, values are expected to be assigned in order of relevance (lower value is more relevant).
+ * Every node keeps sorted array of the most relevant values from its subtree, so prefix lookup costs only descent to the
+ * node for given prefix.
+ * <p>
+ * Fuzzy lookup is implemented by traversal of the trie with Levenshtein distance matrix rows, which simulates bounded
+ * edit distance automaton - subtrees which can't match within max edit distance are pruned.
+ *
+ * @author agent (agent at local)
+ * @see Builder
+ */
+public class SuggestTrie {
+
+	/**
+	 * One value found by lookup.
+	 */
+	public static final class Match {
+
+		private final int value;
+
+		private final int distance;
+
+		protected Match(int value, int distance) {
+			this.value = value;
+			this.distance = distance;
+		}
+
+		/**
+		 * @return value associated with matching key
+		 */
+		public int getValue() {
+			return value;
+		}
+
+		/**
+		 * @return edit distance of query from prefix of matching key, 0 for exact prefix match
+		 */
+		public int getDistance() {
+			return distance;
+		}
+
+		@Override
+		public String toString() {
+			return "Match [value=" + value + ", distance=" + distance + "]";
+		}
+	}
+
+	/**
+	 * Builder of {@link SuggestTrie}.
+	 */
+	public static class Builder {
+
+		private final List<String> keys = new ArrayList<>();
+		private final List<Integer> values = new ArrayList<>();
+
+		/**
+		 * Add key into trie. Same key may be added more times with distinct values.
+		 *
+		 * @param key to add, empty key is ignored
+		 * @param value associated with key, must not be negative
+		 * @return this builder
+		 */
+		public Builder add(String key, int value) {
+			if (value < 0)
+				throw new IllegalArgumentException("value must not be negative");
+			if (key != null && !key.isEmpty()) {
+				keys.add(key);
+				values.add(value);
+			}
+			return this;
+		}
+
+		/**
+		 * Build the trie.
+		 *
+		 * @param maxSize max number of values returned by one lookup of built trie
+		 * @return trie
+		 */
+		public SuggestTrie build(int maxSize) {
+			if (maxSize < 1)
+				throw new IllegalArgumentException("maxSize must be positive");
+			Integer[] order = new Integer[keys.size()];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return keys.get(o1).compareTo(keys.get(o2));
+				}
+			});
+			String[] sortedKeys = new String[order.length];
+			int[] sortedValues = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				sortedKeys[i] = keys.get(order[i]);
+				sortedValues[i] = values.get(order[i]);
+			}
+			Node root = order.length > 0 ? buildNode(sortedKeys, sortedValues, 0, order.length, 0, maxSize) : null;
+			return new SuggestTrie(root, maxSize, order.length);
+		}
+
+		/**
+		 * Build node for keys in range <code>[lo, hi)</code> of sorted array, sharing prefix of <code>depth</code>
+		 * length.
+		 */
+		private static Node buildNode(String[] keys, int[] values, int lo, int hi, int depth, int maxSize) {
+			// keys are sorted, so common prefix of first and last key is common prefix of all keys
+			String first = keys[lo];
+			String last = keys[hi - 1];
+			int lcp = depth;
+			int maxLcp = Math.min(first.length(), last.length());
+			while (lcp < maxLcp && first.charAt(lcp) == last.charAt(lcp)) {
+				lcp++;
+			}
+
+			Node node = new Node(first.substring(depth, lcp).toCharArray());
+
+			// keys ending in this node are sorted first
+			int i = lo;
+			List<int[]> tops = new ArrayList<>();
+			while (i < hi && keys[i].length() == lcp) {
+				i++;
+			}
+			if (i > lo) {
+				int[] ending = Arrays.copyOfRange(values, lo, i);
+				Arrays.sort(ending);
+				tops.add(ending);
+			}
+
+			List<Node> children = new ArrayList<>();
+			while (i < hi) {
+				char c = keys[i].charAt(lcp);
+				int j = i + 1;
+				while (j < hi && keys[j].charAt(lcp) == c) {
+					j++;
+				}
+				Node child = buildNode(keys, values, i, j, lcp, maxSize);
+				children.add(child);
+				tops.add(child.top);
+				i = j;
+			}
+			node.children = children.toArray(new Node[children.size()]);
+			node.childChars = new char[node.children.length];
+			for (int c = 0; c < node.children.length; c++) {
+				node.childChars[c] = node.children[c].label[0];
+			}
+			node.top = mergeTop(tops, maxSize);
+			return node;
+		}
+
+		/**
+		 * Merge sorted arrays into one sorted array of distinct values, truncated to max size.
+		 */
+		private static int[] mergeTop(List<int[]> arrays, int maxSize) {
+			if (arrays.size() == 1 && isDistinct(arrays.get(0)) && arrays.get(0).length <= maxSize)
+				return arrays.get(0);
+			int[] pos = new int[arrays.size()];
+			int[] ret = new int[maxSize];
+			int count = 0;
+			int lastValue = -1;
+			while (count < maxSize) {
+				int minIdx = -1;
+				for (int a = 0; a < pos.length; a++) {
+					if (pos[a] < arrays.get(a).length
+							&& (minIdx == -1 || arrays.get(a)[pos[a]] < arrays.get(minIdx)[pos[minIdx]])) {
+						minIdx = a;
+					}
+				}
+				if (minIdx == -1)
+					break;
+				int v = arrays.get(minIdx)[pos[minIdx]++];
+				if (v != lastValue) {
+					ret[count++] = v;
+					lastValue = v;
+				}
+			}
+			return Arrays.copyOf(ret, count);
+		}
+
+		private static boolean isDistinct(int[] sorted) {
+			for (int i = 1; i < sorted.length; i++) {
+				if (sorted[i] == sorted[i - 1])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static final class Node {
+
+		private final char[] label;
+
+		private char[] childChars;
+
+		private Node[] children;
+
+		/**
+		 * Sorted distinct values from the whole subtree, truncated to max size.
+		 */
+		private int[] top;
+
+		private Node(char[] label) {
+			this.label = label;
+		}
+	}
+
+	private final Node root;
+
+	private final int maxSize;
+
+	private final int keyCount;
+
+	private SuggestTrie(Node root, int maxSize, int keyCount) {
+		this.root = root;
+		this.maxSize = maxSize;
+		this.keyCount = keyCount;
+	}
+
+	/**
+	 * @return number of keys in trie
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Find values for keys starting with given prefix.
+	 *
+	 * @param prefix to find values for
+	 * @param size max number of returned values
+	 * @return values sorted from the most relevant one, never null
+	 */
+	public int[] prefix(String prefix, int size) {
+		Node node = root;
+		int pi = 0;
+		while (node != null) {
+			int li = 0;
+			while (li < node.label.length && pi < prefix.length()) {
+				if (node.label[li++] != prefix.charAt(pi++))
+					return new int[0];
+			}
+			if (pi == prefix.length()) {
+				return Arrays.copyOf(node.top, Math.min(size, node.top.length));
+			}
+			int ci = Arrays.binarySearch(node.childChars, prefix.charAt(pi));
+			node = ci >= 0 ? node.children[ci] : null;
+		}
+		return new int[0];
+	}
+
+	/**
+	 * Find values for keys starting with prefix which is within given edit distance from query.
+	 *
+	 * @param query to find values for
+	 * @param maxEdits max Levenshtein distance of query from key prefix
+	 * @param size max number of returned values
+	 * @return matches sorted by distance and then from the most relevant value, never null
+	 */
+	public List<Match> fuzzyPrefix(String query, int maxEdits, int size) {
+		if (root == null)
+			return Collections.emptyList();
+		size = Math.min(size, maxSize);
+		int[] row = new int[query.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		List<Match> collected = new ArrayList<>();
+		if (row[query.length()] <= maxEdits) {
+			// empty prefix is close enough
+			collect(root, row[query.length()], size, collected);
+		}
+		if (query.length() > 0)
+			fuzzyPrefix(root, query, row, maxEdits, size, collected);
+
+		// keep only best distance for every value
+		Collections.sort(collected, MATCH_COMPARATOR);
+		List<Match> ret = new ArrayList<>(Math.min(size, collected.size()));
+		Set<Integer> seen = new HashSet<>();
+		for (Match m : collected) {
+			if (seen.add(m.value)) {
+				ret.add(m);
+				if (ret.size() >= size)
+					break;
+			}
+		}
+		return ret;
+	}
+
+	private static final Comparator<Match> MATCH_COMPARATOR = new Comparator<Match>() {
+		@Override
+		public int compare(Match o1, Match o2) {
+			if (o1.distance != o2.distance)
+				return o1.distance < o2.distance ? -1 : 1;
+			return o1.value < o2.value ? -1 : (o1.value == o2.value ? 0 : 1);
+		}
+	};
+
+	private void fuzzyPrefix(Node node, String query, int[] row, int maxEdits, int size, List<Match> collected) {
+		int n = query.length();
+		for (char c : node.label) {
+			int[] next = new int[n + 1];
+			next[0] = row[0] + 1;
+			int min = next[0];
+			for (int j = 1; j <= n; j++) {
+				int cost = query.charAt(j - 1) == c ? 0 : 1;
+				next[j] = Math.min(Math.min(next[j - 1] + 1, row[j] + 1), row[j - 1] + cost);
+				if (next[j] < min)
+					min = next[j];
+			}
+			row = next;
+			if (min > maxEdits)
+				return;
+			if (row[n] <= maxEdits) {
+				collect(node, row[n], size, collected);
+				// whole subtree matches, distance can't be better
+				if (row[n] == 0)
+					return;
+			}
+		}
+		for (Node child : node.children) {
+			fuzzyPrefix(child, query, row, maxEdits, size, collected);
+		}
+	}
+
+	/**
+	 * Collect the most relevant values from node subtree. Only <code>size</code> of them may be used in result for given
+	 * distance, so there is no need to collect more.
+	 */
+	private void collect(Node node, int distance, int size, List<Match> collected) {
+		int count = Math.min(size, node.top.length);
+		for (int i = 0; i < count; i++) {
+			collected.add(new Match(node.top[i], distance));
+		}
+	}
+
+}
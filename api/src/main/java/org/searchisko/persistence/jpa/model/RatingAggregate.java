@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.persistence.jpa.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Materialized aggregate of all {@link Rating}s for one content, so rating statistics need not be counted over all
+ * ratings each time they are requested. Class is JPA annotated.
+ * 
+ * @author agent (agent at local)
+ */
+@Entity
+@Table(name = "rating_stats")
+public class RatingAggregate implements Serializable {
+
+	/**
+	 * Id of content this aggregate is for.
+	 */
+	@Id
+	private String contentId;
+
+	/**
+	 * Sum of all rating values for content.
+	 */
+	@NotNull
+	private long ratingSum;
+
+	/**
+	 * Number of ratings for content.
+	 */
+	@NotNull
+	private long ratingCount;
+
+	/**
+	 * Basic constructor.
+	 */
+	public RatingAggregate() {
+		super();
+	}
+
+	public RatingAggregate(String contentId, long ratingSum, long ratingCount) {
+		super();
+		this.contentId = contentId;
+		this.ratingSum = ratingSum;
+		this.ratingCount = ratingCount;
+	}
+
+	public String getContentId() {
+		return contentId;
+	}
+
+	public void setContentId(String contentId) {
+		this.contentId = contentId;
+	}
+
+	public long getRatingSum() {
+		return ratingSum;
+	}
+
+	public void setRatingSum(long ratingSum) {
+		this.ratingSum = ratingSum;
+	}
+
+	public long getRatingCount() {
+		return ratingCount;
+	}
+
+	public void setRatingCount(long ratingCount) {
+		this.ratingCount = ratingCount;
+	}
+
+	@Override
+	public int hashCode() {
+		return (contentId == null) ? 0 : contentId.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		RatingAggregate other = (RatingAggregate) obj;
+		if (contentId == null)
+			return other.contentId == null;
+		return contentId.equals(other.contentId);
+	}
+
+	@Override
+	public String toString() {
+		return "RatingAggregate [contentId=" + contentId + ", ratingSum=" + ratingSum + ", ratingCount=" + ratingCount
+				+ "]";
+	}
+
+}
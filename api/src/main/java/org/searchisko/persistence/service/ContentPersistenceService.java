@@ -5,6 +5,7 @@
  */
 package org.searchisko.persistence.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +36,17 @@ public interface ContentPersistenceService {
 	 */
 	public void store(String id, String sysContentType, Map<String, Object> entity);
 
+	/**
+	 * Store more content objects of same sys_content_type at once. Update them if exist already. Id of content object is
+	 * taken from its <code>sys_id</code> field. If more content objects with same id are passed then the last one is
+	 * stored.
+	 *
+	 * @param sysContentType sys_content_type of all content objects
+	 * @param contents content objects to store
+	 * @throws IllegalArgumentException if some content object has no <code>sys_id</code>
+	 */
+	public void storeBatch(String sysContentType, List<Map<String, Object>> contents);
+
 	/**
 	 * Delete content.
 	 *
@@ -43,6 +55,14 @@ public interface ContentPersistenceService {
 	 */
 	public void delete(String id, String sysContentType);
 
+	/**
+	 * Delete more content objects of same sys_content_type at once.
+	 *
+	 * @param sysContentType sys_content_type of all content objects
+	 * @param ids of content objects to delete
+	 */
+	public void deleteBatch(String sysContentType, Collection<String> ids);
+
 	/**
 	 * Init list request for whole content of given sysContentType. Call this first time, then call
 	 * {@link #listRequestNext(ListRequest)} while {@link ListRequest#hasContent()} returns true.
@@ -63,7 +83,9 @@ public interface ContentPersistenceService {
 	public static interface ListRequest {
 
 		/**
-		 * Return true if request has some content to process, false otherwise.
+		 * Return true if request has some content to process, false otherwise. Note that {@link #content()} may be empty
+		 * even if true is returned (eg. if all records in this iteration are invalid), but next iteration has to be read
+		 * then.
 		 *
 		 * @return true if there is some content to process. False if there is not any other content so next call to
 		 *         {@link ContentPersistenceService#listRequestNext(ListRequest)} has no meaning.
@@ -0,0 +1,174 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.persistence.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface for service used to persistently journal content pushed asynchronously, until it is processed. Each
+ * journal entry is identified by receipt id returned to the provider, so provider can ask for processing status later.
+ *
+ * @author agent (agent at local)
+ */
+public interface ContentPushJournalService {
+
+	/**
+	 * Status of entry waiting for processing.
+	 */
+	public static final String STATUS_QUEUED = "queued";
+
+	/**
+	 * Status of entry being processed now.
+	 */
+	public static final String STATUS_PROCESSING = "processing";
+
+	/**
+	 * Add content into journal with {@link #STATUS_QUEUED} status.
+	 *
+	 * @param receiptId unique identifier of journal entry
+	 * @param providerName name of provider who pushed content
+	 * @param sysContentType sys_content_type of content
+	 * @param contentId sys_content_id of content
+	 * @param content to journal
+	 * @param force if true then content is processed even if it is not changed
+	 */
+	public void add(String receiptId, String providerName, String sysContentType, String contentId,
+			Map<String, Object> content, boolean force);
+
+	/**
+	 * Claim oldest queued entries for processing. Status of claimed entries is changed to {@link #STATUS_PROCESSING},
+	 * so they are not claimed again. Claiming node (see {@link #getNodeId()}) and claim time are recorded.
+	 *
+	 * @param maxCount maximal number of entries to claim
+	 * @return claimed entries with content in order they was added into journal, never null
+	 */
+	public List<Entry> claim(int maxCount);
+
+	/**
+	 * Store final processing status of entry. Content of entry is not necessary anymore so it is removed.
+	 *
+	 * @param receiptId of entry
+	 * @param status final status of processing
+	 * @param message describing processing result
+	 */
+	public void finish(String receiptId, String status, String message);
+
+	/**
+	 * Get entry.
+	 *
+	 * @param receiptId of entry
+	 * @return entry without content or null if not found
+	 */
+	public Entry get(String receiptId);
+
+	/**
+	 * Return entries in {@link #STATUS_PROCESSING} claimed before given time back to {@link #STATUS_QUEUED}, eg. when
+	 * their processing was interrupted by node crash. Entries claimed later are not touched, as they may be still
+	 * processed by other node.
+	 *
+	 * @param claimedBefore time, entries claimed before it are requeued
+	 * @return number of requeued entries
+	 */
+	public int requeueProcessing(Date claimedBefore);
+
+	/**
+	 * @return identifier of this node recorded with entries claimed by it
+	 */
+	public String getNodeId();
+
+	/**
+	 * Delete processed entries finished before given time.
+	 *
+	 * @param finishedBefore time
+	 * @return number of deleted entries
+	 */
+	public int deleteFinished(Date finishedBefore);
+
+	/**
+	 * @return number of entries waiting for processing
+	 */
+	public int countQueued();
+
+	/**
+	 * Journal entry.
+	 */
+	public static class Entry {
+
+		protected String receiptId;
+		protected String providerName;
+		protected String sysContentType;
+		protected String contentId;
+		protected Map<String, Object> content;
+		protected boolean force;
+		protected String status;
+		protected String message;
+		protected Date created;
+		protected Date updated;
+
+		public Entry(String receiptId, String providerName, String sysContentType, String contentId,
+				Map<String, Object> content, boolean force, String status, String message, Date created, Date updated) {
+			this.receiptId = receiptId;
+			this.providerName = providerName;
+			this.sysContentType = sysContentType;
+			this.contentId = contentId;
+			this.content = content;
+			this.force = force;
+			this.status = status;
+			this.message = message;
+			this.created = created;
+			this.updated = updated;
+		}
+
+		public String getReceiptId() {
+			return receiptId;
+		}
+
+		public String getProviderName() {
+			return providerName;
+		}
+
+		public String getSysContentType() {
+			return sysContentType;
+		}
+
+		public String getContentId() {
+			return contentId;
+		}
+
+		public Map<String, Object> getContent() {
+			return content;
+		}
+
+		public boolean isForce() {
+			return force;
+		}
+
+		public String getStatus() {
+			return status;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		public Date getCreated() {
+			return created;
+		}
+
+		public Date getUpdated() {
+			return updated;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry [receiptId=" + receiptId + ", providerName=" + providerName + ", sysContentType=" + sysContentType
+					+ ", contentId=" + contentId + ", status=" + status + "]";
+		}
+	}
+
+}
@@ -6,19 +6,29 @@
 package org.searchisko.persistence.service;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
@@ -27,6 +37,7 @@ import javax.inject.Named;
 import javax.sql.DataSource;
 
 import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.util.SearchUtils;
 
 /**
@@ -50,6 +61,15 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 	@Resource(name = "java:jboss/datasources/SearchiskoDS")
 	protected DataSource searchiskoDs;
 
+	@Inject
+	protected AppConfiguration appConfiguration;
+
+	@PostConstruct
+	public void init() {
+		if (appConfiguration != null && appConfiguration.getContentPersistenceListPageSize() > 0)
+			LIST_PAGE_SIZE = appConfiguration.getContentPersistenceListPageSize();
+	}
+
 	@Override
 	public Map<String, Object> get(String id, String sysContentType) {
 		String tableName = getTableName(sysContentType);
@@ -74,6 +94,226 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 		String tableName = getTableName(sysContentType);
 		ensureTableExists(tableName);
 
+		final String jsonString = convertContentToString(content);
+		final Date updated = getUpdated(content);
+
+		try (final Connection conn = this.searchiskoDs.getConnection()) {
+			Dialect d = getDialect(conn);
+			if (d.upsertSql != null) {
+				try (final PreparedStatement statement = conn.prepareStatement(String.format(d.upsertSql, tableName))) {
+					setParams(statement, id, jsonString, sysContentType, updated);
+					statement.execute();
+				}
+			} else {
+				int updatedCount;
+				try (final PreparedStatement statement = conn.prepareStatement(String.format(UPDATE_SQL, tableName))) {
+					setParams(statement, jsonString, sysContentType, updated, id);
+					updatedCount = statement.executeUpdate();
+				}
+				if (updatedCount == 0) {
+					try (final PreparedStatement statement = conn.prepareStatement(String.format(INSERT_SQL, tableName))) {
+						setParams(statement, id, jsonString, sysContentType, updated);
+						statement.execute();
+					}
+				}
+			}
+		} catch (SQLException e) {
+			log.severe(String.format("Error storing content into table %s -- Error -- %s", tableName, e.getMessage()));
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void storeBatch(String sysContentType, List<Map<String, Object>> contents) {
+		if (contents == null || contents.isEmpty())
+			return;
+		String tableName = getTableName(sysContentType);
+		ensureTableExists(tableName);
+
+		// only last content is stored if there are more with same id
+		final Map<String, Map<String, Object>> contentById = new LinkedHashMap<>();
+		for (Map<String, Object> content : contents) {
+			Object id = content != null ? content.get(ContentObjectFields.SYS_ID) : null;
+			if (id == null || SearchUtils.trimToNull(id.toString()) == null)
+				throw new IllegalArgumentException("Field " + ContentObjectFields.SYS_ID
+						+ " is required for all content objects stored in batch");
+			contentById.remove(id.toString());
+			contentById.put(id.toString(), content);
+		}
+		final int size = contentById.size();
+		final String[] ids = new String[size];
+		final String[] jsonStrings = new String[size];
+		final Date[] updated = new Date[size];
+		int idx = 0;
+		for (Map.Entry<String, Map<String, Object>> e : contentById.entrySet()) {
+			ids[idx] = e.getKey();
+			jsonStrings[idx] = convertContentToString(e.getValue());
+			updated[idx] = getUpdated(e.getValue());
+			idx++;
+		}
+
+		// connection is enlisted into transaction of this session bean method, so whole batch is stored or nothing
+		try (final Connection conn = this.searchiskoDs.getConnection()) {
+			Dialect d = getDialect(conn);
+			if (d.upsertSql != null) {
+				try (final PreparedStatement statement = conn.prepareStatement(String.format(d.upsertSql, tableName))) {
+					for (int i = 0; i < size; i++) {
+						setParams(statement, ids[i], jsonStrings[i], sysContentType, updated[i]);
+						statement.addBatch();
+					}
+					executeBatch(statement);
+				}
+			} else {
+				int[] updatedCounts;
+				try (final PreparedStatement statement = conn.prepareStatement(String.format(UPDATE_SQL, tableName))) {
+					for (int i = 0; i < size; i++) {
+						setParams(statement, jsonStrings[i], sysContentType, updated[i], ids[i]);
+						statement.addBatch();
+					}
+					updatedCounts = executeBatch(statement);
+				}
+				// some drivers return Statement.SUCCESS_NO_INFO instead of count, so we have to check if row exists
+				List<String> unknownIds = new ArrayList<>();
+				for (int i = 0; i < size; i++) {
+					if (updatedCounts[i] == Statement.SUCCESS_NO_INFO)
+						unknownIds.add(ids[i]);
+				}
+				Set<String> existingIds = Collections.emptySet();
+				if (!unknownIds.isEmpty())
+					existingIds = selectExistingIds(conn, tableName, unknownIds);
+				try (final PreparedStatement statement = conn.prepareStatement(String.format(INSERT_SQL, tableName))) {
+					boolean insert = false;
+					for (int i = 0; i < size; i++) {
+						if (updatedCounts[i] == 0
+								|| (updatedCounts[i] == Statement.SUCCESS_NO_INFO && !existingIds.contains(ids[i]))) {
+							setParams(statement, ids[i], jsonStrings[i], sysContentType, updated[i]);
+							statement.addBatch();
+							insert = true;
+						}
+					}
+					if (insert)
+						executeBatch(statement);
+				}
+			}
+		} catch (SQLException e) {
+			log.severe(String.format("Error storing content batch into table %s -- Error -- %s", tableName,
+					e.getMessage()));
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Execute batch of statements.
+	 * 
+	 * @param statement with batch to execute
+	 * @return update counts as returned by {@link Statement#executeBatch()}
+	 * @throws SQLException
+	 */
+	protected int[] executeBatch(PreparedStatement statement) throws SQLException {
+		return statement.executeBatch();
+	}
+
+	/**
+	 * Select which of given ids exist in table.
+	 * 
+	 * @param conn to use
+	 * @param tableName to select from
+	 * @param ids to check
+	 * @return set of existing ids
+	 * @throws SQLException
+	 */
+	private Set<String> selectExistingIds(Connection conn, String tableName, List<String> ids) throws SQLException {
+		Set<String> ret = new HashSet<>();
+		for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+			List<String> chunk = ids.subList(from, Math.min(from + DELETE_BATCH_SIZE, ids.size()));
+			StringBuilder sql = new StringBuilder(String.format("select id from %s where id in (", tableName));
+			for (int i = 0; i < chunk.size(); i++) {
+				sql.append(i > 0 ? ", ?" : "?");
+			}
+			sql.append(")");
+			try (final PreparedStatement statement = conn.prepareStatement(sql.toString())) {
+				setParams(statement, chunk.toArray());
+				try (final ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						ret.add(rs.getString(1));
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	private static final String UPDATE_SQL = "update %s set json_data=?, sys_content_type=?, updated=? where id=?";
+
+	private static final String INSERT_SQL = "insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)";
+
+	/**
+	 * Supported DB dialects. Upsert SQL statement (with table name placeholder and id, json_data, sys_content_type,
+	 * updated parameters) is defined for dialects which support it. Update followed by insert if no row was updated is
+	 * used for others.
+	 */
+	protected static enum Dialect {
+		H2("merge into %s (id, json_data, sys_content_type, updated) key (id) values (?, ?, ?, ?)"),
+
+		MYSQL("insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)"
+				+ " on duplicate key update json_data=values(json_data), sys_content_type=values(sys_content_type),"
+				+ " updated=values(updated)"),
+
+		POSTGRESQL("insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)"
+				+ " on conflict (id) do update set json_data=excluded.json_data, sys_content_type=excluded.sys_content_type,"
+				+ " updated=excluded.updated"),
+
+		OTHER(null);
+
+		protected final String upsertSql;
+
+		private Dialect(String upsertSql) {
+			this.upsertSql = upsertSql;
+		}
+	}
+
+	protected static volatile Dialect dialect;
+
+	/**
+	 * Get dialect of DB we are connected to. It is detected only once.
+	 *
+	 * @param conn to detect dialect from
+	 * @return dialect, never null
+	 * @throws SQLException
+	 */
+	protected Dialect getDialect(Connection conn) throws SQLException {
+		Dialect d = dialect;
+		if (d == null) {
+			DatabaseMetaData md = conn.getMetaData();
+			String name = md.getDatabaseProductName();
+			name = name != null ? name.toLowerCase(Locale.ENGLISH) : "";
+			if (name.contains("h2")) {
+				d = Dialect.H2;
+			} else if (name.contains("mysql")) {
+				d = Dialect.MYSQL;
+			} else if (name.contains("postgresql")
+					&& (md.getDatabaseMajorVersion() > 9 || (md.getDatabaseMajorVersion() == 9 && md
+							.getDatabaseMinorVersion() >= 5))) {
+				// "on conflict" is supported since PostgreSQL 9.5
+				d = Dialect.POSTGRESQL;
+			} else {
+				d = Dialect.OTHER;
+			}
+			log.info("Content persistence DB dialect detected: " + d);
+			dialect = d;
+		}
+		return d;
+	}
+
+	private String convertContentToString(Map<String, Object> content) {
+		try {
+			return SearchUtils.convertJsonMapToString(content);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Date getUpdated(Map<String, Object> content) {
 		Date updated = null;
 		if (content != null) {
 			Object o = content.get(ContentObjectFields.SYS_UPDATED);
@@ -89,26 +329,7 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 		}
 		if (updated == null)
 			updated = new Date();
-
-		String jsonString;
-		try {
-			jsonString = SearchUtils.convertJsonMapToString(content);
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
-
-		final String selectSql = String.format("select json_data from %s where id = ?", tableName);
-		final boolean shouldUpdate = (executeStringReturningSql(selectSql, id) != null);
-
-		if (shouldUpdate) {
-			final String updateSql = String.format("update %s set json_data=?, sys_content_type=?, updated=? where id=?",
-					tableName);
-			this.executeNonReturningSql(updateSql, jsonString, sysContentType, updated, id);
-		} else {
-			final String insert = String.format(
-					"insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)", tableName);
-			this.executeNonReturningSql(insert, id, jsonString, sysContentType, updated);
-		}
+		return updated;
 	}
 
 	@Override
@@ -119,6 +340,32 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 		this.executeNonReturningSql(String.format("delete from %s where id = ?", tableName), id);
 	}
 
+	/**
+	 * Max number of ids in one <code>in</code> clause of delete statement used by
+	 * {@link #deleteBatch(String, Collection)}, and of select statement used to check existence of rows when batch is
+	 * stored.
+	 */
+	protected static final int DELETE_BATCH_SIZE = 500;
+
+	@Override
+	public void deleteBatch(String sysContentType, Collection<String> ids) {
+		if (ids == null || ids.isEmpty())
+			return;
+		String tableName = getTableName(sysContentType);
+		if (!checkTableExists(tableName))
+			return;
+		List<String> idList = new ArrayList<>(ids);
+		for (int from = 0; from < idList.size(); from += DELETE_BATCH_SIZE) {
+			List<String> chunk = idList.subList(from, Math.min(from + DELETE_BATCH_SIZE, idList.size()));
+			StringBuilder sql = new StringBuilder(String.format("delete from %s where id in (", tableName));
+			for (int i = 0; i < chunk.size(); i++) {
+				sql.append(i > 0 ? ", ?" : "?");
+			}
+			sql.append(")");
+			this.executeNonReturningSql(sql.toString(), chunk.toArray());
+		}
+	}
+
 	/**
 	 * Get table name for given sys_content_type
 	 * 
@@ -226,22 +473,30 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 
 	protected int LIST_PAGE_SIZE = 1000;
 
+	/**
+	 * List request status. Next page is selected using id of last row of previous page (keyset pagination), so cost of
+	 * page select does not depend on position of page in table.
+	 */
 	protected static class JpaListRequest implements ListRequest {
 
 		List<Map<String, Object>> content;
 		String sysContentType;
-		int beginIndex = 0;
+		/**
+		 * id of last row read in this page, null if no row was read
+		 */
+		String lastId;
 
-		protected JpaListRequest(String sysContentType, int beginIndex, List<Map<String, Object>> content) {
+		protected JpaListRequest(String sysContentType, String lastId, List<Map<String, Object>> content) {
 			super();
 			this.sysContentType = sysContentType;
-			this.beginIndex = beginIndex;
+			this.lastId = lastId;
 			this.content = content;
 		}
 
 		@Override
 		public boolean hasContent() {
-			return content != null && !content.isEmpty();
+			// page may contain only invalid rows, but next page has to be read then
+			return lastId != null;
 		}
 
 		@Override
@@ -253,32 +508,62 @@ public class JdbcContentPersistenceService implements ContentPersistenceService
 
 	@Override
 	public ListRequest listRequestInit(String sysContentType) {
-		return listRequestImpl(sysContentType, 0);
+		return listRequestImpl(sysContentType, null);
 	}
 
 	@Override
 	public ListRequest listRequestNext(ListRequest previous) {
 		JpaListRequest lr = (JpaListRequest) previous;
-		return listRequestImpl(lr.sysContentType, lr.beginIndex + LIST_PAGE_SIZE);
+		if (!lr.hasContent())
+			return lr;
+		return listRequestImpl(lr.sysContentType, lr.lastId);
 	}
 
-	protected ListRequest listRequestImpl(String sysContentType, int beginIndex) {
-		new ArrayList<Map<String, Object>>();
-		List<Map<String, Object>> content = new ArrayList<>(10);
+	/**
+	 * Read one page of content. JSON data are parsed directly from DB CLOB stream, so they are not materialized as
+	 * String.
+	 *
+	 * @param sysContentType to read content for
+	 * @param lastId id of last row from previous page, null for first page
+	 * @return list request status with page content
+	 */
+	protected ListRequest listRequestImpl(String sysContentType, String lastId) {
+		List<Map<String, Object>> content = new ArrayList<>(LIST_PAGE_SIZE);
+		String pageLastId = null;
 		String tableName = getTableName(sysContentType);
 		ensureTableExists(tableName);
 		if (checkTableExists(tableName)) {
-			final String sql = String.format("select json_data, id from %s order by id limit %d offset %d", tableName,
-					LIST_PAGE_SIZE, beginIndex);
-			final List<String> jsonDataList = this.executeListReturningSql(sql);
-			for (final String data : jsonDataList) {
-				try {
-					content.add(SearchUtils.convertToJsonMap(data));
-				} catch (IOException e) {
-					this.log.severe("Could not convert JSON to valid object, " + e.getMessage());
+			final String sql;
+			if (lastId == null) {
+				sql = String.format("select id, json_data from %s order by id limit %d", tableName, LIST_PAGE_SIZE);
+			} else {
+				sql = String.format("select id, json_data from %s where id > ? order by id limit %d", tableName,
+						LIST_PAGE_SIZE);
+			}
+			try (final Connection conn = this.searchiskoDs.getConnection();
+					final PreparedStatement statement = conn.prepareStatement(sql)) {
+				if (lastId != null)
+					setParams(statement, lastId);
+				statement.setFetchSize(LIST_PAGE_SIZE);
+				try (final ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						pageLastId = rs.getString(1);
+						try (final Reader data = rs.getCharacterStream(2)) {
+							Map<String, Object> m = SearchUtils.readJsonMap(data);
+							if (m != null)
+								content.add(m);
+						} catch (IOException e) {
+							this.log.severe(String.format(
+									"Could not convert JSON to valid object for sys_content_type '%s' and id '%s': %s", sysContentType,
+									pageLastId, e.getMessage()));
+						}
+					}
 				}
+			} catch (SQLException e) {
+				log.severe(String.format("Error executing statement -- %s -- Error -- %s", sql, e.getMessage()));
+				throw new RuntimeException(e);
 			}
 		}
-		return new JpaListRequest(sysContentType, beginIndex, content);
+		return new JpaListRequest(sysContentType, pageLastId, content);
 	}
 }
@@ -0,0 +1,261 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.persistence.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import javax.annotation.Resource;
+import javax.ejb.LocalBean;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.sql.DataSource;
+
+import org.searchisko.api.util.SearchUtils;
+
+/**
+ * JDBC based implementation of {@link ContentPushJournalService}. Journal is stored in one table created when used
+ * first time. It's session bean to work with transactions, so entry is durably stored when {@link #add(String, String,
+ * String, String, Map, boolean)} returns.
+ *
+ * @author agent (agent at local)
+ */
+@Named
+@Stateless
+@LocalBean
+public class JdbcContentPushJournalService implements ContentPushJournalService {
+
+	protected static final String TABLE_NAME = "content_push_journal";
+
+	private static final String TABLE_STRUCTURE_DDL = "create table " + TABLE_NAME
+			+ " ( receipt_id varchar(50) not null primary key, provider varchar(100) not null,"
+			+ " sys_content_type varchar(100) not null, content_id varchar(200) not null, json_data clob,"
+			+ " force_push smallint default 0 not null, status varchar(20) not null, message varchar(1000),"
+			+ " created timestamp not null, updated timestamp not null, claimed_by varchar(200), claimed timestamp )";
+
+	private static final String ENTRY_COLUMNS = "receipt_id, provider, sys_content_type, content_id, status, message, created, updated";
+
+	/**
+	 * Max length of message stored in journal.
+	 */
+	protected static final int MESSAGE_MAX_LENGTH = 1000;
+
+	/**
+	 * Identifier of this node stored with claimed entries. Contains random part so claims made before restart are
+	 * distinguished.
+	 */
+	protected static final String NODE_ID = createNodeId();
+
+	protected static volatile boolean tableExists = false;
+
+	@Inject
+	protected Logger log;
+
+	@Resource(name = "java:jboss/datasources/SearchiskoDS")
+	protected DataSource searchiskoDs;
+
+	@Override
+	public void add(String receiptId, String providerName, String sysContentType, String contentId,
+			Map<String, Object> content, boolean force) {
+		String jsonString;
+		try {
+			jsonString = SearchUtils.convertJsonMapToString(content);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Date now = new Date();
+		executeUpdate("insert into " + TABLE_NAME + " (receipt_id, provider, sys_content_type, content_id, json_data,"
+				+ " force_push, status, created, updated) values (?, ?, ?, ?, ?, ?, ?, ?, ?)", receiptId, providerName,
+				sysContentType, contentId, jsonString, force ? 1 : 0, STATUS_QUEUED, now, now);
+	}
+
+	@Override
+	public List<Entry> claim(int maxCount) {
+		ensureTableExists();
+		List<Entry> ret = new ArrayList<>();
+		final String sql = String.format("select %s, json_data, force_push from %s where status = ? order by created, receipt_id"
+				+ " limit %d", ENTRY_COLUMNS, TABLE_NAME, maxCount);
+		try (final Connection conn = this.searchiskoDs.getConnection()) {
+			List<Entry> queued = new ArrayList<>();
+			try (final PreparedStatement statement = conn.prepareStatement(sql)) {
+				setParams(statement, STATUS_QUEUED);
+				try (final ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						Map<String, Object> content = null;
+						try (final Reader data = rs.getCharacterStream(9)) {
+							content = SearchUtils.readJsonMap(data);
+						} catch (IOException e) {
+							log.severe(String.format("Could not read journaled content for receipt %s: %s", rs.getString(1),
+									e.getMessage()));
+						}
+						queued.add(readEntry(rs, content, rs.getInt(10) != 0));
+					}
+				}
+			}
+			// other node may claim same entry concurrently, so status is changed only if it is still queued
+			Date now = new Date();
+			try (final PreparedStatement statement = conn.prepareStatement("update " + TABLE_NAME
+					+ " set status = ?, updated = ?, claimed_by = ?, claimed = ?"
+					+ " where receipt_id = ? and status = ?")) {
+				for (Entry entry : queued) {
+					setParams(statement, STATUS_PROCESSING, now, NODE_ID, now, entry.receiptId, STATUS_QUEUED);
+					if (statement.executeUpdate() == 1) {
+						entry.status = STATUS_PROCESSING;
+						entry.updated = now;
+						ret.add(entry);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			log.severe(String.format("Error executing statement -- %s -- Error -- %s", sql, e.getMessage()));
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
+	@Override
+	public void finish(String receiptId, String status, String message) {
+		if (message != null && message.length() > MESSAGE_MAX_LENGTH)
+			message = message.substring(0, MESSAGE_MAX_LENGTH);
+		executeUpdate("update " + TABLE_NAME + " set status = ?, message = ?, updated = ?, json_data = null"
+				+ " where receipt_id = ?", status, message, new Date(), receiptId);
+	}
+
+	@Override
+	public Entry get(String receiptId) {
+		ensureTableExists();
+		final String sql = "select " + ENTRY_COLUMNS + " from " + TABLE_NAME + " where receipt_id = ?";
+		try (final Connection conn = this.searchiskoDs.getConnection();
+				final PreparedStatement statement = conn.prepareStatement(sql)) {
+			setParams(statement, receiptId);
+			try (final ResultSet rs = statement.executeQuery()) {
+				if (rs.next()) {
+					return readEntry(rs, null, false);
+				}
+			}
+		} catch (SQLException e) {
+			log.severe(String.format("Error executing statement -- %s -- Error -- %s", sql, e.getMessage()));
+			throw new RuntimeException(e);
+		}
+		return null;
+	}
+
+	@Override
+	public int requeueProcessing(Date claimedBefore) {
+		return executeUpdate("update " + TABLE_NAME + " set status = ?, updated = ?, claimed_by = null, claimed = null"
+				+ " where status = ? and claimed < ?", STATUS_QUEUED, new Date(), STATUS_PROCESSING, claimedBefore);
+	}
+
+	@Override
+	public String getNodeId() {
+		return NODE_ID;
+	}
+
+	@Override
+	public int deleteFinished(Date finishedBefore) {
+		return executeUpdate("delete from " + TABLE_NAME + " where status <> ? and status <> ? and updated < ?",
+				STATUS_QUEUED, STATUS_PROCESSING, finishedBefore);
+	}
+
+	@Override
+	public int countQueued() {
+		ensureTableExists();
+		final String sql = "select count(*) from " + TABLE_NAME + " where status = ?";
+		try (final Connection conn = this.searchiskoDs.getConnection();
+				final PreparedStatement statement = conn.prepareStatement(sql)) {
+			setParams(statement, STATUS_QUEUED);
+			try (final ResultSet rs = statement.executeQuery()) {
+				return rs.next() ? rs.getInt(1) : 0;
+			}
+		} catch (SQLException e) {
+			log.severe(String.format("Error executing statement -- %s -- Error -- %s", sql, e.getMessage()));
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String createNodeId() {
+		String node = System.getProperty("jboss.node.name");
+		if (node == null) {
+			try {
+				node = InetAddress.getLocalHost().getHostName();
+			} catch (IOException e) {
+				node = "unknown";
+			}
+		}
+		return node + "/" + UUID.randomUUID().toString();
+	}
+
+	private Entry readEntry(ResultSet rs, Map<String, Object> content, boolean force) throws SQLException {
+		return new Entry(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), content, force,
+				rs.getString(5), rs.getString(6), rs.getTimestamp(7), rs.getTimestamp(8));
+	}
+
+	/**
+	 * Create journal table if it doesn't exist yet.
+	 */
+	protected synchronized void ensureTableExists() {
+		if (tableExists)
+			return;
+		try (final Connection conn = this.searchiskoDs.getConnection()) {
+			try (final Statement statement = conn.createStatement()) {
+				statement.executeQuery("select count(*) from " + TABLE_NAME + " where 1 = 0").close();
+			} catch (SQLException e) {
+				// table doesn't exist yet
+				try (final Statement statement = conn.createStatement()) {
+					statement.execute(TABLE_STRUCTURE_DDL);
+				}
+				log.info("Content push journal table created");
+			}
+			tableExists = true;
+		} catch (SQLException e) {
+			log.severe(String.format("Error creating content push journal table -- Error -- %s", e.getMessage()));
+			throw new RuntimeException(e);
+		}
+	}
+
+	protected int executeUpdate(final String sql, final Object... params) {
+		ensureTableExists();
+		try (final Connection conn = this.searchiskoDs.getConnection();
+				final PreparedStatement statement = conn.prepareStatement(sql)) {
+			setParams(statement, params);
+			return statement.executeUpdate();
+		} catch (SQLException e) {
+			log.severe(String.format("Error executing SQL statement -- %s -- Error -- %s", sql, e.getMessage()));
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void setParams(PreparedStatement statement, Object... params) throws SQLException {
+		int i = 1;
+		for (Object param : params) {
+			if (param == null) {
+				statement.setNull(i, java.sql.Types.VARCHAR);
+			} else if (param instanceof String) {
+				statement.setString(i, (String) param);
+			} else if (param instanceof Date) {
+				statement.setTimestamp(i, new Timestamp(((Date) param).getTime()));
+			} else if (param instanceof Integer) {
+				statement.setInt(i, (Integer) param);
+			}
+			i++;
+		}
+	}
+
+}
@@ -6,11 +6,19 @@
 package org.searchisko.persistence.service;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.annotation.Resource;
 import javax.ejb.LocalBean;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
@@ -20,9 +28,11 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 
 import org.searchisko.persistence.jpa.model.Rating;
+import org.searchisko.persistence.jpa.model.RatingAggregate;
 
 /**
- * JPA based implementation of {@link RatingPersistenceService}.
+ * JPA based implementation of {@link RatingPersistenceService}. Rating statistics are read from materialized
+ * {@link RatingAggregate}s which are maintained in the same transaction as ratings.
  * 
  * @author Vlastimil Elias (velias at redhat dot com)
  */
@@ -33,6 +43,9 @@ public class JpaRatingPersistenceService implements RatingPersistenceService {
 	@Inject
 	protected EntityManager em;
 
+	@Resource
+	protected SessionContext sessionContext;
+
 	@Override
 	public List<Rating> getRatings(String contributorId, String... contentId) {
 		CriteriaBuilder cb = em.getCriteriaBuilder();
@@ -50,9 +63,11 @@ public class JpaRatingPersistenceService implements RatingPersistenceService {
 		Rating jpaEntity = null;
 		List<Rating> rl = getRatings(contributorId, contentId);
 		boolean newEntity = false;
+		int oldRating = 0;
 		if (rl != null && !rl.isEmpty()) {
 			jpaEntity = rl.get(0);
 			em.lock(jpaEntity, LockModeType.PESSIMISTIC_WRITE);
+			oldRating = jpaEntity.getRating();
 		} else {
 			jpaEntity = new Rating();
 			jpaEntity.setContentId(contentId);
@@ -61,21 +76,150 @@ public class JpaRatingPersistenceService implements RatingPersistenceService {
 		}
 		jpaEntity.setRating(rating);
 		jpaEntity.setRatedAt(new Timestamp(System.currentTimeMillis()));
-		if (newEntity)
+		if (newEntity) {
 			em.persist(jpaEntity);
+			updateRatingStats(contentId, rating, 1);
+		} else if (oldRating != rating) {
+			updateRatingStats(contentId, rating - oldRating, 0);
+		}
+	}
+
+	private static final String STATS_UPDATE_QUERY = "update RatingAggregate a set a.ratingSum = a.ratingSum + ?1, a.ratingCount = a.ratingCount + ?2 where a.contentId = ?3";
+
+	/**
+	 * Update materialized rating statistics for content. Row is updated in database directly so it is locked till end
+	 * of transaction and concurrent ratings of same content are serialized. If row doesn't exist yet then it is created
+	 * empty in separate transaction (see {@link #insertRatingStats(String)}) before update, so concurrent first
+	 * ratings of same content do not fail on duplicate key.
+	 * <p>
+	 * Existence of row is checked by non locking select. Update of not existing row would lock the index gap in
+	 * MySQL (REPEATABLE READ isolation), so insert in separate transaction would wait for this transaction forever.
+	 * 
+	 * @param contentId to update statistics for
+	 * @param sumDelta change of sum of ratings
+	 * @param countDelta change of number of ratings
+	 */
+	protected void updateRatingStats(String contentId, long sumDelta, long countDelta) {
+		RuntimeException insertException = null;
+		if (countDelta > 0 && !existsRatingStats(contentId)) {
+			try {
+				getBusinessObject().insertRatingStats(contentId);
+			} catch (RuntimeException e) {
+				// row is probably inserted by concurrent transaction, we'll see in update
+				insertException = e;
+			}
+		}
+		if (executeRatingStatsUpdate(contentId, sumDelta, countDelta) == 0 && countDelta > 0) {
+			throw insertException != null ? insertException : new IllegalStateException(
+					"Rating statistics not created for content " + contentId);
+		}
+	}
 
+	private boolean existsRatingStats(String contentId) {
+		return em.createQuery("select COUNT(a.contentId) from RatingAggregate a where a.contentId = ?1", Long.class)
+				.setParameter(1, contentId).getSingleResult() > 0;
 	}
 
-	private static String STAT_QUERY = "select AVG(r.rating), COUNT(r.contributorId) from Rating r where r.contentId = ?1";
+	private int executeRatingStatsUpdate(String contentId, long sumDelta, long countDelta) {
+		return em.createQuery(STATS_UPDATE_QUERY).setParameter(1, sumDelta).setParameter(2, countDelta)
+				.setParameter(3, contentId).executeUpdate();
+	}
+
+	/**
+	 * Insert empty materialized rating statistics for content. Runs in new transaction which is committed immediately,
+	 * so duplicate key caused by concurrent insert fails this transaction only, not the caller's one. Empty statistics
+	 * are ignored when read.
+	 * 
+	 * @param contentId to insert statistics for
+	 */
+	@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+	public void insertRatingStats(String contentId) {
+		// aggregates are maintained by bulk queries only, so we do not keep them managed
+		RatingAggregate ra = new RatingAggregate(contentId, 0, 0);
+		em.persist(ra);
+		em.flush();
+		em.detach(ra);
+	}
+
+	/**
+	 * Get reference to this bean used to call its methods with container managed transaction attributes.
+	 * 
+	 * @return business object of this bean, or this instance if not running in container
+	 */
+	protected JpaRatingPersistenceService getBusinessObject() {
+		if (sessionContext == null)
+			return this;
+		return sessionContext.getBusinessObject(JpaRatingPersistenceService.class);
+	}
+
+	/**
+	 * Remove ratings from materialized statistics for all content rated by given contributor. Call it just before
+	 * ratings of contributor are deleted.
+	 * 
+	 * @param contributorId to remove ratings from statistics for
+	 */
+	protected void removeContributorFromRatingStats(String contributorId) {
+		List<Object[]> rows = em
+				.createQuery("select r.contentId, r.rating from Rating r where r.contributorId = ?1", Object[].class)
+				.setParameter(1, contributorId).getResultList();
+		if (rows.isEmpty())
+			return;
+		List<String> contentIds = new ArrayList<String>(rows.size());
+		for (Object[] row : rows) {
+			String contentId = (String) row[0];
+			updateRatingStats(contentId, -((Number) row[1]).longValue(), -1);
+			contentIds.add(contentId);
+		}
+		em.createQuery("delete from RatingAggregate a where a.contentId in ?1 and a.ratingCount <= 0")
+				.setParameter(1, contentIds).executeUpdate();
+	}
 
 	@Override
 	public RatingStats countRatingStats(String contentId) {
-		Object[] ret = (Object[]) em.createQuery(STAT_QUERY).setParameter(1, contentId).getSingleResult();
-		if (ret != null && ret.length > 0 && ret[0] != null)
-			return new RatingStats(contentId, (Double) ret[0], (Long) ret[1]);
+		List<Object[]> rows = em
+				.createQuery("select a.ratingSum, a.ratingCount from RatingAggregate a where a.contentId = ?1",
+						Object[].class).setParameter(1, contentId).getResultList();
+		if (!rows.isEmpty())
+			return createRatingStats(contentId, rows.get(0)[0], rows.get(0)[1]);
 		return null;
 	}
 
+	@Override
+	public Map<String, RatingStats> countRatingStats(Collection<String> contentId) {
+		Map<String, RatingStats> ret = new HashMap<String, RatingStats>();
+		if (contentId == null || contentId.isEmpty())
+			return ret;
+		List<Object[]> rows = em
+				.createQuery(
+						"select a.contentId, a.ratingSum, a.ratingCount from RatingAggregate a where a.contentId in ?1",
+						Object[].class).setParameter(1, contentId).getResultList();
+		for (Object[] row : rows) {
+			RatingStats rs = createRatingStats((String) row[0], row[1], row[2]);
+			if (rs != null)
+				ret.put(rs.getContentId(), rs);
+		}
+		return ret;
+	}
+
+	private static RatingStats createRatingStats(String contentId, Object sum, Object count) {
+		long number = ((Number) count).longValue();
+		if (number <= 0)
+			return null;
+		return new RatingStats(contentId, ((Number) sum).doubleValue() / number, number);
+	}
+
+	@Override
+	public boolean initRatingStats() {
+		if (em.createQuery("select COUNT(a.contentId) from RatingAggregate a", Long.class).getSingleResult() > 0)
+			return false;
+		if (em.createQuery("select COUNT(r.id) from Rating r", Long.class).getSingleResult() == 0)
+			return false;
+		em.createQuery(
+				"insert into RatingAggregate (contentId, ratingSum, ratingCount) select r.contentId, SUM(r.rating), COUNT(r.id) from Rating r group by r.contentId")
+				.executeUpdate();
+		return true;
+	}
+
 	@Override
 	public void mergeRatingsForContributors(String contributorIdFrom, String contributorIdTo) {
 		if (contributorIdFrom == null || contributorIdTo == null)
@@ -85,21 +229,28 @@ public class JpaRatingPersistenceService implements RatingPersistenceService {
 				"update Rating r set r.contributorId = ?1 where r.contributorId = ?2 and r.contentId not in (select r.contentId from Rating r where r.contributorId = ?3)")
 				.setParameter(1, contributorIdTo).setParameter(2, contributorIdFrom).setParameter(3, contributorIdTo)
 				.executeUpdate();
+		// only ratings of content rated by both contributors remain, so they are removed from statistics
+		removeContributorFromRatingStats(contributorIdFrom);
 		em.createQuery("delete from Rating r where r.contributorId = ?1").setParameter(1, contributorIdFrom)
 				.executeUpdate();
 	}
 
 	@Override
 	public void deleteRatingsForContributor(String contributorId) {
-		if (contributorId != null)
+		if (contributorId != null) {
+			removeContributorFromRatingStats(contributorId);
 			em.createQuery("delete from Rating r where r.contributorId = ?1").setParameter(1, contributorId).executeUpdate();
+		}
 	}
 
 	@Override
 	public void deleteRatingsForContent(String... contentId) {
-		if (contentId != null && contentId.length > 0)
-			em.createQuery("delete from Rating r where r.contentId in ?1").setParameter(1, Arrays.asList(contentId))
+		if (contentId != null && contentId.length > 0) {
+			List<String> ids = Arrays.asList(contentId);
+			em.createQuery("delete from Rating r where r.contentId in ?1").setParameter(1, ids).executeUpdate();
+			em.createQuery("delete from RatingAggregate a where a.contentId in ?1").setParameter(1, ids)
 					.executeUpdate();
+		}
 	}
 
 }
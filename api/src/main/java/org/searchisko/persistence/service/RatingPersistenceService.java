@@ -5,7 +5,9 @@
  */
 package org.searchisko.persistence.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.searchisko.persistence.jpa.model.Rating;
 
@@ -63,6 +65,24 @@ public interface RatingPersistenceService {
 	 */
 	RatingStats countRatingStats(String contentId);
 
+	/**
+	 * Count rating statistics (average rating and number of ratings) for more content at once. Use it instead of
+	 * {@link #countRatingStats(String)} when statistics are necessary for bigger set of content, eg. during reindex.
+	 * 
+	 * @param contentId collection of identifiers of content to count statistics for
+	 * @return map with rating statistics where key is content id. Do not contain entry for content not rated yet. Never
+	 *         null.
+	 */
+	Map<String, RatingStats> countRatingStats(Collection<String> contentId);
+
+	/**
+	 * Initialize materialized rating statistics from stored ratings if they are empty, eg. after upgrade from version
+	 * which didn't maintain them.
+	 * 
+	 * @return true if statistics have been initialized, false if it was not necessary
+	 */
+	boolean initRatingStats();
+
 	public static class RatingStats {
 		private String contentId;
 		private double average;
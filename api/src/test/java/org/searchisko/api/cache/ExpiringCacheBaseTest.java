@@ -6,6 +6,7 @@
 package org.searchisko.api.cache;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -84,4 +85,90 @@ public class ExpiringCacheBaseTest {
 		Assert.assertNull(tested.get(key3_2));
 
 	}
+
+	@Test
+	public void eviction() {
+		ExpiringCacheBase<String> tested = new ExpiringCacheBase<String>() {
+		};
+		tested.ttl = 50000;
+		tested.maxEntries = 10;
+
+		for (int i = 0; i < 10; i++) {
+			tested.put("k" + i, "v" + i);
+		}
+		Assert.assertEquals(10, tested.size());
+
+		// touch k0 so it is not least recently used
+		Assert.assertEquals("v0", tested.get("k0"));
+
+		tested.put("k10", "v10");
+		// limit exceeded, so LRU entries are evicted under the limit
+		Assert.assertTrue(tested.size() <= 10);
+		Assert.assertEquals("v0", tested.get("k0"));
+		Assert.assertEquals("v10", tested.get("k10"));
+		Assert.assertNull(tested.get("k1"));
+		Assert.assertEquals(2L, tested.getStats().get("evictions"));
+	}
+
+	@Test
+	public void evictExpired() throws InterruptedException {
+		ExpiringCacheBase<String> tested = new ExpiringCacheBase<String>() {
+		};
+		tested.ttl = 100;
+		tested.put("a", "a");
+		tested.put("b", "b");
+		Assert.assertEquals(2, tested.size());
+		tested.evictExpired();
+		Assert.assertEquals(2, tested.size());
+		Thread.sleep(150);
+		tested.evictExpired();
+		Assert.assertEquals(0, tested.size());
+	}
+
+	@Test
+	public void refreshAhead() throws InterruptedException {
+		ExpiringCacheBase<String> tested = new ExpiringCacheBase<String>() {
+		};
+		tested.ttl = 400;
+		tested.refreshAheadFactor = 0.5f;
+
+		tested.put("a", "a");
+		Assert.assertEquals("a", tested.get("a"));
+		Thread.sleep(250);
+		// only first caller after refresh time gets null so reloads value, others are served from cache
+		Assert.assertNull(tested.get("a"));
+		Assert.assertEquals("a", tested.get("a"));
+		Assert.assertEquals("a", tested.get("a"));
+		tested.put("a", "a2");
+		Assert.assertEquals("a2", tested.get("a"));
+
+		// case - refresh-ahead disabled
+		tested.refreshAheadFactor = 0;
+		tested.put("b", "b");
+		Thread.sleep(250);
+		Assert.assertEquals("b", tested.get("b"));
+	}
+
+	@Test
+	public void getWithLoader() {
+		ExpiringCacheBase<String> tested = new ExpiringCacheBase<String>() {
+		};
+		ExpiringCacheBase.Loader<String> loader = new ExpiringCacheBase.Loader<String>() {
+			@Override
+			public String load(String key) {
+				return "unknown".equals(key) ? null : key + "_loaded";
+			}
+		};
+
+		Assert.assertEquals("a_loaded", tested.get("a", loader));
+		Assert.assertEquals("a_loaded", tested.get("a"));
+		Assert.assertNull(tested.get("unknown", loader));
+		Assert.assertEquals(1, tested.size());
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(1, stats.get("size"));
+		Assert.assertEquals(1L, stats.get("hits"));
+		Assert.assertEquals(2L, stats.get("misses"));
+		Assert.assertEquals(2L, stats.get("loads"));
+	}
 }
@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.model.AppConfiguration;
+
+/**
+ * Unit test for {@link FeedEntryCache}.
+ *
+ * @author agent (agent at local)
+ */
+public class FeedEntryCacheTest {
+
+	private static final String UPDATED_1 = "2014-03-27T10:36:27.000Z";
+	private static final String UPDATED_2 = "2014-03-28T10:36:27.000Z";
+
+	private FeedEntryCache getTested() {
+		FeedEntryCache tested = new FeedEntryCache();
+		tested.setMaxMemory(100000);
+		return tested;
+	}
+
+	@Test
+	public void init() {
+		FeedEntryCache tested = new FeedEntryCache();
+		Assert.assertFalse(tested.isEnabled());
+		tested.put("id", UPDATED_1, new byte[10]);
+		Assert.assertNull(tested.get("id", UPDATED_1));
+
+		tested.appConfiguration = new AppConfiguration("path");
+		tested.appConfiguration.setFeedEntryCacheMaxMemory(5);
+		tested.init();
+		Assert.assertTrue(tested.isEnabled());
+		Assert.assertEquals(5L * 1024 * 1024, tested.maxMemory);
+	}
+
+	@Test
+	public void cacheWorks() {
+		FeedEntryCache tested = getTested();
+
+		byte[] d1 = new byte[] { 1 };
+		byte[] d2 = new byte[] { 2 };
+		tested.put("id1", UPDATED_1, d1);
+		Assert.assertSame(d1, tested.get("id1", UPDATED_1));
+		Assert.assertNull(tested.get("id2", UPDATED_1));
+		Assert.assertTrue(tested.getUsedMemory() > 0);
+
+		// case - other version of content is not served
+		Assert.assertNull(tested.get("id1", UPDATED_2));
+		tested.put("id1", UPDATED_2, d2);
+		Assert.assertSame(d2, tested.get("id1", UPDATED_2));
+		Assert.assertNull(tested.get("id1", UPDATED_1));
+
+		// case - nothing cached without version
+		tested.put("id3", null, d1);
+		Assert.assertNull(tested.get("id3", null));
+
+		// case - remove
+		tested.remove("id1");
+		tested.remove("unknown");
+		tested.remove(null);
+		Assert.assertNull(tested.get("id1", UPDATED_2));
+		Assert.assertEquals(0, tested.getUsedMemory());
+
+		// case - flush
+		tested.put("id1", UPDATED_1, d1);
+		tested.flush();
+		Assert.assertNull(tested.get("id1", UPDATED_1));
+		Assert.assertEquals(0, tested.getUsedMemory());
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(true, stats.get("enabled"));
+		Assert.assertEquals(0, stats.get("size"));
+		Assert.assertEquals(2L, stats.get("hits"));
+		Assert.assertEquals(6L, stats.get("misses"));
+	}
+
+	@Test
+	public void eventHandlers() {
+		FeedEntryCache tested = getTested();
+
+		byte[] d = new byte[] { 1 };
+		tested.put("type1-aa", UPDATED_1, d);
+		tested.put("type2-aa", UPDATED_1, d);
+
+		tested.contentStoredEventHandler(new ContentStoredEvent("type1-aa", null));
+		Assert.assertNull(tested.get("type1-aa", UPDATED_1));
+		Assert.assertSame(d, tested.get("type2-aa", UPDATED_1));
+
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("type2-aa"));
+		Assert.assertNull(tested.get("type2-aa", UPDATED_1));
+
+		tested.contentStoredEventHandler(null);
+		tested.contentDeletedEventHandler(null);
+
+		// case - bulk delete
+		tested.put("type1-aa", UPDATED_1, d);
+		tested.put("type1-bb", UPDATED_1, d);
+		tested.put("type1-cc", UPDATED_1, d);
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("type1", Arrays.asList("type1-aa",
+				"type1-bb")));
+		tested.contentBulkDeletedEventHandler(null);
+		Assert.assertNull(tested.get("type1-aa", UPDATED_1));
+		Assert.assertNull(tested.get("type1-bb", UPDATED_1));
+		Assert.assertSame(d, tested.get("type1-cc", UPDATED_1));
+	}
+
+	@Test
+	public void memoryBudget() {
+		FeedEntryCache tested = getTested();
+
+		// case - too large entry is not cached
+		tested.put("large", UPDATED_1, new byte[2000]);
+		Assert.assertNull(tested.get("large", UPDATED_1));
+
+		// case - least recently used entries are evicted
+		for (int i = 0; i < 200; i++) {
+			tested.put("id" + i, UPDATED_1, new byte[500]);
+			// keep first entry used
+			tested.get("id0", UPDATED_1);
+		}
+		Assert.assertTrue(tested.getUsedMemory() <= 100000);
+		Assert.assertNotNull(tested.get("id0", UPDATED_1));
+		Assert.assertNull(tested.get("id1", UPDATED_1));
+		Assert.assertNotNull(tested.get("id199", UPDATED_1));
+		Assert.assertTrue((Long) tested.getStats().get("evictions") > 0);
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.elasticsearch.tools.content.StructuredContentPreprocessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PreprocessorChainCache}.
+ * 
+ * @author agent (agent at local)
+ */
+public class PreprocessorChainCacheTest {
+
+	@Test
+	public void cacheWorks() {
+		PreprocessorChainCache tested = new PreprocessorChainCache();
+
+		List<Map<String, Object>> def1 = createDef("a");
+		List<StructuredContentPreprocessor> chain1 = new ArrayList<>();
+
+		// case - empty cache
+		Assert.assertNull(tested.get("type1", def1));
+		Assert.assertEquals(1, tested.getMissCount());
+		Assert.assertEquals(0, tested.getHitCount());
+
+		// case - cached value for same definition
+		tested.put("type1", def1, chain1);
+		Assert.assertSame(chain1, tested.get("type1", def1));
+		Assert.assertNull(tested.get("type2", def1));
+		Assert.assertEquals(2, tested.getMissCount());
+		Assert.assertEquals(1, tested.getHitCount());
+
+		// case - reloaded but equal definition reuses cached chain
+		Assert.assertSame(chain1, tested.get("type1", createDef("a")));
+		Assert.assertEquals(2, tested.getHitCount());
+
+		// case - changed definition invalidates cached chain
+		Assert.assertNull(tested.get("type1", createDef("b")));
+		Assert.assertNull(tested.get("type1", null));
+		Assert.assertEquals(4, tested.getMissCount());
+
+		// case - flush
+		tested.flush();
+		Assert.assertNull(tested.get("type1", def1));
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(0, stats.get("size"));
+		Assert.assertEquals(2L, stats.get("hits"));
+		Assert.assertEquals(5L, stats.get("misses"));
+	}
+
+	private List<Map<String, Object>> createDef(String name) {
+		List<Map<String, Object>> ret = new ArrayList<>();
+		Map<String, Object> p = new HashMap<>();
+		p.put("name", name);
+		ret.add(p);
+		return ret;
+	}
+
+}
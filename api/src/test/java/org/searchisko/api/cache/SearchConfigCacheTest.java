@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.events.ConfigChangedEvent;
+import org.searchisko.api.service.ConfigService;
+import org.searchisko.api.service.SearchConfigSnapshot;
+
+/**
+ * Unit test for {@link SearchConfigCache}.
+ * 
+ * @author agent (agent at local)
+ */
+public class SearchConfigCacheTest {
+
+	@Test
+	public void cacheWorks() throws InterruptedException {
+		SearchConfigCache tested = new SearchConfigCache();
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Logger log = Logger.getLogger("testlogger");
+
+		SearchConfigSnapshot s1 = tested.get(configService, log);
+		Assert.assertNotNull(s1);
+		Assert.assertSame(s1, tested.get(configService, log));
+
+		// case - flush
+		tested.flush();
+		SearchConfigSnapshot s2 = tested.get(configService, log);
+		Assert.assertNotSame(s1, s2);
+		Assert.assertSame(s2, tested.get(configService, log));
+
+		// case - ttl
+		tested.setTtl(50);
+		tested.flush();
+		SearchConfigSnapshot s3 = tested.get(configService, log);
+		Thread.sleep(100);
+		Assert.assertNotSame(s3, tested.get(configService, log));
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(1, stats.get("size"));
+		Assert.assertEquals(2L, stats.get("hits"));
+		Assert.assertEquals(4L, stats.get("misses"));
+
+		// snapshot loads configuration lazily
+		Mockito.verifyZeroInteractions(configService);
+	}
+
+	@Test
+	public void configChangedEventHandler() {
+		SearchConfigCache tested = new SearchConfigCache();
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Logger log = Logger.getLogger("testlogger");
+
+		SearchConfigSnapshot s1 = tested.get(configService, log);
+		tested.configChangedEventHandler(new ConfigChangedEvent("cfg"));
+		Assert.assertNotSame(s1, tested.get(configService, log));
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ConfigChangedEvent;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.model.AppConfiguration;
+import org.searchisko.api.service.ProviderService;
+
+/**
+ * Unit test for {@link SearchResultCache}.
+ * 
+ * @author agent (agent at local)
+ */
+public class SearchResultCacheTest {
+
+	private SearchResultCache getTested() {
+		SearchResultCache tested = new SearchResultCache();
+		tested.setTtl(10000);
+		tested.setMaxMemory(100000);
+		tested.providerService = Mockito.mock(ProviderService.class);
+		Mockito.when(tested.providerService.parseTypeNameFromSysId(Mockito.anyString())).thenCallRealMethod();
+		return tested;
+	}
+
+	@Test
+	public void init() {
+		SearchResultCache tested = new SearchResultCache();
+		Assert.assertFalse(tested.isEnabled());
+		tested.put("k", null, tested.stamp(), new byte[10]);
+		Assert.assertNull(tested.get("k"));
+
+		tested.appConfiguration = new AppConfiguration("path");
+		tested.appConfiguration.setSearchResultCacheTtl(10);
+		tested.appConfiguration.setSearchResultCacheMaxMemory(5);
+		tested.init();
+		Assert.assertTrue(tested.isEnabled());
+		Assert.assertEquals(10000L, tested.ttl);
+		Assert.assertEquals(5L * 1024 * 1024, tested.maxMemory);
+	}
+
+	@Test
+	public void cacheWorks() throws InterruptedException {
+		SearchResultCache tested = getTested();
+
+		byte[] d1 = new byte[] { 1 };
+		tested.put("k1", null, tested.stamp(), d1);
+		Assert.assertSame(d1, tested.get("k1"));
+		Assert.assertNull(tested.get("k2"));
+		Assert.assertTrue(tested.getUsedMemory() > 0);
+
+		// case - flush
+		tested.flush();
+		Assert.assertNull(tested.get("k1"));
+		Assert.assertEquals(0, tested.getUsedMemory());
+
+		// case - value obtained before flush is not cached
+		long stamp = tested.stamp();
+		tested.flush();
+		tested.put("k1", null, stamp, d1);
+		Assert.assertNull(tested.get("k1"));
+
+		// case - ttl
+		tested.setTtl(50);
+		tested.put("k1", null, tested.stamp(), d1);
+		Assert.assertSame(d1, tested.get("k1"));
+		Thread.sleep(100);
+		Assert.assertNull(tested.get("k1"));
+		Assert.assertEquals(0, tested.getUsedMemory());
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(true, stats.get("enabled"));
+		Assert.assertEquals(2L, stats.get("hits"));
+		Assert.assertEquals(4L, stats.get("misses"));
+	}
+
+	@Test
+	public void invalidate() {
+		SearchResultCache tested = getTested();
+
+		byte[] d = new byte[] { 1 };
+		tested.put("all", null, tested.stamp(), d);
+		tested.put("t1", "type1", tested.stamp(), d);
+		tested.put("t2", "type2", tested.stamp(), d);
+
+		tested.invalidate("type1");
+		Assert.assertNull(tested.get("all"));
+		Assert.assertNull(tested.get("t1"));
+		Assert.assertSame(d, tested.get("t2"));
+
+		// case - values obtained before invalidation are not cached
+		long stamp = tested.stamp();
+		tested.invalidate("type2");
+		tested.put("all", null, stamp, d);
+		tested.put("t1", "type1", stamp, d);
+		tested.put("t2", "type2", stamp, d);
+		Assert.assertNull(tested.get("all"));
+		Assert.assertSame(d, tested.get("t1"));
+		Assert.assertNull(tested.get("t2"));
+
+		// case - unknown type invalidates all entries
+		tested.put("all", null, tested.stamp(), d);
+		tested.invalidate(null);
+		Assert.assertNull(tested.get("all"));
+		Assert.assertSame(d, tested.get("t1"));
+	}
+
+	@Test
+	public void eventHandlers() {
+		SearchResultCache tested = getTested();
+
+		byte[] d = new byte[] { 1 };
+		tested.put("t1", "type1", tested.stamp(), d);
+		tested.put("t2", "type2", tested.stamp(), d);
+
+		Map<String, Object> content = new HashMap<>();
+		content.put(ContentObjectFields.SYS_CONTENT_TYPE, "type1");
+		tested.contentStoredEventHandler(new ContentStoredEvent("type1-aa", content));
+		Assert.assertNull(tested.get("t1"));
+		Assert.assertSame(d, tested.get("t2"));
+
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("type2-aa"));
+		Assert.assertNull(tested.get("t2"));
+
+		// case - type parsed from sys_id
+		tested.put("t1", "type1", tested.stamp(), d);
+		tested.contentStoredEventHandler(new ContentStoredEvent("type1-aa", null));
+		Assert.assertNull(tested.get("t1"));
+		Assert.assertEquals(3L, tested.getStats().get("invalidations"));
+
+		// case - bulk delete invalidates type once
+		tested.put("t1", "type1", tested.stamp(), d);
+		tested.put("t2", "type2", tested.stamp(), d);
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("type1", Arrays.asList("type1-aa",
+				"type1-bb")));
+		tested.contentBulkDeletedEventHandler(null);
+		Assert.assertNull(tested.get("t1"));
+		Assert.assertSame(d, tested.get("t2"));
+		Assert.assertEquals(4L, tested.getStats().get("invalidations"));
+	}
+
+	@Test
+	public void getLastChangeTime() {
+		long start = System.currentTimeMillis();
+		// case - tracked even if cache is disabled
+		SearchResultCache tested = getTested();
+		tested.setTtl(0);
+		long created = tested.getLastChangeTime(null);
+		Assert.assertTrue(created >= start);
+		Assert.assertEquals(created, tested.getLastChangeTime("type1"));
+
+		tested.contentStoredEventHandler(new ContentStoredEvent("type1-aa", null));
+		long t1 = tested.getLastChangeTime("type1");
+		Assert.assertTrue(t1 > created);
+		Assert.assertEquals(t1, tested.getLastChangeTime(null));
+		Assert.assertEquals(created, tested.getLastChangeTime("type2"));
+
+		// case - each change gets distinct time
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("type2-aa"));
+		long t2 = tested.getLastChangeTime("type2");
+		Assert.assertTrue(t2 > t1);
+		Assert.assertEquals(t1, tested.getLastChangeTime("type1"));
+
+		// case - change of unknown type and flush affect all types
+		tested.invalidate(null);
+		long t3 = tested.getLastChangeTime("type1");
+		Assert.assertTrue(t3 > t2);
+		Assert.assertEquals(t3, tested.getLastChangeTime("type2"));
+		Assert.assertEquals(t3, tested.getLastChangeTime("type3"));
+		tested.flush();
+		Assert.assertTrue(tested.getLastChangeTime("type1") > t3);
+		Assert.assertEquals(tested.getLastChangeTime(null), tested.getLastChangeTime("type2"));
+	}
+
+	@Test
+	public void configChangedEventHandler() {
+		SearchResultCache tested = getTested();
+		tested.put("k1", "type1", tested.stamp(), new byte[] { 1 });
+		long t = tested.getLastChangeTime("type1");
+
+		tested.configChangedEventHandler(new ConfigChangedEvent("cfg"));
+		Assert.assertNull(tested.get("k1"));
+		Assert.assertTrue(tested.getLastChangeTime("type1") > t);
+	}
+
+	@Test
+	public void memoryBudget() {
+		SearchResultCache tested = getTested();
+		tested.setMaxMemory(10000);
+
+		// case - too large response is not cached
+		tested.put("large", null, tested.stamp(), new byte[2000]);
+		Assert.assertNull(tested.get("large"));
+
+		// case - least recently used entries are evicted
+		for (int i = 0; i < 20; i++) {
+			tested.put("k" + i, null, tested.stamp(), new byte[500]);
+			// keep first entry used
+			tested.get("k0");
+		}
+		Assert.assertTrue(tested.getUsedMemory() <= 10000);
+		Assert.assertNotNull(tested.get("k0"));
+		Assert.assertNull(tested.get("k1"));
+		Assert.assertNotNull(tested.get("k19"));
+		Assert.assertTrue((Long) tested.getStats().get("evictions") > 0);
+	}
+
+}
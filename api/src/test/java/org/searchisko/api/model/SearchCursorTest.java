@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SearchCursor}
+ *
+ * @author agent (agent at local)
+ */
+public class SearchCursorTest {
+
+	@Test
+	public void encode_decode() {
+		{
+			String encoded = new SearchCursor(SortByValue.NEW, 1389875689000L, "jbossorg_blogpost#jbossorg_blogpost-1")
+					.encode();
+			Assert.assertTrue(encoded.matches("[A-Za-z0-9_\\-=]+"));
+			SearchCursor c = SearchCursor.decode(encoded);
+			Assert.assertEquals(SortByValue.NEW, c.getSortBy());
+			Assert.assertEquals(new Long(1389875689000L), c.getSortValue());
+			Assert.assertEquals("jbossorg_blogpost#jbossorg_blogpost-1", c.getUid());
+		}
+
+		// case - no sort value, uid with separator character
+		{
+			SearchCursor c = SearchCursor.decode(new SearchCursor(SortByValue.NEW_CREATION, null, "t#a|b").encode());
+			Assert.assertEquals(SortByValue.NEW_CREATION, c.getSortBy());
+			Assert.assertNull(c.getSortValue());
+			Assert.assertEquals("t#a|b", c.getUid());
+		}
+	}
+
+	@Test
+	public void decode_invalid() {
+		assertDecodeInvalid("");
+		assertDecodeInvalid("not base64 !");
+		assertDecodeInvalid(new SearchCursor(SortByValue.NEW, 10L, "t#1").encode().substring(3));
+		// unknown sorting
+		assertDecodeInvalid(org.elasticsearch.common.Base64.encodeBytes("1|bad|10|t#1".getBytes()));
+		// bad sort value
+		assertDecodeInvalid(org.elasticsearch.common.Base64.encodeBytes("1|new|1a|t#1".getBytes()));
+		// unknown version
+		assertDecodeInvalid(org.elasticsearch.common.Base64.encodeBytes("2|new|10|t#1".getBytes()));
+	}
+
+	private void assertDecodeInvalid(String value) {
+		try {
+			SearchCursor.decode(value);
+			Assert.fail("IllegalArgumentException expected for " + value);
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(QuerySettings.Filters.CURSOR_KEY, e.getMessage());
+		}
+	}
+
+}
@@ -21,6 +21,7 @@ import org.searchisko.api.service.ContributorProfileService;
 import org.searchisko.api.service.ContributorService;
 import org.searchisko.api.service.ProjectService;
 import org.searchisko.api.service.ProviderService;
+import org.searchisko.api.service.QuerySuggestionService;
 import org.searchisko.api.service.SearchClientService;
 import org.searchisko.api.tasker.Task;
 import org.searchisko.api.tasker.TaskConfigurationException;
@@ -725,6 +726,29 @@ public class ReindexingTaskFactoryTest {
 		}
 	}
 
+	@Test
+	public void createTask_UPDATE_QUERY_SUGGESTIONS() throws TaskConfigurationException, UnsupportedTaskException {
+		ReindexingTaskFactory tested = getTested();
+
+		// case - no configuration
+		{
+			Task task = tested.createTask(ReindexingTaskTypes.UPDATE_QUERY_SUGGESTIONS.getTaskType(), null);
+			Assert.assertEquals(UpdateQuerySuggestionsTask.class, task.getClass());
+			UpdateQuerySuggestionsTask ctask = (UpdateQuerySuggestionsTask) task;
+			Assert.assertEquals(tested.querySuggestionService, ctask.querySuggestionService);
+			Assert.assertFalse(ctask.fullRebuild);
+		}
+
+		// case - full rebuild requested
+		{
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put(UpdateQuerySuggestionsTask.CFG_FULL_REBUILD, "true");
+			UpdateQuerySuggestionsTask ctask = (UpdateQuerySuggestionsTask) tested.createTask(
+					ReindexingTaskTypes.UPDATE_QUERY_SUGGESTIONS.getTaskType(), config);
+			Assert.assertTrue(ctask.fullRebuild);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private ReindexingTaskFactory getTested() {
 		ReindexingTaskFactory tested = new ReindexingTaskFactory();
@@ -733,6 +757,7 @@ public class ReindexingTaskFactoryTest {
 		tested.searchClientService = Mockito.mock(SearchClientService.class);
 		tested.eventBeforeIndexed = Mockito.mock(Event.class);
 		tested.contributorProfileService = Mockito.mock(ContributorProfileService.class);
+		tested.querySuggestionService = Mockito.mock(QuerySuggestionService.class);
 		return tested;
 	}
 }
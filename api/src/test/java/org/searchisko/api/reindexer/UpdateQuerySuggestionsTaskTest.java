@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.reindexer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.service.QuerySuggestionService;
+import org.searchisko.api.tasker.TaskExecutionContext;
+
+/**
+ * Unit test for {@link UpdateQuerySuggestionsTask}
+ * 
+ * @author agent (agent at local)
+ */
+public class UpdateQuerySuggestionsTaskTest {
+
+	@Test
+	public void constructor() {
+		QuerySuggestionService qssmock = Mockito.mock(QuerySuggestionService.class);
+
+		Assert.assertFalse(new UpdateQuerySuggestionsTask(qssmock, null).fullRebuild);
+		Assert.assertFalse(new UpdateQuerySuggestionsTask(qssmock, new HashMap<String, Object>()).fullRebuild);
+
+		Map<String, Object> cfg = new HashMap<>();
+		cfg.put(UpdateQuerySuggestionsTask.CFG_FULL_REBUILD, true);
+		UpdateQuerySuggestionsTask tested = new UpdateQuerySuggestionsTask(qssmock, cfg);
+		Assert.assertTrue(tested.fullRebuild);
+		Assert.assertEquals(qssmock, tested.querySuggestionService);
+
+		cfg.put(UpdateQuerySuggestionsTask.CFG_FULL_REBUILD, " false");
+		Assert.assertFalse(new UpdateQuerySuggestionsTask(qssmock, cfg).fullRebuild);
+	}
+
+	@Test
+	public void performTask() throws Exception {
+		QuerySuggestionService qssmock = Mockito.mock(QuerySuggestionService.class);
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("queries", 10);
+		Mockito.when(qssmock.getStats()).thenReturn(stats);
+		Mockito.when(qssmock.update(Mockito.anyBoolean())).thenReturn(25);
+		TaskExecutionContext contextMock = Mockito.mock(TaskExecutionContext.class);
+
+		// case - incremental update
+		UpdateQuerySuggestionsTask tested = new UpdateQuerySuggestionsTask(qssmock, null);
+		tested.setExecutionContext("tid", contextMock);
+		tested.performTask();
+		Mockito.verify(qssmock).update(false);
+		Mockito.verify(contextMock).writeTaskLog("tid",
+				"25 search statistics records processed, 10 queries available for completion.");
+
+		// case - full rebuild
+		tested.fullRebuild = true;
+		tested.performTask();
+		Mockito.verify(qssmock).update(true);
+	}
+
+}
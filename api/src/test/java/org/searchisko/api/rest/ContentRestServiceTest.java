@@ -5,8 +5,13 @@
  */
 package org.searchisko.api.rest;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,22 +23,32 @@ import javax.ws.rs.core.Response;
 import org.elasticsearch.common.settings.SettingsException;
 import org.hamcrest.CustomMatcher;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
 import org.searchisko.api.events.ContentDeletedEvent;
 import org.searchisko.api.events.ContentStoredEvent;
 import org.searchisko.api.rest.exception.BadFieldException;
 import org.searchisko.api.rest.exception.RequiredFieldException;
 import org.searchisko.api.rest.security.AuthenticationUtilService;
+import org.searchisko.api.service.ContentPushQueueService;
+import org.searchisko.api.service.ContentPushService;
+import org.searchisko.api.service.ContentPushServiceTest;
+import org.searchisko.api.service.ContentTypeDescriptor;
 import org.searchisko.api.service.ProviderService;
 import org.searchisko.api.testtools.ESRealClientTestBase;
 import org.searchisko.api.testtools.TestUtils;
 import org.searchisko.persistence.service.ContentPersistenceService;
+import org.searchisko.persistence.service.ContentPushJournalService;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -56,48 +71,56 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 	private static final String INDEX_NAME = "index_name";
 	private static final List<Map<String, Object>> PREPROCESSORS = new ArrayList<Map<String, Object>>();
 
+	/**
+	 * Event mock used by content push service created in {@link #getTested(boolean)}.
+	 */
+	private Event<ContentBulkDeletedEvent> eventContentBulkDeleted;
+
 	@Test
 	public void pushContent_permissions() throws Exception {
-		TestUtils.assertPermissionProvider(ContentRestService.class, "pushContent", String.class, String.class, Map.class);
+		TestUtils.assertPermissionProvider(ContentRestService.class, "pushContent", String.class, String.class,
+				String.class, String.class, Map.class);
 	}
 
 	@Test(expected = RequiredFieldException.class)
 	public void pushContent_invalidParams_1() throws Exception {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent(null, "1", content);
+		getTested(false).pushContent(null, "1", null, null, content);
 	}
 
 	@Test(expected = RequiredFieldException.class)
 	public void pushContent_invalidParams_2() throws Exception {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("", "1", content);
+		getTested(false).pushContent("", "1", null, null, content);
 	}
 
 	@Test(expected = RequiredFieldException.class)
 	public void pushContent_invalidParams_3() throws Exception {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("known", null, content);
+		getTested(false).pushContent("known", null, null, null, content);
 	}
 
 	@Test(expected = RequiredFieldException.class)
 	public void pushContent_invalidParams_4() throws Exception {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("known", "", content);
+		getTested(false).pushContent("known", "", null, null, content);
 	}
 
 	@Test
 	public void pushContent_invalidParams_MissingContent1() throws Exception {
-		TestUtils.assertResponseStatus(getTested(false).pushContent("known", "1", null), Response.Status.BAD_REQUEST);
+		TestUtils.assertResponseStatus(getTested(false).pushContent("known", "1", null, null, null),
+				Response.Status.BAD_REQUEST);
 	}
 
 	@Test
 	public void pushContent_invalidParams_MissingContent2() throws Exception {
 		Map<String, Object> content = new HashMap<String, Object>();
-		TestUtils.assertResponseStatus(getTested(false).pushContent("known", "1", content), Response.Status.BAD_REQUEST);
+		TestUtils.assertResponseStatus(getTested(false).pushContent("known", "1", null, null, content),
+				Response.Status.BAD_REQUEST);
 	}
 
 	@Test(expected = BadFieldException.class)
@@ -105,7 +128,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		// case - type is unknown
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("unknown", "1", content);
+		getTested(false).pushContent("unknown", "1", null, null, content);
 	}
 
 	@Test(expected = Exception.class)
@@ -113,7 +136,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		// case - type configuration is invalid - do not contains index name and/or index type
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("invalid", "1", content);
+		getTested(false).pushContent("invalid", "1", null, null, content);
 	}
 
 	@Test(expected = Exception.class)
@@ -121,7 +144,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		// case - type configuration is invalid - do not contains sys_type definition
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
-		getTested(false).pushContent("invalid_2", "1", content);
+		getTested(false).pushContent("invalid_2", "1", null, null, content);
 	}
 
 	@Test(expected = Exception.class)
@@ -130,7 +153,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put("test", "test");
 		content.put(ContentObjectFields.SYS_CONTENT, "some content");
-		getTested(false).pushContent("invalid-content-type", "1", content);
+		getTested(false).pushContent("invalid-content-type", "1", null, null, content);
 
 	}
 
@@ -149,7 +172,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				content.clear();
 				content.put("test", "testvalue");
 				String sysId = tested.providerService.generateSysId(sys_content_type, "1");
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content),
+						Response.Status.OK);
 				assertEquals("insert", ((Map<String, String>) r.getEntity()).get("status"));
 				verify(tested.providerService).runPreprocessors(sys_content_type, PREPROCESSORS, content);
 				// verify enhancements called
@@ -182,7 +206,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				content.remove(ContentObjectFields.SYS_UPDATED);
 				String[] tags = new String[] { "tag_value" };
 				content.put("tags", tags);
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "2", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "2", null, null, content),
+						Response.Status.OK);
 				String sysId = tested.providerService.generateSysId(sys_content_type, "2");
 				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
 				assertEquals("insert", ((Map<String, String>) r.getEntity()).get("status"));
@@ -213,7 +238,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				setupProviderServiceMock(tested);
 				content.clear();
 				content.put("test3", "testvalue3");
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content),
+						Response.Status.OK);
 				String sysId = tested.providerService.generateSysId(sys_content_type, "1");
 				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
 				assertEquals("update", ((Map<String, String>) r.getEntity()).get("status"));
@@ -232,16 +258,328 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				assertEquals(expectedContentId, doc.get(ContentObjectFields.SYS_ID));
 				assertNotNull(doc.get(ContentObjectFields.SYS_UPDATED));
 				assertEquals(null, doc.get(ContentObjectFields.SYS_TAGS));
+				Map<String, Object> provided = new HashMap<String, Object>();
+				provided.put("test3", "testvalue3");
+				assertEquals(ContentPushService.computeFingerprint(
+						tested.providerService.findContentType(sys_content_type), provided),
+						doc.get(ContentObjectFields.SYS_FINGERPRINT));
 
 				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher(expectedContentId));
 				verifyNoMoreInteractions(tested.contentPersistenceService);
 			}
+
+			// case - same content is not processed again
+			{
+				reset(tested.providerService, tested.contentPersistenceService, tested.eventContentStored,
+						tested.eventBeforeIndexed);
+				setupProviderServiceMock(tested);
+				content.clear();
+				content.put(ContentObjectFields.SYS_CONTENT_ID, "1");
+				content.put("test3", "testvalue3");
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content),
+						Response.Status.OK);
+				assertEquals("unchanged", ((Map<String, String>) r.getEntity()).get("status"));
+				verify(tested.providerService, Mockito.never()).runPreprocessors(Mockito.anyString(), Mockito.anyList(),
+						Mockito.anyMap());
+				verifyZeroInteractions(tested.contentPersistenceService, tested.eventBeforeIndexed,
+						tested.eventContentStored);
+			}
+
+			// case - same content is processed again if forced
+			{
+				reset(tested.providerService, tested.contentPersistenceService, tested.eventContentStored,
+						tested.eventBeforeIndexed);
+				setupProviderServiceMock(tested);
+				content.clear();
+				content.put("test3", "testvalue3");
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, "true", content),
+						Response.Status.OK);
+				assertEquals("update", ((Map<String, String>) r.getEntity()).get("status"));
+				verify(tested.providerService).runPreprocessors(sys_content_type, PREPROCESSORS, content);
+				verify(tested.eventContentStored).fire(
+						prepareContentStoredEventMatcher(tested.providerService.generateSysId(sys_content_type, "1")));
+			}
+		} finally {
+			indexDelete(INDEX_NAME);
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void pushContent_async() throws Exception {
+		ContentRestService tested = getTested(false);
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("test", "testvalue");
+
+		// case - async push disabled
+		{
+			TestUtils.assertResponseStatus(tested.pushContent("known", "1", "true", null, content),
+					Response.Status.BAD_REQUEST);
+			verify(tested.contentPushQueueService, Mockito.never()).enqueue(Mockito.anyString(), Mockito.anyString(),
+					Mockito.anyString(), Mockito.anyMap(), Mockito.anyBoolean());
+		}
+
+		// case - content is queued and nothing else is done
+		{
+			when(tested.contentPushQueueService.isEnabled()).thenReturn(true);
+			when(tested.contentPushQueueService.enqueue("jbossorg", "known", "1", content, false)).thenReturn(
+					"receipt-1");
+			Response r = TestUtils.assertResponseStatus(tested.pushContent("known", "1", "true", null, content),
+					Response.Status.ACCEPTED);
+			Map<String, Object> ret = (Map<String, Object>) r.getEntity();
+			assertEquals("queued", ret.get("status"));
+			assertEquals("receipt-1", ret.get("receipt_id"));
+			verify(tested.contentPushQueueService).enqueue("jbossorg", "known", "1", content, false);
+			verifyZeroInteractions(tested.contentPersistenceService, tested.eventBeforeIndexed, tested.eventContentStored);
+			Mockito.verify(tested.providerService, Mockito.never()).runPreprocessors(Mockito.anyString(),
+					Mockito.anyList(), Mockito.anyMap());
+		}
+
+		// case - invalid type is validated synchronously
+		try {
+			tested.pushContent("unknown", "1", "true", null, content);
+			fail("BadFieldException expected");
+		} catch (BadFieldException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void getPushReceipt_permissions() throws Exception {
+		TestUtils.assertPermissionProvider(ContentRestService.class, "getPushReceipt", String.class, String.class);
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void getPushReceipt_invalidParams_1() throws Exception {
+		getTested(false).getPushReceipt("known", null);
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void getPushReceipt_invalidParams_2() throws Exception {
+		getTested(false).getPushReceipt(null, "receipt-1");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getPushReceipt() throws Exception {
+		ContentRestService tested = getTested(false);
+		Date created = new Date(1000);
+		Date updated = new Date(2000);
+		when(tested.contentPushQueueService.getReceipt("receipt-1")).thenReturn(
+				new ContentPushJournalService.Entry("receipt-1", "jbossorg", "known", "1", null, false, "insert",
+						"Content was inserted successfully.", created, updated));
+		when(tested.contentPushQueueService.getReceipt("receipt-2")).thenReturn(
+				new ContentPushJournalService.Entry("receipt-2", "other", "known", "1", null, false, "queued", null,
+						created, created));
+
+		// case - unknown receipt
+		TestUtils.assertResponseStatus(tested.getPushReceipt("known", "unknown"), Response.Status.NOT_FOUND);
+
+		// case - receipt for other type
+		TestUtils.assertResponseStatus(tested.getPushReceipt("persist", "receipt-1"), Response.Status.NOT_FOUND);
+
+		// case - receipt of other provider
+		TestUtils.assertResponseStatus(tested.getPushReceipt("known", "receipt-2"), Response.Status.NOT_FOUND);
+
+		// case - receipt found
+		Map<String, Object> ret = (Map<String, Object>) tested.getPushReceipt("known", "receipt-1");
+		assertEquals("receipt-1", ret.get("receipt_id"));
+		assertEquals("1", ret.get(ContentObjectFields.SYS_CONTENT_ID));
+		assertEquals("insert", ret.get("status"));
+		assertEquals("Content was inserted successfully.", ret.get("message"));
+		assertEquals(created, ret.get("created"));
+		assertEquals(updated, ret.get("updated"));
+	}
+
+	@Test
+	public void pushContentBulk_permissions() throws Exception {
+		TestUtils.assertPermissionProvider(ContentRestService.class, "pushContentBulk", String.class, String.class,
+				InputStream.class);
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void pushContentBulk_invalidParams_1() throws Exception {
+		getTested(false).pushContentBulk(null, null, prepareInputStream("[]"));
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void pushContentBulk_invalidParams_2() throws Exception {
+		getTested(false).pushContentBulk("", null, prepareInputStream("[]"));
+	}
+
+	@Test(expected = BadFieldException.class)
+	public void pushContentBulk_invalidParams_UnknownType() throws Exception {
+		getTested(false).pushContentBulk("unknown", null, prepareInputStream("[]"));
+	}
+
+	@Test(expected = Exception.class)
+	public void pushContentBulk_invalidParams_TypeInvalid() throws Exception {
+		getTested(false).pushContentBulk("invalid", null, prepareInputStream("[]"));
+	}
+
+	@Test
+	public void pushContentBulk_invalidParams_MissingContent() throws Exception {
+		assertResponseStatus(getTested(false).pushContentBulk("known", null, null), Response.Status.BAD_REQUEST);
+		assertResponseStatus(getTested(false).pushContentBulk("known", null, prepareInputStream("")),
+				Response.Status.BAD_REQUEST);
+		assertResponseStatus(getTested(false).pushContentBulk("known", null, prepareInputStream("{\"a\":\"b\"}")),
+				Response.Status.BAD_REQUEST);
+		assertResponseStatus(getTested(false).pushContentBulk("known", null, prepareInputStream("[\"a\"]")),
+				Response.Status.BAD_REQUEST);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void pushContentBulk() throws Exception {
+		try {
+			ContentRestService tested = getTested(true);
+			tested.contentPushService = ContentPushServiceTest.getTested(tested.providerService,
+					tested.searchClientService, tested.contentPersistenceService, tested.eventContentStored,
+					tested.eventBeforeIndexed, eventContentBulkDeleted, 2);
+			String sys_content_type = "persist";
+
+			// case - insert documents, one document without id is reported as error
+			{
+				indexDelete(INDEX_NAME);
+				Response r = assertResponseStatus(tested.pushContentBulk(sys_content_type, null, prepareInputStream("["
+						+ "{\"sys_content_id\":\"1\",\"test\":\"testvalue1\"},"
+						+ "{\"test\":\"testvalue_noid\"},"
+						+ "{\"sys_content_id\":\"3\",\"test\":\"testvalue3\",\"tags\":[\"tag1\"]}" + "]")),
+						Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(3, items.size());
+				assertEquals("1", items.get(0).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("insert", items.get(0).get("status"));
+				assertEquals(null, items.get(1).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("error", items.get(1).get("status"));
+				assertEquals("3", items.get(2).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("insert", items.get(2).get("status"));
+
+				indexFlushAndRefresh(INDEX_NAME);
+				Map<String, Object> doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, "persist-1");
+				assertNotNull(doc);
+				assertEquals("testvalue1", doc.get("test"));
+				assertEquals("jbossorg", doc.get(ContentObjectFields.SYS_CONTENT_PROVIDER));
+				assertEquals("1", doc.get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals(sys_content_type, doc.get(ContentObjectFields.SYS_CONTENT_TYPE));
+				assertEquals("my_sys_type", doc.get(ContentObjectFields.SYS_TYPE));
+				assertEquals("persist-1", doc.get(ContentObjectFields.SYS_ID));
+				assertNotNull(doc.get(ContentObjectFields.SYS_UPDATED));
+				doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, "persist-3");
+				assertNotNull(doc);
+				assertEquals("tag1", ((List<String>) doc.get(ContentObjectFields.SYS_TAGS)).get(0));
+
+				verify(tested.contentPersistenceService).storeBatch(Mockito.eq(sys_content_type),
+						prepareContentListMatcher("persist-1", "persist-3"));
+				verifyNoMoreInteractions(tested.contentPersistenceService);
+				verify(tested.eventBeforeIndexed, Mockito.times(2)).fire(Mockito.any(ContentBeforeIndexedEvent.class));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-1"));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-3"));
+			}
+
+			// case - update document
+			{
+				reset(tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed);
+				Response r = assertResponseStatus(
+						tested.pushContentBulk(sys_content_type, null,
+								prepareInputStream("[{\"sys_content_id\":\"1\",\"test\":\"testvalue1_2\"}]")),
+						Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(1, items.size());
+				assertEquals("update", items.get(0).get("status"));
+				indexFlushAndRefresh(INDEX_NAME);
+				assertEquals("testvalue1_2", indexGetDocument(INDEX_NAME, INDEX_TYPE, "persist-1").get("test"));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-1"));
+			}
+
+			// case - unchanged document is skipped, changed document from same chunk is processed
+			{
+				reset(tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed);
+				Response r = assertResponseStatus(tested.pushContentBulk(sys_content_type, null, prepareInputStream("["
+						+ "{\"test\":\"testvalue1_2\",\"sys_content_id\":\"1\"},"
+						+ "{\"sys_content_id\":\"3\",\"test\":\"testvalue3_2\"}]")), Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(2, items.size());
+				assertEquals("1", items.get(0).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("unchanged", items.get(0).get("status"));
+				assertEquals("update", items.get(1).get("status"));
+				verify(tested.contentPersistenceService).storeBatch(Mockito.eq(sys_content_type),
+						prepareContentListMatcher("persist-3"));
+				verifyNoMoreInteractions(tested.contentPersistenceService);
+				verify(tested.eventBeforeIndexed).fire(Mockito.any(ContentBeforeIndexedEvent.class));
+				verify(tested.eventContentStored, Mockito.never()).fire(prepareContentStoredEventMatcher("persist-1"));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-3"));
+			}
+
+			// case - unchanged document is processed if forced
+			{
+				reset(tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed);
+				Response r = assertResponseStatus(
+						tested.pushContentBulk(sys_content_type, "true",
+								prepareInputStream("[{\"sys_content_id\":\"1\",\"test\":\"testvalue1_2\"}]")),
+						Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals("update", items.get(0).get("status"));
+				verify(tested.contentPersistenceService).storeBatch(Mockito.eq(sys_content_type),
+						prepareContentListMatcher("persist-1"));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-1"));
+			}
+
+			// case - batch store fails so documents are stored one by one, error reported for failed one only
+			{
+				reset(tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed);
+				Mockito.doThrow(new RuntimeException("batch failed")).when(tested.contentPersistenceService)
+						.storeBatch(Mockito.eq(sys_content_type), Mockito.anyList());
+				Mockito.doThrow(new RuntimeException("store failed")).when(tested.contentPersistenceService)
+						.store(Mockito.eq("persist-5"), Mockito.eq(sys_content_type), Mockito.anyMap());
+				Response r = assertResponseStatus(tested.pushContentBulk(sys_content_type, null, prepareInputStream("["
+						+ "{\"sys_content_id\":\"4\",\"test\":\"testvalue4\"},"
+						+ "{\"sys_content_id\":\"5\",\"test\":\"testvalue5\"}]")), Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(2, items.size());
+				assertEquals("insert", items.get(0).get("status"));
+				assertEquals("error", items.get(1).get("status"));
+				verify(tested.contentPersistenceService).store(Mockito.eq("persist-4"), Mockito.eq(sys_content_type),
+						Mockito.anyMap());
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher("persist-4"));
+				verify(tested.eventContentStored, Mockito.never()).fire(prepareContentStoredEventMatcher("persist-5"));
+			}
 		} finally {
 			indexDelete(INDEX_NAME);
 			finalizeESClientForUnitTest();
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> prepareContentListMatcher(final String... expectedSysIds) {
+		return Mockito.argThat(new CustomMatcher<List<Map<String, Object>>>("content list with sys_ids "
+				+ Arrays.toString(expectedSysIds)) {
+
+			@Override
+			public boolean matches(Object paramObject) {
+				List<Map<String, Object>> l = (List<Map<String, Object>>) paramObject;
+				if (l.size() != expectedSysIds.length)
+					return false;
+				for (int i = 0; i < expectedSysIds.length; i++) {
+					if (!expectedSysIds[i].equals(l.get(i).get(ContentObjectFields.SYS_ID)))
+						return false;
+				}
+				return true;
+			}
+
+		});
+	}
+
+	private InputStream prepareInputStream(String content) throws UnsupportedEncodingException {
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+
 	private ContentBeforeIndexedEvent prepareContentBeforeIndexedEventMatcher(final String expectedId,
 			final Map<String, Object> expectedContentObject) {
 		return Mockito.argThat(new CustomMatcher<ContentBeforeIndexedEvent>("ContentBeforeIndexedEvent [contentId="
@@ -272,7 +610,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				content.clear();
 				content.put("test", "testvalue");
 				content.put(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE, "text/html");
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content),
+						Response.Status.OK);
 				// verify enhancements called
 				String sysId = tested.providerService.generateSysId(sys_content_type, "1");
 				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
@@ -309,7 +648,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				content.remove(ContentObjectFields.SYS_UPDATED);
 				String[] tags = new String[] { "tag_value" };
 				content.put("tags", tags);
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "2", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "2", null, null, content),
+						Response.Status.OK);
 				// verify enhancements called
 				String sysId = tested.providerService.generateSysId(sys_content_type, "2");
 				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
@@ -342,7 +682,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 				setupProviderServiceMock(tested);
 				content.clear();
 				content.put("test3", "testvalue3");
-				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", content), Response.Status.OK);
+				Response r = assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content),
+						Response.Status.OK);
 				// verify enhancements called
 				String sysId = tested.providerService.generateSysId(sys_content_type, "1");
 				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
@@ -371,6 +712,210 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public void patchContent_permissions() throws Exception {
+		TestUtils.assertPermissionProvider(ContentRestService.class, "patchContent", String.class, String.class,
+				Map.class);
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void patchContent_invalidParams_1() throws Exception {
+		getTested(false).patchContent(null, "1", new HashMap<String, Object>());
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void patchContent_invalidParams_2() throws Exception {
+		getTested(false).patchContent("known", "", new HashMap<String, Object>());
+	}
+
+	@Test
+	public void patchContent_invalidParams_MissingContent() throws Exception {
+		ContentRestService tested = getTested(false);
+		assertResponseStatus(tested.patchContent("known", "1", null), Response.Status.BAD_REQUEST);
+		assertResponseStatus(tested.patchContent("known", "1", new HashMap<String, Object>()),
+				Response.Status.BAD_REQUEST);
+	}
+
+	@Test(expected = BadFieldException.class)
+	public void patchContent_invalidParams_UnknownType() throws Exception {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("test", "test");
+		getTested(false).patchContent("unknown", "1", content);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void patchContent_noPersistence() throws Exception {
+		try {
+			ContentRestService tested = getTested(true);
+			String sys_content_type = "known";
+			String sysId = tested.providerService.generateSysId(sys_content_type, "1");
+			Map<String, Object> changes = new HashMap<String, Object>();
+			changes.put("test", "changed");
+
+			// case - not found when index is not found
+			{
+				indexDelete(INDEX_NAME);
+				assertResponseStatus(tested.patchContent(sys_content_type, "1", changes), Response.Status.NOT_FOUND);
+			}
+
+			Map<String, Object> content = new HashMap<String, Object>();
+			content.put("test", "testvalue");
+			content.put("test2", "testvalue2");
+			Map<String, Object> obj = new HashMap<String, Object>();
+			obj.put("a", "a1");
+			obj.put("b", "b1");
+			content.put("obj", obj);
+			assertResponseStatus(tested.pushContent(sys_content_type, "1", null, null, content), Response.Status.OK);
+			indexFlushAndRefresh(INDEX_NAME);
+
+			// case - not found when document is not found
+			{
+				assertResponseStatus(tested.patchContent(sys_content_type, "2", changes), Response.Status.NOT_FOUND);
+			}
+
+			// case - only changed fields are sent to the search index, objects are merged, system fields are not changed
+			{
+				reset(tested.providerService, tested.contentPersistenceService, tested.eventContentStored,
+						tested.eventBeforeIndexed);
+				setupProviderServiceMock(tested);
+				Map<String, Object> objChanges = new HashMap<String, Object>();
+				objChanges.put("b", "b2");
+				changes.put("obj", objChanges);
+				changes.put("tags", Arrays.asList("tag1"));
+				changes.put(ContentObjectFields.SYS_CONTENT_ID, "2");
+				Response r = assertResponseStatus(tested.patchContent(sys_content_type, "1", changes),
+						Response.Status.OK);
+				assertEquals("update", ((Map<String, String>) r.getEntity()).get("status"));
+				verify(tested.eventBeforeIndexed).fire(Mockito.any(ContentBeforeIndexedEvent.class));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher(sysId));
+				verify(tested.providerService, Mockito.never()).runPreprocessors(Mockito.anyString(), Mockito.anyList(),
+						Mockito.anyMap(), Mockito.any(boolean[].class));
+				verifyZeroInteractions(tested.contentPersistenceService);
+
+				indexFlushAndRefresh(INDEX_NAME);
+				Map<String, Object> doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, sysId);
+				assertEquals("changed", doc.get("test"));
+				assertEquals("testvalue2", doc.get("test2"));
+				assertEquals("a1", ((Map<String, Object>) doc.get("obj")).get("a"));
+				assertEquals("b2", ((Map<String, Object>) doc.get("obj")).get("b"));
+				assertEquals("tag1", ((List<String>) doc.get(ContentObjectFields.SYS_TAGS)).get(0));
+				assertEquals("1", doc.get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("jbossorg", doc.get(ContentObjectFields.SYS_CONTENT_PROVIDER));
+				assertNull(doc.get(ContentObjectFields.SYS_FINGERPRINT));
+			}
+
+			// case - content is read from search index when field is removed, so null is not stored into it
+			{
+				reset(tested.providerService, tested.contentPersistenceService, tested.eventContentStored,
+						tested.eventBeforeIndexed);
+				setupProviderServiceMock(tested);
+				changes.clear();
+				changes.put("test2", null);
+				Map<String, Object> objChanges = new HashMap<String, Object>();
+				objChanges.put("a", null);
+				changes.put("obj", objChanges);
+				Response r = assertResponseStatus(tested.patchContent(sys_content_type, "1", changes),
+						Response.Status.OK);
+				assertEquals("update", ((Map<String, String>) r.getEntity()).get("status"));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher(sysId));
+				verifyZeroInteractions(tested.contentPersistenceService);
+
+				indexFlushAndRefresh(INDEX_NAME);
+				Map<String, Object> doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, sysId);
+				assertEquals("changed", doc.get("test"));
+				assertFalse(doc.containsKey("test2"));
+				assertFalse(((Map<String, Object>) doc.get("obj")).containsKey("a"));
+				assertEquals("b2", ((Map<String, Object>) doc.get("obj")).get("b"));
+				assertFalse(doc.containsKey(ContentObjectFields.SYS_FINGERPRINT));
+			}
+
+			// case - content is read from search index when preprocessor using changed field has to be run
+			{
+				reset(tested.providerService, tested.contentPersistenceService, tested.eventContentStored,
+						tested.eventBeforeIndexed);
+				setupProviderServiceMock(tested);
+				List<Map<String, Object>> preprocessors = new ArrayList<Map<String, Object>>();
+				Map<String, Object> preprocessor = new HashMap<String, Object>();
+				Map<String, Object> settings = new HashMap<String, Object>();
+				settings.put("source_field", "test");
+				preprocessor.put("settings", settings);
+				preprocessors.add(preprocessor);
+				Map<String, Object> typeDef = tested.providerService.findContentType(sys_content_type);
+				typeDef.put(ProviderService.INPUT_PREPROCESSORS, preprocessors);
+				changes.clear();
+				changes.put("test", "changed2");
+				Response r = assertResponseStatus(tested.patchContent(sys_content_type, "1", changes),
+						Response.Status.OK);
+				assertEquals("update", ((Map<String, String>) r.getEntity()).get("status"));
+				verify(tested.providerService).runPreprocessors(Mockito.eq(sys_content_type), Mockito.eq(preprocessors),
+						Mockito.anyMap(), AdditionalMatchers.aryEq(new boolean[] { true }));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher(sysId));
+				verifyZeroInteractions(tested.contentPersistenceService);
+
+				indexFlushAndRefresh(INDEX_NAME);
+				Map<String, Object> doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, sysId);
+				assertEquals("changed2", doc.get("test"));
+				assertNull(doc.get("test2"));
+				assertEquals("a1", ((Map<String, Object>) doc.get("obj")).get("a"));
+				assertEquals("1", doc.get(ContentObjectFields.SYS_CONTENT_ID));
+			}
+		} finally {
+			indexDelete(INDEX_NAME);
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void patchContent_persistence() throws Exception {
+		try {
+			ContentRestService tested = getTested(true);
+			String sys_content_type = "persist";
+			String sysId = tested.providerService.generateSysId(sys_content_type, "1");
+			Map<String, Object> changes = new HashMap<String, Object>();
+			changes.put("test", null);
+			changes.put(ContentObjectFields.SYS_CONTENT, "sys content");
+
+			// case - not found in persistence
+			{
+				assertResponseStatus(tested.patchContent(sys_content_type, "1", changes), Response.Status.NOT_FOUND);
+				verify(tested.contentPersistenceService).get(sysId, sys_content_type);
+				verifyNoMoreInteractions(tested.contentPersistenceService);
+			}
+
+			// case - persisted content is patched, stored and indexed
+			{
+				reset(tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed);
+				Map<String, Object> content = new HashMap<String, Object>();
+				content.put("test", "testvalue");
+				content.put("test2", "testvalue2");
+				content.put(ContentObjectFields.SYS_ID, sysId);
+				content.put(ContentObjectFields.SYS_FINGERPRINT, "abc");
+				when(tested.contentPersistenceService.get(sysId, sys_content_type)).thenReturn(content);
+				Response r = assertResponseStatus(tested.patchContent(sys_content_type, "1", changes),
+						Response.Status.OK);
+				assertEquals("insert", ((Map<String, String>) r.getEntity()).get("status"));
+				assertFalse(content.containsKey("test"));
+				assertEquals("text/plain", content.get(ContentObjectFields.SYS_CONTENT_CONTENT_TYPE));
+				assertNull(content.get(ContentObjectFields.SYS_FINGERPRINT));
+				verify(tested.contentPersistenceService).store(sysId, sys_content_type, content);
+				verify(tested.eventBeforeIndexed).fire(prepareContentBeforeIndexedEventMatcher(sysId, content));
+				verify(tested.eventContentStored).fire(prepareContentStoredEventMatcher(sysId));
+
+				indexFlushAndRefresh(INDEX_NAME);
+				Map<String, Object> doc = indexGetDocument(INDEX_NAME, INDEX_TYPE, sysId);
+				assertFalse(doc.containsKey("test"));
+				assertEquals("testvalue2", doc.get("test2"));
+				assertEquals("sys content", doc.get(ContentObjectFields.SYS_CONTENT));
+				assertNotNull(doc.get(ContentObjectFields.SYS_UPDATED));
+			}
+		} finally {
+			indexDelete(INDEX_NAME);
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	private ContentStoredEvent prepareContentStoredEventMatcher(final String expectedContentId) {
 		return Mockito.argThat(new CustomMatcher<ContentStoredEvent>("ContentStoredEvent [contributorId="
 				+ expectedContentId + "]") {
@@ -509,6 +1054,182 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		}
 	}
 
+	@Test
+	public void deleteContentBulk_permissions() throws Exception {
+		TestUtils.assertPermissionProvider(ContentRestService.class, "deleteContentBulk", String.class, Map.class);
+	}
+
+	@Test(expected = RequiredFieldException.class)
+	public void deleteContentBulk_invalidParams_1() throws Exception {
+		getTested(false).deleteContentBulk(null, new HashMap<String, Object>());
+	}
+
+	@Test(expected = BadFieldException.class)
+	public void deleteContentBulk_invalidParams_UnknownType() throws Exception {
+		Map<String, Object> request = new HashMap<String, Object>();
+		request.put(ContentObjectFields.SYS_CONTENT_ID, Arrays.asList("1"));
+		getTested(false).deleteContentBulk("unknown", request);
+	}
+
+	@Test
+	public void deleteContentBulk_invalidParams_request() throws Exception {
+		ContentRestService tested = getTested(false);
+		// case - neither ids nor filter
+		assertResponseStatus(tested.deleteContentBulk("known", null), Response.Status.BAD_REQUEST);
+		Map<String, Object> request = new HashMap<String, Object>();
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+
+		// case - both ids and filter
+		request.put(ContentObjectFields.SYS_CONTENT_ID, Arrays.asList("1"));
+		request.put("filter", new HashMap<String, Object>());
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+
+		// case - invalid structures
+		request.clear();
+		request.put(ContentObjectFields.SYS_CONTENT_ID, "1");
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+		request.put(ContentObjectFields.SYS_CONTENT_ID, Arrays.asList("1", " "));
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+		request.clear();
+		request.put("filter", "sys_project");
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+		request.put("filter", new HashMap<String, Object>());
+		assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+		verifyZeroInteractions(tested.contentPersistenceService, eventContentBulkDeleted);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void deleteContentBulk_ids() throws Exception {
+		try {
+			ContentRestService tested = getTested(true);
+			Map<String, Object> request = new HashMap<String, Object>();
+
+			// case - delete when index is not found
+			{
+				indexDelete(INDEX_NAME);
+				request.put(ContentObjectFields.SYS_CONTENT_ID, Arrays.asList("1", "2"));
+				Response r = assertResponseStatus(tested.deleteContentBulk("persist", request), Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(2, items.size());
+				assertEquals("1", items.get(0).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("not_found", items.get(0).get("status"));
+				assertEquals("2", items.get(1).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("not_found", items.get(1).get("status"));
+				verify(tested.contentPersistenceService).deleteBatch("persist",
+						Arrays.asList("persist-1", "persist-2"));
+				verifyZeroInteractions(eventContentBulkDeleted);
+			}
+
+			// case - delete existing and nonexisting documents, one event fired for deleted ones
+			{
+				reset(tested.contentPersistenceService);
+				indexDelete(INDEX_NAME);
+				indexCreate(INDEX_NAME);
+				indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-1", "{\"test1\":\"test1\"}");
+				indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-2", "{\"test2\":\"test2\"}");
+				indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-4", "{\"test4\":\"test4\"}");
+				indexFlushAndRefresh(INDEX_NAME);
+				request.put(ContentObjectFields.SYS_CONTENT_ID, Arrays.asList("1", "3", "4", "1"));
+				Response r = assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.OK);
+				List<Map<String, Object>> items = (List<Map<String, Object>>) ((Map<String, Object>) r.getEntity())
+						.get("items");
+				assertEquals(4, items.size());
+				assertEquals("delete", items.get(0).get("status"));
+				assertEquals("not_found", items.get(1).get("status"));
+				assertEquals("3", items.get(1).get(ContentObjectFields.SYS_CONTENT_ID));
+				assertEquals("delete", items.get(2).get("status"));
+				assertEquals("delete", items.get(3).get("status"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-1"));
+				assertNotNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-2"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-4"));
+
+				ArgumentCaptor<ContentBulkDeletedEvent> captor = ArgumentCaptor.forClass(ContentBulkDeletedEvent.class);
+				verify(eventContentBulkDeleted).fire(captor.capture());
+				assertEquals("known", captor.getValue().getSysContentType());
+				assertEquals(Arrays.asList("known-1", "known-4"), captor.getValue().getContentIds());
+				verifyZeroInteractions(tested.contentPersistenceService, tested.eventContentDeleted);
+			}
+		} finally {
+			indexDelete(INDEX_NAME);
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void deleteContentBulk_filter() throws Exception {
+		try {
+			ContentRestService tested = getTested(true);
+			Map<String, Object> request = new HashMap<String, Object>();
+			Map<String, Object> filter = new HashMap<String, Object>();
+			request.put("filter", filter);
+			filter.put("sys_project", "as7");
+
+			// case - delete when index is not found
+			{
+				indexDelete(INDEX_NAME);
+				Response r = assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.OK);
+				assertEquals(0L, ((Map<String, Object>) r.getEntity()).get("deleted"));
+				verifyZeroInteractions(eventContentBulkDeleted);
+			}
+
+			indexCreate(INDEX_NAME);
+			indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-1",
+					"{\"sys_content_type\":\"known\",\"sys_project\":\"as7\",\"sys_updated\":\"2013-01-10T10:00:00.000Z\"}");
+			indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-2",
+					"{\"sys_content_type\":\"known\",\"sys_project\":\"as7\",\"sys_updated\":\"2014-01-10T10:00:00.000Z\"}");
+			indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-3",
+					"{\"sys_content_type\":\"known\",\"sys_project\":\"eap\",\"sys_updated\":\"2013-01-10T10:00:00.000Z\"}");
+			indexInsertDocument(INDEX_NAME, INDEX_TYPE, "persist-1",
+					"{\"sys_content_type\":\"persist\",\"sys_project\":\"as7\",\"sys_updated\":\"2013-01-10T10:00:00.000Z\"}");
+			indexFlushAndRefresh(INDEX_NAME);
+
+			// case - invalid filter
+			{
+				filter.put("sys_updated", new HashMap<String, Object>());
+				assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.BAD_REQUEST);
+				verifyZeroInteractions(eventContentBulkDeleted);
+			}
+
+			// case - value and date range filter, only content of given type is deleted
+			{
+				Map<String, Object> range = new HashMap<String, Object>();
+				range.put("to", "2013-12-31T00:00:00.000Z");
+				filter.put("sys_updated", range);
+				Response r = assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.OK);
+				assertEquals(1L, ((Map<String, Object>) r.getEntity()).get("deleted"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-1"));
+				assertNotNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-2"));
+				assertNotNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-3"));
+				assertNotNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "persist-1"));
+				verify(eventContentBulkDeleted).fire(Mockito.any(ContentBulkDeletedEvent.class));
+				verifyZeroInteractions(tested.contentPersistenceService);
+			}
+
+			// case - list of values filter, persisted content is deleted from persistence too
+			{
+				reset(eventContentBulkDeleted);
+				indexFlushAndRefresh(INDEX_NAME);
+				filter.clear();
+				filter.put("sys_project", Arrays.asList("as7", "eap"));
+				Response r = assertResponseStatus(tested.deleteContentBulk("known", request), Response.Status.OK);
+				assertEquals(2L, ((Map<String, Object>) r.getEntity()).get("deleted"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-2"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "known-3"));
+
+				r = assertResponseStatus(tested.deleteContentBulk("persist", request), Response.Status.OK);
+				assertEquals(1L, ((Map<String, Object>) r.getEntity()).get("deleted"));
+				assertNull(indexGetDocument(INDEX_NAME, INDEX_TYPE, "persist-1"));
+				verify(tested.contentPersistenceService).deleteBatch("persist", Arrays.asList("persist-1"));
+			}
+		} finally {
+			indexDelete(INDEX_NAME);
+			finalizeESClientForUnitTest();
+		}
+	}
+
 	@Test
 	public void getAllContent_permissions() throws IOException, InterruptedException {
 		TestUtils.assertPermissionGuest(ContentRestService.class, "getAllContent", String.class, Integer.class,
@@ -559,7 +1280,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 			indexInsertDocument(INDEX_NAME, INDEX_TYPE, "known-4",
 					"{\"name\":\"test4\",\"sys_updated\":0,\"sys_content_id\":\"4\"}");
 			indexFlushAndRefresh(INDEX_NAME);
-			assetStreamingOutputContent("{\"total\":4,\"hits\":["
+			TestUtils.assetStreamingOutputJsonContent("{\"total\":4,\"hits\":["
 					+ "{\"id\":\"1\",\"data\":{\"sys_updated\":0,\"sys_content_id\":\"1\",\"name\":\"test1\"}},"
 					+ "{\"id\":\"2\",\"data\":{\"sys_updated\":0,\"sys_content_id\":\"2\",\"name\":\"test2\"}},"
 					+ "{\"id\":\"3\",\"data\":{\"sys_updated\":0,\"sys_content_id\":\"3\",\"name\":\"test3\"}},"
@@ -567,7 +1288,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 					tested.getAllContent("known", null, null, null));
 
 			// case - something found, from and size param used
-			assetStreamingOutputContent("{\"total\":4,\"hits\":["
+			TestUtils.assetStreamingOutputJsonContent("{\"total\":4,\"hits\":["
 					+ "{\"id\":\"2\",\"data\":{\"sys_updated\":0,\"sys_content_id\":\"2\",\"name\":\"test2\"}},"
 					+ "{\"id\":\"3\",\"data\":{\"sys_updated\":0,\"sys_content_id\":\"3\",\"name\":\"test3\"}}" + "]}",
 					tested.getAllContent("known", 1, 2, null));
@@ -577,11 +1298,11 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 					"{\"name\":\"test5\", \"sys_updated\" : 1,\"sys_content_id\":\"5\"}");
 			indexFlushAndRefresh(INDEX_NAME);
 			// on ASC our record with id 5 is last, so we set from=4
-			assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":5,\"hits\":[{\"id\":\"5\",\"data\":{\"sys_updated\":1,\"sys_content_id\":\"5\",\"name\":\"test5\"}}]}",
 					tested.getAllContent("known", 4, 1, "asc"));
 			// on DESC our record with id 5 is first, so we set from=0
-			assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":5,\"hits\":[{\"id\":\"5\",\"data\":{\"sys_updated\":1,\"sys_content_id\":\"5\",\"name\":\"test5\"}}]}",
 					tested.getAllContent("known", 0, 1, "DESC"));
 
@@ -649,9 +1370,7 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 			assertResponseStatus(tested.getContent("known", "2"), Response.Status.NOT_FOUND);
 
 			// case - document found
-			@SuppressWarnings("unchecked")
-			Map<String, Object> ret = (Map<String, Object>) tested.getContent("known", "1");
-			assertEquals("test", ret.get("name"));
+			assetStreamingOutputContent("{\"name\":\"test\"}", tested.getContent("known", "1"));
 
 		} finally {
 			indexDelete(INDEX_NAME);
@@ -683,6 +1402,12 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		tested.eventContentDeleted = mock(Event.class);
 		tested.eventContentStored = mock(Event.class);
 		tested.eventBeforeIndexed = mock(Event.class);
+		eventContentBulkDeleted = mock(Event.class);
+
+		tested.contentPushService = ContentPushServiceTest.getTested(tested.providerService, tested.searchClientService,
+				tested.contentPersistenceService, tested.eventContentStored, tested.eventBeforeIndexed,
+				eventContentBulkDeleted, 100);
+		tested.contentPushQueueService = mock(ContentPushQueueService.class);
 
 		when(tested.authenticationUtilService.getAuthenticatedProvider(null)).thenReturn("jbossorg");
 
@@ -694,6 +1419,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 	 */
 	protected void setupProviderServiceMock(ContentRestService tested) {
 		Mockito.when(tested.providerService.findContentType("invalid")).thenReturn(new HashMap<String, Object>());
+		Mockito.when(tested.providerService.findContentTypeDescriptor("invalid")).thenReturn(
+				new ContentTypeDescriptor("jbossorg", "invalid", new HashMap<String, Object>()));
 		Mockito.when(tested.providerService.findContentType("unknown")).thenReturn(null);
 		Mockito.when(tested.providerService.generateSysId(Mockito.anyString(), Mockito.anyString())).thenCallRealMethod();
 
@@ -706,6 +1433,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		typeDefKnown.put(ProviderService.SYS_TYPE, "my_sys_type");
 		typeDefKnown.put(ProviderService.SYS_CONTENT_CONTENT_TYPE, "text/plain");
 		Mockito.when(tested.providerService.findContentType("known")).thenReturn(typeDefKnown);
+		Mockito.when(tested.providerService.findContentTypeDescriptor("known")).thenReturn(
+				new ContentTypeDescriptor("jbossorg", "known", typeDefKnown));
 
 		Map<String, Object> typeDefPersist = new HashMap<String, Object>();
 		Map<String, Object> typeDefPersistIndex = new HashMap<String, Object>();
@@ -716,6 +1445,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		typeDefPersist.put(ProviderService.PERSIST, "true");
 		typeDefPersist.put(ProviderService.SYS_CONTENT_CONTENT_TYPE, "text/plain");
 		when(tested.providerService.findContentType("persist")).thenReturn(typeDefPersist);
+		when(tested.providerService.findContentTypeDescriptor("persist")).thenReturn(
+				new ContentTypeDescriptor("jbossorg", "persist", typeDefPersist));
 
 		Map<String, Object> typeDefSysContent = new HashMap<String, Object>();
 		Map<String, Object> typeDefSysContentIndex = new HashMap<String, Object>();
@@ -724,6 +1455,8 @@ public class ContentRestServiceTest extends ESRealClientTestBase {
 		typeDefSysContentIndex.put("type", INDEX_TYPE);
 		typeDefSysContent.put(ProviderService.SYS_TYPE, "my_sys_type");
 		when(tested.providerService.findContentType("invalid-content-type")).thenReturn(typeDefSysContent);
+		when(tested.providerService.findContentTypeDescriptor("invalid-content-type")).thenReturn(
+				new ContentTypeDescriptor("jbossorg", "invalid-content-type", typeDefSysContent));
 
 		Map<String, Object> providerDef = new HashMap<String, Object>();
 		when(tested.providerService.findProvider("jbossorg")).thenReturn(providerDef);
@@ -50,7 +50,7 @@ public class ContributorRestServiceTest {
 			SearchResponse sr = ESDataOnlyResponseTest.mockSearchResponse("ve", "email@em", null, null);
 			Mockito.when(tested.contributorService.findByTypeSpecificCode("idType", "idValue")).thenReturn(sr);
 			StreamingOutput ret = (StreamingOutput) tested.search(TestUtils.prepareUriInfiWithParams("idType", "idValue"));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"ve\",\"data\":{\"sys_name\":\"email@em\",\"sys_id\":\"ve\"}}]}", ret);
 		}
 
@@ -86,7 +86,7 @@ public class ContributorRestServiceTest {
 			Mockito.when(tested.contributorService.findByEmail("email@em")).thenReturn(sr);
 			StreamingOutput ret = (StreamingOutput) tested.search(TestUtils.prepareUriInfiWithParams(
 					ContributorRestService.PARAM_EMAIL, "email@em"));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"ve\",\"data\":{\"sys_name\":\"email@em\",\"sys_id\":\"ve\"}}]}", ret);
 		}
 
@@ -121,7 +121,7 @@ public class ContributorRestServiceTest {
 			Mockito.when(tested.contributorService.findByCode("e j <email@em>")).thenReturn(sr);
 			StreamingOutput ret = (StreamingOutput) tested.search(TestUtils.prepareUriInfiWithParams(
 					ContributorRestService.PARAM_CODE, "e j <email@em>"));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"ve\",\"data\":{\"sys_name\":\"email@em\",\"sys_id\":\"ve\"}}]}", ret);
 		}
 
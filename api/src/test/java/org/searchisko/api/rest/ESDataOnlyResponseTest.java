@@ -12,9 +12,11 @@ import java.util.Map;
 import javax.ws.rs.WebApplicationException;
 
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.searchisko.api.testtools.TestUtils;
+import org.searchisko.api.util.SearchUtils;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -40,14 +42,14 @@ public class ESDataOnlyResponseTest {
 
 		{
 			ESDataOnlyResponse tested = new ESDataOnlyResponse(mockSearchResponse("1", "name1", null, null));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"1\",\"data\":{\"sys_name\":\"name1\",\"sys_id\":\"1\"}}]}", tested);
 		}
 
 		{
 			ESDataOnlyResponse tested = new ESDataOnlyResponse(mockSearchResponse("1", "name1", "35", "myname"));
 			TestUtils
-					.assetStreamingOutputContent(
+					.assetStreamingOutputJsonContent(
 							"{\"total\":2,\"hits\":[{\"id\":\"1\",\"data\":{\"sys_name\":\"name1\",\"sys_id\":\"1\"}},{\"id\":\"35\",\"data\":{\"sys_name\":\"myname\",\"sys_id\":\"35\"}}]}",
 							tested);
 		}
@@ -61,7 +63,7 @@ public class ESDataOnlyResponseTest {
 			ESDataOnlyResponse tested = new ESDataOnlyResponse(mockSearchResponse("1", "name1", "35", "myname"),
 					new String[] { "sys_name" });
 			TestUtils
-					.assetStreamingOutputContent(
+					.assetStreamingOutputJsonContent(
 							"{\"total\":2,\"hits\":[{\"id\":\"1\",\"data\":{\"sys_id\":\"1\"}},{\"id\":\"35\",\"data\":{\"sys_id\":\"35\"}}]}",
 							tested);
 		}
@@ -74,7 +76,7 @@ public class ESDataOnlyResponseTest {
 		{
 			ESDataOnlyResponse tested = new ESDataOnlyResponse(mockSearchResponse("1", "name1", "35", "myname"), "sys_name");
 			TestUtils
-					.assetStreamingOutputContent(
+					.assetStreamingOutputJsonContent(
 							"{\"total\":2,\"hits\":[{\"id\":\"name1\",\"data\":{\"sys_name\":\"name1\",\"sys_id\":\"1\"}},{\"id\":\"myname\",\"data\":{\"sys_name\":\"myname\",\"sys_id\":\"35\"}}]}",
 							tested);
 		}
@@ -88,12 +90,38 @@ public class ESDataOnlyResponseTest {
 			ESDataOnlyResponse tested = new ESDataOnlyResponse(mockSearchResponse("1", "name1", "35", "myname"), "sys_name",
 					new String[] { "sys_name" });
 			TestUtils
-					.assetStreamingOutputContent(
+					.assetStreamingOutputJsonContent(
 							"{\"total\":2,\"hits\":[{\"id\":\"name1\",\"data\":{\"sys_id\":\"1\"}},{\"id\":\"myname\",\"data\":{\"sys_id\":\"35\"}}]}",
 							tested);
 		}
 	}
 
+	@Test
+	public void write_sourceStructure() throws WebApplicationException, IOException {
+		SearchResponse sr = Mockito.mock(SearchResponse.class);
+		SearchHits sh = Mockito.mock(SearchHits.class);
+		Mockito.when(sr.getHits()).thenReturn(sh);
+		Mockito.when(sh.getTotalHits()).thenReturn(3L);
+		SearchHit h1 = Mockito.mock(SearchHit.class);
+		Mockito.when(h1.sourceRef()).thenReturn(
+				new BytesArray("{\"sys_name\":{\"sys_id\":\"nested\"},\"sys_id\":10,\"tags\":[\"a\",{\"b\":[1,2]}],\"x\":null}"));
+		// case - hit without source
+		SearchHit h2 = Mockito.mock(SearchHit.class);
+		Mockito.when(sh.getHits()).thenReturn(new SearchHit[] { h1, h2 });
+
+		// case - nested structures are copied and skipped correctly, id read from top level numeric field only
+		ESDataOnlyResponse tested = new ESDataOnlyResponse(sr, "sys_id", new String[] { "sys_name", "unknown" });
+		TestUtils.assetStreamingOutputJsonContent(
+				"{\"total\":3,\"hits\":[{\"id\":10,\"data\":{\"sys_id\":10,\"tags\":[\"a\",{\"b\":[1,2]}],\"x\":null}},"
+						+ "{\"id\":null,\"data\":null}]}", tested);
+
+		// case - id field with structured value
+		tested = new ESDataOnlyResponse(sr, "tags");
+		TestUtils.assetStreamingOutputJsonContent(
+				"{\"total\":3,\"hits\":[{\"id\":null,\"data\":{\"sys_name\":{\"sys_id\":\"nested\"},\"sys_id\":10,"
+						+ "\"tags\":[\"a\",{\"b\":[1,2]}],\"x\":null}},{\"id\":null,\"data\":null}]}", tested);
+	}
+
 	/**
 	 * Create mock {@link SearchResponse} instance with passed in values.
 	 *
@@ -135,6 +163,7 @@ public class ESDataOnlyResponseTest {
 		map.put("sys_id", id);
 		map.put("sys_name", name);
 		Mockito.when(sh.sourceAsMap()).thenReturn(map);
+		Mockito.when(sh.sourceRef()).thenReturn(new BytesArray(SearchUtils.convertJsonMapToString(map)));
 		return sh;
 	}
 
@@ -5,18 +5,32 @@
  */
 package org.searchisko.api.rest;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.Principal;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.indices.IndexMissingException;
 import org.elasticsearch.search.SearchHit;
@@ -26,12 +40,18 @@ import org.elasticsearch.search.internal.InternalSearchHitField;
 import org.jboss.resteasy.plugins.providers.atom.Entry;
 import org.jboss.resteasy.plugins.providers.atom.Feed;
 import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.cache.FeedEntryCache;
+import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.model.PastIntervalValue;
 import org.searchisko.api.model.QuerySettings;
+import org.searchisko.api.model.SearchCursor;
 import org.searchisko.api.model.QuerySettings.Filters;
 import org.searchisko.api.model.SortByValue;
 import org.searchisko.api.rest.exception.BadFieldException;
@@ -51,7 +71,7 @@ public class FeedRestServiceTest {
 
 	@Test
 	public void feed_permissions() {
-		TestUtils.assertPermissionGuest(FeedRestService.class, "feed", UriInfo.class);
+		TestUtils.assertPermissionGuest(FeedRestService.class, "feed", UriInfo.class, AsynchronousResponse.class);
 	}
 
 	@Test
@@ -75,7 +95,7 @@ public class FeedRestServiceTest {
 			Assert.assertEquals(new Integer(0), qs.getFilters().getFrom());
 			Assert.assertEquals(new Integer(20), qs.getFilters().getSize());
 			Assert.assertEquals(SortByValue.NEW, qs.getSortBy());
-			Assert.assertEquals(9, qs.getFields().size());
+			Assert.assertEquals(10, qs.getFields().size());
 			Assert.assertNull(qs.getFilters().getActivityDateFrom());
 			Assert.assertNull(qs.getFilters().getActivityDateTo());
 			Assert.assertNull(qs.getFilters().getActivityDateInterval());
@@ -117,7 +137,7 @@ public class FeedRestServiceTest {
 			Assert.assertEquals(new Integer(0), qs.getFilters().getFrom());
 			Assert.assertEquals(new Integer(20), qs.getFilters().getSize());
 			Assert.assertEquals(SortByValue.NEW, qs.getSortBy());
-			Assert.assertEquals(9, qs.getFields().size());
+			Assert.assertEquals(10, qs.getFields().size());
 			Assert.assertNull(qs.getFilters().getActivityDateFrom());
 			Assert.assertNull(qs.getFilters().getActivityDateTo());
 			Assert.assertNull(qs.getFilters().getActivityDateInterval());
@@ -156,11 +176,12 @@ public class FeedRestServiceTest {
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
 			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed"));
 			QuerySettings qs = new QuerySettings();
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
 			prepareSearchResponseMocks(tested, qs, null);
 
-			Object response = tested.feed(uriInfo);
+			Object response = feedEntity(tested, uriInfo);
 
 			feedBasicAsserts(tested, uriInfo, qp, qs, response);
 
@@ -178,12 +199,13 @@ public class FeedRestServiceTest {
 			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 			qp.putSingle(FeedRestService.REQPARAM_FEED_TITLE, "test feed title");
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed"));
 			QuerySettings qs = new QuerySettings();
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
 			SearchHit[] ha = new SearchHit[0];
 			prepareSearchResponseMocks(tested, qs, ha);
 
-			Object response = tested.feed(uriInfo);
+			Object response = feedEntity(tested, uriInfo);
 
 			feedBasicAsserts(tested, uriInfo, qp, qs, response);
 
@@ -200,6 +222,7 @@ public class FeedRestServiceTest {
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
 			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed"));
 			QuerySettings qs = new QuerySettings();
 			qs.getFiltersInit().addProject("as7");
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
@@ -241,7 +264,7 @@ public class FeedRestServiceTest {
 			SearchHit[] ha = new SearchHit[] { hit1, hit2, hit3 };
 			prepareSearchResponseMocks(tested, qs, ha);
 
-			Object response = tested.feed(uriInfo);
+			Object response = feedEntity(tested, uriInfo);
 
 			feedBasicAsserts(tested, uriInfo, qp, qs, response);
 
@@ -250,6 +273,9 @@ public class FeedRestServiceTest {
 			Assert.assertNotNull(feed.getUpdated());
 			Assert.assertNotNull(feed.getGenerator());
 
+			// page of hits is not full so no next link
+			Assert.assertEquals(0, feed.getLinks().size());
+
 			Assert.assertEquals(3, feed.getEntries().size());
 			{
 				Entry entry = feed.getEntries().get(0);
@@ -315,47 +341,262 @@ public class FeedRestServiceTest {
 
 	}
 
+	@Test
+	public void feed_nextLink() throws IOException, URISyntaxException {
+		FeedRestService tested = getTested();
+
+		UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+		Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed?project=as7"));
+		Mockito.when(uriInfo.getRequestUriBuilder()).thenReturn(
+				UriBuilder.fromUri("http://localhost/v1/rest/feed?project=as7&cursor=first"));
+		QuerySettings qs = new QuerySettings();
+		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+
+		// full page of hits so next link is created from the last one
+		SearchHit[] ha = new SearchHit[20];
+		for (int i = 0; i < ha.length; i++) {
+			SearchHit hit = Mockito.mock(SearchHit.class);
+			Mockito.when(hit.getId()).thenReturn("hit" + i);
+			Mockito.when(hit.getType()).thenReturn("sys");
+			Mockito.when(hit.getFields()).thenReturn(new HashMap<String, SearchHitField>());
+			Mockito.when(hit.getSortValues()).thenReturn(new Object[] { 1000L - i });
+			ha[i] = hit;
+		}
+		prepareSearchResponseMocks(tested, qs, ha);
+
+		// case - cursor pagination not requested so no next link
+		Feed feed = (Feed) feedEntity(tested, uriInfo);
+		Assert.assertEquals(20, feed.getEntries().size());
+		Assert.assertEquals(0, feed.getLinks().size());
+
+		qs.getFiltersInit().setCursorPaging(true);
+		feed = (Feed) feedEntity(tested, uriInfo);
+		Assert.assertEquals(20, feed.getEntries().size());
+		Assert.assertEquals(1, feed.getLinks().size());
+		Assert.assertEquals("next", feed.getLinks().get(0).getRel());
+		String expectedCursor = new SearchCursor(SortByValue.NEW, 981L, "sys#hit19").encode();
+		Assert.assertEquals("http://localhost/v1/rest/feed?project=as7&cursor=" + expectedCursor, feed.getLinks().get(0)
+				.getHref().toString());
+	}
+
+	@Test
+	public void feed_entryCache() throws IOException, URISyntaxException {
+		FeedRestService tested = Mockito.spy(getTested());
+		tested.feedEntryCache = new FeedEntryCache();
+		tested.feedEntryCache.setMaxMemory(100000);
+
+		UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+		Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed"));
+		QuerySettings qs = new QuerySettings();
+		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+
+		// hit 1 - with sys_updated so cached, special characters escaped
+		SearchHit hit1 = Mockito.mock(SearchHit.class);
+		Mockito.when(hit1.getId()).thenReturn("hit1");
+		Map<String, SearchHitField> fields = new HashMap<String, SearchHitField>();
+		Mockito.when(hit1.getFields()).thenReturn(fields);
+		putSearchHitField(fields, ContentObjectFields.SYS_TITLE, "Title <with> & \"special\" chars");
+		putSearchHitField(fields, ContentObjectFields.SYS_CONTENT, "<p>a &amp; b</p>");
+		putSearchHitField(fields, ContentObjectFields.SYS_CONTENT_TYPE, "text/html");
+		putSearchHitField(fields, ContentObjectFields.SYS_UPDATED, "2014-03-27T10:36:27.000Z");
+
+		// hit 2 - without sys_updated so never cached
+		SearchHit hit2 = Mockito.mock(SearchHit.class);
+		Mockito.when(hit2.getId()).thenReturn("hit2");
+		Map<String, SearchHitField> fields2 = new HashMap<String, SearchHitField>();
+		Mockito.when(hit2.getFields()).thenReturn(fields2);
+		putSearchHitField(fields2, ContentObjectFields.SYS_TITLE, "My title 2");
+
+		prepareSearchResponseMocks(tested, qs, new SearchHit[] { hit1, hit2 });
+
+		for (int i = 0; i < 2; i++) {
+			Feed feed = (Feed) feedEntity(tested, uriInfo);
+			Assert.assertEquals(2, feed.getEntries().size());
+			Entry entry = feed.getEntries().get(0);
+			Assert.assertEquals("searchisko:content:id:hit1", entry.getId().toString());
+			Assert.assertEquals("Title <with> & \"special\" chars", entry.getTitle());
+			Assert.assertEquals("<p>a &amp; b</p>", entry.getContent().getText());
+			Assert.assertEquals(MediaType.TEXT_HTML_TYPE, entry.getContent().getType());
+			Assert.assertEquals("My title 2", feed.getEntries().get(1).getTitle());
+		}
+		Mockito.verify(tested, Mockito.times(1)).renderEntry(hit1);
+		Mockito.verify(tested, Mockito.times(2)).renderEntry(hit2);
+		Assert.assertEquals(1L, tested.feedEntryCache.getStats().get("hits"));
+
+		// case - changed content is rendered again
+		putSearchHitField(fields, ContentObjectFields.SYS_UPDATED, "2014-03-28T10:36:27.000Z");
+		feedEntity(tested, uriInfo);
+		Mockito.verify(tested, Mockito.times(2)).renderEntry(hit1);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void feed_conditional() throws IOException, URISyntaxException {
+		FeedRestService tested = getTested();
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.appConfiguration.setSearchHttpConditional(true);
+		tested.appConfiguration.setSearchHttpCacheControl("private, max-age=60");
+		tested.httpHeaders = Mockito.mock(HttpHeaders.class);
+
+		UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+		Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/feed?project=as7"));
+		Mockito.when(uriInfo.getRequestUriBuilder()).thenReturn(
+				UriBuilder.fromUri("http://localhost/v1/rest/feed?project=as7"));
+		QuerySettings qs = new QuerySettings();
+		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+
+		SearchHit hit = Mockito.mock(SearchHit.class);
+		Mockito.when(hit.getId()).thenReturn("hit1");
+		Map<String, SearchHitField> fields = new HashMap<String, SearchHitField>();
+		Mockito.when(hit.getFields()).thenReturn(fields);
+		putSearchHitField(fields, ContentObjectFields.SYS_TITLE, "My title");
+		putSearchHitField(fields, ContentObjectFields.SYS_UPDATED, "2014-03-27T10:36:27.456Z");
+		SearchResponse sr = Mockito.mock(SearchResponse.class);
+		SearchHits searchHits = Mockito.mock(SearchHits.class);
+		Mockito.when(searchHits.getHits()).thenReturn(new SearchHit[] { hit });
+		Mockito.when(sr.getHits()).thenReturn(searchHits);
+		mockPerformSearchAsync(tested, qs, sr, null);
+		Mockito.when(tested.searchService.getLastContentChangeTime(qs)).thenReturn(1395916587456L);
+		EntityTag eTag = RestServiceBase.createEntityTag("http://localhost/v1/rest/feed?project=as7", 1395916587456L);
+		Date lastModified = new Date(1395916587000L);
+
+		// case - not conditional request, so full response is sent with validators
+		{
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertNotNull(parseFeed(response.getEntity()));
+			Assert.assertEquals(eTag, response.getMetadata().getFirst("ETag"));
+			Assert.assertEquals(lastModified, response.getMetadata().getFirst("Last-Modified"));
+			Assert.assertEquals("private, max-age=60", response.getMetadata().getFirst("Cache-Control"));
+		}
+
+		// case - not modified since, so search is not performed and feed is not rendered
+		{
+			Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_MODIFIED_SINCE)).thenReturn(
+					Arrays.asList("Thu, 27 Mar 2014 10:36:27 GMT"));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_MODIFIED);
+			Assert.assertNull(response.getEntity());
+			Assert.assertEquals(eTag, response.getMetadata().getFirst("ETag"));
+			Assert.assertEquals(lastModified, response.getMetadata().getFirst("Last-Modified"));
+			Assert.assertEquals("private, max-age=60", response.getMetadata().getFirst("Cache-Control"));
+			Mockito.verify(tested.searchService, Mockito.times(1)).performSearchAsync(Mockito.eq(qs),
+					Mockito.notNull(String.class), Mockito.eq(StatsRecordType.FEED), Mockito.eq(true),
+					Mockito.any(ActionListener.class));
+		}
+
+		// case - If-None-Match has precedence and doesn't match, so full response is sent
+		{
+			Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(
+					Arrays.asList("W/\"oldtag\""));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertNotNull(parseFeed(response.getEntity()));
+			Assert.assertEquals(eTag, response.getMetadata().getFirst("ETag"));
+		}
+
+		// case - no conditional processing for authenticated user
+		{
+			Mockito.reset(tested.searchService, tested.httpHeaders);
+			tested.securityContext = Mockito.mock(SecurityContext.class);
+			Mockito.when(tested.securityContext.getUserPrincipal()).thenReturn(Mockito.mock(Principal.class));
+			Mockito.doThrow(new IndexMissingException(null)).when(tested.searchService)
+					.performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class), Mockito.eq(StatsRecordType.FEED),
+							Mockito.eq(false), Mockito.any(ActionListener.class));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
+			Assert.assertNull(response.getMetadata().getFirst("ETag"));
+			Mockito.verify(tested.httpHeaders, Mockito.never()).getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+			Mockito.verify(tested.searchService, Mockito.never()).getLastContentChangeTime(qs);
+		}
+	}
+
 	private void putSearchHitField(Map<String, SearchHitField> fields, String name, Object... values) {
 		fields.put(name, new InternalSearchHitField(name, Arrays.asList(values)));
 	}
 
+	/**
+	 * Call {@link FeedRestService#feed(UriInfo, AsynchronousResponse)}, assert it is resumed with OK Atom response and
+	 * return feed parsed from this response.
+	 */
+	private Object feedEntity(FeedRestService tested, UriInfo uriInfo) throws IOException {
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.feed(uriInfo, ar);
+		Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+		Assert.assertEquals(MediaType.APPLICATION_ATOM_XML_TYPE, response.getMetadata().getFirst("Content-Type"));
+		return parseFeed(response.getEntity());
+	}
+
+	/**
+	 * Write streaming output with feed and parse it using JAXB mapping of RESTEasy Atom provider.
+	 */
+	private Feed parseFeed(Object entity) throws IOException {
+		Assert.assertTrue("Bad class instead of StreamingOutput: " + entity.getClass().getName(),
+				entity instanceof StreamingOutput);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingOutput) entity).write(out);
+		try {
+			return (Feed) JAXBContext.newInstance(Feed.class).createUnmarshaller()
+					.unmarshal(new ByteArrayInputStream(out.toByteArray()));
+		} catch (JAXBException e) {
+			throw new IOException("Invalid feed: " + new String(out.toByteArray(), "UTF-8"), e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
 	private void feedBasicAsserts(FeedRestService tested, UriInfo uriInfo, MultivaluedMap<String, String> qp,
 			QuerySettings qs, Object response) {
 		Mockito.verify(uriInfo, Mockito.times(2)).getQueryParameters();
 		Mockito.verify(tested.querySettingsParser).parseUriParams(qp);
-		Mockito.verify(tested.searchService).performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-				Mockito.eq(StatsRecordType.FEED));
+		Mockito.verify(tested.searchService).performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class),
+				Mockito.eq(StatsRecordType.FEED), Mockito.eq(true), Mockito.any(ActionListener.class));
 		Assert.assertTrue("Bad class instead of Feed: " + response.getClass().getName(), response instanceof Feed);
 	}
 
-	@Test(expected = BadFieldException.class)
+	@Test
 	public void feed_errorhandling_1() throws IOException, URISyntaxException {
-		FeedRestService tested = getTested();
+		FeedRestService tested = Mockito.spy(getTested());
 
-		tested.feed(null);
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.feed(null, ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(BadFieldException.class));
+		Mockito.verifyZeroInteractions(tested.searchService);
 	}
 
-	@Test(expected = BadFieldException.class)
+	@Test
 	public void feed_errorhandling_2() throws IOException, URISyntaxException {
-		FeedRestService tested = getTested();
+		FeedRestService tested = Mockito.spy(getTested());
 
 		// case - error handling for invalid request value
 		{
-			Mockito.reset(tested.querySettingsParser, tested.searchService);
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
 			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenThrow(
 					new IllegalArgumentException("test exception"));
-			tested.feed(uriInfo);
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(BadFieldException.class));
+			Mockito.verifyZeroInteractions(tested.searchService);
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	@Test
 	public void feed_errorhandling_3() throws IOException, URISyntaxException {
 		FeedRestService tested = getTested();
 
-		// case - error handling for index not found exception
+		// case - error handling for index not found exception thrown directly
 		{
 			Mockito.reset(tested.querySettingsParser, tested.searchService);
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
@@ -363,30 +604,46 @@ public class FeedRestServiceTest {
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 			QuerySettings qs = new QuerySettings();
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
-			Mockito.when(
-					tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-							Mockito.eq(StatsRecordType.FEED))).thenThrow(new IndexMissingException(null));
-			Object response = tested.feed(uriInfo);
-			TestUtils.assertResponseStatus(response, Status.NOT_FOUND);
+			Mockito.doThrow(new IndexMissingException(null)).when(tested.searchService)
+					.performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class), Mockito.eq(StatsRecordType.FEED),
+							Mockito.eq(true), Mockito.any(ActionListener.class));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
+		}
+
+		// case - error handling for index not found exception passed to listener
+		{
+			Mockito.reset(tested.querySettingsParser, tested.searchService);
+			UriInfo uriInfo = Mockito.mock(UriInfo.class);
+			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			QuerySettings qs = new QuerySettings();
+			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+			mockPerformSearchAsync(tested, qs, null, new IndexMissingException(null));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
 		}
 	}
 
-	@Test(expected = RuntimeException.class)
+	@Test
 	public void feed_errorhandling_4() throws IOException, URISyntaxException {
-		FeedRestService tested = getTested();
+		FeedRestService tested = Mockito.spy(getTested());
 
 		// case - error handling for other exceptions
 		{
-			Mockito.reset(tested.querySettingsParser, tested.searchService);
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
 			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 			QuerySettings qs = new QuerySettings();
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
-			Mockito.when(
-					tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-							Mockito.eq(StatsRecordType.FEED))).thenThrow(new RuntimeException());
-			tested.feed(uriInfo);
+			RuntimeException ex = new RuntimeException("test exception");
+			mockPerformSearchAsync(tested, qs, null, ex);
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.feed(uriInfo, ar);
+			Mockito.verify(tested).resumeWithError(ar, ex);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.INTERNAL_SERVER_ERROR);
 		}
 	}
 
@@ -395,9 +652,26 @@ public class FeedRestServiceTest {
 		SearchHits searchHits = Mockito.mock(SearchHits.class);
 		Mockito.when(searchHits.getHits()).thenReturn(hitsArray);
 		Mockito.when(sr.getHits()).thenReturn(searchHits);
-		Mockito.when(
-				tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-						Mockito.eq(StatsRecordType.FEED))).thenReturn(sr);
+		mockPerformSearchAsync(tested, qs, sr, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockPerformSearchAsync(FeedRestService tested, QuerySettings qs, final SearchResponse sr,
+			final Throwable failure) {
+		Mockito.doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				ActionListener<SearchResponse> listener = (ActionListener<SearchResponse>) invocation.getArguments()[4];
+				if (failure != null) {
+					listener.onFailure(failure);
+				} else {
+					listener.onResponse(sr);
+				}
+				return null;
+			}
+		}).when(tested.searchService).performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class),
+				Mockito.eq(StatsRecordType.FEED), Mockito.eq(true), Mockito.any(ActionListener.class));
 	}
 
 	@Test
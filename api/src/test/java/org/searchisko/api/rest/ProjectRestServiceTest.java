@@ -195,7 +195,7 @@ public class ProjectRestServiceTest {
 			SearchResponse sr = ESDataOnlyResponseTest.mockSearchResponse("ve", "email@em", null, null);
 			Mockito.when(tested.projectService.findByTypeSpecificCode("idType", "idValue")).thenReturn(sr);
 			StreamingOutput ret = (StreamingOutput) tested.search(TestUtils.prepareUriInfiWithParams("idType", "idValue"));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"ve\",\"data\":{\"sys_name\":\"email@em\",\"sys_id\":\"ve\"}}]}", ret);
 		}
 
@@ -233,7 +233,7 @@ public class ProjectRestServiceTest {
 			Mockito.when(tested.projectService.findByCode("testcode")).thenReturn(sr);
 			StreamingOutput ret = (StreamingOutput) tested.search(TestUtils.prepareUriInfiWithParams(
 					ProjectRestService.PARAM_CODE, "testcode"));
-			TestUtils.assetStreamingOutputContent(
+			TestUtils.assetStreamingOutputJsonContent(
 					"{\"total\":1,\"hits\":[{\"id\":\"ve\",\"data\":{\"sys_name\":\"email@em\",\"sys_id\":\"ve\"}}]}", ret);
 		}
 
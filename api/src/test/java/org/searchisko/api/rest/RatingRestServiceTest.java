@@ -24,6 +24,7 @@ import org.mockito.Mockito;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.rest.exception.RequiredFieldException;
 import org.searchisko.api.rest.security.AuthenticationUtilService;
+import org.searchisko.api.service.ContentTypeDescriptor;
 import org.searchisko.api.service.ProviderService;
 import org.searchisko.api.service.SearchClientService;
 import org.searchisko.api.service.SearchIndexMissingException;
@@ -255,13 +256,13 @@ public class RatingRestServiceTest {
 		{
 			RatingRestService tested = getTested();
 			Mockito.when(tested.providerService.parseTypeNameFromSysId(MOCK_CONTENT_ID_1)).thenReturn(MOCK_PROVIDER_NAME);
-			Mockito.when(tested.providerService.findContentType(MOCK_PROVIDER_NAME)).thenReturn(null);
+			Mockito.when(tested.providerService.findContentTypeDescriptor(MOCK_PROVIDER_NAME)).thenReturn(null);
 
 			Map<String, Object> content = new HashMap<>();
 			content.put(RatingRestService.DATA_FIELD_RATING, "1");
 			TestUtils.assertResponseStatus(tested.postRating(MOCK_CONTENT_ID_1, content), Status.NOT_FOUND);
 
-			Mockito.verify(tested.providerService).findContentType(MOCK_PROVIDER_NAME);
+			Mockito.verify(tested.providerService).findContentTypeDescriptor(MOCK_PROVIDER_NAME);
 		}
 
 		// case - non existing document
@@ -271,7 +272,8 @@ public class RatingRestServiceTest {
 			Mockito.when(tested.providerService.parseTypeNameFromSysId(MOCK_CONTENT_ID_1)).thenReturn(MOCK_PROVIDER_NAME);
 
 			Map<String, Object> typeDef = mockTypeDef();
-			Mockito.when(tested.providerService.findContentType(MOCK_PROVIDER_NAME)).thenReturn(typeDef);
+			Mockito.when(tested.providerService.findContentTypeDescriptor(MOCK_PROVIDER_NAME)).thenReturn(
+					new ContentTypeDescriptor("jboss", MOCK_PROVIDER_NAME, typeDef));
 
 			GetResponse grMock = Mockito.mock(GetResponse.class);
 			Mockito.when(grMock.isExists()).thenReturn(false);
@@ -292,7 +294,8 @@ public class RatingRestServiceTest {
 			Mockito.when(tested.providerService.parseTypeNameFromSysId(MOCK_CONTENT_ID_1)).thenReturn(MOCK_PROVIDER_NAME);
 
 			Map<String, Object> typeDef = mockTypeDef();
-			Mockito.when(tested.providerService.findContentType(MOCK_PROVIDER_NAME)).thenReturn(typeDef);
+			Mockito.when(tested.providerService.findContentTypeDescriptor(MOCK_PROVIDER_NAME)).thenReturn(
+					new ContentTypeDescriptor("jboss", MOCK_PROVIDER_NAME, typeDef));
 
 			GetResponse grMock = Mockito.mock(GetResponse.class);
 			Mockito.when(grMock.isExists()).thenReturn(true);
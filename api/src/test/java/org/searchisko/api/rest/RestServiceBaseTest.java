@@ -6,15 +6,21 @@
 package org.searchisko.api.rest;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.xcontent.ToXContent;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.junit.Assert;
@@ -22,6 +28,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.testtools.TestUtils;
 
 /**
@@ -49,6 +56,15 @@ public class RestServiceBaseTest {
 		Assert.assertEquals(m, tested.createResponse(rMock));
 	}
 
+	@Test
+	public void createRawSourceResponse() throws IOException {
+		RestServiceBase tested = getTested();
+		GetResponse rMock = Mockito.mock(GetResponse.class);
+		Mockito.when(rMock.getSourceAsBytesRef()).thenReturn(new BytesArray("{\"name\":\"test\", \"a\" : [1,2]}"));
+		TestUtils.assetStreamingOutputContent("{\"name\":\"test\", \"a\" : [1,2]}", tested.createRawSourceResponse(rMock));
+		Mockito.verify(rMock, Mockito.never()).getSource();
+	}
+
 	@Test
 	public void createResponse_StreamingOutput() throws IOException {
 		RestServiceBase tested = getTested();
@@ -76,4 +92,120 @@ public class RestServiceBaseTest {
 
 		TestUtils.assetStreamingOutputContent("{\"testfield\":\"testvalue\"}", tested.createResponse(srMock, null));
 	}
+
+	@Test
+	public void isConditionalGetEnabled() {
+		RestServiceBase tested = getTested();
+		Assert.assertFalse(tested.isConditionalGetEnabled());
+
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.httpHeaders = Mockito.mock(HttpHeaders.class);
+		Assert.assertFalse(tested.isConditionalGetEnabled());
+
+		tested.appConfiguration.setSearchHttpConditional(true);
+		Assert.assertTrue(tested.isConditionalGetEnabled());
+
+		tested.httpHeaders = null;
+		Assert.assertFalse(tested.isConditionalGetEnabled());
+	}
+
+	@Test
+	public void createEntityTag() {
+		EntityTag tag = RestServiceBase.createEntityTag("/search?q=a", 1395916587456L);
+		Assert.assertTrue(tag.isWeak());
+		Assert.assertEquals(tag, RestServiceBase.createEntityTag("/search?q=a", 1395916587456L));
+
+		// case - any change leads to other tag
+		Assert.assertFalse(tag.equals(RestServiceBase.createEntityTag("/search?q=b", 1395916587456L)));
+		Assert.assertFalse(tag.equals(RestServiceBase.createEntityTag("/search?q=a", 1395916587457L)));
+	}
+
+	@Test
+	public void createLastModified() {
+		Assert.assertEquals(new Date(1395916587000L), RestServiceBase.createLastModified(1395916587456L));
+		Assert.assertEquals(new Date(1395916587000L), RestServiceBase.createLastModified(1395916587000L));
+	}
+
+	@Test
+	public void readConditionalRequest() {
+		RestServiceBase tested = getTested();
+		Assert.assertNull(tested.readConditionalRequest());
+
+		tested.httpHeaders = Mockito.mock(HttpHeaders.class);
+		Assert.assertNull(tested.readConditionalRequest());
+
+		// case - invalid date is ignored
+		Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_MODIFIED_SINCE)).thenReturn(
+				Arrays.asList("bad date"));
+		Assert.assertNull(tested.readConditionalRequest());
+
+		Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_MODIFIED_SINCE)).thenReturn(
+				Arrays.asList("Thu, 27 Mar 2014 10:36:27 GMT"));
+		RestServiceBase.ConditionalRequest cr = tested.readConditionalRequest();
+		Assert.assertNull(cr.getIfNoneMatch());
+		Assert.assertEquals(new Date(1395916587000L), cr.getIfModifiedSince());
+
+		Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(
+				Arrays.asList("W/\"tag\""));
+		cr = tested.readConditionalRequest();
+		Assert.assertEquals(Arrays.asList("W/\"tag\""), cr.getIfNoneMatch());
+		Assert.assertEquals(new Date(1395916587000L), cr.getIfModifiedSince());
+	}
+
+	@Test
+	public void evaluatePreconditions() {
+		EntityTag eTag = new EntityTag("tag", true);
+		Date lastModified = new Date(1395916587000L);
+
+		// case - not conditional request
+		Assert.assertNull(RestServiceBase.evaluatePreconditions(null, eTag, lastModified));
+
+		// case - If-None-Match has precedence
+		Response r = RestServiceBase.evaluatePreconditions(
+				new RestServiceBase.ConditionalRequest(Arrays.asList("\"other\", W/\"tag\""), new Date(0)), eTag,
+				lastModified).build();
+		Assert.assertEquals(304, r.getStatus());
+		Assert.assertNull(RestServiceBase.evaluatePreconditions(
+				new RestServiceBase.ConditionalRequest(Arrays.asList("W/\"other\""), lastModified), eTag,
+				lastModified));
+		Assert.assertNotNull(RestServiceBase.evaluatePreconditions(
+				new RestServiceBase.ConditionalRequest(Arrays.asList("*"), null), eTag, lastModified));
+
+		// case - date used without If-None-Match
+		Assert.assertNotNull(RestServiceBase.evaluatePreconditions(new RestServiceBase.ConditionalRequest(null,
+				lastModified), eTag, lastModified));
+		Assert.assertNotNull(RestServiceBase.evaluatePreconditions(new RestServiceBase.ConditionalRequest(null,
+				new Date(1395916588000L)), eTag, lastModified));
+		Assert.assertNull(RestServiceBase.evaluatePreconditions(new RestServiceBase.ConditionalRequest(null, new Date(
+				1395916586000L)), eTag, lastModified));
+
+		// case - no date
+		Assert.assertNull(RestServiceBase.evaluatePreconditions(new RestServiceBase.ConditionalRequest(null,
+				lastModified), eTag, null));
+	}
+
+	@Test
+	public void setCacheHeaders() {
+		RestServiceBase tested = getTested();
+		EntityTag eTag = new EntityTag("tag", true);
+		Date lastModified = new Date(1395916587000L);
+
+		// case - nothing set
+		{
+			Response r = tested.setCacheHeaders(Response.ok(), null, null).build();
+			Assert.assertNull(r.getMetadata().getFirst("ETag"));
+			Assert.assertNull(r.getMetadata().getFirst("Last-Modified"));
+			Assert.assertNull(r.getMetadata().getFirst("Cache-Control"));
+		}
+
+		// case - all set
+		{
+			tested.appConfiguration = new AppConfiguration("/tmp");
+			tested.appConfiguration.setSearchHttpCacheControl("private, max-age=60");
+			Response r = tested.setCacheHeaders(Response.ok(), eTag, lastModified).build();
+			Assert.assertEquals(eTag, r.getMetadata().getFirst("ETag"));
+			Assert.assertEquals(lastModified, r.getMetadata().getFirst("Last-Modified"));
+			Assert.assertEquals("private, max-age=60", r.getMetadata().getFirst("Cache-Control"));
+		}
+	}
 }
@@ -6,22 +6,42 @@
 package org.searchisko.api.rest;
 
 import java.io.IOException;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.SecurityContext;
 import javax.ws.rs.core.UriInfo;
 
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.xcontent.ToXContent.Params;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.AsynchronousResponse;
+import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.rest.exception.BadFieldException;
 import org.searchisko.api.rest.exception.RequiredFieldException;
@@ -39,29 +59,32 @@ public class SearchRestServiceTest {
 
 	@Test
 	public void search_permissions() {
-		TestUtils.assertPermissionGuest(SearchRestService.class, "search", UriInfo.class);
+		TestUtils.assertPermissionGuest(SearchRestService.class, "search", UriInfo.class, AsynchronousResponse.class);
 	}
 
-	@Test(expected = BadFieldException.class)
+	@Test
 	public void search_inputParam_1() throws IOException {
-		SearchRestService tested = getTested();
-		tested.search(null);
+		SearchRestService tested = Mockito.spy(getTested());
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.search(null, ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(BadFieldException.class));
+		Mockito.verifyZeroInteractions(tested.searchService);
 	}
 
-	@Test(expected = BadFieldException.class)
+	@Test
 	public void search_invalidParam_2() throws IOException {
-		SearchRestService tested = getTested();
+		SearchRestService tested = Mockito.spy(getTested());
 
 		// case - error handling for invalid request value
-		Mockito.reset(tested.querySettingsParser, tested.searchService);
 		UriInfo uriInfo = Mockito.mock(UriInfo.class);
 		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenThrow(
 				new IllegalArgumentException("test exception"));
-		Object response = tested.search(uriInfo);
-		TestUtils.assertResponseStatus(response, Status.BAD_REQUEST);
-		Mockito.verifyNoMoreInteractions(tested.searchService);
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.search(uriInfo, ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(BadFieldException.class));
+		Mockito.verifyZeroInteractions(tested.searchService);
 	}
 
 	@Test
@@ -85,22 +108,24 @@ public class SearchRestServiceTest {
 					return null;
 				}
 			}).when(sr).toXContent(Mockito.any(XContentBuilder.class), Mockito.any(Params.class));
-			Mockito.when(
-					tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-							Mockito.eq(StatsRecordType.SEARCH))).thenReturn(sr);
+			mockPerformSearchAsync(tested, qs, sr, null);
 			Mockito.when(tested.searchService.getSearchResponseAdditionalFields(Mockito.eq(qs))).thenReturn(
 					new HashMap<String, String>());
-			Object response = tested.search(uriInfo);
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
 			Mockito.verify(uriInfo).getQueryParameters();
 			Mockito.verify(tested.querySettingsParser).parseUriParams(qp);
-			Mockito.verify(tested.searchService).performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-					Mockito.eq(StatsRecordType.SEARCH));
+			verifyPerformSearchAsync(tested, qs);
 			Mockito.verify(tested.searchService).getSearchResponseAdditionalFields(Mockito.eq(qs));
 			Mockito.verifyNoMoreInteractions(tested.searchService);
-			TestUtils.assetStreamingOutputContentRegexp("\\{\"uuid\":\".+\",\"testfield\":\"testvalue\"\\}", response);
+			Response response = TestUtils.assertAsyncResponse(ar);
+			Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+			Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMetadata().getFirst("Content-Type"));
+			TestUtils.assetStreamingOutputContentRegexp("\\{\"uuid\":\".+\",\"testfield\":\"testvalue\"\\}",
+					response.getEntity());
 		}
 
-		// case - error handling for index not found exception
+		// case - error handling for index not found exception thrown directly
 		{
 			Mockito.reset(tested.querySettingsParser, tested.searchService);
 			UriInfo uriInfo = Mockito.mock(UriInfo.class);
@@ -108,29 +133,393 @@ public class SearchRestServiceTest {
 			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 			QuerySettings qs = new QuerySettings();
 			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
-			Mockito.when(
-					tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-							Mockito.eq(StatsRecordType.SEARCH))).thenThrow(new IndexMissingException(null));
-			Object response = tested.search(uriInfo);
-			TestUtils.assertResponseStatus(response, Status.NOT_FOUND);
+			Mockito.doThrow(new IndexMissingException(null)).when(tested.searchService)
+					.performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class), Mockito.eq(StatsRecordType.SEARCH),
+							Mockito.eq(true), Mockito.any(ActionListener.class));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
+		}
+
+		// case - error handling for index not found exception passed to listener
+		{
+			Mockito.reset(tested.querySettingsParser, tested.searchService);
+			UriInfo uriInfo = Mockito.mock(UriInfo.class);
+			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			QuerySettings qs = new QuerySettings();
+			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+			mockPerformSearchAsync(tested, qs, null, new IndexMissingException(null));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void search_conditional() throws Exception {
+		SearchRestService tested = getTested();
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.appConfiguration.setSearchHttpConditional(true);
+		tested.httpHeaders = Mockito.mock(HttpHeaders.class);
+
+		UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+		Mockito.when(uriInfo.getRequestUri()).thenReturn(new URI("http://localhost/v1/rest/search?query=as7"));
+		QuerySettings qs = new QuerySettings();
+		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+		SearchResponse sr = Mockito.mock(SearchResponse.class);
+		mockPerformSearchAsync(tested, qs, sr, null);
+		Mockito.when(tested.searchService.getSearchResponseAdditionalFields(Mockito.eq(qs))).thenReturn(
+				new HashMap<String, String>());
+		Mockito.when(tested.searchService.getLastContentChangeTime(qs)).thenReturn(1395916587456L);
+		EntityTag eTag = RestServiceBase.createEntityTag("http://localhost/v1/rest/search?query=as7", 1395916587456L);
+
+		// case - not conditional request, so full response is sent with validators
+		{
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertEquals(eTag, response.getMetadata().getFirst("ETag"));
+			Assert.assertEquals(new Date(1395916587000L), response.getMetadata().getFirst("Last-Modified"));
+			verifyPerformSearchAsync(tested, qs);
+		}
+
+		// case - not modified, so search is not performed at all
+		{
+			Mockito.reset(tested.searchService);
+			Mockito.when(tested.searchService.getLastContentChangeTime(qs)).thenReturn(1395916587456L);
+			Mockito.when(tested.httpHeaders.getRequestHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(
+					Arrays.asList(eTag.toString()));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_MODIFIED);
+			Assert.assertEquals(eTag, response.getMetadata().getFirst("ETag"));
+			Assert.assertNull(response.getMetadata().getFirst("Cache-Control"));
+			Mockito.verify(tested.searchService, Mockito.never()).performSearchAsync(Mockito.any(QuerySettings.class),
+					Mockito.anyString(), Mockito.any(StatsRecordType.class), Mockito.anyBoolean(),
+					Mockito.any(ActionListener.class));
+		}
+
+		// case - content changed, so full response is sent with new validators
+		{
+			Mockito.reset(tested.searchService);
+			mockPerformSearchAsync(tested, qs, sr, null);
+			Mockito.when(tested.searchService.getSearchResponseAdditionalFields(Mockito.eq(qs))).thenReturn(
+					new HashMap<String, String>());
+			Mockito.when(tested.searchService.getLastContentChangeTime(qs)).thenReturn(1395916599000L);
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			EntityTag newETag = RestServiceBase.createEntityTag(uriInfo.getRequestUri().toString(), 1395916599000L);
+			Assert.assertEquals(newETag, response.getMetadata().getFirst("ETag"));
+			verifyPerformSearchAsync(tested, qs);
+		}
+
+		// case - change time not available, so full response is sent without validators
+		{
+			Mockito.reset(tested.searchService);
+			mockPerformSearchAsync(tested, qs, sr, null);
+			Mockito.when(tested.searchService.getSearchResponseAdditionalFields(Mockito.eq(qs))).thenReturn(
+					new HashMap<String, String>());
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertNull(response.getMetadata().getFirst("ETag"));
+			Assert.assertNull(response.getMetadata().getFirst("Last-Modified"));
+			verifyPerformSearchAsync(tested, qs);
+		}
+
+		// case - conditional GET disabled
+		{
+			Mockito.when(tested.searchService.getLastContentChangeTime(qs)).thenReturn(1395916587456L);
+			tested.appConfiguration.setSearchHttpConditional(false);
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.search(uriInfo, ar);
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertNull(response.getMetadata().getFirst("ETag"));
+			Assert.assertNull(response.getMetadata().getFirst("Last-Modified"));
 		}
 	}
 
+	@Test
+	public void isResultCacheAllowed() {
+		SearchRestService tested = getTested();
+
+		// case - no security context
+		Assert.assertTrue(tested.isResultCacheAllowed());
+
+		// case - anonymous request
+		tested.securityContext = Mockito.mock(SecurityContext.class);
+		Assert.assertTrue(tested.isResultCacheAllowed());
+
+		// case - authenticated request
+		Mockito.when(tested.securityContext.getUserPrincipal()).thenReturn(Mockito.mock(Principal.class));
+		Assert.assertFalse(tested.isResultCacheAllowed());
+	}
+
 	// case - error handling for other exceptions
-	@Test(expected = RuntimeException.class)
+	@Test
 	public void search_exceptionFromService() {
-		SearchRestService tested = getTested();
+		SearchRestService tested = Mockito.spy(getTested());
 
-		Mockito.reset(tested.querySettingsParser, tested.searchService);
 		UriInfo uriInfo = Mockito.mock(UriInfo.class);
 		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
 		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
 		QuerySettings qs = new QuerySettings();
 		Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
-		Mockito.when(
-				tested.searchService.performSearch(Mockito.eq(qs), Mockito.notNull(String.class),
-						Mockito.eq(StatsRecordType.SEARCH))).thenThrow(new RuntimeException());
-		tested.search(uriInfo);
+		RuntimeException ex = new RuntimeException("test exception");
+		mockPerformSearchAsync(tested, qs, null, ex);
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.search(uriInfo, ar);
+		Mockito.verify(tested).resumeWithError(ar, ex);
+		TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.INTERNAL_SERVER_ERROR);
+	}
+
+	@Test
+	public void multiSearch_permissions() {
+		TestUtils.assertPermissionGuest(SearchRestService.class, "multiSearch", List.class, AsynchronousResponse.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void multiSearch_inputParam() {
+		SearchRestService tested = Mockito.spy(getTested());
+
+		// case - no queries
+		AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+		tested.multiSearch(null, ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(RequiredFieldException.class));
+
+		ar = Mockito.mock(AsynchronousResponse.class);
+		tested.multiSearch(new ArrayList<Map<String, Object>>(), ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(RequiredFieldException.class));
+
+		// case - too many queries
+		List<Map<String, Object>> queries = new ArrayList<>();
+		for (int i = 0; i <= SearchService.MULTI_SEARCH_MAX_QUERIES; i++) {
+			queries.add(new HashMap<String, Object>());
+		}
+		ar = Mockito.mock(AsynchronousResponse.class);
+		tested.multiSearch(queries, ar);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), Mockito.isA(BadFieldException.class));
+
+		// case - invalid parameter in second query
+		queries = new ArrayList<>();
+		queries.add(new HashMap<String, Object>());
+		queries.add(new HashMap<String, Object>());
+		Mockito.when(tested.querySettingsParser.parseUriParams(Mockito.any(MultivaluedMap.class))).thenReturn(
+				new QuerySettings()).thenThrow(new IllegalArgumentException("size"));
+		ar = Mockito.mock(AsynchronousResponse.class);
+		tested.multiSearch(queries, ar);
+		ArgumentCaptor<BadFieldException> ex = ArgumentCaptor.forClass(BadFieldException.class);
+		Mockito.verify(tested).resumeWithError(Mockito.eq(ar), ex.capture());
+		Assert.assertEquals("queries[1].size", ex.getValue().getFieldName());
+
+		Mockito.verifyZeroInteractions(tested.searchService);
+	}
+
+	@Test
+	public void convertToParams() {
+		Assert.assertTrue(SearchRestService.convertToParams(null).isEmpty());
+
+		Map<String, Object> query = new HashMap<>();
+		query.put("query", "my query");
+		query.put("size", 5);
+		query.put("project", Arrays.asList("as7", null, "jbpm"));
+		query.put("tag", null);
+		MultivaluedMap<String, String> params = SearchRestService.convertToParams(query);
+		Assert.assertEquals(3, params.size());
+		Assert.assertEquals(Arrays.asList("my query"), params.get("query"));
+		Assert.assertEquals(Arrays.asList("5"), params.get("size"));
+		Assert.assertEquals(Arrays.asList("as7", "jbpm"), params.get("project"));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Test
+	public void multiSearch() throws IOException {
+		SearchRestService tested = getTested();
+
+		List<Map<String, Object>> queries = new ArrayList<>();
+		queries.add(new HashMap<String, Object>());
+		queries.add(new HashMap<String, Object>());
+		QuerySettings qs1 = new QuerySettings();
+		QuerySettings qs2 = new QuerySettings();
+
+		// case - correct processing sequence, one of searches failed
+		{
+			Mockito.when(tested.querySettingsParser.parseUriParams(Mockito.any(MultivaluedMap.class))).thenReturn(qs1,
+					qs2);
+			SearchResponse sr = Mockito.mock(SearchResponse.class);
+			Mockito.doAnswer(new Answer<Object>() {
+
+				@Override
+				public Object answer(InvocationOnMock invocation) throws Throwable {
+					XContentBuilder b = (XContentBuilder) invocation.getArguments()[0];
+					b.field("testfield", "testvalue");
+					return null;
+				}
+			}).when(sr).toXContent(Mockito.any(XContentBuilder.class), Mockito.any(Params.class));
+			MultiSearchResponse.Item item1 = Mockito.mock(MultiSearchResponse.Item.class);
+			Mockito.when(item1.getResponse()).thenReturn(sr);
+			MultiSearchResponse.Item item2 = Mockito.mock(MultiSearchResponse.Item.class);
+			Mockito.when(item2.isFailure()).thenReturn(true);
+			Mockito.when(item2.getFailureMessage()).thenReturn("test failure");
+			MultiSearchResponse msr = Mockito.mock(MultiSearchResponse.class);
+			Mockito.when(msr.getResponses()).thenReturn(new MultiSearchResponse.Item[] { item1, item2 });
+			mockPerformMultiSearchAsync(tested, msr, null);
+			Mockito.when(tested.searchService.getSearchResponseAdditionalFields(qs1)).thenReturn(
+					new HashMap<String, String>());
+
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.multiSearch(queries, ar);
+
+			Response response = TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.OK);
+			Assert.assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMetadata().getFirst("Content-Type"));
+			TestUtils.assetStreamingOutputContentRegexp(
+					"\\{\"responses\":\\[\\{\"uuid\":\"[^\"]+\",\"testfield\":\"testvalue\"\\},"
+							+ "\\{\"uuid\":\"[^\"]+\",\"error\":\"test failure\"\\}\\]\\}", response.getEntity());
+			ArgumentCaptor<List> uuids = ArgumentCaptor.forClass(List.class);
+			Mockito.verify(tested.searchService).performMultiSearchAsync(Mockito.eq(Arrays.asList(qs1, qs2)),
+					uuids.capture(), Mockito.eq(StatsRecordType.SEARCH), Mockito.any(ActionListener.class));
+			Assert.assertEquals(2, uuids.getValue().size());
+			Assert.assertFalse(uuids.getValue().get(0).equals(uuids.getValue().get(1)));
+		}
+
+		// case - error handling for index not found exception passed to listener
+		{
+			Mockito.reset(tested.querySettingsParser, tested.searchService);
+			Mockito.when(tested.querySettingsParser.parseUriParams(Mockito.any(MultivaluedMap.class))).thenReturn(qs1,
+					qs2);
+			mockPerformMultiSearchAsync(tested, null, new IndexMissingException(null));
+			AsynchronousResponse ar = Mockito.mock(AsynchronousResponse.class);
+			tested.multiSearch(queries, ar);
+			TestUtils.assertResponseStatus(TestUtils.assertAsyncResponse(ar), Status.NOT_FOUND);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockPerformMultiSearchAsync(SearchRestService tested, final MultiSearchResponse msr,
+			final Throwable failure) {
+		Mockito.doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				ActionListener<MultiSearchResponse> listener = (ActionListener<MultiSearchResponse>) invocation
+						.getArguments()[3];
+				if (failure != null) {
+					listener.onFailure(failure);
+				} else {
+					listener.onResponse(msr);
+				}
+				return null;
+			}
+		}).when(tested.searchService).performMultiSearchAsync(Mockito.anyList(), Mockito.anyList(),
+				Mockito.eq(StatsRecordType.SEARCH), Mockito.any(ActionListener.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockPerformSearchAsync(SearchRestService tested, QuerySettings qs, final SearchResponse sr,
+			final Throwable failure) {
+		Mockito.doAnswer(new Answer<Object>() {
+
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				ActionListener<SearchResponse> listener = (ActionListener<SearchResponse>) invocation.getArguments()[4];
+				if (failure != null) {
+					listener.onFailure(failure);
+				} else {
+					listener.onResponse(sr);
+				}
+				return null;
+			}
+		}).when(tested.searchService).performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class),
+				Mockito.eq(StatsRecordType.SEARCH), Mockito.eq(true), Mockito.any(ActionListener.class));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void verifyPerformSearchAsync(SearchRestService tested, QuerySettings qs) {
+		Mockito.verify(tested.searchService).performSearchAsync(Mockito.eq(qs), Mockito.notNull(String.class),
+				Mockito.eq(StatsRecordType.SEARCH), Mockito.eq(true), Mockito.any(ActionListener.class));
+	}
+
+	@Test
+	public void export_permissions() {
+		TestUtils.assertPermissionProvider(SearchRestService.class, "export", UriInfo.class);
+	}
+
+	@Test(expected = BadFieldException.class)
+	public void export_inputParam() {
+		getTested().export(null);
+	}
+
+	@Test
+	public void export() throws IOException {
+		SearchRestService tested = getTested();
+
+		// case - hits streamed one per line
+		{
+			UriInfo uriInfo = Mockito.mock(UriInfo.class);
+			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			QuerySettings qs = new QuerySettings();
+			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+			SearchResponse startResponse = Mockito.mock(SearchResponse.class);
+			Mockito.when(startResponse.getScrollId()).thenReturn("scrollid");
+			SearchHits searchHits = Mockito.mock(SearchHits.class);
+			Mockito.when(searchHits.getTotalHits()).thenReturn(3L);
+			Mockito.when(startResponse.getHits()).thenReturn(searchHits);
+			Mockito.when(tested.searchService.performExportStart(qs)).thenReturn(startResponse);
+			Mockito.when(
+					tested.searchService.performExport(Mockito.eq("scrollid"), Mockito.any(SearchService.ExportPageHandler.class)))
+					.thenAnswer(new Answer<Long>() {
+						@Override
+						public Long answer(InvocationOnMock invocation) throws Throwable {
+							SearchService.ExportPageHandler handler = (SearchService.ExportPageHandler) invocation.getArguments()[1];
+							handler.handlePage(new SearchHit[] { mockSearchHit("1"), mockSearchHit("2") });
+							handler.handlePage(new SearchHit[] { mockSearchHit("3") });
+							return 3L;
+						}
+					});
+
+			Response response = TestUtils.assertResponseStatus(tested.export(uriInfo), Status.OK);
+			Assert.assertEquals(3L, response.getMetadata().getFirst("X-Total-Count"));
+			Assert.assertEquals(SearchRestService.MEDIA_TYPE_NDJSON, response.getMetadata().getFirst("Content-Type")
+					.toString());
+			Mockito.verify(tested.searchService).performExportStart(qs);
+			Mockito.verifyNoMoreInteractions(tested.searchService);
+			TestUtils.assetStreamingOutputContent("{\"_id\":\"1\"}\n{\"_id\":\"2\"}\n{\"_id\":\"3\"}\n",
+					response.getEntity());
+			Mockito.verify(tested.searchService).performExport(Mockito.eq("scrollid"),
+					Mockito.any(SearchService.ExportPageHandler.class));
+		}
+
+		// case - error handling for index not found exception
+		{
+			Mockito.reset(tested.querySettingsParser, tested.searchService);
+			UriInfo uriInfo = Mockito.mock(UriInfo.class);
+			MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+			Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+			QuerySettings qs = new QuerySettings();
+			Mockito.when(tested.querySettingsParser.parseUriParams(qp)).thenReturn(qs);
+			Mockito.when(tested.searchService.performExportStart(qs)).thenThrow(new IndexMissingException(null));
+			TestUtils.assertResponseStatus(tested.export(uriInfo), Status.NOT_FOUND);
+		}
+	}
+
+	private SearchHit mockSearchHit(final String id) throws IOException {
+		SearchHit hit = Mockito.mock(SearchHit.class);
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				XContentBuilder b = (XContentBuilder) invocation.getArguments()[0];
+				b.startObject().field("_id", id).endObject();
+				return b;
+			}
+		}).when(hit).toXContent(Mockito.any(XContentBuilder.class), Mockito.any(Params.class));
+		return hit;
 	}
 
 	@Test(expected = RequiredFieldException.class)
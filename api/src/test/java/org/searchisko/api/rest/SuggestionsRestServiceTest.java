@@ -6,15 +6,26 @@
 package org.searchisko.api.rest;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.logging.Logger;
 
-import org.elasticsearch.action.search.MultiSearchRequest;
-import org.elasticsearch.action.search.MultiSearchRequestBuilder;
-import org.elasticsearch.action.search.SearchRequestBuilder;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
-import org.searchisko.api.service.SearchClientService;
+import org.searchisko.api.model.QuerySettings;
+import org.searchisko.api.rest.exception.BadFieldException;
+import org.searchisko.api.rest.exception.RequiredFieldException;
+import org.searchisko.api.service.ProjectSuggestionService;
+import org.searchisko.api.service.ProjectSuggestionService.Project;
+import org.searchisko.api.service.QuerySuggestionService;
 import org.searchisko.api.testtools.TestUtils;
 
 /**
@@ -24,39 +35,179 @@ import org.searchisko.api.testtools.TestUtils;
  */
 public class SuggestionsRestServiceTest {
 
-	@Test
-	public void handleSuggestionsProject() throws IOException {
+	private SuggestionsRestService getTested() {
 		SuggestionsRestService tested = new SuggestionsRestService();
-		tested.searchClientService = Mockito.mock(SearchClientService.class);
+		tested.projectSuggestionService = Mockito.mock(ProjectSuggestionService.class);
+		tested.querySuggestionService = Mockito.mock(QuerySuggestionService.class);
 		tested.log = Logger.getLogger("testlogger");
+		return tested;
+	}
+
+	private UriInfo mockUriInfo(String query, String size) {
+		MultivaluedMap<String, String> qp = new MultivaluedMapImpl<String, String>();
+		if (query != null)
+			qp.add(QuerySettings.QUERY_KEY, query);
+		if (size != null)
+			qp.add(QuerySettings.Filters.SIZE_KEY, size);
+		UriInfo uriInfo = Mockito.mock(UriInfo.class);
+		Mockito.when(uriInfo.getQueryParameters()).thenReturn(qp);
+		return uriInfo;
+	}
+
+	@Test
+	public void queryString_permissions() {
+		TestUtils.assertPermissionGuest(SuggestionsRestService.class, "queryString", UriInfo.class);
+	}
 
-		SearchRequestBuilder srbMock = new SearchRequestBuilder(null);
-		srbMock = tested.getProjectSearchNGramRequestBuilder(srbMock, "JBoss", 5);
+	@Test
+	public void queryString_inputParam() {
+		SuggestionsRestService tested = getTested();
+		Mockito.when(tested.querySuggestionService.suggest(Mockito.anyString(), Mockito.anyInt())).thenReturn(
+				new ArrayList<String>());
 
-		TestUtils.assertJsonContentFromClasspathFile("/suggestions/project_suggestions_ngram.json", srbMock.toString());
+		// case - query is required
+		try {
+			tested.queryString(mockUriInfo(null, null));
+			Assert.fail("RequiredFieldException expected");
+		} catch (RequiredFieldException e) {
+			// OK
+		}
+		try {
+			tested.queryString(mockUriInfo(" ", null));
+			Assert.fail("RequiredFieldException expected");
+		} catch (RequiredFieldException e) {
+			// OK
+		}
 
-		srbMock = new SearchRequestBuilder(null);
-		srbMock = tested.getProjectSearchFuzzyRequestBuilder(srbMock, "JBoss", 5);
+		// case - invalid size
+		try {
+			tested.queryString(mockUriInfo("hib", "aa"));
+			Assert.fail("BadFieldException expected");
+		} catch (BadFieldException e) {
+			// OK
+		}
+		Mockito.verifyZeroInteractions(tested.querySuggestionService);
 
-		TestUtils.assertJsonContentFromClasspathFile("/suggestions/project_suggestions_fuzzy.json", srbMock.toString());
+		// case - size normalization
+		tested.queryString(mockUriInfo("hib", null));
+		Mockito.verify(tested.querySuggestionService).suggest("hib", SuggestionsRestService.DEFAULT_SIZE);
+		tested.queryString(mockUriInfo("hib ", "0"));
+		Mockito.verify(tested.querySuggestionService, Mockito.times(2)).suggest("hib", SuggestionsRestService.DEFAULT_SIZE);
+		tested.queryString(mockUriInfo("hib", "1000"));
+		Mockito.verify(tested.querySuggestionService).suggest("hib", QuerySuggestionService.MAX_SIZE);
+		tested.queryString(mockUriInfo("hib", "2"));
+		Mockito.verify(tested.querySuggestionService).suggest("hib", 2);
 	}
 
+	@SuppressWarnings("unchecked")
 	@Test
-	public void testMultiSearchRequestBuilder() throws IOException {
-		SuggestionsRestService tested = new SuggestionsRestService();
-		tested.searchClientService = Mockito.mock(SearchClientService.class);
-		tested.log = Logger.getLogger("testlogger");
+	public void queryString() throws IOException {
+		SuggestionsRestService tested = getTested();
+		Mockito.when(tested.querySuggestionService.suggest("Hiberna", 5)).thenReturn(
+				Arrays.asList("Hibernate", "hibernate query"));
 
-		MultiSearchRequestBuilder msrb = new MultiSearchRequestBuilder(null);
-		SearchRequestBuilder srbNGram = new SearchRequestBuilder(null);
-		SearchRequestBuilder srbFuzzy = new SearchRequestBuilder(null);
+		Map<String, Object> ret = (Map<String, Object>) tested.queryString(mockUriInfo("Hiberna", null));
+		TestUtils.assertJsonContent("{\"view\":{"
+				+ "\"search\":{\"caption\":\"Search\",\"options\":[\"Hiberna\"]},"
+				+ "\"suggestions\":{\"caption\":\"Query Completions\",\"options\":["
+				+ "\"<strong>Hiberna</strong>te\",\"<strong>hiberna</strong>te query\"]}},"
+				+ "\"model\":{\"search\":{\"search\":{\"query\":\"Hiberna\"}},"
+				+ "\"suggestions\":["
+				+ "{\"suggestion\":{\"value\":\"Hibernate\"},\"search\":{\"query\":\"Hibernate\"}},"
+				+ "{\"suggestion\":{\"value\":\"hibernate query\"},\"search\":{\"query\":\"hibernate query\"}}"
+				+ "]}}", ret);
 
-		msrb = tested.getProjectMultiSearchRequestBuilder(msrb,
-				tested.getProjectSearchNGramRequestBuilder(srbNGram, "JBoss", 5),
-				tested.getProjectSearchFuzzyRequestBuilder(srbFuzzy, "JBoss", 5));
+		// case - no completions
+		Map<String, Object> view = (Map<String, Object>) SuggestionsRestService.createQueryStringResponse("wildfly",
+				new ArrayList<String>()).get("view");
+		Assert.assertEquals(new ArrayList<String>(), ((Map<String, Object>) view.get("suggestions")).get("options"));
+	}
 
-		MultiSearchRequest msr = msrb.request();
+	@Test
+	public void highlightPrefix() {
+		Assert.assertEquals("<strong>Hib</strong>ernate", SuggestionsRestService.highlightPrefix("Hibernate", "hib"));
+		Assert.assertEquals("<strong>Hibernate</strong>", SuggestionsRestService.highlightPrefix("Hibernate", "hibernate"));
+		Assert.assertEquals("Hibernate", SuggestionsRestService.highlightPrefix("Hibernate", "inf"));
+		Assert.assertEquals("Hibernate", SuggestionsRestService.highlightPrefix("Hibernate", ""));
+		Assert.assertEquals("Hib", SuggestionsRestService.highlightPrefix("Hib", "hibernate"));
+		// case - HTML is escaped
+		Assert.assertEquals("<strong>&lt;a&gt;</strong> &amp; &quot;b&quot;",
+				SuggestionsRestService.highlightPrefix("<a> & \"b\"", "<a>"));
+	}
 
-		Assert.assertEquals(2, msr.requests().size());
+	@Test
+	public void project_permissions() {
+		TestUtils.assertPermissionGuest(SuggestionsRestService.class, "project", String.class, Integer.class);
+	}
+
+	@Test
+	public void project_inputParam() {
+		SuggestionsRestService tested = getTested();
+		try {
+			tested.project(null, 5);
+			Assert.fail("RequiredFieldException expected");
+		} catch (RequiredFieldException e) {
+			// OK
+		}
+		Mockito.verifyZeroInteractions(tested.projectSuggestionService);
+
+		// case - size normalization
+		Mockito.when(tested.projectSuggestionService.suggest(Mockito.anyString(), Mockito.anyInt())).thenReturn(
+				new ArrayList<Project>());
+		Mockito.when(tested.projectSuggestionService.suggestFuzzy(Mockito.anyString(), Mockito.anyInt())).thenReturn(
+				new ArrayList<Project>());
+		tested.project("jb", null);
+		Mockito.verify(tested.projectSuggestionService).suggest("jb", SuggestionsRestService.DEFAULT_SIZE);
+		Mockito.verify(tested.projectSuggestionService).suggestFuzzy("jb", SuggestionsRestService.DEFAULT_SIZE);
+		tested.project("jb", 1000);
+		Mockito.verify(tested.projectSuggestionService).suggest("jb", ProjectSuggestionService.MAX_SIZE);
+		Mockito.verify(tested.projectSuggestionService).suggestFuzzy("jb", ProjectSuggestionService.MAX_SIZE);
+	}
+
+	@Test
+	public void project() throws Exception {
+		SuggestionsRestService tested = getTested();
+		Mockito.when(tested.projectSuggestionService.suggest(" JBoss  AS", 5)).thenReturn(
+				Arrays.asList(new Project("jbossorg_project_info-as7", "as7", "JBoss AS 7")));
+		Mockito.when(tested.projectSuggestionService.suggestFuzzy(" JBoss  AS", 5)).thenReturn(
+				Arrays.asList(new Project("jbossorg_project_info-as7", "as7", "JBoss AS 7"), new Project(
+						"jbossorg_project_info-jbpm", "jbpm", "jBPM")));
+
+		Object ret = tested.project(" JBoss  AS", 5);
+		TestUtils.assetStreamingOutputContentRegexp(
+				"\\{\"uuid\":\"[^\"]+\",\"responses\":\\[\\{\"hits\":\\{\"total\":1,.*\\{\"hits\":\\{\"total\":2,.*\\]\\}", ret);
+	}
+
+	@Test
+	public void createProjectResponse() throws IOException {
+		SuggestionsRestService tested = getTested();
+		StreamingOutput ret = tested.createProjectResponse("jboss as",
+				Arrays.asList(new Project("jbossorg_project_info-as7", "as7", "JBoss AS 7")),
+				Arrays.asList(new Project("jbossorg_project_info-as7", "as7", "JBoss AS 7"), new Project(
+						"jbossorg_project_info-jbpm", "jbpm", "jBPM")), "uuid-1");
+		TestUtils.assetStreamingOutputJsonContent("{\"uuid\":\"uuid-1\",\"responses\":["
+				+ "{\"hits\":{\"total\":1,\"hits\":[{\"_index\":\"data_project_info\",\"_type\":\"jbossorg_project_info\","
+				+ "\"_id\":\"jbossorg_project_info-as7\",\"fields\":{\"sys_project\":\"as7\",\"sys_project_name\":\"JBoss AS 7\"},"
+				+ "\"highlight\":{\"sys_project_name\":[\"<em>JBoss AS</em> 7\"]}}]}},"
+				+ "{\"hits\":{\"total\":2,\"hits\":[{\"_index\":\"data_project_info\",\"_type\":\"jbossorg_project_info\","
+				+ "\"_id\":\"jbossorg_project_info-as7\",\"fields\":{\"sys_project\":\"as7\",\"sys_project_name\":\"JBoss AS 7\"}},"
+				+ "{\"_index\":\"data_project_info\",\"_type\":\"jbossorg_project_info\","
+				+ "\"_id\":\"jbossorg_project_info-jbpm\",\"fields\":{\"sys_project\":\"jbpm\",\"sys_project_name\":\"jBPM\"}}]}}"
+				+ "]}", ret);
+
+		// case - no suggestions
+		TestUtils.assetStreamingOutputJsonContent(
+				"{\"uuid\":\"uuid-2\",\"responses\":[{\"hits\":{\"total\":0,\"hits\":[]}},{\"hits\":{\"total\":0,\"hits\":[]}}]}",
+				tested.createProjectResponse("jboss", new ArrayList<Project>(), new ArrayList<Project>(), "uuid-2"));
+	}
+
+	@Test
+	public void highlight() {
+		Assert.assertNull(SuggestionsRestService.highlight("JBoss AS", null));
+		Assert.assertNull(SuggestionsRestService.highlight("JBoss AS", ""));
+		Assert.assertNull(SuggestionsRestService.highlight("JBoss AS", "wildfly"));
+		Assert.assertEquals("<em>JBoss</em> AS", SuggestionsRestService.highlight("JBoss AS", "jboss"));
+		Assert.assertEquals("JBoss <em>AS</em>", SuggestionsRestService.highlight("JBoss AS", "as"));
+		Assert.assertEquals("J<em>Bos</em>s AS", SuggestionsRestService.highlight("JBoss AS", "bos"));
 	}
 }
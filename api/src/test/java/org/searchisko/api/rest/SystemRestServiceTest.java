@@ -0,0 +1,86 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.rest;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.searchisko.api.cache.FeedEntryCache;
+import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.PreprocessorChainCache;
+import org.searchisko.api.cache.ProviderCache;
+import org.searchisko.api.cache.SearchConfigCache;
+import org.searchisko.api.cache.SearchResultCache;
+import org.searchisko.api.service.ContentPushQueueService;
+import org.searchisko.api.service.ProjectSuggestionService;
+import org.searchisko.api.service.QuerySuggestionService;
+import org.searchisko.api.service.SearchService;
+import org.searchisko.api.service.StatsClientService;
+import org.searchisko.api.testtools.TestUtils;
+
+/**
+ * Unit test for {@link SystemRestService}
+ * 
+ * @author agent (agent at local)
+ */
+public class SystemRestServiceTest {
+
+	@Test
+	public void assertPermissions() {
+		TestUtils.assertPermissionSuperProvider(SystemRestService.class, "getMetrics");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void getMetrics() {
+		SystemRestService tested = new SystemRestService();
+		tested.preprocessorChainCache = new PreprocessorChainCache();
+		tested.providerCache = new ProviderCache();
+		tested.indexNamesCache = new IndexNamesCache();
+		tested.searchConfigCache = new SearchConfigCache();
+		tested.searchResultCache = new SearchResultCache();
+		tested.feedEntryCache = new FeedEntryCache();
+		tested.statsClientService = new StatsClientService();
+		tested.searchService = new SearchService();
+		tested.projectSuggestionService = new ProjectSuggestionService();
+		tested.querySuggestionService = new QuerySuggestionService();
+		tested.contentPushQueueService = new ContentPushQueueService();
+
+		Map<String, Object> ret = (Map<String, Object>) tested.getMetrics();
+		Map<String, Object> pcc = (Map<String, Object>) ret.get("preprocessor_chain_cache");
+		Assert.assertNotNull(pcc);
+		Assert.assertEquals(0L, pcc.get("hits"));
+		Assert.assertEquals(0L, pcc.get("misses"));
+		Assert.assertNotNull(ret.get("provider_cache"));
+		Assert.assertNotNull(ret.get("index_names_cache"));
+		Assert.assertNotNull(ret.get("search_config_cache"));
+		Map<String, Object> src = (Map<String, Object>) ret.get("search_result_cache");
+		Assert.assertEquals(false, src.get("enabled"));
+		Map<String, Object> fec = (Map<String, Object>) ret.get("feed_entry_cache");
+		Assert.assertEquals(false, fec.get("enabled"));
+		Map<String, Object> sw = (Map<String, Object>) ret.get("stats_writer");
+		Assert.assertEquals(false, sw.get("enabled"));
+		Map<String, Object> as = (Map<String, Object>) ret.get("async_search");
+		Assert.assertEquals(0, as.get("in_flight"));
+		Assert.assertEquals(0L, as.get("completed"));
+		Assert.assertEquals(0L, as.get("failed"));
+		Assert.assertEquals(0L, as.get("coalesced"));
+		Map<String, Object> se = (Map<String, Object>) ret.get("search_export");
+		Assert.assertEquals(0L, se.get("started"));
+		Assert.assertNull(se.get("last_export"));
+		Map<String, Object> ps = (Map<String, Object>) ret.get("project_suggestions");
+		Assert.assertEquals(0, ps.get("projects"));
+		Assert.assertEquals(0L, ps.get("loads"));
+		Map<String, Object> qs = (Map<String, Object>) ret.get("query_suggestions");
+		Assert.assertEquals(0, qs.get("queries"));
+		Assert.assertEquals(0L, qs.get("updates"));
+		Map<String, Object> cpq = (Map<String, Object>) ret.get("content_push_queue");
+		Assert.assertEquals(false, cpq.get("enabled"));
+		Assert.assertEquals(0L, cpq.get("accepted"));
+	}
+
+}
@@ -33,6 +33,14 @@ public class AppConfigurationServiceTest {
 		Assert.assertEquals(ClientType.EMBEDDED, tested.getAppConfiguration().getClientType());
 		Assert.assertEquals("/test/path", tested.getAppConfiguration().getAppDataPath());
 		Assert.assertEquals(true, tested.getAppConfiguration().isProviderCreateInitData());
+		Assert.assertEquals(30, tested.getAppConfiguration().getSearchResultCacheTtl());
+		Assert.assertEquals(20, tested.getAppConfiguration().getSearchResultCacheMaxMemory());
+		Assert.assertEquals(true, tested.getAppConfiguration().isSearchHttpConditional());
+		Assert.assertEquals("private, max-age=60", tested.getAppConfiguration().getSearchHttpCacheControl());
+		Assert.assertEquals(10, tested.getAppConfiguration().getFeedEntryCacheMaxMemory());
+		Assert.assertEquals(true, tested.getAppConfiguration().isContentPushAsync());
+		Assert.assertEquals(48, tested.getAppConfiguration().getContentPushAsyncRetention());
+		Assert.assertEquals(500, tested.getAppConfiguration().getContentPersistenceListPageSize());
 
 		// case - successful load 2 with overlay applied
 		tested.appConfiguration = null;
@@ -41,6 +49,14 @@ public class AppConfigurationServiceTest {
 		Assert.assertEquals(ClientType.TRANSPORT, tested.getAppConfiguration().getClientType());
 		Assert.assertEquals("/test/path/2", tested.getAppConfiguration().getAppDataPath());
 		Assert.assertEquals(false, tested.getAppConfiguration().isProviderCreateInitData());
+		Assert.assertEquals(0, tested.getAppConfiguration().getSearchResultCacheTtl());
+		Assert.assertEquals(0, tested.getAppConfiguration().getSearchResultCacheMaxMemory());
+		Assert.assertEquals(false, tested.getAppConfiguration().isSearchHttpConditional());
+		Assert.assertNull(tested.getAppConfiguration().getSearchHttpCacheControl());
+		Assert.assertEquals(0, tested.getAppConfiguration().getFeedEntryCacheMaxMemory());
+		Assert.assertEquals(false, tested.getAppConfiguration().isContentPushAsync());
+		Assert.assertEquals(24, tested.getAppConfiguration().getContentPushAsyncRetention());
+		Assert.assertEquals(1000, tested.getAppConfiguration().getContentPersistenceListPageSize());
 
 		// case - exception if file not found
 		tested.appConfiguration = null;
@@ -11,11 +11,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.enterprise.event.Event;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.searchisko.api.events.ConfigChangedEvent;
 import org.searchisko.api.rest.ESDataOnlyResponse;
 import org.searchisko.api.testtools.ESRealClientTestBase;
 import org.searchisko.persistence.service.EntityService;
@@ -27,13 +30,21 @@ import org.searchisko.persistence.service.EntityService;
  */
 public class ConfigServiceTest extends ESRealClientTestBase {
 
+	@SuppressWarnings("unchecked")
 	private ConfigService getTested() {
 		ConfigService ret = new ConfigService();
 		ret.entityService = Mockito.mock(EntityService.class);
+		ret.eventConfigChanged = Mockito.mock(Event.class);
 		ret.log = Logger.getLogger("testlogger");
 		return ret;
 	}
 
+	private void verifyConfigChangedEventFired(ConfigService tested, String expectedId) {
+		ArgumentCaptor<ConfigChangedEvent> captor = ArgumentCaptor.forClass(ConfigChangedEvent.class);
+		Mockito.verify(tested.eventConfigChanged).fire(captor.capture());
+		Assert.assertEquals(expectedId, captor.getValue().getConfigId());
+	}
+
 	@Test
 	public void getAll_pager() {
 		ConfigService tested = getTested();
@@ -120,6 +131,7 @@ public class ConfigServiceTest extends ESRealClientTestBase {
 		}
 		Mockito.verify(tested.entityService).get("10");
 		Mockito.verifyNoMoreInteractions(tested.entityService);
+		Mockito.verifyZeroInteractions(tested.eventConfigChanged);
 	}
 
 	@Test
@@ -133,6 +145,7 @@ public class ConfigServiceTest extends ESRealClientTestBase {
 			Mockito.when(tested.entityService.create(entity)).thenReturn("1");
 			String id = tested.create(entity);
 			Assert.assertEquals("1", id);
+			verifyConfigChangedEventFired(tested, "1");
 		}
 
 	}
@@ -147,6 +160,7 @@ public class ConfigServiceTest extends ESRealClientTestBase {
 			entity.put("name", "v1");
 			tested.create("1", entity);
 			Mockito.verify(tested.entityService).create("1", entity);
+			verifyConfigChangedEventFired(tested, "1");
 		}
 
 	}
@@ -163,6 +177,7 @@ public class ConfigServiceTest extends ESRealClientTestBase {
 
 			tested.update("1", entity);
 			Mockito.verify(tested.entityService).update("1", entity);
+			verifyConfigChangedEventFired(tested, "1");
 		}
 
 	}
@@ -173,6 +188,7 @@ public class ConfigServiceTest extends ESRealClientTestBase {
 		Mockito.reset(tested.entityService);
 		tested.delete("1");
 		Mockito.verify(tested.entityService).delete("1");
+		verifyConfigChangedEventFired(tested, "1");
 	}
 
 }
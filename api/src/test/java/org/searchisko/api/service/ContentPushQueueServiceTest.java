@@ -0,0 +1,242 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.model.AppConfiguration;
+import org.searchisko.persistence.service.ContentPushJournalService;
+import org.searchisko.persistence.service.ContentPushJournalService.Entry;
+
+/**
+ * Unit test for {@link ContentPushQueueService}.
+ *
+ * @author agent (agent at local)
+ */
+public class ContentPushQueueServiceTest {
+
+	private ContentPushQueueService getTested(boolean enabled) {
+		ContentPushQueueService tested = new ContentPushQueueService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.appConfiguration.setContentPushAsync(enabled);
+		tested.contentPushJournalService = Mockito.mock(ContentPushJournalService.class);
+		tested.contentPushService = Mockito.mock(ContentPushService.class);
+		Mockito.when(tested.contentPushService.getBulkMaxActions()).thenReturn(100);
+		tested.providerService = Mockito.mock(ProviderService.class);
+		return tested;
+	}
+
+	private Entry entry(String receiptId, String provider, String type, String contentId) {
+		return entry(receiptId, provider, type, contentId, false);
+	}
+
+	private Entry entry(String receiptId, String provider, String type, String contentId, boolean force) {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put(ContentObjectFields.SYS_CONTENT_ID, contentId);
+		return new Entry(receiptId, provider, type, contentId, content, force,
+				ContentPushJournalService.STATUS_PROCESSING, null, new Date(), new Date());
+	}
+
+	private void mockProvider(ContentPushQueueService tested, String provider, String... types) {
+		Map<String, Object> providerDef = new HashMap<String, Object>();
+		Map<String, Object> typesDef = new HashMap<String, Object>();
+		providerDef.put(ProviderService.TYPE, typesDef);
+		for (String type : types) {
+			typesDef.put(type, new HashMap<String, Object>());
+		}
+		Mockito.when(tested.providerService.findProvider(provider)).thenReturn(providerDef);
+	}
+
+	@Test
+	public void init() {
+		// case - disabled so nothing requeued
+		ContentPushQueueService tested = getTested(false);
+		tested.init();
+		Mockito.verifyZeroInteractions(tested.contentPushJournalService);
+
+		// case - only entries with expired claim are requeued
+		tested = getTested(true);
+		long expected = System.currentTimeMillis() - ContentPushQueueService.CLAIM_LEASE_TIMEOUT;
+		tested.init();
+		ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+		Mockito.verify(tested.contentPushJournalService).requeueProcessing(captor.capture());
+		Assert.assertTrue(Math.abs(captor.getValue().getTime() - expected) < 1000);
+
+		// case - exception is not propagated
+		Mockito.when(tested.contentPushJournalService.requeueProcessing(Mockito.any(Date.class))).thenThrow(
+				new RuntimeException("DB error"));
+		tested.init();
+	}
+
+	@Test
+	public void scheduledRequeue() {
+		ContentPushQueueService tested = getTested(false);
+		tested.scheduledRequeue();
+		Mockito.verifyZeroInteractions(tested.contentPushJournalService);
+
+		tested = getTested(true);
+		long expected = System.currentTimeMillis() - ContentPushQueueService.CLAIM_LEASE_TIMEOUT;
+		tested.scheduledRequeue();
+		ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+		Mockito.verify(tested.contentPushJournalService).requeueProcessing(captor.capture());
+		Assert.assertTrue(Math.abs(captor.getValue().getTime() - expected) < 1000);
+
+		// case - exception is not propagated
+		Mockito.when(tested.contentPushJournalService.requeueProcessing(Mockito.any(Date.class))).thenThrow(
+				new RuntimeException("DB error"));
+		tested.scheduledRequeue();
+	}
+
+	@Test
+	public void enqueue() {
+		ContentPushQueueService tested = getTested(true);
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("test", "value");
+
+		String receiptId = tested.enqueue("provider1", "type1", "1", content, false);
+		Assert.assertNotNull(receiptId);
+		Assert.assertEquals("1", content.get(ContentObjectFields.SYS_CONTENT_ID));
+		Mockito.verify(tested.contentPushJournalService).add(receiptId, "provider1", "type1", "1", content, false);
+		String receiptId2 = tested.enqueue("provider1", "type1", "1", content, true);
+		Assert.assertFalse(receiptId.equals(receiptId2));
+		Mockito.verify(tested.contentPushJournalService).add(receiptId2, "provider1", "type1", "1", content, true);
+		Assert.assertEquals(2L, tested.getStats().get("accepted"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void processJournal() {
+		ContentPushQueueService tested = getTested(true);
+		mockProvider(tested, "provider1", "type1");
+		mockProvider(tested, "provider2", "type2");
+
+		final Entry e1 = entry("r1", "provider1", "type1", "1");
+		final Entry e2 = entry("r2", "provider2", "type2", "1");
+		final Entry e3 = entry("r3", "provider1", "type1", "2");
+		final Entry e4 = entry("r4", "provider1", "unknown", "1");
+		final Entry e5 = new Entry("r5", "provider1", "type1", "3", null, false,
+				ContentPushJournalService.STATUS_PROCESSING, null, new Date(), new Date());
+		final Entry e6 = entry("r6", "provider3", "type1", "1");
+		final Entry e8 = entry("r8", "provider1", "type1", "4", true);
+		Mockito.when(tested.contentPushJournalService.claim(100)).thenReturn(Arrays.asList(e1, e2, e3, e4, e5, e6, e8),
+				Arrays.asList(entry("r7", "provider2", "type2", "2")), Collections.<Entry> emptyList());
+
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				List<Map<String, Object>> chunk = (List<Map<String, Object>>) invocation.getArguments()[3];
+				List<Map<String, Object>> items = (List<Map<String, Object>>) invocation.getArguments()[5];
+				for (Map<String, Object> content : chunk) {
+					Map<String, Object> status = new HashMap<String, Object>();
+					if ("2".equals(content.get(ContentObjectFields.SYS_CONTENT_ID))) {
+						status.put(ContentPushService.RESPONSE_STATUS, "error");
+						status.put(ContentPushService.RESPONSE_MESSAGE, "failed");
+					} else {
+						status.putAll(ContentPushService.createPushStatus(1));
+					}
+					items.add(status);
+				}
+				return null;
+			}
+		}).when(tested.contentPushService).pushContentBulkChunk(Mockito.eq("provider1"), Mockito.eq("type1"),
+				Mockito.anyMap(), Mockito.anyList(), Mockito.anyBoolean(), Mockito.anyList());
+		Mockito.doThrow(new RuntimeException("ES not available")).when(tested.contentPushService)
+				.pushContentBulkChunk(Mockito.eq("provider2"), Mockito.eq("type2"), Mockito.anyMap(), Mockito.anyList(),
+						Mockito.anyBoolean(), Mockito.anyList());
+
+		Assert.assertEquals(8, tested.processJournal());
+
+		// entries of one provider, type and force flag are pushed together in order
+		Mockito.verify(tested.contentPushService).pushContentBulkChunk(Mockito.eq("provider1"), Mockito.eq("type1"),
+				Mockito.anyMap(), Mockito.eq(Arrays.asList(e1.getContent(), e3.getContent())), Mockito.eq(false),
+				Mockito.anyList());
+		Mockito.verify(tested.contentPushService).pushContentBulkChunk(Mockito.eq("provider1"), Mockito.eq("type1"),
+				Mockito.anyMap(), Mockito.eq(Arrays.asList(e8.getContent())), Mockito.eq(true), Mockito.anyList());
+		Mockito.verify(tested.contentPushJournalService).finish("r1", "insert", "Content was inserted successfully.");
+		Mockito.verify(tested.contentPushJournalService).finish("r8", "insert", "Content was inserted successfully.");
+		Mockito.verify(tested.contentPushJournalService).finish("r3", "error", "failed");
+		Mockito.verify(tested.contentPushJournalService).finish("r2", "error", "ES not available");
+		Mockito.verify(tested.contentPushJournalService).finish("r7", "error", "ES not available");
+		Mockito.verify(tested.contentPushJournalService).finish("r4", "error",
+				"Content type unknown is not defined for provider provider1");
+		Mockito.verify(tested.contentPushJournalService).finish("r5", "error", "Journaled content is not readable");
+		Mockito.verify(tested.contentPushJournalService).finish("r6", "error",
+				"Content type type1 is not defined for provider provider3");
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(2L, stats.get("processed"));
+		Assert.assertEquals(6L, stats.get("failed"));
+		Assert.assertEquals(2L, stats.get("batches"));
+	}
+
+	@Test
+	public void scheduledProcess() {
+		// case - disabled
+		ContentPushQueueService tested = getTested(false);
+		tested.scheduledProcess();
+		Mockito.verifyZeroInteractions(tested.contentPushJournalService);
+
+		// case - exception is not propagated
+		tested = getTested(true);
+		Mockito.when(tested.contentPushJournalService.claim(100)).thenThrow(new RuntimeException("DB error"));
+		tested.scheduledProcess();
+
+		// case - processing is possible again after exception
+		Mockito.reset(tested.contentPushJournalService);
+		Mockito.when(tested.contentPushJournalService.claim(100)).thenReturn(new ArrayList<Entry>());
+		tested.scheduledProcess();
+		Mockito.verify(tested.contentPushJournalService).claim(100);
+	}
+
+	@Test
+	public void scheduledCleanup() {
+		ContentPushQueueService tested = getTested(false);
+		tested.scheduledCleanup();
+		Mockito.verifyZeroInteractions(tested.contentPushJournalService);
+
+		tested = getTested(true);
+		tested.appConfiguration.setContentPushAsyncRetention(2);
+		long expected = System.currentTimeMillis() - 2 * 60 * 60 * 1000L;
+		tested.scheduledCleanup();
+		ArgumentCaptor<Date> captor = ArgumentCaptor.forClass(Date.class);
+		Mockito.verify(tested.contentPushJournalService).deleteFinished(captor.capture());
+		Assert.assertTrue(Math.abs(captor.getValue().getTime() - expected) < 1000);
+	}
+
+	@Test
+	public void getStats() {
+		ContentPushQueueService tested = getTested(false);
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(false, stats.get("enabled"));
+		Assert.assertFalse(stats.containsKey("queued"));
+
+		tested = getTested(true);
+		Mockito.when(tested.contentPushJournalService.countQueued()).thenReturn(5);
+		stats = tested.getStats();
+		Assert.assertEquals(true, stats.get("enabled"));
+		Assert.assertEquals(5, stats.get("queued"));
+		Assert.assertEquals(0L, stats.get("accepted"));
+		Assert.assertEquals(0L, stats.get("processed"));
+		Assert.assertEquals(0L, stats.get("failed"));
+		Assert.assertEquals(0L, stats.get("batches"));
+	}
+
+}
@@ -0,0 +1,264 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.enterprise.event.Event;
+
+import org.elasticsearch.client.Client;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.persistence.service.ContentPersistenceService;
+
+/**
+ * Unit test for {@link ContentPushService}. Push of content chunks is tested over REST API in
+ * {@link org.searchisko.api.rest.ContentRestServiceTest}.
+ *
+ * @author agent (agent at local)
+ */
+public class ContentPushServiceTest {
+
+	/**
+	 * Prepare tested service with given dependencies.
+	 *
+	 * @param bulkMaxActions max number of documents in one bulk request
+	 * @return service
+	 */
+	public static ContentPushService getTested(ProviderService providerService,
+			SearchClientService searchClientService, ContentPersistenceService contentPersistenceService,
+			Event<ContentStoredEvent> eventContentStored, Event<ContentBeforeIndexedEvent> eventBeforeIndexed,
+			Event<ContentBulkDeletedEvent> eventContentBulkDeleted, int bulkMaxActions) {
+		ContentPushService tested = new ContentPushService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.providerService = providerService;
+		tested.searchClientService = searchClientService;
+		tested.contentPersistenceService = contentPersistenceService;
+		tested.eventContentStored = eventContentStored;
+		tested.eventBeforeIndexed = eventBeforeIndexed;
+		tested.eventContentBulkDeleted = eventContentBulkDeleted;
+		tested.workerPoolService = new WorkerPoolService();
+		tested.workerPoolService.init();
+		tested.bulkMaxActions = bulkMaxActions;
+		return tested;
+	}
+
+	@Test
+	public void createPushStatus() {
+		Map<String, Object> ret = ContentPushService.createPushStatus(1);
+		Assert.assertEquals("insert", ret.get(ContentPushService.RESPONSE_STATUS));
+		Assert.assertNotNull(ret.get(ContentPushService.RESPONSE_MESSAGE));
+		ret = ContentPushService.createPushStatus(2);
+		Assert.assertEquals("update", ret.get(ContentPushService.RESPONSE_STATUS));
+	}
+
+	@Test
+	public void computeFingerprint() {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("a", "value");
+		content.put("b", 10);
+		Map<String, Object> inner = new HashMap<String, Object>();
+		inner.put("x", "1");
+		inner.put("y", Arrays.asList("1", "2"));
+		content.put("c", inner);
+		Map<String, Object> typeDef = new HashMap<String, Object>();
+		typeDef.put(ProviderService.SYS_TYPE, "blogpost");
+		String fingerprint = ContentPushService.computeFingerprint(typeDef, content);
+		Assert.assertEquals(40, fingerprint.length());
+
+		// case - order of fields and id fields don't matter
+		Map<String, Object> content2 = new LinkedHashMap<String, Object>();
+		Map<String, Object> inner2 = new LinkedHashMap<String, Object>();
+		inner2.put("y", Arrays.asList("1", "2"));
+		inner2.put("x", "1");
+		content2.put("c", inner2);
+		content2.put("b", 10);
+		content2.put("a", "value");
+		content2.put(ContentObjectFields.SYS_CONTENT_ID, "1");
+		content2.put(ContentObjectFields.SYS_FINGERPRINT, "abc");
+		Assert.assertEquals(fingerprint, ContentPushService.computeFingerprint(typeDef, content2));
+
+		// case - changed values
+		inner2.put("y", Arrays.asList("2", "1"));
+		Assert.assertFalse(fingerprint.equals(ContentPushService.computeFingerprint(typeDef, content2)));
+		inner2.put("y", Arrays.asList("1", "2"));
+		content2.put("b", 11);
+		Assert.assertFalse(fingerprint.equals(ContentPushService.computeFingerprint(typeDef, content2)));
+		content2.put("b", 10);
+		content2.put("d", null);
+		Assert.assertFalse(fingerprint.equals(ContentPushService.computeFingerprint(typeDef, content2)));
+		content2.remove("d");
+		Assert.assertEquals(fingerprint, ContentPushService.computeFingerprint(typeDef, content2));
+
+		// case - fingerprint of type configuration computed once gives same result
+		Assert.assertEquals(fingerprint, ContentPushService.computeFingerprint(
+				ContentPushService.computeTypeDefFingerprint(typeDef), content2));
+
+		// case - changed configuration of type which affects processing
+		Map<String, Object> typeDef2 = new HashMap<String, Object>(typeDef);
+		typeDef2.put(ProviderService.INPUT_PREPROCESSORS, Arrays.asList(Collections.singletonMap("name", "p1")));
+		Assert.assertFalse(fingerprint.equals(ContentPushService.computeFingerprint(typeDef2, content2)));
+		typeDef2 = new HashMap<String, Object>(typeDef);
+		typeDef2.put(ProviderService.SYS_CONTENT_CONTENT_TYPE, "text/html");
+		Assert.assertFalse(fingerprint.equals(ContentPushService.computeFingerprint(typeDef2, content2)));
+
+		// case - other configuration doesn't matter
+		typeDef2 = new HashMap<String, Object>(typeDef);
+		typeDef2.put(ProviderService.SEARCH_ALL_EXCLUDED, "true");
+		Assert.assertEquals(fingerprint, ContentPushService.computeFingerprint(typeDef2, content2));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void mergePatch() {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("a", "a1");
+		content.put("b", "b1");
+		Map<String, Object> inner = new HashMap<String, Object>();
+		inner.put("x", "x1");
+		inner.put("y", "y1");
+		content.put("c", inner);
+		content.put("d", "d1");
+
+		Map<String, Object> patch = new HashMap<String, Object>();
+		patch.put("a", "a2");
+		patch.put("b", null);
+		Map<String, Object> innerPatch = new HashMap<String, Object>();
+		innerPatch.put("y", null);
+		innerPatch.put("z", "z2");
+		patch.put("c", innerPatch);
+		Map<String, Object> newInner = new HashMap<String, Object>();
+		newInner.put("n", null);
+		newInner.put("m", "m2");
+		patch.put("d", newInner);
+		patch.put("e", Arrays.asList("e2"));
+
+		ContentPushService.mergePatch(content, patch);
+		Assert.assertEquals("a2", content.get("a"));
+		Assert.assertFalse(content.containsKey("b"));
+		Map<String, Object> c = (Map<String, Object>) content.get("c");
+		Assert.assertEquals(2, c.size());
+		Assert.assertEquals("x1", c.get("x"));
+		Assert.assertEquals("z2", c.get("z"));
+		// original object is not changed
+		Assert.assertEquals("y1", inner.get("y"));
+		Map<String, Object> d = (Map<String, Object>) content.get("d");
+		Assert.assertEquals(1, d.size());
+		Assert.assertEquals("m2", d.get("m"));
+		Assert.assertEquals(Arrays.asList("e2"), content.get("e"));
+	}
+
+	@Test
+	public void containsNullValue() {
+		Map<String, Object> patch = new HashMap<String, Object>();
+		Assert.assertFalse(ContentPushService.containsNullValue(patch));
+		patch.put("a", "a2");
+		patch.put("e", Arrays.asList("e2", null));
+		Map<String, Object> innerPatch = new HashMap<String, Object>();
+		innerPatch.put("z", "z2");
+		patch.put("c", innerPatch);
+		Assert.assertFalse(ContentPushService.containsNullValue(patch));
+
+		// case - nested null
+		innerPatch.put("y", null);
+		Assert.assertTrue(ContentPushService.containsNullValue(patch));
+
+		// case - top level null
+		innerPatch.remove("y");
+		patch.put("b", null);
+		Assert.assertTrue(ContentPushService.containsNullValue(patch));
+	}
+
+	@Test
+	public void buildDeleteFilter() throws Exception {
+		// case - invalid filters
+		assertInvalidDeleteFilter(null);
+		Map<String, Object> filter = new LinkedHashMap<String, Object>();
+		assertInvalidDeleteFilter(filter);
+		filter.put("field", null);
+		assertInvalidDeleteFilter(filter);
+		filter.put("field", new ArrayList<String>());
+		assertInvalidDeleteFilter(filter);
+		Map<String, Object> range = new HashMap<String, Object>();
+		filter.put("field", range);
+		assertInvalidDeleteFilter(filter);
+		range.put("to", "2013-12-31");
+		range.put("gt", "2013-01-01");
+		assertInvalidDeleteFilter(filter);
+
+		// case - valid filter, always limited to content type
+		range.remove("gt");
+		filter.put("sys_project", "as7");
+		filter.put("tags", Arrays.asList("a", "b"));
+		String json = ContentPushService.buildDeleteFilter("mytype", filter).toString();
+		Assert.assertTrue(json, json.contains("\"sys_content_type\" : \"mytype\""));
+		Assert.assertTrue(json, json.contains("\"sys_project\" : \"as7\""));
+		Assert.assertTrue(json, json.contains("\"range\""));
+		Assert.assertTrue(json, json.contains("\"to\" : \"2013-12-31\""));
+		Assert.assertTrue(json, json.contains("\"terms\""));
+	}
+
+	private void assertInvalidDeleteFilter(Map<String, Object> filter) {
+		try {
+			ContentPushService.buildDeleteFilter("mytype", filter);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void pushContentBulkChunk_invalidContent() {
+		ProviderService providerService = Mockito.mock(ProviderService.class);
+		Mockito.when(providerService.generateSysId(Mockito.anyString(), Mockito.anyString())).thenCallRealMethod();
+		Mockito.doThrow(new RuntimeException("preprocessor failed")).when(providerService)
+				.runPreprocessors(Mockito.eq("type"), Mockito.anyList(), Mockito.anyMap());
+		SearchClientService searchClientService = Mockito.mock(SearchClientService.class);
+		Mockito.when(searchClientService.getClient()).thenReturn(Mockito.mock(Client.class));
+		ContentPushService tested = getTested(providerService, searchClientService,
+				Mockito.mock(ContentPersistenceService.class), Mockito.mock(Event.class), Mockito.mock(Event.class),
+				Mockito.mock(Event.class), 100);
+
+		Map<String, Object> typeDef = new HashMap<String, Object>();
+		Map<String, Object> index = new HashMap<String, Object>();
+		typeDef.put(ProviderService.INDEX, index);
+		index.put("name", "index");
+		index.put("type", "type");
+
+		// case - errors reported for all content objects so nothing is sent to search index (forced so fingerprints are
+		// not read from search index)
+		List<Map<String, Object>> chunk = new ArrayList<Map<String, Object>>();
+		chunk.add(new HashMap<String, Object>());
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put(ContentObjectFields.SYS_CONTENT_ID, "1");
+		chunk.add(content);
+		List<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+		tested.pushContentBulkChunk("provider", "type", typeDef, chunk, true, items);
+
+		Assert.assertEquals(2, items.size());
+		Assert.assertNull(items.get(0).get(ContentObjectFields.SYS_CONTENT_ID));
+		Assert.assertEquals("error", items.get(0).get(ContentPushService.RESPONSE_STATUS));
+		Assert.assertEquals("1", items.get(1).get(ContentObjectFields.SYS_CONTENT_ID));
+		Assert.assertEquals("error", items.get(1).get(ContentPushService.RESPONSE_STATUS));
+		Assert.assertEquals("preprocessor failed", items.get(1).get(ContentPushService.RESPONSE_MESSAGE));
+		Mockito.verifyZeroInteractions(tested.contentPersistenceService, tested.eventBeforeIndexed,
+				tested.eventContentStored);
+	}
+
+}
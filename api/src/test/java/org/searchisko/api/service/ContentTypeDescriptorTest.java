@@ -0,0 +1,118 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.searchisko.api.testtools.TestUtils;
+
+/**
+ * Unit test for {@link ContentTypeDescriptor}
+ * 
+ * @author agent (agent at local)
+ */
+public class ContentTypeDescriptorTest {
+
+	@Test
+	public void create_validConfig() {
+		Map<String, Object> typeDef = new HashMap<String, Object>();
+		Map<String, Object> index = new HashMap<String, Object>();
+		typeDef.put(ProviderService.INDEX, index);
+		index.put(ProviderService.NAME, "idx");
+		index.put(ProviderService.TYPE, "idxt");
+		typeDef.put(ProviderService.SYS_TYPE, "my_sys_type");
+		typeDef.put(ProviderService.SYS_CONTENT_CONTENT_TYPE, "text/plain");
+		typeDef.put(ProviderService.PERSIST, "true");
+		List<Map<String, Object>> preprocessors = new ArrayList<Map<String, Object>>();
+		typeDef.put(ProviderService.INPUT_PREPROCESSORS, preprocessors);
+
+		ContentTypeDescriptor tested = new ContentTypeDescriptor("prov", "mytype", typeDef);
+		Assert.assertEquals("prov", tested.getProviderName());
+		Assert.assertEquals("mytype", tested.getTypeName());
+		Assert.assertSame(typeDef, tested.getTypeDef());
+		Assert.assertEquals("idx", tested.getIndexName());
+		Assert.assertEquals("idxt", tested.getIndexType());
+		Assert.assertArrayEquals(new String[] { "idx" }, tested.getSearchIndices());
+		Assert.assertEquals("my_sys_type", tested.getSysType());
+		Assert.assertEquals("text/plain", tested.getSysContentContentType());
+		Assert.assertSame(preprocessors, tested.getPreprocessorsDef());
+		Assert.assertTrue(tested.isPersist());
+		Assert.assertFalse(tested.isSearchAllExcluded());
+
+		// returned array can't change descriptor
+		tested.getSearchIndices()[0] = "changed";
+		Assert.assertArrayEquals(new String[] { "idx" }, tested.getSearchIndices());
+	}
+
+	@Test
+	public void create_invalidConfig() {
+		ContentTypeDescriptor tested = new ContentTypeDescriptor("prov", "mytype", new HashMap<String, Object>());
+		Assert.assertFalse(tested.isPersist());
+		Assert.assertNull(tested.getPreprocessorsDef());
+		try {
+			tested.getIndexName();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		try {
+			tested.getIndexType();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		try {
+			tested.getSearchIndices();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		try {
+			tested.getSysType();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		try {
+			tested.getSysContentContentType();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void buildRegistry() throws IOException {
+		Assert.assertTrue(ContentTypeDescriptor.buildRegistry(null).isEmpty());
+
+		List<Map<String, Object>> all = new ArrayList<Map<String, Object>>();
+		all.add(TestUtils.loadJSONFromClasspathFile("/provider/provider_1.json"));
+		all.add(TestUtils.loadJSONFromClasspathFile("/provider/provider_2.json"));
+		Map<String, ContentTypeDescriptor> registry = ContentTypeDescriptor.buildRegistry(all);
+
+		Assert.assertNull(registry.get("unknown"));
+		ContentTypeDescriptor ctd = registry.get("provider1_mailing");
+		Assert.assertEquals("provider1", ctd.getProviderName());
+		Assert.assertEquals("mailing", ctd.getSysType());
+		Assert.assertEquals("idx_provider1_mailing", ctd.getIndexName());
+		Assert.assertEquals("provider2", registry.get("provider2_mailing").getProviderName());
+
+		try {
+			registry.put("aa", ctd);
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+
+}
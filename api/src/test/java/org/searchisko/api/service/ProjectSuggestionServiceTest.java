@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.elasticsearch.client.Client;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
+import org.searchisko.api.events.ContentDeletedEvent;
+import org.searchisko.api.events.ContentStoredEvent;
+import org.searchisko.api.service.ProjectSuggestionService.Project;
+import org.searchisko.api.testtools.ESRealClientTestBase;
+
+/**
+ * Unit test for {@link ProjectSuggestionService}.
+ *
+ * @author agent (agent at local)
+ */
+public class ProjectSuggestionServiceTest extends ESRealClientTestBase {
+
+	private ProjectSuggestionService getTested() {
+		ProjectSuggestionService tested = new ProjectSuggestionService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.searchClientService = Mockito.mock(SearchClientService.class);
+		return tested;
+	}
+
+	private ContentStoredEvent storedEvent(String id, String code, String name) {
+		Map<String, Object> data = new HashMap<>();
+		data.put(ContentObjectFields.SYS_CONTENT_TYPE, ProjectSuggestionService.SEARCH_INDEX_TYPE);
+		data.put(ContentObjectFields.SYS_PROJECT, code);
+		data.put(ContentObjectFields.SYS_PROJECT_NAME, name);
+		return new ContentStoredEvent(id, data);
+	}
+
+	private void assertProjects(List<Project> actual, String... expectedCodes) {
+		Assert.assertEquals(actual.toString(), expectedCodes.length, actual.size());
+		for (int i = 0; i < expectedCodes.length; i++) {
+			Assert.assertEquals(actual.toString(), expectedCodes[i], actual.get(i).getCode());
+		}
+	}
+
+	/**
+	 * Prepare tested service with loaded index, so no search index is used later.
+	 */
+	private ProjectSuggestionService getTestedWithProjects() {
+		ProjectSuggestionService tested = getTested();
+		Mockito.when(tested.searchClientService.getClient()).thenThrow(new RuntimeException("no client"));
+		tested.rebuild();
+		tested.contentStoredEventHandler(storedEvent("p-as7", "as7", "JBoss AS 7"));
+		tested.contentStoredEventHandler(storedEvent("p-jbpm", "jbpm", "jBPM"));
+		tested.contentStoredEventHandler(storedEvent("p-hibernate", "hibernate", "Hibernate ORM"));
+		tested.contentStoredEventHandler(storedEvent("p-hsearch", "hibernatesearch", "Hibernate Search"));
+		tested.contentStoredEventHandler(storedEvent("p-eap", "eap", "JBoss Enterprise Application Platform"));
+		return tested;
+	}
+
+	@Test
+	public void normalize() {
+		Assert.assertEquals("", ProjectSuggestionService.normalize(null));
+		Assert.assertEquals("", ProjectSuggestionService.normalize("  "));
+		Assert.assertEquals("jboss as 7", ProjectSuggestionService.normalize(" JBoss \t AS  7 "));
+	}
+
+	@Test
+	public void getMaxEdits() {
+		Assert.assertEquals(0, ProjectSuggestionService.getMaxEdits("jb"));
+		Assert.assertEquals(1, ProjectSuggestionService.getMaxEdits("jbo"));
+		Assert.assertEquals(1, ProjectSuggestionService.getMaxEdits("jboss"));
+		Assert.assertEquals(2, ProjectSuggestionService.getMaxEdits("hibern"));
+	}
+
+	@Test
+	public void createProject() {
+		Assert.assertNull(ProjectSuggestionService.createProject(null, "c", "n"));
+		Assert.assertNull(ProjectSuggestionService.createProject("i", null, "n"));
+		Assert.assertNull(ProjectSuggestionService.createProject("i", "c", null));
+		Assert.assertNull(ProjectSuggestionService.createProject("i", "c", " "));
+		Project p = ProjectSuggestionService.createProject("i", "c", "n");
+		Assert.assertEquals("i", p.getId());
+		Assert.assertEquals("c", p.getCode());
+		Assert.assertEquals("n", p.getName());
+	}
+
+	@Test
+	public void suggest() {
+		ProjectSuggestionService tested = getTestedWithProjects();
+
+		// case - shorter names first
+		assertProjects(tested.suggest("JB", 10), "jbpm", "as7", "eap");
+		assertProjects(tested.suggest("jboss", 10), "as7", "eap");
+		assertProjects(tested.suggest("jb", 2), "jbpm", "as7");
+
+		// case - substring inside of name
+		assertProjects(tested.suggest("bern", 10), "hibernate", "hibernatesearch");
+		assertProjects(tested.suggest(" Hibernate   s", 10), "hibernatesearch");
+		assertProjects(tested.suggest("platform", 10), "eap");
+
+		// case - no match
+		assertProjects(tested.suggest("wildfly", 10));
+		assertProjects(tested.suggest("", 10));
+		assertProjects(tested.suggest(null, 10));
+	}
+
+	@Test
+	public void suggestFuzzy() {
+		ProjectSuggestionService tested = getTestedWithProjects();
+
+		// case - typo in word prefix
+		assertProjects(tested.suggestFuzzy("jbos", 10), "as7", "eap");
+		assertProjects(tested.suggestFuzzy("hibrenate", 10), "hibernate", "hibernatesearch");
+		assertProjects(tested.suggestFuzzy("entreprise", 10), "eap");
+
+		// case - short query must match exactly, at word start only
+		assertProjects(tested.suggestFuzzy("as", 10), "as7");
+		assertProjects(tested.suggestFuzzy("ss", 10));
+
+		// case - no match
+		assertProjects(tested.suggestFuzzy("wildfly", 10));
+		assertProjects(tested.suggestFuzzy(null, 10));
+	}
+
+	@Test
+	public void contentEventHandlers() {
+		ProjectSuggestionService tested = getTestedWithProjects();
+		assertProjects(tested.suggest("jbpm", 10), "jbpm");
+
+		// case - project renamed
+		tested.contentStoredEventHandler(storedEvent("p-jbpm", "jbpm", "jBPM Suite"));
+		assertProjects(tested.suggest("jbpm", 10), "jbpm");
+		assertProjects(tested.suggest("suite", 10), "jbpm");
+
+		// case - other content types are ignored
+		Map<String, Object> data = new HashMap<>();
+		data.put(ContentObjectFields.SYS_CONTENT_TYPE, "jbossorg_blog");
+		data.put(ContentObjectFields.SYS_PROJECT, "blog");
+		data.put(ContentObjectFields.SYS_PROJECT_NAME, "Blog");
+		tested.contentStoredEventHandler(new ContentStoredEvent("jbossorg_blog-1", data));
+		tested.contentStoredEventHandler(new ContentStoredEvent("jbossorg_blog-2", null));
+		tested.contentStoredEventHandler(null);
+		assertProjects(tested.suggest("blog", 10));
+
+		// case - incomplete project removes it
+		tested.contentStoredEventHandler(storedEvent("p-jbpm", "jbpm", null));
+		assertProjects(tested.suggest("jbpm", 10));
+
+		// case - project deleted
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("p-as7"));
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("unknown"));
+		tested.contentDeletedEventHandler(null);
+		assertProjects(tested.suggest("jboss", 10), "eap");
+
+		// case - index is rebuilt lazily, once for more changes
+		long rebuilds = (Long) tested.getStats().get("rebuilds");
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("p-hibernate"));
+		tested.contentDeletedEventHandler(new ContentDeletedEvent("p-hsearch"));
+		Assert.assertEquals(rebuilds, tested.getStats().get("rebuilds"));
+		assertProjects(tested.suggest("hibernate", 10));
+		assertProjects(tested.suggestFuzzy("hibernate", 10));
+		Assert.assertEquals(rebuilds + 1, tested.getStats().get("rebuilds"));
+
+		// case - projects deleted in bulk, other types ignored
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("other", Arrays.asList("p-eap")));
+		tested.contentBulkDeletedEventHandler(null);
+		assertProjects(tested.suggest("jboss", 10), "eap");
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent(ProjectSuggestionService.SEARCH_INDEX_TYPE,
+				Arrays.asList("p-eap", "unknown")));
+		assertProjects(tested.suggest("jboss", 10));
+	}
+
+	@Test
+	public void getStats() {
+		ProjectSuggestionService tested = getTested();
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(0, stats.get("projects"));
+		Assert.assertEquals(0, stats.get("keys"));
+		Assert.assertEquals(0L, stats.get("loads"));
+		Assert.assertEquals(0L, stats.get("requests"));
+
+		tested = getTestedWithProjects();
+		tested.suggest("jb", 10);
+		tested.suggestFuzzy("jb", 10);
+		stats = tested.getStats();
+		Assert.assertEquals(5, stats.get("projects"));
+		Assert.assertTrue(((Integer) stats.get("keys")) > 5);
+		Assert.assertEquals(2L, stats.get("requests"));
+		Assert.assertNotNull(stats.get("avg_request_micros"));
+	}
+
+	@Test
+	public void reload() {
+		try {
+			ProjectSuggestionService tested = getTested();
+			Mockito.when(tested.searchClientService.getClient()).thenReturn(prepareESClientForUnitTest());
+
+			// case - index doesn't exist so no suggestions
+			indexDelete(ProjectSuggestionService.SEARCH_INDEX_NAME);
+			assertProjects(tested.suggest("jboss", 10));
+			Assert.assertEquals(1L, tested.getStats().get("loads"));
+
+			// case - index is loaded on reload only
+			indexCreate(ProjectSuggestionService.SEARCH_INDEX_NAME);
+			indexInsertDocument(ProjectSuggestionService.SEARCH_INDEX_NAME, ProjectSuggestionService.SEARCH_INDEX_TYPE,
+					"p-as7", "{\"sys_project\":\"as7\",\"sys_project_name\":\"JBoss AS 7\"}");
+			indexInsertDocument(ProjectSuggestionService.SEARCH_INDEX_NAME, ProjectSuggestionService.SEARCH_INDEX_TYPE,
+					"p-eap", "{\"sys_project\":\"eap\",\"sys_project_name\":\"JBoss Enterprise Application Platform\"}");
+			indexInsertDocument(ProjectSuggestionService.SEARCH_INDEX_NAME, ProjectSuggestionService.SEARCH_INDEX_TYPE,
+					"p-incomplete", "{\"sys_project\":\"incomplete\"}");
+			indexFlushAndRefresh(ProjectSuggestionService.SEARCH_INDEX_NAME);
+			assertProjects(tested.suggest("jboss", 10));
+			tested.reload();
+			assertProjects(tested.suggest("jboss", 10), "as7", "eap");
+			Assert.assertEquals("p-as7", tested.suggest("jboss", 10).get(0).getId());
+			Assert.assertEquals(2, tested.getStats().get("projects"));
+
+			// case - changes made by events during load are not lost
+			final ProjectSuggestionService fTested = tested;
+			final Client client = tested.searchClientService.getClient();
+			Mockito.reset(tested.searchClientService);
+			Mockito.when(tested.searchClientService.getClient()).thenAnswer(new Answer<Client>() {
+				@Override
+				public Client answer(InvocationOnMock invocation) throws Throwable {
+					fTested.contentStoredEventHandler(storedEvent("p-wildfly", "wildfly", "JBoss WildFly"));
+					fTested.contentDeletedEventHandler(new ContentDeletedEvent("p-eap"));
+					return client;
+				}
+			});
+			tested.reload();
+			assertProjects(tested.suggest("jboss", 10), "as7", "wildfly");
+
+			// case - previous index is kept if reload fails
+			Mockito.reset(tested.searchClientService);
+			Mockito.when(tested.searchClientService.getClient()).thenThrow(new RuntimeException("test"));
+			tested.reload();
+			assertProjects(tested.suggest("jboss", 10), "as7", "wildfly");
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+}
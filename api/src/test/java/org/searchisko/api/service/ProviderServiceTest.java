@@ -7,9 +7,12 @@ package org.searchisko.api.service;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.Logger;
 
 import javax.ws.rs.core.StreamingOutput;
@@ -19,8 +22,13 @@ import org.elasticsearch.common.settings.SettingsException;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.searchisko.api.cache.AllProvidersCache;
 import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.PreprocessorChainCache;
 import org.searchisko.api.cache.ProviderCache;
+import org.searchisko.api.cache.SearchResultCache;
 import org.searchisko.api.testtools.ESRealClientTestBase;
 import org.searchisko.api.testtools.TestUtils;
 import org.searchisko.persistence.service.EntityService;
@@ -554,6 +562,17 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 			Assert.assertEquals("value2", data.get("name2"));
 		}
 
+		// case - only selected preprocessors run
+		{
+			List<Map<String, Object>> preprocessorsDef = ProviderService.extractPreprocessors(
+					(Map<String, Object>) ((Map<String, Object>) TestUtils.loadJSONFromClasspathFile("/provider/provider_1.json")
+							.get("type")).get("provider1_mailing"), "provider1_mailing");
+			Map<String, Object> data = new HashMap<String, Object>();
+			tested.runPreprocessors("mytype", preprocessorsDef, data, new boolean[] { false, true });
+			Assert.assertNull(data.get("name1"));
+			Assert.assertEquals("value2", data.get("name2"));
+		}
+
 		// case - preprocessors run OK when data is null
 		{
 			List<Map<String, Object>> preprocessorsDef = ProviderService.extractPreprocessors(
@@ -563,6 +582,80 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 			tested.runPreprocessors("mytype", preprocessorsDef, data);
 		}
 
+		// case - compiled preprocessors chain is cached
+		{
+			tested.preprocessorChainCache = new PreprocessorChainCache();
+			List<Map<String, Object>> preprocessorsDef = ProviderService.extractPreprocessors(
+					(Map<String, Object>) ((Map<String, Object>) TestUtils.loadJSONFromClasspathFile("/provider/provider_1.json")
+							.get("type")).get("provider1_mailing"), "provider1_mailing");
+			Map<String, Object> data = new HashMap<String, Object>();
+			tested.runPreprocessors("mytype", preprocessorsDef, data);
+			Assert.assertEquals("value1", data.get("name1"));
+			Assert.assertEquals(1, tested.preprocessorChainCache.getMissCount());
+			Assert.assertEquals(0, tested.preprocessorChainCache.getHitCount());
+			Assert.assertNotNull(tested.preprocessorChainCache.get("mytype", preprocessorsDef));
+
+			data = new HashMap<String, Object>();
+			tested.runPreprocessors("mytype", preprocessorsDef, data);
+			Assert.assertEquals("value1", data.get("name1"));
+			Assert.assertEquals("value2", data.get("name2"));
+			Assert.assertEquals(1, tested.preprocessorChainCache.getMissCount());
+			Assert.assertEquals(2, tested.preprocessorChainCache.getHitCount());
+
+			// flush causes chain recompilation
+			tested.flushCaches();
+			tested.runPreprocessors("mytype", preprocessorsDef, new HashMap<String, Object>());
+			Assert.assertEquals(2, tested.preprocessorChainCache.getMissCount());
+		}
+
+	}
+
+	@Test
+	public void selectPreprocessorsForFields() {
+		// case - no preprocessors
+		Assert.assertEquals(0, ProviderService.selectPreprocessorsForFields(null, Arrays.asList("a")).length);
+
+		List<Map<String, Object>> preprocessorsDef = new ArrayList<Map<String, Object>>();
+		preprocessorsDef.add(preprocessorDef("source_field", "author", "target_field", "sys_contributors"));
+		preprocessorsDef.add(preprocessorDef("field", "sys_title", "pattern", "{title} - {project.name}"));
+		preprocessorsDef.add(preprocessorDef("source_field", "sys_contributors", "target_field", "sys_authors"));
+		preprocessorsDef.add(preprocessorDef("field", "sys_activity_dates", "value", "x"));
+		preprocessorsDef.add(null);
+
+		// case - nothing selected for unused field
+		assertSelected(ProviderService.selectPreprocessorsForFields(preprocessorsDef, Arrays.asList("other")), false,
+				false, false, false, false);
+
+		// case - field used in pattern, parent and child fields
+		assertSelected(ProviderService.selectPreprocessorsForFields(preprocessorsDef, Arrays.asList("title")), false,
+				true, false, false, false);
+		assertSelected(ProviderService.selectPreprocessorsForFields(preprocessorsDef, Arrays.asList("project")), false,
+				true, false, false, false);
+		assertSelected(ProviderService.selectPreprocessorsForFields(preprocessorsDef, Arrays.asList("author.email")),
+				true, false, true, false, false);
+
+		// case - fields of selected preprocessor are handled as changed for subsequent ones
+		assertSelected(ProviderService.selectPreprocessorsForFields(preprocessorsDef, Arrays.asList("author")), true,
+				false, true, false, false);
+	}
+
+	private static Map<String, Object> preprocessorDef(String... settings) {
+		Map<String, Object> def = new HashMap<String, Object>();
+		def.put("name", "preprocessor");
+		def.put("class", "org.jboss.elasticsearch.tools.content.AddValuePreprocessor");
+		Map<String, Object> s = new HashMap<String, Object>();
+		for (int i = 0; i < settings.length; i += 2) {
+			s.put(settings[i], settings[i + 1]);
+		}
+		def.put("settings", s);
+		return def;
+	}
+
+	private static void assertSelected(boolean[] actual, boolean... expected) {
+		Assert.assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			Assert.assertEquals("Preprocessor " + i, expected[i], actual[i]);
+		}
 	}
 
 	@Test
@@ -595,12 +688,30 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 			Assert.assertNotNull(ret);
 			Assert.assertEquals("mailing2", ret.get(ProviderService.SYS_TYPE));
 		}
+
+		// case - descriptor lookup uses same registry
+		{
+			Assert.assertNull(tested.findContentTypeDescriptor(null));
+			Assert.assertNull(tested.findContentTypeDescriptor("unknown"));
+			ContentTypeDescriptor ctd = tested.findContentTypeDescriptor("provider1_issue");
+			Assert.assertEquals("issue", ctd.getSysType());
+			Assert.assertEquals("provider1", ctd.getProviderName());
+			Assert.assertSame(ctd, tested.findContentTypeDescriptor("provider1_issue"));
+			Mockito.verify(tested.entityService, Mockito.times(2)).getAll();
+		}
+
+		// case - registry rebuilt after flush
+		{
+			ContentTypeDescriptor ctd = tested.findContentTypeDescriptor("provider1_issue");
+			tested.flushCaches();
+			Assert.assertNotSame(ctd, tested.findContentTypeDescriptor("provider1_issue"));
+		}
 	}
 
 	@Test
 	public void flushCaches() {
 		ProviderService tested = getTested();
-		tested.cacheAllProvidersTTL = 200000;
+		tested.allProvidersCache.setTtl(200000);
 
 		// case - tested.indexNamesCache is null
 		List<Map<String, Object>> allList = new ArrayList<Map<String, Object>>();
@@ -615,12 +726,17 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 		Mockito.reset(tested.entityService);
 		tested.indexNamesCache = Mockito.mock(IndexNamesCache.class);
 		tested.providerCache = Mockito.mock(ProviderCache.class);
+		tested.preprocessorChainCache = Mockito.mock(PreprocessorChainCache.class);
+		tested.searchResultCache = Mockito.mock(SearchResultCache.class);
 		Mockito.when(tested.entityService.getAll()).thenReturn(allList);
 		Assert.assertEquals(allList, tested.getAll());
 		tested.flushCaches();
 		Assert.assertEquals(allList, tested.getAll());
 		Mockito.verify(tested.entityService, Mockito.times(2)).getAll();
 		Mockito.verify(tested.indexNamesCache).flush();
+		Mockito.verify(tested.providerCache).flush();
+		Mockito.verify(tested.preprocessorChainCache).flush();
+		Mockito.verify(tested.searchResultCache).flush();
 	}
 
 	@Test
@@ -628,7 +744,7 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 		ProviderService tested = getTested();
 
 		// case - return value is propagated, cache works
-		tested.cacheAllProvidersTTL = 400L;
+		tested.allProvidersCache.setTtl(400L);
 		List<Map<String, Object>> allList = new ArrayList<Map<String, Object>>();
 		Mockito.when(tested.entityService.getAll()).thenReturn(allList);
 		Assert.assertEquals(allList, tested.getAll());
@@ -637,7 +753,7 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 		Mockito.verify(tested.entityService, Mockito.times(1)).getAll();
 		// cache timeout
 		Thread.sleep(500);
-		tested.cacheAllProvidersTTL = 50000L;
+		tested.allProvidersCache.setTtl(50000L);
 		Mockito.reset(tested.entityService);
 		List<Map<String, Object>> allList2 = new ArrayList<Map<String, Object>>();
 		Mockito.when(tested.entityService.getAll()).thenReturn(allList2);
@@ -645,52 +761,129 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 		Assert.assertEquals(allList2, tested.getAll());
 		Mockito.verify(tested.entityService, Mockito.times(1)).getAll();
 
+		// case - returned snapshot is immutable
+		try {
+			tested.getAll().add(new HashMap<String, Object>());
+			Assert.fail("UnsupportedOperationException expected");
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+
+	@Test
+	public void getAll_staleServedWhileReloading() throws InterruptedException {
+		final ProviderService tested = getTested();
+		tested.allProvidersCache.setTtl(100L);
+
+		final List<Map<String, Object>> allList = new ArrayList<Map<String, Object>>();
+		allList.add(new HashMap<String, Object>());
+		Mockito.when(tested.entityService.getAll()).thenReturn(allList);
+		Assert.assertEquals(allList, tested.getAll());
+		Thread.sleep(150);
+
+		// case - snapshot expired, one thread reloads it, other is served by stale snapshot without waiting
+		final CountDownLatch loadStarted = new CountDownLatch(1);
+		final CountDownLatch loadRelease = new CountDownLatch(1);
+		final List<Map<String, Object>> allList2 = new ArrayList<Map<String, Object>>();
+		Mockito.reset(tested.entityService);
+		Mockito.when(tested.entityService.getAll()).thenAnswer(new Answer<List<Map<String, Object>>>() {
+			@Override
+			public List<Map<String, Object>> answer(InvocationOnMock invocation) throws Throwable {
+				loadStarted.countDown();
+				loadRelease.await();
+				return allList2;
+			}
+		});
+		Thread reloader = new Thread() {
+			@Override
+			public void run() {
+				tested.getAll();
+			}
+		};
+		reloader.start();
+		loadStarted.await();
+		Assert.assertEquals(allList, tested.getAll());
+		loadRelease.countDown();
+		reloader.join();
+		Assert.assertEquals(allList2, tested.getAll());
+		Mockito.verify(tested.entityService, Mockito.times(1)).getAll();
 	}
 
 	@Test
 	public void findProvider() throws IOException {
 		ProviderService tested = getTested();
-		tested.providerCache = Mockito.mock(ProviderCache.class);
 
 		// case - unknown
 		Mockito.when(tested.entityService.get("unknown")).thenReturn(null);
-		Mockito.when(tested.providerCache.get("unknown")).thenReturn(null);
 		Assert.assertNull(tested.findProvider("unknown"));
 		Mockito.verify(tested.entityService).get("unknown");
 		Mockito.verifyNoMoreInteractions(tested.entityService);
-		Mockito.verify(tested.providerCache).get("unknown");
-		Mockito.verifyNoMoreInteractions(tested.providerCache);
+		Assert.assertNull(tested.providerCache.get("unknown"));
 
 		// case - existing but not in cache
-		Mockito.reset(tested.entityService, tested.providerCache);
+		Mockito.reset(tested.entityService);
 		Map<String, Object> providerLoaded = new HashMap<String, Object>();
 		Mockito.when(tested.entityService.get("aa")).thenReturn(providerLoaded);
-		Mockito.when(tested.providerCache.get("aa")).thenReturn(null);
 		Assert.assertEquals(providerLoaded, tested.findProvider("aa"));
 		Mockito.verify(tested.entityService).get("aa");
 		Mockito.verifyNoMoreInteractions(tested.entityService);
-		Mockito.verify(tested.providerCache).get("aa");
-		Mockito.verify(tested.providerCache).put("aa", providerLoaded);
-		Mockito.verifyNoMoreInteractions(tested.providerCache);
+		Assert.assertSame(providerLoaded, tested.providerCache.get("aa"));
 
 		// case - existing in cache
-		Mockito.reset(tested.entityService, tested.providerCache);
+		Mockito.reset(tested.entityService);
 		Map<String, Object> providerCached = new HashMap<String, Object>();
-		Mockito.when(tested.entityService.get("aa")).thenReturn(providerLoaded);
-		Mockito.when(tested.providerCache.get("aa")).thenReturn(providerCached);
-		Assert.assertEquals(providerCached, tested.findProvider("aa"));
-		Mockito.verifyNoMoreInteractions(tested.entityService);
-		Mockito.verify(tested.providerCache).get("aa");
-		Mockito.verifyNoMoreInteractions(tested.providerCache);
+		tested.providerCache.put("aa", providerCached);
+		Assert.assertSame(providerCached, tested.findProvider("aa"));
+		Mockito.verifyZeroInteractions(tested.entityService);
+	}
 
+	@Test
+	public void findProvider_singleFlight() throws InterruptedException {
+		final ProviderService tested = getTested();
+
+		final CountDownLatch loadStarted = new CountDownLatch(1);
+		final CountDownLatch loadRelease = new CountDownLatch(1);
+		final Map<String, Object> providerLoaded = new HashMap<String, Object>();
+		Mockito.when(tested.entityService.get("aa")).thenAnswer(new Answer<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
+				loadStarted.countDown();
+				loadRelease.await();
+				return providerLoaded;
+			}
+		});
+
+		final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 5; i++) {
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					results.add(tested.findProvider("aa"));
+				}
+			};
+			threads.add(t);
+			t.start();
+			if (i == 0)
+				loadStarted.await();
+		}
+		Thread.sleep(100);
+		loadRelease.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Assert.assertEquals(5, results.size());
+		for (Object r : results) {
+			Assert.assertSame(providerLoaded, r);
+		}
+		Mockito.verify(tested.entityService, Mockito.times(1)).get("aa");
 	}
 
 	@Test
 	public void isSuperProvider() throws IOException {
 		ProviderService tested = getTested();
-		tested.providerCache = Mockito.mock(ProviderCache.class);
 
-		Mockito.when(tested.providerCache.get(Mockito.anyString())).thenReturn(null);
 		Mockito.when(tested.entityService.get("provider1")).thenReturn(
 				TestUtils.loadJSONFromClasspathFile("/provider/provider_1.json"));
 		Mockito.when(tested.entityService.get("provider2")).thenReturn(
@@ -712,9 +905,7 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 	@Test
 	public void authenticate() throws IOException {
 		ProviderService tested = getTested();
-		tested.providerCache = Mockito.mock(ProviderCache.class);
 
-		Mockito.when(tested.providerCache.get(Mockito.anyString())).thenReturn(null);
 		Mockito.when(tested.entityService.get("provider1")).thenReturn(
 				TestUtils.loadJSONFromClasspathFile("/provider/provider_1.json"));
 		Mockito.when(tested.entityService.get("provider2")).thenReturn(
@@ -759,11 +950,11 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 	public void create() {
 		ProviderService tested = getTested();
 
-		tested.cacheAllProvidersValidTo = 1000;
+		tested.allProvidersCache = Mockito.mock(AllProvidersCache.class);
 		Map<String, Object> value = new HashMap<String, Object>();
 		tested.create("aaa", value);
 		// test cache was flushed!
-		Assert.assertEquals(0, tested.cacheAllProvidersValidTo);
+		Mockito.verify(tested.allProvidersCache).flush();
 		Mockito.verify(tested.entityService).create("aaa", value);
 		Mockito.verifyNoMoreInteractions(tested.entityService);
 	}
@@ -772,13 +963,13 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 	public void create_noid() {
 		ProviderService tested = getTested();
 
-		tested.cacheAllProvidersValidTo = 1000;
+		tested.allProvidersCache = Mockito.mock(AllProvidersCache.class);
 		String id = "aaa";
 		Map<String, Object> value = new HashMap<String, Object>();
 		Mockito.when(tested.entityService.create(value)).thenReturn(id);
 		Assert.assertEquals(id, tested.create(value));
 		// test cache was flushed!
-		Assert.assertEquals(0, tested.cacheAllProvidersValidTo);
+		Mockito.verify(tested.allProvidersCache).flush();
 		Mockito.verify(tested.entityService).create(value);
 		Mockito.verifyNoMoreInteractions(tested.entityService);
 	}
@@ -787,11 +978,11 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 	public void update() {
 		ProviderService tested = getTested();
 
-		tested.cacheAllProvidersValidTo = 1000;
+		tested.allProvidersCache = Mockito.mock(AllProvidersCache.class);
 		Map<String, Object> value = new HashMap<String, Object>();
 		tested.update("aaa", value);
 		// test cache was flushed!
-		Assert.assertEquals(0, tested.cacheAllProvidersValidTo);
+		Mockito.verify(tested.allProvidersCache).flush();
 		Mockito.verify(tested.entityService).update("aaa", value);
 		Mockito.verifyNoMoreInteractions(tested.entityService);
 	}
@@ -800,10 +991,10 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 	public void delete() {
 		ProviderService tested = getTested();
 
-		tested.cacheAllProvidersValidTo = 1000;
+		tested.allProvidersCache = Mockito.mock(AllProvidersCache.class);
 		tested.delete("aaa");
 		// test cache was flushed!
-		Assert.assertEquals(0, tested.cacheAllProvidersValidTo);
+		Mockito.verify(tested.allProvidersCache).flush();
 		Mockito.verify(tested.entityService).delete("aaa");
 		Mockito.verifyNoMoreInteractions(tested.entityService);
 	}
@@ -812,6 +1003,8 @@ public class ProviderServiceTest extends ESRealClientTestBase {
 		ProviderService tested = new ProviderService();
 		tested.securityService = new SecurityService();
 		tested.entityService = Mockito.mock(EntityService.class);
+		tested.allProvidersCache = new AllProvidersCache();
+		tested.providerCache = new ProviderCache();
 		tested.log = Logger.getLogger("testlogger");
 		return tested;
 	}
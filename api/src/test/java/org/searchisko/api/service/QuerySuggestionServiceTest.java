@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.testtools.ESRealClientTestBase;
+
+/**
+ * Unit test for {@link QuerySuggestionService}.
+ *
+ * @author agent (agent at local)
+ */
+public class QuerySuggestionServiceTest extends ESRealClientTestBase {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private QuerySuggestionService getTested() {
+		QuerySuggestionService tested = new QuerySuggestionService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.statsClientService = Mockito.mock(StatsClientService.class);
+		return tested;
+	}
+
+	private void addQuery(QuerySuggestionService tested, String query, long time, int count) {
+		for (int i = 0; i < count; i++) {
+			tested.addQuery(query, time);
+		}
+	}
+
+	@Test
+	public void normalize() {
+		Assert.assertEquals("", QuerySuggestionService.normalize(null));
+		Assert.assertEquals("", QuerySuggestionService.normalize(" "));
+		Assert.assertEquals("hibernate query", QuerySuggestionService.normalize(" Hibernate \t Query "));
+	}
+
+	@Test
+	public void decay() {
+		Assert.assertEquals(1d, QuerySuggestionService.decay(0), 0.0001);
+		Assert.assertEquals(0.5d, QuerySuggestionService.decay(QuerySuggestionService.HALF_LIFE_MILLIS), 0.0001);
+		Assert.assertEquals(0.25d, QuerySuggestionService.decay(2 * QuerySuggestionService.HALF_LIFE_MILLIS), 0.0001);
+	}
+
+	@Test
+	public void queryStats() {
+		long hl = QuerySuggestionService.HALF_LIFE_MILLIS;
+		QuerySuggestionService.QueryStats tested = new QuerySuggestionService.QueryStats("Hibernate", 1000);
+		Assert.assertEquals(1d, tested.getWeight(1000), 0.0001);
+		Assert.assertEquals(0.5d, tested.getWeight(1000 + hl), 0.0001);
+
+		// case - newer usage changes query form
+		tested.add("hibernate", 1000 + hl);
+		Assert.assertEquals("hibernate", tested.query);
+		Assert.assertEquals(1.5d, tested.getWeight(1000 + hl), 0.0001);
+
+		// case - older usage weights less and doesn't change query form
+		tested.add("HIBERNATE", 1000);
+		Assert.assertEquals("hibernate", tested.query);
+		Assert.assertEquals(2d, tested.getWeight(1000 + hl), 0.0001);
+		Assert.assertEquals(1d, tested.getWeight(1000 + 2 * hl), 0.0001);
+	}
+
+	@Test
+	public void parseDate() {
+		Assert.assertNull(QuerySuggestionService.parseDate(null));
+		Assert.assertNull(QuerySuggestionService.parseDate("nonsense"));
+		Assert.assertEquals(new Long(1000), QuerySuggestionService.parseDate(1000));
+		Assert.assertEquals(new Long(1395916587000L), QuerySuggestionService.parseDate("2014-03-27T10:36:27.000Z"));
+	}
+
+	@Test
+	public void suggest() {
+		QuerySuggestionService tested = getTested();
+		long now = System.currentTimeMillis();
+
+		// case - index not built yet
+		Assert.assertTrue(tested.suggest("hib", 5).isEmpty());
+
+		addQuery(tested, "Hibernate", now, 10);
+		addQuery(tested, "hibernate  query", now, 3);
+		addQuery(tested, "Hibernate session", now - 2 * QuerySuggestionService.HALF_LIFE_MILLIS, 8);
+		addQuery(tested, "hibernate search", now, 1);
+		addQuery(tested, "infinispan", now, 5);
+		tested.rebuild(now);
+
+		// case - ordered by weight, recency counted
+		Assert.assertEquals(Arrays.asList("Hibernate", "hibernate query", "Hibernate session", "hibernate search"),
+				tested.suggest("hib", 5));
+		Assert.assertEquals(Arrays.asList("Hibernate", "hibernate query"), tested.suggest(" HIB ", 2));
+
+		// case - query itself is not returned
+		Assert.assertEquals(Arrays.asList("hibernate query", "Hibernate session", "hibernate search"),
+				tested.suggest("hibernate", 5));
+		Assert.assertEquals(Collections.singletonList("Hibernate session"), tested.suggest("hibernate s", 1));
+
+		// case - no completion
+		Assert.assertTrue(tested.suggest("wildfly", 5).isEmpty());
+		Assert.assertTrue(tested.suggest("", 5).isEmpty());
+		Assert.assertTrue(tested.suggest(null, 5).isEmpty());
+	}
+
+	@Test
+	public void addQuery_rebuild_limits() {
+		QuerySuggestionService tested = getTested();
+		long now = System.currentTimeMillis();
+
+		// case - too long and empty queries are ignored
+		char[] longQuery = new char[QuerySuggestionService.MAX_QUERY_LENGTH + 1];
+		Arrays.fill(longQuery, 'a');
+		tested.addQuery(new String(longQuery), now);
+		tested.addQuery(" ", now);
+		tested.addQuery(null, now);
+
+		// case - old queries are removed
+		tested.addQuery("old query", now - 8 * QuerySuggestionService.HALF_LIFE_MILLIS);
+		tested.addQuery("new query", now);
+		tested.rebuild(now);
+		Assert.assertEquals(1, tested.getStats().get("queries"));
+		Assert.assertEquals(Collections.singletonList("new query"), tested.suggest("n", 5));
+		Assert.assertTrue(tested.suggest("old", 5).isEmpty());
+		Assert.assertTrue(tested.suggest("a", 5).isEmpty());
+	}
+
+	@Test
+	public void update_statsDisabled() {
+		QuerySuggestionService tested = getTested();
+		Assert.assertEquals(0, tested.update(true));
+		Assert.assertEquals(0L, tested.getStats().get("updates"));
+	}
+
+	@Test
+	public void update() {
+		String indexName = StatsRecordType.SEARCH.getSearchIndexName();
+		String indexType = StatsRecordType.SEARCH.getSearchIndexType();
+		try {
+			long now = System.currentTimeMillis();
+
+			// case - no stats index yet
+			{
+				QuerySuggestionService tested = getTested();
+				Mockito.when(tested.statsClientService.getClient()).thenReturn(prepareESClientForUnitTest());
+				indexDelete(indexName);
+				Assert.assertEquals(0, tested.update(false));
+				Assert.assertEquals(1L, tested.getStats().get("updates"));
+				Assert.assertTrue(tested.suggest("hib", 5).isEmpty());
+			}
+
+			QuerySuggestionService tested = getTested();
+			Mockito.when(tested.statsClientService.getClient()).thenReturn(prepareESClientForUnitTest());
+
+			indexCreate(indexName);
+			indexInsertDocument(indexName, indexType, "1", record("Hibernate", 10, now - 2 * DAY));
+			indexInsertDocument(indexName, indexType, "2", record("hibernate", 5, now - DAY));
+			indexInsertDocument(indexName, indexType, "3", record("hibernate search", 5, now - DAY));
+			// no hits so not used
+			indexInsertDocument(indexName, indexType, "4", record("hibernate nonsense", 0, now - DAY));
+			// too old so not used
+			indexInsertDocument(indexName, indexType, "5", record("hibernate orm", 5, now - 100 * DAY));
+			// no query so not used
+			indexInsertDocument(indexName, indexType, "6", record(null, 5, now - DAY));
+			indexFlushAndRefresh(indexName);
+
+			// case - first update reads history
+			Assert.assertEquals(3, tested.update(false));
+			Assert.assertEquals(Arrays.asList("hibernate", "hibernate search"), tested.suggest("hib", 5));
+
+			// case - incremental update reads only new records
+			indexInsertDocument(indexName, indexType, "7", record("hibernate query", 5, now - DAY));
+			indexFlushAndRefresh(indexName);
+			Assert.assertEquals(0, tested.update(false));
+			Assert.assertEquals(Arrays.asList("hibernate", "hibernate search"), tested.suggest("hib", 5));
+
+			// case - full rebuild reads whole history again
+			Assert.assertEquals(4, tested.update(true));
+			Assert.assertEquals(Arrays.asList("hibernate", "hibernate query", "hibernate search"),
+					tested.suggest("hib", 5));
+
+			Map<String, Object> stats = tested.getStats();
+			Assert.assertEquals(3, stats.get("queries"));
+			Assert.assertEquals(3L, stats.get("updates"));
+			Assert.assertEquals(7L, stats.get("records"));
+			Assert.assertEquals(3L, stats.get("requests"));
+		} finally {
+			finalizeESClientForUnitTest();
+		}
+	}
+
+	private String record(String query, int totalHits, long date) {
+		return "{\"type\":\"search\",\"date\":\"" + ISODateTimeFormat.dateTime().withZoneUTC().print(date) + "\","
+				+ (query != null ? "\"query_string\":\"" + query + "\"," : "") + "\"total_hits\":" + totalHits + "}";
+	}
+
+	@Test
+	public void getStats() {
+		QuerySuggestionService tested = getTested();
+		List<String> ret = tested.suggest("a", 5);
+		Assert.assertTrue(ret.isEmpty());
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(0, stats.get("queries"));
+		Assert.assertEquals(0L, stats.get("updates"));
+		Assert.assertEquals(0L, stats.get("last_update"));
+		Assert.assertEquals(0L, stats.get("records"));
+		Assert.assertEquals(1L, stats.get("requests"));
+		Assert.assertNotNull(stats.get("avg_request_micros"));
+	}
+
+}
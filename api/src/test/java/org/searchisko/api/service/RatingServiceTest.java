@@ -5,6 +5,8 @@
  */
 package org.searchisko.api.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -14,6 +16,8 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.searchisko.api.ContentObjectFields;
 import org.searchisko.api.events.ContentBeforeIndexedEvent;
+import org.searchisko.api.events.ContentBeforeIndexedEvent.BulkContext;
+import org.searchisko.api.events.ContentBulkDeletedEvent;
 import org.searchisko.api.events.ContentDeletedEvent;
 import org.searchisko.api.events.ContributorCodeChangedEvent;
 import org.searchisko.api.events.ContributorDeletedEvent;
@@ -24,6 +28,7 @@ import org.searchisko.persistence.service.RatingPersistenceService.RatingStats;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 /**
@@ -71,6 +76,22 @@ public class RatingServiceTest {
 
 	}
 
+	@Test
+	public void contentBulkDeletedEventHandler() {
+		RatingService tested = getTested();
+
+		// case - invalid event
+		tested.contentBulkDeletedEventHandler(null);
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("type", null));
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("type", new ArrayList<String>()));
+		verifyZeroInteractions(tested.ratingPersistenceService);
+
+		// case - valid event, ratings deleted in one call
+		tested.contentBulkDeletedEventHandler(new ContentBulkDeletedEvent("type", Arrays.asList("id1", "id2")));
+		verify(tested.ratingPersistenceService).deleteRatingsForContent("id1", "id2");
+		verifyNoMoreInteractions(tested.ratingPersistenceService);
+	}
+
 	@Test
 	public void contributorMergedEventHandler() {
 		RatingService tested = getTested();
@@ -167,6 +188,50 @@ public class RatingServiceTest {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void handleContentRatingFields_bulk() {
+		RatingService tested = getTested();
+
+		Map<String, RatingStats> stats = new HashMap<String, RatingStats>();
+		stats.put("id1", new RatingStats("id1", 3, 5));
+		Mockito.when(tested.ratingPersistenceService.countRatingStats(Mockito.anyCollection())).thenReturn(stats);
+		Mockito.when(tested.ratingPersistenceService.countRatingStats("id3")).thenReturn(new RatingStats("id3", 2, 1));
+
+		BulkContext bulkContext = new BulkContext(Arrays.asList("id1", "id2"));
+		Map<String, Object> content1 = new HashMap<String, Object>();
+		tested.handleContentRatingFields(new ContentBeforeIndexedEvent("id1", content1, bulkContext));
+		Map<String, Object> content2 = new HashMap<String, Object>();
+		content2.put(ContentObjectFields.SYS_RATING_NUM, "10");
+		tested.handleContentRatingFields(new ContentBeforeIndexedEvent("id2", content2, bulkContext));
+		// case - content not in bulk is handled separately
+		Map<String, Object> content3 = new HashMap<String, Object>();
+		tested.handleContentRatingFields(new ContentBeforeIndexedEvent("id3", content3, bulkContext));
+
+		Assert.assertEquals(new Double(3), content1.get(ContentObjectFields.SYS_RATING_AVG));
+		Assert.assertEquals(new Long(5), content1.get(ContentObjectFields.SYS_RATING_NUM));
+		Assert.assertNull(content2.get(ContentObjectFields.SYS_RATING_AVG));
+		Assert.assertNull(content2.get(ContentObjectFields.SYS_RATING_NUM));
+		Assert.assertEquals(new Double(2), content3.get(ContentObjectFields.SYS_RATING_AVG));
+
+		// statistics loaded only once for whole bulk
+		verify(tested.ratingPersistenceService).countRatingStats(bulkContext.getContentIds());
+		verify(tested.ratingPersistenceService).countRatingStats("id3");
+		verifyNoMoreInteractions(tested.ratingPersistenceService);
+	}
+
+	@Test
+	public void init() {
+		RatingService tested = getTested();
+		tested.init();
+		verify(tested.ratingPersistenceService).initRatingStats();
+
+		// case - exception is not propagated
+		reset(tested.ratingPersistenceService);
+		Mockito.when(tested.ratingPersistenceService.initRatingStats()).thenThrow(new RuntimeException("DB error"));
+		tested.init();
+	}
+
 	private RatingService getTested() {
 		RatingService ret = new RatingService();
 		ret.ratingPersistenceService = mock(RatingPersistenceService.class);
@@ -0,0 +1,190 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.elasticsearch.common.settings.SettingsException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.searchisko.api.service.SearchConfigSnapshot.SemiParsedFacetConfig;
+import org.searchisko.api.testtools.TestUtils;
+
+/**
+ * Unit test for {@link SearchConfigSnapshot}
+ * 
+ * @author agent (agent at local)
+ */
+public class SearchConfigSnapshotTest {
+
+	private SearchConfigSnapshot getTested(ConfigService configService) {
+		return new SearchConfigSnapshot(configService, Logger.getLogger("testlogger"));
+	}
+
+	@Test
+	public void getQueryFields() {
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Mockito.when(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS)).thenReturn(
+				TestUtils.loadJSONFromClasspathFile("/search/search_fulltext_query_fields.json"));
+		SearchConfigSnapshot tested = getTested(configService);
+
+		Map<String, Float> ret = tested.getQueryFields();
+		Assert.assertEquals(5, ret.size());
+		Assert.assertEquals(new Float(2.5f), ret.get("sys_title"));
+		Assert.assertNull(ret.get("sys_description"));
+		Assert.assertTrue(ret.containsKey("sys_description"));
+		Assert.assertNull(ret.get("sys_contributors.fulltext"));
+		Assert.assertEquals(new Float(1.5f), ret.get("sys_tags"));
+
+		// case - parsed config is reused
+		Assert.assertSame(ret, tested.getQueryFields());
+		Mockito.verify(configService).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+		Mockito.verifyNoMoreInteractions(configService);
+
+		// case - not configured is remembered too
+		Mockito.reset(configService);
+		tested = getTested(configService);
+		Assert.assertNull(tested.getQueryFields());
+		Assert.assertNull(tested.getQueryFields());
+		Mockito.verify(configService).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+		Mockito.verifyNoMoreInteractions(configService);
+	}
+
+	@Test
+	public void getHighlightFields() {
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Map<String, Object> cfg = TestUtils.loadJSONFromClasspathFile("/search/search_fulltext_highlight_fields.json");
+		Mockito.when(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS)).thenReturn(cfg);
+		SearchConfigSnapshot tested = getTested(configService);
+
+		Map<String, int[]> ret = tested.getHighlightFields();
+		Assert.assertEquals(3, ret.size());
+		Assert.assertArrayEquals(new int[] { -1, 0, 0 }, ret.get("sys_title"));
+		Assert.assertArrayEquals(new int[] { 2, 3, 20 }, ret.get("sys_description"));
+		Assert.assertArrayEquals(new int[] { 5, 10, 30 }, ret.get("sys_contributors.fulltext"));
+		Assert.assertSame(ret, tested.getHighlightFields());
+		Mockito.verify(configService).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS);
+		Mockito.verifyNoMoreInteractions(configService);
+
+		// case - invalid configuration is not remembered so exception is thrown again
+		cfg.put("sys_title", "badclass");
+		tested = getTested(configService);
+		for (int i = 0; i < 2; i++) {
+			try {
+				tested.getHighlightFields();
+				Assert.fail("SettingsException expected");
+			} catch (SettingsException e) {
+				// OK
+			}
+		}
+		Mockito.verify(configService, Mockito.times(3)).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_HIGHLIGHT_FIELDS);
+	}
+
+	@Test
+	public void getFacetConfig() {
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Map<String, Object> cfg = TestUtils.loadJSONFromClasspathFile("/search/search_fulltext_facets_fields.json");
+		Mockito.when(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS)).thenReturn(cfg);
+		SearchConfigSnapshot tested = getTested(configService);
+
+		SemiParsedFacetConfig fc = tested.getFacetConfig("top_contributors");
+		Assert.assertEquals("top_contributors", fc.getFacetName());
+		Assert.assertEquals("terms", fc.getFacetType());
+		Assert.assertEquals("sys_contributors", fc.getFieldName());
+		Assert.assertEquals(100, fc.getOptionalSettings().get("size"));
+		Assert.assertTrue(fc.isFiltered());
+		Assert.assertEquals(30, fc.getFilteredSize());
+
+		fc = tested.getFacetConfig("activity_dates_histogram");
+		Assert.assertEquals("date_histogram", fc.getFacetType());
+		Assert.assertFalse(fc.isFiltered());
+
+		Assert.assertNull(tested.getFacetConfig("unknown"));
+
+		Assert.assertEquals("per_sys_type_counts", tested.getFacetNameUsingSysTypeField());
+		Set<String> dh = tested.getFacetNamesUsingDateHistogramFacetType();
+		Assert.assertEquals(1, dh.size());
+		Assert.assertTrue(dh.contains("activity_dates_histogram"));
+
+		Mockito.verify(configService).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS);
+		Mockito.verifyNoMoreInteractions(configService);
+	}
+
+	@Test
+	public void getFacetConfig_invalid() {
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		Map<String, Object> cfg = TestUtils.loadJSONFromClasspathFile("/search/search_fulltext_facets_fields.json");
+		Map<String, Object> bad = new HashMap<>();
+		bad.put("terms", new HashMap<String, Object>());
+		cfg.put("bad_facet", bad);
+		Mockito.when(configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_FACETS_FIELDS)).thenReturn(cfg);
+		SearchConfigSnapshot tested = getTested(configService);
+
+		// case - invalid facet configuration doesn't affect other facets
+		Assert.assertEquals("sys_project", tested.getFacetConfig("per_project_counts").getFieldName());
+		Assert.assertEquals("per_sys_type_counts", tested.getFacetNameUsingSysTypeField());
+		try {
+			tested.getFacetConfig("bad_facet");
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+		try {
+			tested.getFacetNamesUsingDateHistogramFacetType();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+
+		// case - no facets configured
+		Mockito.reset(configService);
+		tested = getTested(configService);
+		Assert.assertNull(tested.getFacetConfig("top_contributors"));
+		Assert.assertEquals("", tested.getFacetNameUsingSysTypeField());
+		Assert.assertTrue(tested.getFacetNamesUsingDateHistogramFacetType().isEmpty());
+	}
+
+	@Test
+	public void getResponseFields() {
+		ConfigService configService = Mockito.mock(ConfigService.class);
+		SearchConfigSnapshot tested = getTested(configService);
+
+		// case - not configured
+		Assert.assertNull(tested.getResponseFields());
+
+		// case - string value
+		Map<String, Object> cfg = new HashMap<>();
+		cfg.put(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS, "aa");
+		Mockito.when(configService.get(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS)).thenReturn(cfg);
+		tested = getTested(configService);
+		Assert.assertArrayEquals(new String[] { "aa" }, tested.getResponseFields());
+
+		// case - list value
+		List<String> l = new ArrayList<>();
+		l.add("bb");
+		l.add("cc");
+		cfg.put(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS, l);
+		tested = getTested(configService);
+		Assert.assertArrayEquals(new String[] { "bb", "cc" }, tested.getResponseFields());
+
+		// case - invalid value
+		cfg.put(ConfigService.CFGNAME_SEARCH_RESPONSE_FIELDS, new HashMap<String, Object>());
+		tested = getTested(configService);
+		try {
+			tested.getResponseFields();
+			Assert.fail("SettingsException expected");
+		} catch (SettingsException e) {
+			// OK
+		}
+	}
+
+}
@@ -16,16 +16,31 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
+import org.elasticsearch.ElasticSearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.ClearScrollRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequestBuilder;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.sort.SortOrder;
 import org.searchisko.api.cache.IndexNamesCache;
+import org.searchisko.api.cache.SearchConfigCache;
+import org.searchisko.api.cache.SearchResultCache;
 import org.searchisko.api.model.PastIntervalValue;
 import org.searchisko.api.model.QuerySettings;
 import org.searchisko.api.model.QuerySettings.Filters;
+import org.searchisko.api.model.SearchCursor;
 import org.searchisko.api.model.SortByValue;
 import org.searchisko.api.testtools.TestUtils;
 import org.junit.Assert;
@@ -69,6 +84,122 @@ public class SearchServiceTest {
 
 	}
 
+	@Test
+	public void getSearchConfig_cached() {
+		SearchService tested = new SearchService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.configService = Mockito.mock(ConfigService.class);
+		Mockito.when(tested.configService.get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS)).thenReturn(
+				TestUtils.loadJSONFromClasspathFile("/search/search_fulltext_query_fields.json"));
+		tested.searchConfigCache = new SearchConfigCache();
+
+		QuerySettings querySettings = new QuerySettings();
+		querySettings.setQuery("query");
+		tested.handleFulltextSearchSettings(querySettings);
+		tested.handleFulltextSearchSettings(querySettings);
+		// configuration is read only once for more search requests
+		Mockito.verify(tested.configService).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+		Mockito.verifyNoMoreInteractions(tested.configService);
+
+		// configuration is read again after cache flush
+		tested.searchConfigCache.flush();
+		tested.handleFulltextSearchSettings(querySettings);
+		Mockito.verify(tested.configService, Mockito.times(2)).get(ConfigService.CFGNAME_SEARCH_FULLTEXT_QUERY_FIELDS);
+	}
+
+	@Test
+	public void prepareSearchResultCacheKey() {
+		QuerySettings qs1 = new QuerySettings();
+		QuerySettings qs2 = new QuerySettings();
+		Assert.assertEquals(SearchService.prepareSearchResultCacheKey(qs1), SearchService.prepareSearchResultCacheKey(qs2));
+
+		// case - order of filter values and facets doesn't matter
+		qs1.setQuery("query");
+		qs1.getFiltersInit().addProject("p1");
+		qs1.getFiltersInit().addProject("p2");
+		qs1.addFacet("f1");
+		qs1.addFacet("f2");
+		qs2.setQuery("query");
+		qs2.getFiltersInit().addProject("p2");
+		qs2.getFiltersInit().addProject("p1");
+		qs2.addFacet("f2");
+		qs2.addFacet("f1");
+		Assert.assertEquals(SearchService.prepareSearchResultCacheKey(qs1), SearchService.prepareSearchResultCacheKey(qs2));
+
+		// case - highlight is ignored without query, size is normalized
+		qs1.setQuery(null);
+		qs2.setQuery(null);
+		qs1.setQueryHighlight(true);
+		qs1.getFilters().setSize(1000);
+		qs2.getFilters().setSize(SearchService.RESPONSE_MAX_SIZE);
+		Assert.assertEquals(SearchService.prepareSearchResultCacheKey(qs1), SearchService.prepareSearchResultCacheKey(qs2));
+
+		// case - distinct values
+		qs2.getFilters().setSize(10);
+		Assert.assertFalse(SearchService.prepareSearchResultCacheKey(qs1).equals(
+				SearchService.prepareSearchResultCacheKey(qs2)));
+		qs2.getFilters().setSize(SearchService.RESPONSE_MAX_SIZE);
+		qs2.getFilters().addTag("p1");
+		qs2.getFilters().setProjects(null);
+		qs2.getFilters().addProject("p2");
+		Assert.assertFalse(SearchService.prepareSearchResultCacheKey(qs1).equals(
+				SearchService.prepareSearchResultCacheKey(qs2)));
+
+		// case - empty fields differ from default fields
+		qs1 = new QuerySettings();
+		qs2 = new QuerySettings();
+		qs2.setFields(new ArrayList<String>());
+		Assert.assertFalse(SearchService.prepareSearchResultCacheKey(qs1).equals(
+				SearchService.prepareSearchResultCacheKey(qs2)));
+
+		// case - cursor is part of key
+		qs1 = new QuerySettings();
+		qs1.setSortBy(SortByValue.NEW);
+		qs1.getFiltersInit().setCursor(new SearchCursor(SortByValue.NEW, 10L, "t#1"));
+		qs2 = new QuerySettings();
+		qs2.setSortBy(SortByValue.NEW);
+		qs2.getFiltersInit().setCursor(new SearchCursor(SortByValue.NEW, 10L, "t#2"));
+		Assert.assertFalse(SearchService.prepareSearchResultCacheKey(qs1).equals(
+				SearchService.prepareSearchResultCacheKey(qs2)));
+		qs2.getFilters().setCursor(new SearchCursor(SortByValue.NEW, 10L, "t#1"));
+		Assert.assertEquals(SearchService.prepareSearchResultCacheKey(qs1), SearchService.prepareSearchResultCacheKey(qs2));
+
+		// case - first page of cursor pagination differs from common request
+		qs1 = new QuerySettings();
+		qs1.setSortBy(SortByValue.NEW);
+		qs2 = new QuerySettings();
+		qs2.setSortBy(SortByValue.NEW);
+		qs2.getFiltersInit().setCursorPaging(true);
+		Assert.assertFalse(SearchService.prepareSearchResultCacheKey(qs1).equals(
+				SearchService.prepareSearchResultCacheKey(qs2)));
+	}
+
+	@Test
+	public void getLastContentChangeTime() {
+		SearchService tested = new SearchService();
+		QuerySettings qs = new QuerySettings();
+
+		// case - no cache
+		Assert.assertNull(tested.getLastContentChangeTime(qs));
+
+		tested.searchResultCache = Mockito.mock(SearchResultCache.class);
+		long t = System.currentTimeMillis() - SearchService.CONTENT_CHANGE_VISIBILITY_DELAY;
+		Mockito.when(tested.searchResultCache.getLastChangeTime(null)).thenReturn(t);
+		Mockito.when(tested.searchResultCache.getLastChangeTime("type1")).thenReturn(t - 1000);
+		Assert.assertEquals(new Long(t), tested.getLastContentChangeTime(qs));
+		qs.getFiltersInit().setContentType("type1");
+		Assert.assertEquals(new Long(t - 1000), tested.getLastContentChangeTime(qs));
+
+		// case - change which may not be visible to search yet
+		Mockito.when(tested.searchResultCache.getLastChangeTime("type1")).thenReturn(System.currentTimeMillis());
+		Assert.assertNull(tested.getLastContentChangeTime(qs));
+
+		// case - result depends on current time
+		Mockito.when(tested.searchResultCache.getLastChangeTime("type1")).thenReturn(t - 1000);
+		qs.getFilters().setActivityDateInterval(PastIntervalValue.WEEK);
+		Assert.assertNull(tested.getLastContentChangeTime(qs));
+	}
+
 	@Test
 	public void prepareIndexNamesCacheKey() {
 
@@ -148,9 +279,9 @@ public class SearchServiceTest {
 			Mockito.reset(tested.providerService, searchRequestBuilderMock, tested.indexNamesCache);
 			String testedType = "provider1_issue";
 			filters.setContentType(testedType);
-			Mockito.when(tested.providerService.findContentType(testedType)).thenReturn(
-					((Map<String, Map<String, Object>>) TestUtils.loadJSONFromClasspathFile("/search/provider_1.json").get(
-							ProviderService.TYPE)).get(testedType));
+			Mockito.when(tested.providerService.findContentTypeDescriptor(testedType)).thenReturn(
+					new ContentTypeDescriptor("provider1", testedType, ((Map<String, Map<String, Object>>) TestUtils
+							.loadJSONFromClasspathFile("/search/provider_1.json").get(ProviderService.TYPE)).get(testedType)));
 			tested.handleSearchIndicesAndTypes(querySettings, searchRequestBuilderMock);
 			Mockito.verifyZeroInteractions(tested.indexNamesCache);
 			Mockito.verify(searchRequestBuilderMock).setIndices(new String[] { "idx_provider1_issue" });
@@ -163,9 +294,9 @@ public class SearchServiceTest {
 			Mockito.reset(tested.providerService, searchRequestBuilderMock, tested.indexNamesCache);
 			String testedType = "provider1_mailing";
 			filters.setContentType(testedType);
-			Mockito.when(tested.providerService.findContentType(testedType)).thenReturn(
-					((Map<String, Map<String, Object>>) TestUtils.loadJSONFromClasspathFile("/search/provider_1.json").get(
-							ProviderService.TYPE)).get(testedType));
+			Mockito.when(tested.providerService.findContentTypeDescriptor(testedType)).thenReturn(
+					new ContentTypeDescriptor("provider1", testedType, ((Map<String, Map<String, Object>>) TestUtils
+							.loadJSONFromClasspathFile("/search/provider_1.json").get(ProviderService.TYPE)).get(testedType)));
 			tested.handleSearchIndicesAndTypes(querySettings, searchRequestBuilderMock);
 			Mockito.verifyZeroInteractions(tested.indexNamesCache);
 			Mockito.verify(searchRequestBuilderMock).setIndices(
@@ -179,9 +310,9 @@ public class SearchServiceTest {
 			Mockito.reset(tested.providerService, searchRequestBuilderMock, tested.indexNamesCache);
 			String testedType = "provider1_cosi";
 			filters.setContentType(testedType);
-			Mockito.when(tested.providerService.findContentType(testedType)).thenReturn(
-					((Map<String, Map<String, Object>>) TestUtils.loadJSONFromClasspathFile("/search/provider_1.json").get(
-							ProviderService.TYPE)).get(testedType));
+			Mockito.when(tested.providerService.findContentTypeDescriptor(testedType)).thenReturn(
+					new ContentTypeDescriptor("provider1", testedType, ((Map<String, Map<String, Object>>) TestUtils
+							.loadJSONFromClasspathFile("/search/provider_1.json").get(ProviderService.TYPE)).get(testedType)));
 			tested.handleSearchIndicesAndTypes(querySettings, searchRequestBuilderMock);
 			Mockito.verifyZeroInteractions(tested.indexNamesCache);
 			Mockito.verify(searchRequestBuilderMock)
@@ -1026,6 +1157,160 @@ public class SearchServiceTest {
 			Mockito.verify(srbMock).addSort("sys_created", SortOrder.DESC);
 			Mockito.verifyNoMoreInteractions(srbMock);
 		}
+
+		// case - unique secondary sort only for cursor pagination
+		{
+			Mockito.reset(srbMock);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.NEW);
+			querySettings.getFiltersInit().setCursorPaging(true);
+			tested.handleSortingSettings(querySettings, srbMock);
+			Mockito.verify(srbMock).addSort("sys_last_activity_date", SortOrder.DESC);
+			Mockito.verify(srbMock).addSort("_uid", SortOrder.ASC);
+			Mockito.verifyNoMoreInteractions(srbMock);
+		}
+		{
+			Mockito.reset(srbMock);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.OLD);
+			querySettings.getFiltersInit().setCursor(new SearchCursor(SortByValue.OLD, 10L, "t#1"));
+			tested.handleSortingSettings(querySettings, srbMock);
+			Mockito.verify(srbMock).addSort("sys_last_activity_date", SortOrder.ASC);
+			Mockito.verify(srbMock).addSort("_uid", SortOrder.ASC);
+			Mockito.verifyNoMoreInteractions(srbMock);
+		}
+	}
+
+	@Test
+	public void handleCursorSettings() throws IOException {
+		SearchService tested = new SearchService();
+		tested.log = Logger.getLogger("testlogger");
+
+		// case - no cursor
+		{
+			SearchRequestBuilder srbMock = Mockito.mock(SearchRequestBuilder.class);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.NEW);
+			tested.handleCursorSettings(querySettings, srbMock);
+			Mockito.verifyZeroInteractions(srbMock);
+		}
+
+		// case - first page of cursor pagination
+		{
+			SearchRequestBuilder srbMock = Mockito.mock(SearchRequestBuilder.class);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.NEW);
+			querySettings.getFiltersInit().setCursorPaging(true);
+			tested.handleCursorSettings(querySettings, srbMock);
+			Mockito.verifyZeroInteractions(srbMock);
+
+			querySettings.setSortBy(SortByValue.SCORE);
+			try {
+				tested.handleCursorSettings(querySettings, srbMock);
+				Assert.fail("IllegalArgumentException expected");
+			} catch (IllegalArgumentException e) {
+				Assert.assertEquals("cursor", e.getMessage());
+			}
+		}
+
+		// case - cursor not valid for sorting
+		{
+			SearchRequestBuilder srbMock = Mockito.mock(SearchRequestBuilder.class);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.OLD);
+			querySettings.getFiltersInit().setCursor(new SearchCursor(SortByValue.NEW, 10L, "t#1"));
+			try {
+				tested.handleCursorSettings(querySettings, srbMock);
+				Assert.fail("IllegalArgumentException expected");
+			} catch (IllegalArgumentException e) {
+				Assert.assertEquals("cursor", e.getMessage());
+			}
+			querySettings.setSortBy(SortByValue.SCORE);
+			querySettings.getFiltersInit().setCursor(new SearchCursor(SortByValue.SCORE, 10L, "t#1"));
+			try {
+				tested.handleCursorSettings(querySettings, srbMock);
+				Assert.fail("IllegalArgumentException expected");
+			} catch (IllegalArgumentException e) {
+				Assert.assertEquals("cursor", e.getMessage());
+			}
+			Mockito.verifyZeroInteractions(srbMock);
+		}
+
+		// case - descending sort
+		{
+			SearchRequestBuilder srb = new SearchRequestBuilder(null);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.NEW);
+			querySettings.getFiltersInit().setCursor(new SearchCursor(SortByValue.NEW, 1000L, "t#1"));
+			tested.handleCursorSettings(querySettings, srb);
+			String json = srb.toString();
+			TestUtils.assertJsonContent("{\"filter\":{\"or\":{\"filters\":[" //
+					+ "{\"range\":{\"sys_last_activity_date\":{\"from\":null,\"to\":1000,\"include_lower\":true,\"include_upper\":false},\"_cache\":false}}," //
+					+ "{\"and\":{\"filters\":[" //
+					+ "{\"range\":{\"sys_last_activity_date\":{\"from\":1000,\"to\":1000,\"include_lower\":true,\"include_upper\":true},\"_cache\":false}}," //
+					+ "{\"range\":{\"_uid\":{\"from\":\"t#1\",\"to\":null,\"include_lower\":false,\"include_upper\":true},\"_cache\":false}}]}}," //
+					+ "{\"missing\":{\"field\":\"sys_last_activity_date\"}}]}}}", json);
+		}
+
+		// case - ascending sort, last hit without sort value
+		{
+			SearchRequestBuilder srb = new SearchRequestBuilder(null);
+			QuerySettings querySettings = new QuerySettings();
+			querySettings.setSortBy(SortByValue.OLD);
+			querySettings.getFiltersInit().setCursor(new SearchCursor(SortByValue.OLD, null, "t#1"));
+			tested.handleCursorSettings(querySettings, srb);
+			TestUtils.assertJsonContent("{\"filter\":{\"and\":{\"filters\":[" //
+					+ "{\"missing\":{\"field\":\"sys_last_activity_date\"}}," //
+					+ "{\"range\":{\"_uid\":{\"from\":\"t#1\",\"to\":null,\"include_lower\":false,\"include_upper\":true},\"_cache\":false}}]}}}",
+					srb.toString());
+		}
+	}
+
+	@Test
+	public void prepareNextCursor() {
+		QuerySettings querySettings = new QuerySettings();
+		SearchResponse sr = Mockito.mock(SearchResponse.class);
+		SearchHits searchHits = Mockito.mock(SearchHits.class);
+		Mockito.when(sr.getHits()).thenReturn(searchHits);
+		SearchHit hit1 = Mockito.mock(SearchHit.class);
+		SearchHit hit2 = Mockito.mock(SearchHit.class);
+		Mockito.when(hit2.getType()).thenReturn("t");
+		Mockito.when(hit2.getId()).thenReturn("id2");
+		Mockito.when(hit2.getSortValues()).thenReturn(new Object[] { 1000L, "t#id2" });
+		Mockito.when(searchHits.getHits()).thenReturn(new SearchHit[] { hit1, hit2 });
+
+		// case - sorting by score doesn't support cursor
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
+		querySettings.setSortBy(SortByValue.SCORE);
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
+
+		// case - cursor pagination not requested
+		querySettings.setSortBy(SortByValue.NEW);
+		querySettings.getFiltersInit().setSize(2);
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
+
+		// case - page not full so there is no next page
+		querySettings.getFiltersInit().setSize(null);
+		querySettings.getFiltersInit().setCursorPaging(true);
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
+		querySettings.getFiltersInit().setSize(3);
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
+
+		// case - cursor from last hit
+		querySettings.getFiltersInit().setSize(2);
+		SearchCursor c = SearchCursor.decode(SearchService.prepareNextCursor(querySettings, sr));
+		Assert.assertEquals(SortByValue.NEW, c.getSortBy());
+		Assert.assertEquals(new Long(1000L), c.getSortValue());
+		Assert.assertEquals("t#id2", c.getUid());
+
+		// case - last hit without sort value
+		Mockito.when(hit2.getSortValues()).thenReturn(new Object[] { Long.MIN_VALUE, "t#id2" });
+		c = SearchCursor.decode(SearchService.prepareNextCursor(querySettings, sr));
+		Assert.assertNull(c.getSortValue());
+
+		// case - no hits
+		Mockito.when(searchHits.getHits()).thenReturn(new SearchHit[0]);
+		Assert.assertNull(SearchService.prepareNextCursor(querySettings, sr));
 	}
 
 	@Test
@@ -1412,4 +1697,303 @@ public class SearchServiceTest {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void monitorAsync() {
+		SearchService tested = new SearchService();
+
+		Map<String, Object> stats = tested.getAsyncStats();
+		Assert.assertEquals(0, stats.get("in_flight"));
+		Assert.assertEquals(0L, stats.get("completed"));
+		Assert.assertEquals(0L, stats.get("failed"));
+
+		ActionListener<String> listener1 = Mockito.mock(ActionListener.class);
+		ActionListener<String> listener2 = Mockito.mock(ActionListener.class);
+		ActionListener<String> monitored1 = tested.monitorAsync(listener1);
+		ActionListener<String> monitored2 = tested.monitorAsync(listener2);
+		Assert.assertEquals(2, tested.getAsyncStats().get("in_flight"));
+
+		// case - response passed to wrapped listener
+		monitored1.onResponse("resp");
+		Mockito.verify(listener1).onResponse("resp");
+		Mockito.verifyNoMoreInteractions(listener1);
+		stats = tested.getAsyncStats();
+		Assert.assertEquals(1, stats.get("in_flight"));
+		Assert.assertEquals(1L, stats.get("completed"));
+		Assert.assertEquals(0L, stats.get("failed"));
+
+		// case - failure passed to wrapped listener
+		RuntimeException e = new RuntimeException("test");
+		monitored2.onFailure(e);
+		Mockito.verify(listener2).onFailure(e);
+		Mockito.verifyNoMoreInteractions(listener2);
+		stats = tested.getAsyncStats();
+		Assert.assertEquals(0, stats.get("in_flight"));
+		Assert.assertEquals(1L, stats.get("completed"));
+		Assert.assertEquals(1L, stats.get("failed"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void performSearchAsync_coalescing() {
+		SearchService tested = Mockito.spy(new SearchService());
+		tested.statsClientService = Mockito.mock(StatsClientService.class);
+		tested.log = Logger.getLogger("testlogger");
+
+		final List<ActionListener<SearchResponse>> esListeners = new ArrayList<>();
+		SearchRequestBuilder srb = Mockito.mock(SearchRequestBuilder.class);
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				esListeners.add((ActionListener<SearchResponse>) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(srb).execute(Mockito.any(ActionListener.class));
+		Mockito.doReturn(srb).when(tested).prepareSearchRequest(Mockito.any(QuerySettings.class));
+
+		QuerySettings qs1 = new QuerySettings();
+		qs1.setQuery("jboss");
+		QuerySettings qs1same = new QuerySettings();
+		qs1same.setQuery("jboss");
+		QuerySettings qs2 = new QuerySettings();
+		qs2.setQuery("wildfly");
+
+		ActionListener<SearchResponse> l1 = Mockito.mock(ActionListener.class);
+		ActionListener<SearchResponse> l2 = Mockito.mock(ActionListener.class);
+		ActionListener<SearchResponse> l3 = Mockito.mock(ActionListener.class);
+		ActionListener<SearchResponse> l4 = Mockito.mock(ActionListener.class);
+
+		// case - identical requests are coalesced, different ones not
+		tested.performSearchAsync(qs1, "uuid1", StatsRecordType.SEARCH, true, l1);
+		tested.performSearchAsync(qs1same, "uuid2", StatsRecordType.SEARCH, true, l2);
+		tested.performSearchAsync(qs2, "uuid3", StatsRecordType.SEARCH, true, l3);
+		Assert.assertEquals(2, esListeners.size());
+		Assert.assertEquals(1L, tested.getAsyncStats().get("coalesced"));
+		Assert.assertEquals(2, tested.getAsyncStats().get("in_flight"));
+
+		// case - request with result sharing denied is never coalesced
+		tested.performSearchAsync(qs1, "uuid4", StatsRecordType.SEARCH, false, l4);
+		Assert.assertEquals(3, esListeners.size());
+		Assert.assertEquals(1L, tested.getAsyncStats().get("coalesced"));
+
+		// case - shared response passed to all callers, each caller gets own stats record
+		SearchResponse sr1 = Mockito.mock(SearchResponse.class);
+		esListeners.get(0).onResponse(sr1);
+		Mockito.verify(l1).onResponse(sr1);
+		Mockito.verify(l2).onResponse(sr1);
+		Mockito.verifyZeroInteractions(l3, l4);
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH),
+				Mockito.eq("uuid1"), Mockito.eq(sr1), Mockito.anyLong(), Mockito.eq(qs1));
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH),
+				Mockito.eq("uuid2"), Mockito.eq(sr1), Mockito.anyLong(), Mockito.eq(qs1same));
+
+		// case - failure passed to all callers
+		ActionListener<SearchResponse> l5 = Mockito.mock(ActionListener.class);
+		tested.performSearchAsync(qs2, "uuid5", StatsRecordType.SEARCH, true, l5);
+		Assert.assertEquals(3, esListeners.size());
+		Assert.assertEquals(2L, tested.getAsyncStats().get("coalesced"));
+		RuntimeException e = new RuntimeException("test");
+		esListeners.get(1).onFailure(e);
+		Mockito.verify(l3).onFailure(e);
+		Mockito.verify(l5).onFailure(e);
+
+		// case - finished search is not reused
+		tested.performSearchAsync(qs1, "uuid6", StatsRecordType.SEARCH, true, l1);
+		Assert.assertEquals(4, esListeners.size());
+		Assert.assertEquals(2L, tested.getAsyncStats().get("coalesced"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void performSearchAsync_executeFailure() {
+		SearchService tested = Mockito.spy(new SearchService());
+		tested.statsClientService = Mockito.mock(StatsClientService.class);
+		tested.log = Logger.getLogger("testlogger");
+
+		SearchRequestBuilder srb = Mockito.mock(SearchRequestBuilder.class);
+		RuntimeException e = new RuntimeException("No node available");
+		Mockito.doThrow(e).when(srb).execute(Mockito.any(ActionListener.class));
+		Mockito.doReturn(srb).when(tested).prepareSearchRequest(Mockito.any(QuerySettings.class));
+
+		QuerySettings qs = new QuerySettings();
+		qs.setQuery("jboss");
+		ActionListener<SearchResponse> l1 = Mockito.mock(ActionListener.class);
+		ActionListener<SearchResponse> l2 = Mockito.mock(ActionListener.class);
+
+		// case - failure passed to caller and pending search released, so next identical search is not attached to it
+		tested.performSearchAsync(qs, "uuid1", StatsRecordType.SEARCH, true, l1);
+		Mockito.verify(l1).onFailure(e);
+		tested.performSearchAsync(qs, "uuid2", StatsRecordType.SEARCH, true, l2);
+		Mockito.verify(l2).onFailure(e);
+		Mockito.verify(srb, Mockito.times(2)).execute(Mockito.any(ActionListener.class));
+
+		// case - failure passed to caller if search result cache is not used
+		ActionListener<SearchResponse> l3 = Mockito.mock(ActionListener.class);
+		tested.performSearchAsync(qs, "uuid3", StatsRecordType.SEARCH, false, l3);
+		Mockito.verify(l3).onFailure(e);
+
+		Map<String, Object> stats = tested.getAsyncStats();
+		Assert.assertEquals(0L, stats.get("coalesced"));
+		Assert.assertEquals(0, stats.get("in_flight"));
+		Assert.assertEquals(3L, stats.get("failed"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void performMultiSearchAsync() {
+		SearchService tested = Mockito.spy(new SearchService());
+		tested.statsClientService = Mockito.mock(StatsClientService.class);
+		tested.searchClientService = Mockito.mock(SearchClientService.class);
+		tested.log = Logger.getLogger("testlogger");
+		Client client = Mockito.mock(Client.class);
+		Mockito.when(tested.searchClientService.getClient()).thenReturn(client);
+		MultiSearchRequestBuilder msrb = Mockito.mock(MultiSearchRequestBuilder.class);
+		Mockito.when(client.prepareMultiSearch()).thenReturn(msrb);
+		final List<ActionListener<MultiSearchResponse>> esListeners = new ArrayList<>();
+		Mockito.doAnswer(new Answer<Object>() {
+			@Override
+			public Object answer(InvocationOnMock invocation) throws Throwable {
+				esListeners.add((ActionListener<MultiSearchResponse>) invocation.getArguments()[0]);
+				return null;
+			}
+		}).when(msrb).execute(Mockito.any(ActionListener.class));
+
+		QuerySettings qs1 = new QuerySettings();
+		qs1.setQuery("jboss");
+		QuerySettings qs2 = new QuerySettings();
+		qs2.setQuery("wildfly");
+		SearchRequestBuilder srb1 = Mockito.mock(SearchRequestBuilder.class);
+		SearchRequestBuilder srb2 = Mockito.mock(SearchRequestBuilder.class);
+		Mockito.doReturn(srb1).when(tested).prepareSearchRequest(qs1);
+		Mockito.doReturn(srb2).when(tested).prepareSearchRequest(qs2);
+
+		// case - one request with all searches, one stats record for each search
+		ActionListener<MultiSearchResponse> listener = Mockito.mock(ActionListener.class);
+		tested.performMultiSearchAsync(Arrays.asList(qs1, qs2), Arrays.asList("uuid1", "uuid2"), StatsRecordType.SEARCH,
+				listener);
+		Mockito.verify(msrb).add(srb1);
+		Mockito.verify(msrb).add(srb2);
+		Assert.assertEquals(1, esListeners.size());
+		SearchResponse sr1 = Mockito.mock(SearchResponse.class);
+		MultiSearchResponse.Item item1 = Mockito.mock(MultiSearchResponse.Item.class);
+		Mockito.when(item1.getResponse()).thenReturn(sr1);
+		MultiSearchResponse.Item item2 = Mockito.mock(MultiSearchResponse.Item.class);
+		Mockito.when(item2.isFailure()).thenReturn(true);
+		Mockito.when(item2.getFailureMessage()).thenReturn("test failure");
+		MultiSearchResponse msr = Mockito.mock(MultiSearchResponse.class);
+		Mockito.when(msr.getResponses()).thenReturn(new MultiSearchResponse.Item[] { item1, item2 });
+		esListeners.get(0).onResponse(msr);
+		Mockito.verify(listener).onResponse(msr);
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH),
+				Mockito.eq("uuid1"), Mockito.eq(sr1), Mockito.anyLong(), Mockito.eq(qs1));
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH),
+				Mockito.any(ElasticSearchException.class), Mockito.anyLong(), Mockito.eq(qs2));
+		Mockito.verifyNoMoreInteractions(tested.statsClientService);
+
+		// case - failure of whole request, stats record written for each search
+		Mockito.reset(tested.statsClientService);
+		listener = Mockito.mock(ActionListener.class);
+		tested.performMultiSearchAsync(Arrays.asList(qs1, qs2), Arrays.asList("uuid3", "uuid4"), StatsRecordType.SEARCH,
+				listener);
+		ElasticSearchException e = new ElasticSearchException("test");
+		esListeners.get(1).onFailure(e);
+		Mockito.verify(listener).onFailure(e);
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH), Mockito.eq(e),
+				Mockito.anyLong(), Mockito.eq(qs1));
+		Mockito.verify(tested.statsClientService).writeStatisticsRecord(Mockito.eq(StatsRecordType.SEARCH), Mockito.eq(e),
+				Mockito.anyLong(), Mockito.eq(qs2));
+
+		// case - request execution fails synchronously, failure passed to caller
+		RuntimeException re = new RuntimeException("No node available");
+		Mockito.doThrow(re).when(msrb).execute(Mockito.any(ActionListener.class));
+		listener = Mockito.mock(ActionListener.class);
+		tested.performMultiSearchAsync(Arrays.asList(qs1, qs2), Arrays.asList("uuid5", "uuid6"), StatsRecordType.SEARCH,
+				listener);
+		Mockito.verify(listener).onFailure(re);
+		Assert.assertEquals(0, tested.getAsyncStats().get("in_flight"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void performExport() throws IOException {
+		SearchService tested = new SearchService();
+		tested.log = Logger.getLogger("testlogger");
+		tested.searchClientService = Mockito.mock(SearchClientService.class);
+		Client client = Mockito.mock(Client.class);
+		Mockito.when(tested.searchClientService.getClient()).thenReturn(client);
+
+		SearchResponse page1 = mockExportPage("scroll2", 2);
+		SearchResponse page2 = mockExportPage("scroll3", 1);
+		SearchResponse page3 = mockExportPage("scroll4", 0);
+		SearchScrollRequestBuilder ssrb = Mockito.mock(SearchScrollRequestBuilder.class);
+		Mockito.when(ssrb.setScroll(Mockito.any(TimeValue.class))).thenReturn(ssrb);
+		ListenableActionFuture<SearchResponse> future = Mockito.mock(ListenableActionFuture.class);
+		Mockito.when(future.actionGet()).thenReturn(page1, page2, page3);
+		Mockito.when(ssrb.execute()).thenReturn(future);
+		Mockito.when(client.prepareSearchScroll(Mockito.anyString())).thenReturn(ssrb);
+		ClearScrollRequestBuilder csrb = Mockito.mock(ClearScrollRequestBuilder.class);
+		Mockito.when(csrb.addScrollId(Mockito.anyString())).thenReturn(csrb);
+		Mockito.when(client.prepareClearScroll()).thenReturn(csrb);
+
+		// case - all pages passed to handler, scroll cleared
+		final List<Integer> pageSizes = new ArrayList<>();
+		long ret = tested.performExport("scroll1", new SearchService.ExportPageHandler() {
+			@Override
+			public void handlePage(SearchHit[] hits) throws IOException {
+				pageSizes.add(hits.length);
+			}
+		});
+		Assert.assertEquals(3L, ret);
+		Assert.assertEquals(Arrays.asList(2, 1), pageSizes);
+		Mockito.verify(client).prepareSearchScroll("scroll1");
+		Mockito.verify(client).prepareSearchScroll("scroll2");
+		Mockito.verify(client).prepareSearchScroll("scroll3");
+		Mockito.verify(csrb).addScrollId("scroll4");
+		Mockito.verify(csrb).execute();
+		Map<String, Object> stats = tested.getExportStats();
+		Assert.assertEquals(0, stats.get("active"));
+		Assert.assertEquals(1L, stats.get("completed"));
+		Assert.assertEquals(0L, stats.get("failed"));
+		Assert.assertEquals(3L, stats.get("hits"));
+		Map<String, Object> last = (Map<String, Object>) stats.get("last_export");
+		Assert.assertEquals(3L, last.get("hits"));
+		Assert.assertEquals(2L, last.get("pages"));
+
+		// case - handler failure stops export, scroll cleared
+		Mockito.reset(future, csrb);
+		Mockito.when(future.actionGet()).thenReturn(page1, page2, page3);
+		Mockito.when(csrb.addScrollId(Mockito.anyString())).thenReturn(csrb);
+		try {
+			tested.performExport("scroll1", new SearchService.ExportPageHandler() {
+				@Override
+				public void handlePage(SearchHit[] hits) throws IOException {
+					throw new IOException("client disconnected");
+				}
+			});
+			Assert.fail("IOException expected");
+		} catch (IOException e) {
+			// OK
+		}
+		Mockito.verify(csrb).addScrollId("scroll2");
+		Mockito.verify(csrb).execute();
+		stats = tested.getExportStats();
+		Assert.assertEquals(0, stats.get("active"));
+		Assert.assertEquals(1L, stats.get("completed"));
+		Assert.assertEquals(1L, stats.get("failed"));
+		Assert.assertEquals(3L, stats.get("hits"));
+	}
+
+	private SearchResponse mockExportPage(String scrollId, int hitCount) {
+		SearchResponse sr = Mockito.mock(SearchResponse.class);
+		Mockito.when(sr.getScrollId()).thenReturn(scrollId);
+		SearchHits hits = Mockito.mock(SearchHits.class);
+		SearchHit[] ha = new SearchHit[hitCount];
+		for (int i = 0; i < hitCount; i++) {
+			ha[i] = Mockito.mock(SearchHit.class);
+		}
+		Mockito.when(hits.getHits()).thenReturn(ha);
+		Mockito.when(sr.getHits()).thenReturn(hits);
+		return sr;
+	}
+
 }
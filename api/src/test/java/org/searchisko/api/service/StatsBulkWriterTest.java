@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.service;
+
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.searchisko.api.model.StatsConfiguration.OverflowPolicy;
+
+/**
+ * Unit test for {@link StatsBulkWriter}.
+ *
+ * @author agent (agent at local)
+ */
+public class StatsBulkWriterTest {
+
+	private static final Logger log = Logger.getLogger("testlogger");
+
+	private IndexRequest ir(String id) {
+		return Requests.indexRequest().index("stats").type("search").id(id).source("{\"a\":\"b\"}");
+	}
+
+	@SuppressWarnings("unchecked")
+	private Client mockClient(final int[] bulkSizes) {
+		Client client = Mockito.mock(Client.class);
+		Mockito.when(client.bulk(Mockito.any(BulkRequest.class))).thenAnswer(new Answer<ActionFuture<BulkResponse>>() {
+			@Override
+			public ActionFuture<BulkResponse> answer(InvocationOnMock invocation) throws Throwable {
+				BulkRequest br = (BulkRequest) invocation.getArguments()[0];
+				if (bulkSizes != null)
+					bulkSizes[bulkSizes[0]++ + 1] = br.numberOfActions();
+				BulkResponse resp = Mockito.mock(BulkResponse.class);
+				Mockito.when(resp.hasFailures()).thenReturn(false);
+				ActionFuture<BulkResponse> f = Mockito.mock(ActionFuture.class);
+				Mockito.when(f.actionGet()).thenReturn(resp);
+				return f;
+			}
+		});
+		return client;
+	}
+
+	@Test
+	public void enqueue_flush() {
+		int[] bulkSizes = new int[10];
+		Client client = mockClient(bulkSizes);
+		StatsBulkWriter tested = new StatsBulkWriter(client, 16, 3, 1000, OverflowPolicy.DROP_NEWEST, null, log);
+
+		// case - nothing to flush
+		Assert.assertEquals(0, tested.flush());
+		Mockito.verifyZeroInteractions(client);
+
+		for (int i = 0; i < 5; i++) {
+			Assert.assertTrue(tested.enqueue(ir("" + i)));
+		}
+		// case - flush is limited by bulk size
+		Assert.assertEquals(3, tested.flush());
+		Assert.assertEquals(2, tested.flush());
+		Assert.assertEquals(0, tested.flush());
+		Assert.assertEquals(2, bulkSizes[0]);
+		Assert.assertEquals(3, bulkSizes[1]);
+		Assert.assertEquals(2, bulkSizes[2]);
+
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(true, stats.get("enabled"));
+		Assert.assertEquals(5L, stats.get("enqueued"));
+		Assert.assertEquals(5L, stats.get("flushed"));
+		Assert.assertEquals(0L, stats.get("dropped"));
+		Assert.assertEquals(0L, stats.get("failed"));
+		Assert.assertEquals(2L, stats.get("bulks"));
+		Assert.assertEquals(0, stats.get("buffer_size"));
+	}
+
+	@Test
+	public void enqueue_overflow_dropNewest() {
+		StatsBulkWriter tested = new StatsBulkWriter(mockClient(null), 2, 10, 1000, OverflowPolicy.DROP_NEWEST, null, log);
+		Assert.assertTrue(tested.enqueue(ir("1")));
+		Assert.assertTrue(tested.enqueue(ir("2")));
+		Assert.assertFalse(tested.enqueue(ir("3")));
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(2L, stats.get("enqueued"));
+		Assert.assertEquals(1L, stats.get("dropped"));
+		Assert.assertEquals(2, stats.get("buffer_size"));
+	}
+
+	@Test
+	public void enqueue_overflow_dropOldest() {
+		StatsBulkWriter tested = new StatsBulkWriter(mockClient(null), 2, 10, 1000, OverflowPolicy.DROP_OLDEST,
+				null, log);
+		Assert.assertTrue(tested.enqueue(ir("1")));
+		Assert.assertTrue(tested.enqueue(ir("2")));
+		Assert.assertTrue(tested.enqueue(ir("3")));
+		Map<String, Object> stats = tested.getStats();
+		Assert.assertEquals(3L, stats.get("enqueued"));
+		Assert.assertEquals(1L, stats.get("dropped"));
+		Assert.assertEquals(2, stats.get("buffer_size"));
+		Assert.assertEquals(2, tested.flush());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void flush_failures() {
+		Client client = Mockito.mock(Client.class);
+		StatsBulkWriter tested = new StatsBulkWriter(client, 16, 10, 1000, null, null, log);
+
+		// case - exception from client
+		Mockito.when(client.bulk(Mockito.any(BulkRequest.class))).thenThrow(new RuntimeException("test"));
+		tested.enqueue(ir("1"));
+		tested.enqueue(ir("2"));
+		Assert.assertEquals(2, tested.flush());
+		Assert.assertEquals(2L, tested.getStats().get("failed"));
+		Assert.assertEquals(0L, tested.getStats().get("flushed"));
+
+		// case - some items failed
+		Mockito.reset(client);
+		BulkResponse resp = Mockito.mock(BulkResponse.class);
+		Mockito.when(resp.hasFailures()).thenReturn(true);
+		BulkItemResponse ok = Mockito.mock(BulkItemResponse.class);
+		BulkItemResponse failed = Mockito.mock(BulkItemResponse.class);
+		Mockito.when(failed.isFailed()).thenReturn(true);
+		Mockito.when(resp.getItems()).thenReturn(new BulkItemResponse[] { ok, failed });
+		ActionFuture<BulkResponse> f = Mockito.mock(ActionFuture.class);
+		Mockito.when(f.actionGet()).thenReturn(resp);
+		Mockito.when(client.bulk(Mockito.any(BulkRequest.class))).thenReturn(f);
+		tested.enqueue(ir("3"));
+		tested.enqueue(ir("4"));
+		Assert.assertEquals(2, tested.flush());
+		Assert.assertEquals(3L, tested.getStats().get("failed"));
+		Assert.assertEquals(1L, tested.getStats().get("flushed"));
+	}
+
+	@Test
+	public void start_stop() throws InterruptedException {
+		Client client = mockClient(null);
+		StatsBulkWriter tested = new StatsBulkWriter(client, 16, 2, 50, null, null, log);
+		tested.start();
+		try {
+			Assert.assertTrue(tested.isRunning());
+			// case - records are written by background thread
+			tested.enqueue(ir("1"));
+			tested.enqueue(ir("2"));
+			tested.enqueue(ir("3"));
+			long end = System.currentTimeMillis() + 5000;
+			while (((Long) tested.getStats().get("flushed")) < 3 && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			Assert.assertEquals(3L, tested.getStats().get("flushed"));
+
+			// case - remaining records are written on stop
+			tested.enqueue(ir("4"));
+		} finally {
+			tested.stop(5000);
+		}
+		Assert.assertFalse(tested.isRunning());
+		Assert.assertEquals(4L, tested.getStats().get("flushed"));
+	}
+
+}
@@ -80,10 +80,13 @@ public class StatsClientServiceTest {
 			Assert.assertNotNull(tested.client);
 			Assert.assertEquals(mockClient, tested.client);
 			Assert.assertNotNull(tested.statsLogListener);
+			Assert.assertNotNull(tested.bulkWriter);
+			Assert.assertTrue(tested.bulkWriter.isRunning());
 		} finally {
 			tested.destroy();
 			Assert.assertNull(tested.node);
 			Assert.assertNull(tested.client);
+			Assert.assertNull(tested.bulkWriter);
 			Mockito.verifyZeroInteractions(mockClient);
 		}
 	}
@@ -107,6 +110,7 @@ public class StatsClientServiceTest {
 			Assert.assertNull(tested.node);
 			Assert.assertNull(tested.client);
 			Assert.assertNotNull(tested.statsLogListener);
+			Assert.assertNull(tested.bulkWriter);
 		} finally {
 			tested.destroy();
 			Assert.assertNull(tested.node);
@@ -201,6 +205,47 @@ public class StatsClientServiceTest {
 	}
 
 	@SuppressWarnings("unchecked")
+	@Test
+	public void writeStatisticsRecord_bulkWriter() {
+		final StatsClientService tested = getTested();
+		tested.statsConfiguration = new StatsConfiguration(true);
+		tested.bulkWriter = Mockito.mock(StatsBulkWriter.class);
+
+		// case - record is passed to bulk writer, not written directly
+		Map<String, Object> source = new HashMap<>();
+		source.put("field", "value");
+		Mockito.when(tested.bulkWriter.enqueue(Mockito.any(IndexRequest.class))).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				IndexRequest ir = (IndexRequest) invocation.getArguments()[0];
+				Assert.assertEquals(StatsRecordType.SEARCH.getSearchIndexName(), ir.index());
+				Assert.assertEquals(StatsRecordType.SEARCH.getSearchIndexType(), ir.type());
+				Assert.assertEquals(256L, ir.timeout().getSeconds());
+				return true;
+			}
+		});
+		tested.writeStatisticsRecord(StatsRecordType.SEARCH, 1000L, source);
+		Mockito.verify(tested.bulkWriter).enqueue(Mockito.any(IndexRequest.class));
+		Mockito.verifyZeroInteractions(tested.client);
+
+		// case - dropped record is silently ignored
+		Mockito.reset(tested.bulkWriter);
+		Mockito.when(tested.bulkWriter.enqueue(Mockito.any(IndexRequest.class))).thenReturn(false);
+		tested.writeStatisticsRecord(StatsRecordType.SEARCH, 1000L, source);
+		Mockito.verify(tested.bulkWriter).enqueue(Mockito.any(IndexRequest.class));
+		Mockito.verifyZeroInteractions(tested.client);
+	}
+
+	@Test
+	public void getWriterStats() {
+		final StatsClientService tested = getTested();
+		Assert.assertEquals(false, tested.getWriterStats().get("enabled"));
+
+		tested.bulkWriter = new StatsBulkWriter(tested.client, 10, 5, 1000, null, null, tested.log);
+		Assert.assertEquals(true, tested.getWriterStats().get("enabled"));
+		Assert.assertEquals(0L, tested.getWriterStats().get("enqueued"));
+	}
+
 	private StatsClientService getTested() {
 		final StatsClientService tested = new StatsClientService();
 		tested.client = Mockito.mock(Client.class);
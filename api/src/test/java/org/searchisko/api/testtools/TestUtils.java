@@ -29,7 +29,9 @@ import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.jboss.resteasy.specimpl.MultivaluedMapImpl;
+import org.jboss.resteasy.spi.AsynchronousResponse;
 import org.junit.Assert;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.searchisko.api.annotations.security.ContributorAllowed;
 import org.searchisko.api.annotations.security.ProviderAllowed;
@@ -186,6 +188,19 @@ public abstract class TestUtils {
 		}
 	}
 
+	/**
+	 * Assert suspended asynchronous request was resumed exactly once and return response it was resumed with.
+	 * 
+	 * @param asyncResponse mock to check
+	 * @return response passed to {@link AsynchronousResponse#setResponse(Response)} so other assertions may be performed
+	 *         on it.
+	 */
+	public static Response assertAsyncResponse(AsynchronousResponse asyncResponse) {
+		ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+		Mockito.verify(asyncResponse).setResponse(captor.capture());
+		return captor.getValue();
+	}
+
 	/**
 	 * Assert passed in object is REST {@link Response} and has given status.
 	 * 
@@ -234,6 +249,22 @@ public abstract class TestUtils {
 		Assert.assertEquals(expected, output.toString());
 	}
 
+	/**
+	 * Assert JSON content written by the StreamingOutput is same as expected one. Formatting of JSON is ignored.
+	 * 
+	 * @param expectedJsonString expected JSON content
+	 * @param actual value
+	 * @throws IOException
+	 */
+	public static void assetStreamingOutputJsonContent(String expectedJsonString, Object actual) throws IOException {
+		if (!(actual instanceof StreamingOutput)) {
+			Assert.fail("Result must be StreamingOutput but is " + actual);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		((StreamingOutput) actual).write(output);
+		assertJsonContent(expectedJsonString, output.toString());
+	}
+
 	/**
 	 * Assert string value equals one written by the StreamingOutput.
 	 * 
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AtomWriter}.
+ *
+ * @author agent (agent at local)
+ */
+public class AtomWriterTest {
+
+	@Test
+	public void feed() throws IOException {
+		StringWriter sw = new StringWriter();
+		AtomWriter tested = new AtomWriter(sw);
+		tested.startFeed().element("title", "My feed").element("id", null).dateElement("updated", new Date(0))
+				.dateElement("published", null).generator("Searchisko", "1.0").link("next", "http://a?b=1&c=2")
+				.link(null, "http://a").endFeed();
+		Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<feed xmlns=\"http://www.w3.org/2005/Atom\">"
+				+ "<title>My feed</title><updated>1970-01-01T00:00:00.000Z</updated>"
+				+ "<generator version=\"1.0\">Searchisko</generator><link rel=\"next\" href=\"http://a?b=1&amp;c=2\"/>"
+				+ "<link href=\"http://a\"/></feed>", sw.toString());
+	}
+
+	@Test
+	public void entry() throws IOException {
+		StringWriter sw = new StringWriter();
+		AtomWriter tested = new AtomWriter(sw);
+		tested.startEntry().person("author", "John <Doe>").category("tag \"1\"", "scheme")
+				.category("tag2", null).content(MediaType.TEXT_HTML_TYPE, "<p>a &amp; b</p>").endEntry();
+		Assert.assertEquals("<entry><author><name>John &lt;Doe&gt;</name></author>"
+				+ "<category term=\"tag &quot;1&quot;\" scheme=\"scheme\"/><category term=\"tag2\"/>"
+				+ "<content type=\"html\">&lt;p&gt;a &amp;amp; b&lt;/p&gt;</content></entry>", sw.toString());
+	}
+
+	@Test
+	public void escape() throws IOException {
+		StringWriter sw = new StringWriter();
+		new AtomWriter(sw).element("title", "a\u0001b\tc\"d\u00e9\uffff");
+		Assert.assertEquals("<title>ab\tc\"d\u00e9</title>", sw.toString());
+	}
+
+	@Test
+	public void getAtomType() {
+		Assert.assertNull(AtomWriter.getAtomType(null));
+		Assert.assertEquals("text", AtomWriter.getAtomType(MediaType.TEXT_PLAIN_TYPE));
+		Assert.assertEquals("text", AtomWriter.getAtomType(MediaType.valueOf("text/plain; charset=UTF-8")));
+		Assert.assertEquals("html", AtomWriter.getAtomType(MediaType.TEXT_HTML_TYPE));
+		Assert.assertEquals("xhtml", AtomWriter.getAtomType(MediaType.APPLICATION_XHTML_XML_TYPE));
+		Assert.assertEquals("application/pdf", AtomWriter.getAtomType(MediaType.valueOf("application/pdf")));
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BoundedRingBuffer}.
+ *
+ * @author agent (agent at local)
+ */
+public class BoundedRingBufferTest {
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_invalidCapacity() {
+		new BoundedRingBuffer<String>(0);
+	}
+
+	@Test
+	public void capacity() {
+		Assert.assertEquals(1, new BoundedRingBuffer<String>(1).capacity());
+		Assert.assertEquals(8, new BoundedRingBuffer<String>(8).capacity());
+		Assert.assertEquals(16, new BoundedRingBuffer<String>(10).capacity());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void offer_null() {
+		new BoundedRingBuffer<String>(4).offer(null);
+	}
+
+	@Test
+	public void offer_poll() {
+		BoundedRingBuffer<String> tested = new BoundedRingBuffer<>(4);
+		Assert.assertTrue(tested.isEmpty());
+		Assert.assertNull(tested.poll());
+
+		Assert.assertTrue(tested.offer("a"));
+		Assert.assertTrue(tested.offer("b"));
+		Assert.assertTrue(tested.offer("c"));
+		Assert.assertTrue(tested.offer("d"));
+		Assert.assertEquals(4, tested.size());
+		// case - full
+		Assert.assertFalse(tested.offer("e"));
+		Assert.assertEquals(4, tested.size());
+
+		// case - FIFO order, wrap around
+		Assert.assertEquals("a", tested.poll());
+		Assert.assertTrue(tested.offer("f"));
+		Assert.assertEquals("b", tested.poll());
+		Assert.assertEquals("c", tested.poll());
+		Assert.assertEquals("d", tested.poll());
+		Assert.assertEquals("f", tested.poll());
+		Assert.assertNull(tested.poll());
+		Assert.assertTrue(tested.isEmpty());
+	}
+
+	@Test
+	public void concurrent() throws InterruptedException {
+		final BoundedRingBuffer<Integer> tested = new BoundedRingBuffer<>(64);
+		final int producers = 4;
+		final int perProducer = 10000;
+		final AtomicInteger rejected = new AtomicInteger();
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int base = p * perProducer;
+			threads[p] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perProducer; i++) {
+						while (!tested.offer(base + i)) {
+							rejected.incrementAndGet();
+							Thread.yield();
+						}
+					}
+				}
+			};
+			threads[p].start();
+		}
+		Set<Integer> received = new HashSet<>();
+		while (received.size() < producers * perProducer) {
+			Integer i = tested.poll();
+			if (i != null) {
+				Assert.assertTrue("duplicate element " + i, received.add(i));
+			} else {
+				Thread.yield();
+			}
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		Assert.assertNull(tested.poll());
+	}
+
+}
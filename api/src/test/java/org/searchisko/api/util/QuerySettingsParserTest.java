@@ -13,6 +13,7 @@ import javax.ws.rs.core.MultivaluedMap;
 
 import org.searchisko.api.model.PastIntervalValue;
 import org.searchisko.api.model.QuerySettings;
+import org.searchisko.api.model.SearchCursor;
 import org.searchisko.api.model.SortByValue;
 import org.searchisko.api.service.SearchService;
 import org.searchisko.api.testtools.TestUtils;
@@ -424,6 +425,76 @@ public class QuerySettingsParserTest {
 		}
 	}
 
+	@Test
+	public void parseUriParams_filter_cursor() {
+		QuerySettingsParser tested = getTested();
+		String cursor = new SearchCursor(SortByValue.NEW, 10L, "t#1").encode();
+		{
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, " ");
+			QuerySettings ret = tested.parseUriParams(params);
+			Assert.assertNull(ret.getFilters().getCursor());
+			Assert.assertFalse(ret.getFilters().isCursorPaging());
+		}
+		// case - first page of cursor pagination
+		{
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, QuerySettings.Filters.CURSOR_FIRST_VALUE);
+			params.add(QuerySettings.SORT_BY_KEY, SortByValue.NEW.toString());
+			QuerySettings ret = tested.parseUriParams(params);
+			Assert.assertNull(ret.getFilters().getCursor());
+			Assert.assertTrue(ret.getFilters().isCursorPaging());
+			Assert.assertEquals(SortByValue.NEW, ret.getSortBy());
+		}
+		// case - sorting taken from cursor
+		{
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, cursor);
+			QuerySettings ret = tested.parseUriParams(params);
+			Assert.assertEquals("t#1", ret.getFilters().getCursor().getUid());
+			Assert.assertTrue(ret.getFilters().isCursorPaging());
+			Assert.assertEquals(SortByValue.NEW, ret.getSortBy());
+		}
+		// case - same sorting and zero from allowed
+		{
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, cursor);
+			params.add(QuerySettings.SORT_BY_KEY, SortByValue.NEW.toString());
+			params.add(QuerySettings.Filters.FROM_KEY, "0");
+			QuerySettings ret = tested.parseUriParams(params);
+			Assert.assertNotNull(ret.getFilters().getCursor());
+		}
+		// case - different sorting
+		try {
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, cursor);
+			params.add(QuerySettings.SORT_BY_KEY, SortByValue.OLD.toString());
+			tested.parseUriParams(params);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(QuerySettings.Filters.CURSOR_KEY, e.getMessage());
+		}
+		// case - cursor together with from
+		try {
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, cursor);
+			params.add(QuerySettings.Filters.FROM_KEY, "10");
+			tested.parseUriParams(params);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(QuerySettings.Filters.CURSOR_KEY, e.getMessage());
+		}
+		// case - invalid cursor
+		try {
+			MultivaluedMap<String, String> params = new MultivaluedMapImpl<String, String>();
+			params.add(QuerySettings.Filters.CURSOR_KEY, "badcursor");
+			tested.parseUriParams(params);
+			Assert.fail("IllegalArgumentException expected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(QuerySettings.Filters.CURSOR_KEY, e.getMessage());
+		}
+	}
+
 	@Test
 	public void parseUriParams_filter_size() {
 		QuerySettingsParser tested = getTested();
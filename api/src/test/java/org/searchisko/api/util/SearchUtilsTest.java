@@ -13,6 +13,7 @@ import org.junit.Test;
 import org.searchisko.api.testtools.TestUtils;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.*;
 
@@ -129,6 +130,23 @@ public class SearchUtilsTest {
 	}
 
 	@SuppressWarnings("unchecked")
+	@Test
+	public void readJsonMap() throws IOException {
+		Assert.assertNull(SearchUtils.readJsonMap(null));
+		Assert.assertNull(SearchUtils.readJsonMap(new StringReader("null")));
+		try {
+			SearchUtils.readJsonMap(new StringReader("{aers"));
+			Assert.fail("JsonParseException expected");
+		} catch (JsonParseException e) {
+			// OK
+		}
+		Map<String, Object> ret = SearchUtils.readJsonMap(new StringReader(
+				"{\"a\" : \"b\", \"c\" : 10, \"d\" : { \"e\" : [\"f\",\"g\"]}}"));
+		Assert.assertEquals("b", ret.get("a"));
+		Assert.assertEquals(10, ret.get("c"));
+		Assert.assertEquals(2, ((List<?>) ((Map<?, ?>) ret.get("d")).get("e")).size());
+	}
+
 	@Test
 	public void convertToJsonMap() throws JsonParseException, JsonMappingException, IOException {
 		Assert.assertNull(SearchUtils.convertToJsonMap(null));
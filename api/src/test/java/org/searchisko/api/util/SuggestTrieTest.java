@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.api.util;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SuggestTrie}.
+ *
+ * @author agent (agent at local)
+ */
+public class SuggestTrieTest {
+
+	private SuggestTrie build(int maxSize) {
+		return new SuggestTrie.Builder().add("jboss as", 3).add("jboss", 1).add("jbpm", 2).add("hibernate", 0)
+				.add("jboss", 4).add("", 5).add(null, 6).build(maxSize);
+	}
+
+	private void assertMatches(List<SuggestTrie.Match> actual, int... expectedValueDistancePairs) {
+		Assert.assertEquals(actual.toString(), expectedValueDistancePairs.length / 2, actual.size());
+		for (int i = 0; i < actual.size(); i++) {
+			Assert.assertEquals(actual.toString(), expectedValueDistancePairs[i * 2], actual.get(i).getValue());
+			Assert.assertEquals(actual.toString(), expectedValueDistancePairs[i * 2 + 1], actual.get(i).getDistance());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void add_negativeValue() {
+		new SuggestTrie.Builder().add("a", -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void build_invalidMaxSize() {
+		new SuggestTrie.Builder().build(0);
+	}
+
+	@Test
+	public void empty() {
+		SuggestTrie tested = new SuggestTrie.Builder().build(10);
+		Assert.assertEquals(0, tested.getKeyCount());
+		Assert.assertArrayEquals(new int[0], tested.prefix("a", 10));
+		Assert.assertTrue(tested.fuzzyPrefix("a", 1, 10).isEmpty());
+	}
+
+	@Test
+	public void prefix() {
+		SuggestTrie tested = build(10);
+		Assert.assertEquals(5, tested.getKeyCount());
+
+		Assert.assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, tested.prefix("", 10));
+		Assert.assertArrayEquals(new int[] { 1, 2, 3, 4 }, tested.prefix("j", 10));
+		Assert.assertArrayEquals(new int[] { 1, 2, 3, 4 }, tested.prefix("jb", 10));
+		Assert.assertArrayEquals(new int[] { 1, 3, 4 }, tested.prefix("jbo", 10));
+		Assert.assertArrayEquals(new int[] { 1, 3, 4 }, tested.prefix("jboss", 10));
+		Assert.assertArrayEquals(new int[] { 3 }, tested.prefix("jboss ", 10));
+		Assert.assertArrayEquals(new int[] { 3 }, tested.prefix("jboss as", 10));
+		Assert.assertArrayEquals(new int[] { 2 }, tested.prefix("jbpm", 10));
+		Assert.assertArrayEquals(new int[] { 0 }, tested.prefix("hib", 10));
+
+		// case - no match
+		Assert.assertArrayEquals(new int[0], tested.prefix("jboss as 7", 10));
+		Assert.assertArrayEquals(new int[0], tested.prefix("jbx", 10));
+		Assert.assertArrayEquals(new int[0], tested.prefix("x", 10));
+
+		// case - size limit
+		Assert.assertArrayEquals(new int[] { 1, 2 }, tested.prefix("j", 2));
+	}
+
+	@Test
+	public void prefix_maxSize() {
+		SuggestTrie tested = build(2);
+		Assert.assertArrayEquals(new int[] { 0, 1 }, tested.prefix("", 10));
+		Assert.assertArrayEquals(new int[] { 1, 3 }, tested.prefix("jbo", 10));
+	}
+
+	@Test
+	public void fuzzyPrefix() {
+		SuggestTrie tested = build(10);
+
+		// case - exact prefix match
+		assertMatches(tested.fuzzyPrefix("jbos", 0, 10), 1, 0, 3, 0, 4, 0);
+
+		// case - one typo
+		assertMatches(tested.fuzzyPrefix("jbos", 1, 10), 1, 0, 3, 0, 4, 0);
+		assertMatches(tested.fuzzyPrefix("jbss", 1, 10), 1, 1, 3, 1, 4, 1);
+		assertMatches(tested.fuzzyPrefix("hibrenate", 1, 10));
+		assertMatches(tested.fuzzyPrefix("hibrenate", 2, 10), 0, 2);
+		assertMatches(tested.fuzzyPrefix("jbsos", 2, 10), 1, 1, 3, 1, 4, 1);
+		assertMatches(tested.fuzzyPrefix("jbpo", 1, 10), 1, 1, 2, 1, 3, 1, 4, 1);
+
+		// case - size limit
+		assertMatches(tested.fuzzyPrefix("jbos", 1, 2), 1, 0, 3, 0);
+
+		// case - no match
+		assertMatches(tested.fuzzyPrefix("wildfly", 2, 10));
+	}
+
+}
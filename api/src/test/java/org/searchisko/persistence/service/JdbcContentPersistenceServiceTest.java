@@ -9,9 +9,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -20,7 +24,11 @@ import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.searchisko.api.ContentObjectFields;
+import org.searchisko.api.model.AppConfiguration;
 import org.searchisko.api.testtools.TestUtils;
 import org.searchisko.api.util.SearchUtils;
 import org.searchisko.persistence.service.ContentPersistenceService.ListRequest;
@@ -132,6 +140,146 @@ public class JdbcContentPersistenceServiceTest extends JpaTestBase {
 		}
 	}
 
+	@Test
+	public void getDialect() throws SQLException {
+		JdbcContentPersistenceService tested = getTested();
+		JdbcContentPersistenceService.dialect = null;
+		try (Connection conn = tested.searchiskoDs.getConnection()) {
+			Assert.assertEquals(JdbcContentPersistenceService.Dialect.H2, tested.getDialect(conn));
+		}
+	}
+
+	@Test
+	public void store_updateInsertFallback() {
+		JdbcContentPersistenceService tested = getTested();
+		JdbcContentPersistenceService.dialect = JdbcContentPersistenceService.Dialect.OTHER;
+		try {
+			String sysContentType = "testtype_fallback";
+			Map<String, Object> content = new HashMap<String, Object>();
+			content.put("testkey", "testvalue");
+
+			// case - insert
+			tested.store("aaa-1", sysContentType, content);
+			assertRowCount(tested, sysContentType, 1);
+			TestUtils.assertJsonContent("{\"testkey\" : \"testvalue\"}", tested.get("aaa-1", sysContentType));
+
+			// case - update
+			content.put("testkey", "testvalue2");
+			tested.store("aaa-1", sysContentType, content);
+			assertRowCount(tested, sysContentType, 1);
+			TestUtils.assertJsonContent("{\"testkey\" : \"testvalue2\"}", tested.get("aaa-1", sysContentType));
+		} finally {
+			JdbcContentPersistenceService.dialect = null;
+		}
+	}
+
+	@Test
+	public void storeBatch() {
+		storeBatchImpl(getTested(), "testtype_batch", null);
+	}
+
+	@Test
+	public void storeBatch_updateInsertFallback() {
+		storeBatchImpl(getTested(), "testtype_batch_fallback", JdbcContentPersistenceService.Dialect.OTHER);
+	}
+
+	@Test
+	public void storeBatch_updateInsertFallback_successNoInfo() throws SQLException {
+		// case - driver doesn't return update counts, so existence of rows is checked
+		JdbcContentPersistenceService tested = Mockito.spy(getTested());
+		Mockito.doAnswer(new Answer<int[]>() {
+			@Override
+			public int[] answer(InvocationOnMock invocation) throws Throwable {
+				int[] ret = ((PreparedStatement) invocation.getArguments()[0]).executeBatch();
+				Arrays.fill(ret, Statement.SUCCESS_NO_INFO);
+				return ret;
+			}
+		}).when(tested).executeBatch(Mockito.any(PreparedStatement.class));
+		storeBatchImpl(tested, "testtype_batch_fallback_noinfo", JdbcContentPersistenceService.Dialect.OTHER);
+	}
+
+	private void storeBatchImpl(JdbcContentPersistenceService tested, String sysContentType,
+			JdbcContentPersistenceService.Dialect dialect) {
+		JdbcContentPersistenceService.dialect = dialect;
+		try {
+			// case - nothing to store
+			tested.storeBatch(sysContentType, null);
+			tested.storeBatch(sysContentType, new ArrayList<Map<String, Object>>());
+
+			// case - insert into nonexisting table
+			List<Map<String, Object>> contents = new ArrayList<>();
+			contents.add(prepareContent(sysContentType, "aaa-1", "v1"));
+			contents.add(prepareContent(sysContentType, "aaa-2", "v2"));
+			tested.storeBatch(sysContentType, contents);
+			assertRowCount(tested, sysContentType, 2);
+			Assert.assertEquals("v1", tested.get("aaa-1", sysContentType).get("test"));
+			Assert.assertEquals("v2", tested.get("aaa-2", sysContentType).get("test"));
+
+			// case - mix of update and insert, last one wins for same id
+			contents = new ArrayList<>();
+			contents.add(prepareContent(sysContentType, "aaa-2", "v2_2"));
+			contents.add(prepareContent(sysContentType, "aaa-3", "v3"));
+			contents.add(prepareContent(sysContentType, "aaa-3", "v3_2"));
+			tested.storeBatch(sysContentType, contents);
+			assertRowCount(tested, sysContentType, 3);
+			Assert.assertEquals("v1", tested.get("aaa-1", sysContentType).get("test"));
+			Assert.assertEquals("v2_2", tested.get("aaa-2", sysContentType).get("test"));
+			Assert.assertEquals("v3_2", tested.get("aaa-3", sysContentType).get("test"));
+
+			// case - content without id
+			contents = new ArrayList<>();
+			contents.add(prepareContent(sysContentType, "aaa-4", "v4"));
+			contents.add(new HashMap<String, Object>());
+			try {
+				tested.storeBatch(sysContentType, contents);
+				Assert.fail("IllegalArgumentException expected");
+			} catch (IllegalArgumentException e) {
+				// OK
+			}
+			assertRowCount(tested, sysContentType, 3);
+		} finally {
+			JdbcContentPersistenceService.dialect = null;
+		}
+	}
+
+	@Test
+	public void deleteBatch() {
+		JdbcContentPersistenceService tested = getTested();
+		String sysContentType = "testtype_deletebatch";
+
+		// case - nothing to delete, nonexisting table
+		tested.deleteBatch(sysContentType, null);
+		tested.deleteBatch(sysContentType, new ArrayList<String>());
+		tested.deleteBatch(sysContentType, Arrays.asList("aaa-1"));
+
+		List<Map<String, Object>> contents = new ArrayList<>();
+		for (int i = 0; i < 1200; i++) {
+			contents.add(prepareContent(sysContentType, "aaa-" + i, "v" + i));
+		}
+		tested.storeBatch(sysContentType, contents);
+		assertRowCount(tested, sysContentType, 1200);
+
+		// case - delete existing and nonexisting ids, more than one delete statement is used
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 1100; i++) {
+			ids.add("aaa-" + i);
+		}
+		ids.add("unknown");
+		tested.deleteBatch(sysContentType, ids);
+		assertRowCount(tested, sysContentType, 100);
+		Assert.assertNull(tested.get("aaa-0", sysContentType));
+		Assert.assertNull(tested.get("aaa-1099", sysContentType));
+		Assert.assertNotNull(tested.get("aaa-1100", sysContentType));
+	}
+
+	private Map<String, Object> prepareContent(String sysContentType, String id, String value) {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put(ContentObjectFields.SYS_ID, id);
+		content.put(ContentObjectFields.SYS_CONTENT_TYPE, sysContentType);
+		content.put("test", value);
+		return content;
+	}
+
 	@Test
 	public void listRequest() {
 		JdbcContentPersistenceService tested = getTested();
@@ -175,6 +323,47 @@ public class JdbcContentPersistenceServiceTest extends JpaTestBase {
 				req = tested.listRequestNext(req);
 				Assert.assertFalse(req.hasContent());
 
+				// case - next called on finished request does not restart listing
+				req = tested.listRequestNext(req);
+				Assert.assertFalse(req.hasContent());
+			}
+
+			// case - page with invalid JSON data only does not stop listing, rows inserted before current position are
+			// not returned again
+			{
+				String tableName = tested.getTableName(sysContentType);
+				tested.executeNonReturningSql(String.format(
+						"insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)", tableName), "aaa-31",
+						"invalid json", sysContentType, new Date());
+				tested.executeNonReturningSql(String.format(
+						"insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)", tableName), "aaa-32",
+						"{invalid", sysContentType, new Date());
+				tested.executeNonReturningSql(String.format(
+						"insert into %s (id, json_data, sys_content_type, updated) values (?, ?, ?, ?)", tableName), "aaa-33",
+						"null", sysContentType, new Date());
+
+				ListRequest req = tested.listRequestInit(sysContentType);
+				Assert.assertEquals(3, req.content().size());
+				Assert.assertEquals("aaa-3", req.content().get(2).get(ContentObjectFields.SYS_ID));
+
+				addContent(tested, sysContentType, "aaa-0");
+
+				req = tested.listRequestNext(req);
+				Assert.assertTrue(req.hasContent());
+				Assert.assertEquals(0, req.content().size());
+
+				req = tested.listRequestNext(req);
+				Assert.assertTrue(req.hasContent());
+				Assert.assertEquals(3, req.content().size());
+				Assert.assertEquals("aaa-4", req.content().get(0).get(ContentObjectFields.SYS_ID));
+
+				req = tested.listRequestNext(req);
+				Assert.assertTrue(req.hasContent());
+				Assert.assertEquals(1, req.content().size());
+				Assert.assertEquals("aaa-7", req.content().get(0).get(ContentObjectFields.SYS_ID));
+
+				req = tested.listRequestNext(req);
+				Assert.assertFalse(req.hasContent());
 			}
 
 		} catch (Exception ex) {
@@ -184,6 +373,27 @@ public class JdbcContentPersistenceServiceTest extends JpaTestBase {
 
 	}
 
+	@Test
+	public void init() {
+		JdbcContentPersistenceService tested = new JdbcContentPersistenceService();
+		// case - default page size if not configured
+		tested.init();
+		Assert.assertEquals(1000, tested.LIST_PAGE_SIZE);
+
+		// case - configured page size
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.appConfiguration.setContentPersistenceListPageSize(250);
+		tested.init();
+		Assert.assertEquals(250, tested.LIST_PAGE_SIZE);
+
+		// case - invalid configured page size ignored
+		tested = new JdbcContentPersistenceService();
+		tested.appConfiguration = new AppConfiguration("/tmp");
+		tested.appConfiguration.setContentPersistenceListPageSize(0);
+		tested.init();
+		Assert.assertEquals(1000, tested.LIST_PAGE_SIZE);
+	}
+
 	private void addContent(JdbcContentPersistenceService tested, String sysContentType, String id) {
 		Map<String, Object> content = new HashMap<String, Object>();
 		content.put(ContentObjectFields.SYS_ID, id);
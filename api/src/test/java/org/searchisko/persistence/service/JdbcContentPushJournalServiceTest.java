@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2014 Red Hat Inc. and/or its affiliates and other contributors
+ * as indicated by the @authors tag. All rights reserved.
+ */
+package org.searchisko.persistence.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.searchisko.persistence.service.ContentPushJournalService.Entry;
+
+/**
+ * Unit test for {@link JdbcContentPushJournalService}
+ *
+ * @author agent (agent at local)
+ */
+public class JdbcContentPushJournalServiceTest {
+
+	private Map<String, Object> content(String value) {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("test", value);
+		return content;
+	}
+
+	@Test
+	public void journal() throws InterruptedException {
+		JdbcContentPushJournalService tested = getTested();
+
+		// case - empty journal
+		Assert.assertNull(tested.get("unknown"));
+		Assert.assertTrue(tested.claim(10).isEmpty());
+		Assert.assertEquals(0, tested.countQueued());
+
+		tested.add("r1", "provider1", "type1", "1", content("v1"), false);
+		Thread.sleep(5);
+		tested.add("r2", "provider1", "type1", "2", content("v2"), true);
+		Thread.sleep(5);
+		tested.add("r3", "provider2", "type2", "1", content("v3"), false);
+		Assert.assertEquals(3, tested.countQueued());
+
+		Entry e = tested.get("r1");
+		Assert.assertEquals("r1", e.getReceiptId());
+		Assert.assertEquals("provider1", e.getProviderName());
+		Assert.assertEquals("type1", e.getSysContentType());
+		Assert.assertEquals("1", e.getContentId());
+		Assert.assertEquals(ContentPushJournalService.STATUS_QUEUED, e.getStatus());
+		Assert.assertNull(e.getMessage());
+		Assert.assertNull(e.getContent());
+		Assert.assertNotNull(e.getCreated());
+
+		// case - claim oldest entries with content
+		List<Entry> claimed = tested.claim(2);
+		Assert.assertEquals(2, claimed.size());
+		Assert.assertEquals("r1", claimed.get(0).getReceiptId());
+		Assert.assertEquals("v1", claimed.get(0).getContent().get("test"));
+		Assert.assertEquals(ContentPushJournalService.STATUS_PROCESSING, claimed.get(0).getStatus());
+		Assert.assertFalse(claimed.get(0).isForce());
+		Assert.assertEquals("r2", claimed.get(1).getReceiptId());
+		Assert.assertTrue(claimed.get(1).isForce());
+		Assert.assertEquals(ContentPushJournalService.STATUS_PROCESSING, tested.get("r2").getStatus());
+		Assert.assertEquals(1, tested.countQueued());
+
+		// case - claimed entries are not claimed again
+		claimed = tested.claim(10);
+		Assert.assertEquals(1, claimed.size());
+		Assert.assertEquals("r3", claimed.get(0).getReceiptId());
+		Assert.assertTrue(tested.claim(10).isEmpty());
+
+		// case - finish
+		tested.finish("r1", "insert", "Content was inserted successfully.");
+		StringBuilder longMessage = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			longMessage.append("error ");
+		tested.finish("r2", "error", longMessage.toString());
+		e = tested.get("r1");
+		Assert.assertEquals("insert", e.getStatus());
+		Assert.assertEquals("Content was inserted successfully.", e.getMessage());
+		Assert.assertEquals(JdbcContentPushJournalService.MESSAGE_MAX_LENGTH, tested.get("r2").getMessage().length());
+
+		// case - entries claimed recently are not requeued, as they may be still processed by other node
+		Assert.assertNotNull(tested.getNodeId());
+		Assert.assertEquals(0, tested.requeueProcessing(new Date(System.currentTimeMillis() - 60000)));
+		Assert.assertEquals(ContentPushJournalService.STATUS_PROCESSING, tested.get("r3").getStatus());
+
+		// case - requeue abandoned entries being processed
+		Assert.assertEquals(1, tested.requeueProcessing(new Date(System.currentTimeMillis() + 60000)));
+		Assert.assertEquals(ContentPushJournalService.STATUS_QUEUED, tested.get("r3").getStatus());
+		Assert.assertEquals("insert", tested.get("r1").getStatus());
+		Assert.assertEquals(1, tested.countQueued());
+
+		// case - delete finished entries only
+		Assert.assertEquals(0, tested.deleteFinished(new Date(System.currentTimeMillis() - 60000)));
+		Assert.assertEquals(2, tested.deleteFinished(new Date(System.currentTimeMillis() + 60000)));
+		Assert.assertNull(tested.get("r1"));
+		Assert.assertNull(tested.get("r2"));
+		Assert.assertNotNull(tested.get("r3"));
+	}
+
+	private static JdbcContentPushJournalService tested;
+
+	protected JdbcContentPushJournalService getTested() {
+		return tested;
+	}
+
+	@BeforeClass
+	public static void beforeClass() {
+		JdbcContentPushJournalService.tableExists = false;
+		tested = new JdbcContentPushJournalService();
+		tested.log = Logger.getLogger("test logger");
+		tested.searchiskoDs = JdbcConnectionPool.create("jdbc:h2:mem:unit-testing-content-push-journal-test", "sa", "");
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		((JdbcConnectionPool) tested.searchiskoDs).dispose();
+		tested = null;
+		JdbcContentPushJournalService.tableExists = false;
+	}
+}
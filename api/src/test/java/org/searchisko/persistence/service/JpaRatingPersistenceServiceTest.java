@@ -5,9 +5,16 @@
  */
 package org.searchisko.persistence.service;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.persistence.PersistenceException;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.searchisko.persistence.jpa.model.Rating;
@@ -117,6 +124,163 @@ public class JpaRatingPersistenceServiceTest extends JpaTestBase {
 		em.getTransaction().commit();
 	}
 
+	@Test
+	public void countRatingStats_maintained() {
+		JpaRatingPersistenceService tested = getTested();
+
+		em.getTransaction().begin();
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_1, 1);
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_1, 5);
+		tested.rate(CONTRIB_ID_3, CONTENT_ID_1, 3);
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_2, 4);
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_2, 2);
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_3, 3);
+		// case - update of rating changes sum only
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_1, 4);
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_1, 4);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 4, 3);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_2), CONTENT_ID_2, 3, 2);
+
+		// case - merge removes ratings of content rated by both contributors
+		tested.mergeRatingsForContributors(CONTRIB_ID_1, CONTRIB_ID_3);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 4, 2);
+
+		// case - statistics are not inserted if they exist already
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_1, 1);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 3, 3);
+		Assert.assertEquals(Arrays.asList(CONTENT_ID_1), inserted);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_2), CONTENT_ID_2, 3, 2);
+
+		// case - delete ratings for contributor, statistics removed if no rating remains
+		tested.deleteRatingsForContributor(CONTRIB_ID_2);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 3, 1);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_2), CONTENT_ID_2, 4, 1);
+		Assert.assertNull(tested.countRatingStats(CONTENT_ID_3));
+
+		// case - delete ratings for content
+		tested.deleteRatingsForContent(CONTENT_ID_1);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		Assert.assertNull(tested.countRatingStats(CONTENT_ID_1));
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_2), CONTENT_ID_2, 4, 1);
+
+		// case - rate again after delete
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_3, 5);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_3), CONTENT_ID_3, 5, 1);
+		em.getTransaction().commit();
+	}
+
+	@Test
+	public void countRatingStats_batch() {
+		JpaRatingPersistenceService tested = getTested();
+
+		em.getTransaction().begin();
+		// case - no NPE
+		Assert.assertTrue(tested.countRatingStats((Collection<String>) null).isEmpty());
+		Assert.assertTrue(tested.countRatingStats(new ArrayList<String>()).isEmpty());
+
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_1, 1);
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_1, 5);
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_3, 4);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		Map<String, RatingStats> ret = tested.countRatingStats(Arrays.asList(CONTENT_ID_1, CONTENT_ID_2, CONTENT_ID_3));
+		Assert.assertEquals(2, ret.size());
+		assertRatingStats(ret.get(CONTENT_ID_1), CONTENT_ID_1, 3, 2);
+		assertRatingStats(ret.get(CONTENT_ID_3), CONTENT_ID_3, 4, 1);
+		Assert.assertFalse(ret.containsKey(CONTENT_ID_2));
+		em.getTransaction().commit();
+	}
+
+	@Test
+	public void initRatingStats() {
+		JpaRatingPersistenceService tested = getTested();
+
+		em.getTransaction().begin();
+		// case - nothing to init
+		Assert.assertFalse(tested.initRatingStats());
+
+		// case - ratings stored without statistics, eg. by previous version
+		em.persist(new Rating(CONTENT_ID_1, CONTRIB_ID_1, 1, new Timestamp(System.currentTimeMillis())));
+		em.persist(new Rating(CONTENT_ID_1, CONTRIB_ID_2, 5, new Timestamp(System.currentTimeMillis())));
+		em.persist(new Rating(CONTENT_ID_2, CONTRIB_ID_1, 4, new Timestamp(System.currentTimeMillis())));
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		Assert.assertNull(tested.countRatingStats(CONTENT_ID_1));
+		Assert.assertTrue(tested.initRatingStats());
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 3, 2);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_2), CONTENT_ID_2, 4, 1);
+
+		// case - already initialized
+		Assert.assertFalse(tested.initRatingStats());
+		em.getTransaction().commit();
+	}
+
+	@Test
+	public void countRatingStats_concurrentFirstRating() {
+		// simulates concurrent transaction which rated content first, so our insert of statistics fails
+		final List<String> inserted = new ArrayList<String>();
+		JpaRatingPersistenceService tested = new JpaRatingPersistenceService() {
+			@Override
+			public void insertRatingStats(String contentId) {
+				inserted.add(contentId);
+				if (CONTENT_ID_2.equals(contentId))
+					throw new PersistenceException("insert failed");
+				super.insertRatingStats(contentId);
+				updateRatingStats(contentId, 3, 1);
+				throw new PersistenceException("duplicate key");
+			}
+		};
+		tested.em = em;
+
+		em.getTransaction().begin();
+		tested.rate(CONTRIB_ID_1, CONTENT_ID_1, 5);
+		em.getTransaction().commit();
+
+		em.getTransaction().begin();
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 4, 2);
+
+		// case - statistics are not inserted if they exist already
+		tested.rate(CONTRIB_ID_2, CONTENT_ID_1, 1);
+		assertRatingStats(tested.countRatingStats(CONTENT_ID_1), CONTENT_ID_1, 3, 3);
+		Assert.assertEquals(Arrays.asList(CONTENT_ID_1), inserted);
+
+		// case - insert failure is propagated if statistics still don't exist
+		try {
+			tested.rate(CONTRIB_ID_1, CONTENT_ID_2, 5);
+			Assert.fail("PersistenceException expected");
+		} catch (PersistenceException e) {
+			// OK
+		}
+		em.getTransaction().rollback();
+	}
+
+	private void assertRatingStats(RatingStats rs, String expectedContentId, double expectedAverage,
+			long expectedNumber) {
+		Assert.assertNotNull(rs);
+		Assert.assertEquals(expectedContentId, rs.getContentId());
+		Assert.assertEquals(expectedAverage, rs.getAverage(), 0.01);
+		Assert.assertEquals(expectedNumber, rs.getNumber());
+	}
+
 	@Test
 	public void mergeRatingsForContributors() {
 		JpaRatingPersistenceService tested = getTested();